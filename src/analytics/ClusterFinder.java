@@ -0,0 +1,122 @@
+package analytics;
+
+import models.Flock;
+import spatial.NeighbourList;
+import spatial.UniformGrid;
+
+/**
+ * Finds the groups of boids that are connected through chains of neighbours
+ * closer than a given radius. The neighbour graph is walked through a
+ * {@link UniformGrid}, the same index the behaviours find their neighbours
+ * with, and its components are merged with union-find, so a flock is measured
+ * in time proportional to the number of neighbour pairs rather than to the
+ * square of its size.
+ *
+ * A finder keeps its grid and working arrays between calls, so measuring every
+ * tick allocates nothing once the flock size has settled. It must only be used
+ * by one thread at a time.
+ */
+public class ClusterFinder {
+    private final UniformGrid grid = new UniformGrid(1);
+    private final NeighbourList candidates = new NeighbourList();
+    private int[] parent = new int[0];
+    private int[] sizes = new int[0];
+
+    private int clusterCount;
+    private int largestCluster;
+    private float meanNeighbours;
+
+    /**
+     * Groups the boids of a flock, replacing the results of any previous call.
+     *
+     * @param flock  The flock to measure.
+     * @param radius The distance within which two boids belong to the same group.
+     */
+    public void find(Flock flock, float radius) {
+        int count = flock.size();
+        if (parent.length < count) {
+            parent = new int[count];
+            sizes = new int[count];
+        }
+        for (int i = 0; i < count; i++)
+            parent[i] = i;
+
+        grid.setCellSize(radius);
+        grid.build(flock);
+
+        float radiusSquared = radius * radius;
+        long pairs = 0;
+        int clusters = count;
+        for (int i = 0; i < count; i++) {
+            float x = flock.getX(i);
+            float y = flock.getY(i);
+            grid.query(x, y, radius, candidates);
+            for (int k = 0; k < candidates.size(); k++) {
+                int j = candidates.get(k);
+                // Each pair is seen from both ends, only count it from the lower one
+                if (j <= i)
+                    continue;
+                float dx = flock.getX(j) - x;
+                float dy = flock.getY(j) - y;
+                if (dx * dx + dy * dy < radiusSquared) {
+                    pairs++;
+                    if (union(i, j))
+                        clusters--;
+                }
+            }
+        }
+
+        largestCluster = 0;
+        for (int i = 0; i < count; i++)
+            sizes[i] = 0;
+        for (int i = 0; i < count; i++)
+            largestCluster = Math.max(largestCluster, ++sizes[root(i)]);
+
+        clusterCount = clusters;
+        meanNeighbours = count > 0 ? (float) (2.0 * pairs / count) : 0;
+    }
+
+    /**
+     * Gets the number of groups found. A lone boid counts as a group of its own.
+     *
+     * @return The number of groups.
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Gets the number of boids in the largest group found.
+     *
+     * @return The size of the largest group, 0 for an empty flock.
+     */
+    public int getLargestCluster() {
+        return largestCluster;
+    }
+
+    /**
+     * Gets the average number of neighbours each boid has within the radius.
+     *
+     * @return The mean neighbour count.
+     */
+    public float getMeanNeighbours() {
+        return meanNeighbours;
+    }
+
+    private int root(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // Path halving
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private boolean union(int a, int b) {
+        int rootA = root(a);
+        int rootB = root(b);
+        if (rootA == rootB)
+            return false;
+        parent[rootA] = rootB;
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+package analytics;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import models.Flock;
+
+/**
+ * Measures a running flock in the background and publishes the results as a
+ * time series of {@link FlockSample}s. The simulation thread only copies the
+ * flock's state into a pooled snapshot; the order parameter, mean speed and
+ * clusters are worked out on a dedicated analytics thread while the next tick
+ * is already being simulated.
+ *
+ * Unlike a recording, analytics never hold the simulation up: when the
+ * analytics thread is still busy with earlier snapshots, the tick is skipped
+ * and counted in {@link #getDroppedCount()}.
+ *
+ * Samples are handed to every subscriber on the analytics thread, so
+ * subscribers should be quick, and are kept in a short history for anyone
+ * polling instead. {@link SampleWriter} streams them to a CSV file.
+ */
+public class FlockAnalytics implements Closeable {
+    private static final int QUEUE_CAPACITY = 2;
+    private static final int HISTORY_CAPACITY = 1024;
+
+    private final int interval;
+    private volatile float clusterRadius;
+
+    private final BlockingQueue<Snapshot> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Snapshot> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Snapshot endOfStream = new Snapshot();
+    private final Thread analyticsThread;
+
+    private final List<Consumer<FlockSample>> subscribers = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<FlockSample> history = new ArrayDeque<>();
+    private volatile FlockSample latest;
+    private volatile long droppedCount;
+    private boolean isClosed = false;
+
+    // Only touched by the analytics thread
+    private final ClusterFinder clusters = new ClusterFinder();
+
+    /**
+     * Starts the analytics thread.
+     *
+     * @param clusterRadius The distance within which two boids count as
+     *                      neighbours of the same cluster.
+     * @param interval      The number of ticks between samples, at least 1.
+     */
+    public FlockAnalytics(float clusterRadius, int interval) {
+        this.clusterRadius = clusterRadius;
+        this.interval = Math.max(1, interval);
+        for (int i = 0; i < QUEUE_CAPACITY; i++)
+            free.add(new Snapshot());
+
+        analyticsThread = new Thread(this::drain, "flock-analytics");
+        analyticsThread.setDaemon(true);
+        analyticsThread.start();
+    }
+
+    /**
+     * Hands the state of a flock to the analytics thread, if this tick is due a
+     * sample and a snapshot buffer is free. Called by the simulation thread after
+     * every tick; the flock is copied before this method returns.
+     *
+     * @param tick  The tick the flock has just reached.
+     * @param flock The flock.
+     * @return Whether the tick was queued for measuring.
+     */
+    public boolean offer(long tick, Flock flock) {
+        if (isClosed || tick % interval != 0)
+            return false;
+
+        Snapshot snapshot = free.poll();
+        if (snapshot == null) {
+            droppedCount++;
+            return false;
+        }
+
+        int count = flock.size();
+        if (snapshot.flock == null || snapshot.flock.size() != count || snapshot.flock.getWidth() != flock.getWidth()
+                || snapshot.flock.getHeight() != flock.getHeight())
+            snapshot.flock = new Flock(count, flock.getWidth(), flock.getHeight());
+
+        snapshot.tick = tick;
+        flock.copyTo(snapshot.flock);
+        pending.add(snapshot);
+        return true;
+    }
+
+    /**
+     * Registers a subscriber to be handed every new sample, on the analytics
+     * thread.
+     *
+     * @param subscriber The subscriber.
+     */
+    public void subscribe(Consumer<FlockSample> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<FlockSample> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Gets the most recent sample.
+     *
+     * @return The latest sample, or null if none has been taken yet.
+     */
+    public FlockSample getLatest() {
+        return latest;
+    }
+
+    /**
+     * Gets the most recent samples, oldest first.
+     *
+     * @return A copy of the history.
+     */
+    public List<FlockSample> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    /**
+     * Gets the number of ticks that were due a sample but skipped because the
+     * analytics thread was busy.
+     *
+     * @return The number of dropped samples.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public float getClusterRadius() {
+        return clusterRadius;
+    }
+
+    public void setClusterRadius(float clusterRadius) {
+        this.clusterRadius = clusterRadius;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Measures every queued snapshot and stops the analytics thread.
+     */
+    @Override
+    public void close() {
+        if (isClosed)
+            return;
+        isClosed = true;
+
+        try {
+            pending.put(endOfStream);
+            analyticsThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Snapshot snapshot = pending.take();
+                if (snapshot == endOfStream)
+                    return;
+
+                try {
+                    publish(measure(snapshot));
+                } finally {
+                    free.add(snapshot);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FlockSample measure(Snapshot snapshot) {
+        Flock flock = snapshot.flock;
+        clusters.find(flock, clusterRadius);
+        return new FlockSample(snapshot.tick, FlockMetrics.orderParameter(flock), FlockMetrics.meanSpeed(flock),
+                clusters.getClusterCount(), clusters.getLargestCluster(), clusters.getMeanNeighbours());
+    }
+
+    private void publish(FlockSample sample) {
+        latest = sample;
+        synchronized (history) {
+            if (history.size() == HISTORY_CAPACITY)
+                history.removeFirst();
+            history.addLast(sample);
+        }
+
+        for (Consumer<FlockSample> subscriber : subscribers) {
+            try {
+                subscriber.accept(sample);
+            } catch (RuntimeException e) {
+                // A failing subscriber must not stop the others or the thread
+                System.err.println("Analytics subscriber failed: " + e);
+            }
+        }
+    }
+
+    private static class Snapshot {
+        long tick;
+        Flock flock;
+    }
+}
@@ -0,0 +1,74 @@
+package analytics;
+
+import models.Flock;
+
+/**
+ * Summary measures of the state of a flock, used to compare runs without
+ * watching them.
+ */
+public final class FlockMetrics {
+    private FlockMetrics() {
+    }
+
+    /**
+     * Calculates the order parameter (polarisation) of a flock: the length of the
+     * average heading. It is 1 when every boid travels in the same direction and
+     * close to 0 when headings are random.
+     *
+     * @param flock The flock to measure.
+     * @return The order parameter in the range [0, 1].
+     */
+    public static float orderParameter(Flock flock) {
+        double headingX = 0;
+        double headingY = 0;
+        int moving = 0;
+        for (int i = 0; i < flock.size(); i++) {
+            float vx = flock.getVelocityX(i);
+            float vy = flock.getVelocityY(i);
+            double speed = Math.sqrt(vx * vx + vy * vy);
+            if (speed > 0) {
+                headingX += vx / speed;
+                headingY += vy / speed;
+                moving++;
+            }
+        }
+
+        if (moving == 0)
+            return 0;
+        return (float) (Math.sqrt(headingX * headingX + headingY * headingY) / moving);
+    }
+
+    /**
+     * Calculates the mean speed of the boids in a flock.
+     *
+     * @param flock The flock to measure.
+     * @return The mean speed, or 0 for an empty flock.
+     */
+    public static float meanSpeed(Flock flock) {
+        if (flock.size() == 0)
+            return 0;
+
+        double total = 0;
+        for (int i = 0; i < flock.size(); i++) {
+            float vx = flock.getVelocityX(i);
+            float vy = flock.getVelocityY(i);
+            total += Math.sqrt(vx * vx + vy * vy);
+        }
+        return (float) (total / flock.size());
+    }
+
+    /**
+     * Counts the groups of boids that are connected through chains of neighbours
+     * closer than the given radius. A lone boid counts as a group of its own.
+     *
+     * @param flock  The flock to measure.
+     * @param radius The distance within which two boids belong to the same group.
+     * @return The number of groups.
+     * @see ClusterFinder
+     */
+    public static int clusterCount(Flock flock, float radius) {
+        ClusterFinder finder = new ClusterFinder();
+        finder.find(flock, radius);
+        return finder.getClusterCount();
+    }
+}
@@ -0,0 +1,80 @@
+package analytics;
+
+/**
+ * The measures of a flock at one tick, as published by {@link FlockAnalytics}.
+ * Samples are immutable, so they can be handed to any number of subscribers
+ * and kept as a time series.
+ */
+public final class FlockSample {
+    /** Column names matching {@link #toCsv()}. */
+    public static final String CSV_HEADER = "tick,order_parameter,mean_speed,clusters,largest_cluster,mean_neighbours";
+
+    private final long tick;
+    private final float orderParameter;
+    private final float meanSpeed;
+    private final int clusterCount;
+    private final int largestCluster;
+    private final float meanNeighbours;
+
+    public FlockSample(long tick, float orderParameter, float meanSpeed, int clusterCount, int largestCluster,
+            float meanNeighbours) {
+        this.tick = tick;
+        this.orderParameter = orderParameter;
+        this.meanSpeed = meanSpeed;
+        this.clusterCount = clusterCount;
+        this.largestCluster = largestCluster;
+        this.meanNeighbours = meanNeighbours;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Gets the order parameter (polarisation) of the flock.
+     *
+     * @return The order parameter in the range [0, 1].
+     * @see FlockMetrics#orderParameter
+     */
+    public float getOrderParameter() {
+        return orderParameter;
+    }
+
+    public float getMeanSpeed() {
+        return meanSpeed;
+    }
+
+    /**
+     * Gets the number of separate groups the flock has split into, counting a
+     * lone boid as a group of its own.
+     *
+     * @return The number of groups.
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    public int getLargestCluster() {
+        return largestCluster;
+    }
+
+    public float getMeanNeighbours() {
+        return meanNeighbours;
+    }
+
+    /**
+     * Formats the sample as one line of CSV, without a line terminator.
+     *
+     * @return The sample as CSV, in the order of {@link #CSV_HEADER}.
+     */
+    public String toCsv() {
+        return tick + "," + orderParameter + "," + meanSpeed + "," + clusterCount + "," + largestCluster + ","
+                + meanNeighbours;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tick %d: order %.3f, speed %.2f, %d clusters (largest %d), %.1f neighbours", tick,
+                orderParameter, meanSpeed, clusterCount, largestCluster, meanNeighbours);
+    }
+}
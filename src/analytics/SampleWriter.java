@@ -0,0 +1,59 @@
+package analytics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Streams flock samples to a CSV file, one line per sample, in the format of
+ * {@link FlockSample#CSV_HEADER}. Subscribe it to a {@link FlockAnalytics} to
+ * record a run's measures as it goes. A failed write stops the stream and is
+ * reported when the writer is closed.
+ */
+public class SampleWriter implements Consumer<FlockSample>, Closeable {
+    private final BufferedWriter writer;
+    private IOException failure;
+
+    /**
+     * Creates the CSV file and writes its header.
+     *
+     * @param file The file to write, replaced if it already exists.
+     * @throws IOException If the file cannot be created.
+     */
+    public SampleWriter(Path file) throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        writer.write(FlockSample.CSV_HEADER);
+        writer.newLine();
+    }
+
+    @Override
+    public synchronized void accept(FlockSample sample) {
+        if (failure != null)
+            return;
+        try {
+            writer.write(sample.toCsv());
+            writer.newLine();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Flushes and closes the file.
+     *
+     * @throws IOException If any sample or the file itself failed to write.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            if (failure != null)
+                throw new IOException("Failed to write flock sample", failure);
+        }
+    }
+}
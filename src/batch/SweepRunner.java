@@ -0,0 +1,251 @@
+package batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import analytics.FlockMetrics;
+import behaviour.BoidBehaviour;
+import models.Flock;
+import models.Parameter;
+import simulation.FlockEngine;
+import util.RandomSource;
+
+/**
+ * Runs every combination of a {@link SweepSpec} as independent headless
+ * simulations and streams summary metrics to CSV. Each run gets its own
+ * {@link FlockEngine}, and so its own parameters, and runs single-threaded;
+ * throughput comes from running many of them at once on a bounded pool.
+ *
+ * Usage: {@code SweepRunner <spec> [--out results.csv] [--parallel n]}
+ */
+public class SweepRunner {
+    private final SweepSpec spec;
+    private final int parallelism;
+    private final Writer output;
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private volatile Throwable failure;
+
+    /**
+     * Constructs a runner for a sweep.
+     *
+     * @param spec        The sweep to run.
+     * @param parallelism The number of simulations to run at once.
+     * @param output      Where to write the CSV results.
+     * @throws IllegalArgumentException If the spec names an unknown parameter or
+     *                                  behaviour, or a value out of range.
+     */
+    public SweepRunner(SweepSpec spec, int parallelism, Writer output) {
+        this.spec = spec;
+        this.parallelism = Math.max(1, parallelism);
+        this.output = output;
+        validate();
+    }
+
+    /**
+     * Runs every simulation in the sweep and waits for them to finish.
+     *
+     * @throws IOException If the results could not be written or a run failed.
+     */
+    public void run() throws IOException {
+        writeHeader();
+
+        // A bounded queue with caller-runs keeps memory flat however many runs
+        // the sweep has: the submitting thread helps out when the pool is busy
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        int combinations = spec.getCombinationCount();
+        int replicates = spec.getReplicates();
+        RandomSource seeds = new RandomSource(spec.getSeed());
+        for (int combination = 0; combination < combinations && failure == null; combination++) {
+            for (int replicate = 0; replicate < replicates; replicate++) {
+                int runId = combination * replicates + replicate;
+                long seed = seeds.stream(runId).nextLong();
+                int c = combination;
+                int r = replicate;
+                executor.execute(() -> runSafely(runId, c, r, seed));
+            }
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running sweep", e);
+        }
+
+        output.flush();
+        if (failure != null)
+            throw new IOException("Sweep failed", failure);
+    }
+
+    public int getCompletedRuns() {
+        return completed.get();
+    }
+
+    private void runSafely(int runId, int combination, int replicate, long seed) {
+        if (failure != null)
+            return;
+        try {
+            runSimulation(runId, combination, replicate, seed);
+            completed.incrementAndGet();
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    private void runSimulation(int runId, int combination, int replicate, long seed) throws IOException {
+        float[] values = spec.getCombination(combination);
+        List<String> keys = spec.getSweptParameters();
+
+        try (FlockEngine engine = new FlockEngine(seed, 1, spec.getBoidCount(), spec.getWidth(),
+                spec.getHeight())) {
+            configure(engine);
+            for (int i = 0; i < keys.size(); i++)
+                findParameter(engine, keys.get(i)).setValue(values[i]);
+
+            StringBuilder prefix = new StringBuilder();
+            prefix.append(runId).append(',').append(replicate).append(',').append(seed);
+            for (float value : values)
+                prefix.append(',').append(value);
+
+            StringBuilder rows = new StringBuilder();
+            for (int tick = 1; tick <= spec.getTicks(); tick++) {
+                engine.step();
+                if (tick % spec.getSampleInterval() == 0 || tick == spec.getTicks()) {
+                    Flock flock = engine.getFlock();
+                    rows.append(prefix).append(',').append(tick)
+                            .append(',').append(format(FlockMetrics.orderParameter(flock)))
+                            .append(',').append(FlockMetrics.clusterCount(flock, spec.getClusterRadius()))
+                            .append(',').append(format(FlockMetrics.meanSpeed(flock)))
+                            .append('\n');
+                }
+            }
+            writeRows(rows);
+        }
+    }
+
+    private void configure(FlockEngine engine) {
+        for (String name : spec.getEnabledBehaviours())
+            engine.getBehaviours().get(name).setEnabled(true);
+        for (String name : spec.getDisabledBehaviours())
+            engine.getBehaviours().get(name).setEnabled(false);
+    }
+
+    private void validate() {
+        try (FlockEngine template = new FlockEngine(0, 1, 0, spec.getWidth(), spec.getHeight())) {
+            for (String name : spec.getEnabledBehaviours())
+                requireBehaviour(template, name);
+            for (String name : spec.getDisabledBehaviours())
+                requireBehaviour(template, name);
+
+            for (String key : spec.getSweptParameters()) {
+                Parameter parameter = findParameter(template, key);
+                if (parameter == null)
+                    throw new IllegalArgumentException("Unknown parameter " + key);
+            }
+
+            for (int combination = 0; combination < spec.getCombinationCount(); combination++) {
+                float[] values = spec.getCombination(combination);
+                for (int i = 0; i < values.length; i++) {
+                    Parameter parameter = findParameter(template, spec.getSweptParameters().get(i));
+                    if (values[i] < parameter.getMin() || values[i] > parameter.getMax())
+                        throw new IllegalArgumentException(spec.getSweptParameters().get(i) + " value " + values[i]
+                                + " is outside " + parameter.getMin() + " to " + parameter.getMax());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void requireBehaviour(FlockEngine engine, String name) {
+        BoidBehaviour behaviour = engine.getBehaviours().get(name);
+        if (behaviour == null)
+            throw new IllegalArgumentException("Unknown behaviour " + name);
+    }
+
+    private static Parameter findParameter(FlockEngine engine, String key) {
+        int dot = key.indexOf('.');
+        return engine.getParameter(key.substring(0, dot), key.substring(dot + 1));
+    }
+
+    private void writeHeader() throws IOException {
+        StringBuilder header = new StringBuilder("run,replicate,seed");
+        for (String key : spec.getSweptParameters())
+            header.append(',').append(quote(key));
+        header.append(",tick,order,clusters,mean_speed\n");
+        writeRows(header);
+    }
+
+    private void writeRows(CharSequence rows) throws IOException {
+        synchronized (output) {
+            output.append(rows);
+            output.flush();
+        }
+    }
+
+    private static String format(float value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Runs a sweep from the command line.
+     *
+     * @param args The spec file, optionally followed by {@code --out <file>} and
+     *             {@code --parallel <n>}.
+     */
+    public static void main(String[] args) {
+        Path specFile = null;
+        Path outFile = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--out") && i + 1 < args.length)
+                outFile = Paths.get(args[++i]);
+            else if (args[i].equals("--parallel") && i + 1 < args.length)
+                parallelism = Integer.parseInt(args[++i]);
+            else
+                specFile = Paths.get(args[i]);
+        }
+
+        if (specFile == null) {
+            System.err.println("Usage: SweepRunner <spec> [--out results.csv] [--parallel n]");
+            System.exit(1);
+        }
+
+        try (Writer output = outFile != null ? Files.newBufferedWriter(outFile, StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            SweepSpec spec = SweepSpec.read(specFile);
+            SweepRunner runner = new SweepRunner(spec, parallelism, output);
+
+            long start = System.nanoTime();
+            runner.run();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            System.err.println("Completed " + runner.getCompletedRuns() + " runs in " + elapsed + " ms");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes a parameter sweep: the flock to simulate, how long to run it and
+ * which parameter values to try. A sweep spec is a plain text file of
+ * {@code key = value} lines:
+ *
+ * <pre>
+ * boids = 500
+ * ticks = 2000
+ * sample = 100
+ * replicates = 3
+ * seed = 1
+ * enable = Avoidance, Alignment, Cohesion
+ * Avoidance.Range = 10:50:10
+ * Cohesion.Factor = 0.01, 0.02, 0.04
+ * </pre>
+ *
+ * Keys of the form {@code Group.Parameter} sweep a parameter, either over an
+ * inclusive {@code start:end:step} range or a comma separated list. Every
+ * combination of swept values is run {@code replicates} times with different
+ * seeds. Lines starting with {@code #} are ignored.
+ */
+public class SweepSpec {
+    private int boidCount = 100;
+    private float width = 800;
+    private float height = 600;
+    private int ticks = 1000;
+    private int sampleInterval = 100;
+    private int replicates = 1;
+    private long seed = 1;
+    private float clusterRadius = 50;
+    private final List<String> enabledBehaviours = new ArrayList<>();
+    private final List<String> disabledBehaviours = new ArrayList<>();
+    private final Map<String, float[]> sweeps = new LinkedHashMap<>();
+
+    /**
+     * Reads a sweep spec from a file.
+     *
+     * @param file The file to read.
+     * @return The parsed spec.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    public static SweepSpec read(Path file) throws IOException {
+        return parse(Files.readAllLines(file));
+    }
+
+    /**
+     * Parses a sweep spec from its lines.
+     *
+     * @param lines The lines of the spec.
+     * @return The parsed spec.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    public static SweepSpec parse(List<String> lines) {
+        SweepSpec spec = new SweepSpec();
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            int equals = line.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected key = value");
+
+            String key = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1).trim();
+            try {
+                spec.set(key, value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": invalid number in " + value, e);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return spec;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "boids":
+                boidCount = Integer.parseInt(value);
+                break;
+            case "width":
+                width = Float.parseFloat(value);
+                break;
+            case "height":
+                height = Float.parseFloat(value);
+                break;
+            case "ticks":
+                ticks = Integer.parseInt(value);
+                break;
+            case "sample":
+                sampleInterval = Math.max(1, Integer.parseInt(value));
+                break;
+            case "replicates":
+                replicates = Math.max(1, Integer.parseInt(value));
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "clusterRadius":
+                clusterRadius = Float.parseFloat(value);
+                break;
+            case "enable":
+                enabledBehaviours.addAll(splitList(value));
+                break;
+            case "disable":
+                disabledBehaviours.addAll(splitList(value));
+                break;
+            default:
+                if (key.indexOf('.') <= 0)
+                    throw new IllegalArgumentException("Unknown setting " + key);
+                sweeps.put(key, parseValues(value));
+        }
+    }
+
+    private static float[] parseValues(String value) {
+        String[] range = value.split(":");
+        if (range.length == 3) {
+            float start = Float.parseFloat(range[0].trim());
+            float end = Float.parseFloat(range[1].trim());
+            float step = Float.parseFloat(range[2].trim());
+            if (step <= 0 || end < start)
+                throw new IllegalArgumentException("Invalid range " + value);
+
+            // Count the steps up front so rounding errors cannot add or drop a value
+            int steps = (int) Math.floor((end - start) / step + 1e-4) + 1;
+            float[] values = new float[steps];
+            for (int i = 0; i < steps; i++)
+                values[i] = start + i * step;
+            return values;
+        }
+
+        List<String> items = splitList(value);
+        float[] values = new float[items.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = Float.parseFloat(items.get(i));
+        return values;
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty())
+                items.add(item.trim());
+        }
+        return items;
+    }
+
+    /**
+     * Gets the number of distinct parameter combinations in the sweep.
+     *
+     * @return The number of combinations, 1 if nothing is swept.
+     */
+    public int getCombinationCount() {
+        int combinations = 1;
+        for (float[] values : sweeps.values())
+            combinations = Math.multiplyExact(combinations, values.length);
+        return combinations;
+    }
+
+    /**
+     * Gets the parameter values of one combination, in the order of
+     * {@link #getSweptParameters()}. Combinations are numbered with the last
+     * parameter varying fastest.
+     *
+     * @param combination The index of the combination.
+     * @return The value of each swept parameter.
+     */
+    public float[] getCombination(int combination) {
+        float[] result = new float[sweeps.size()];
+        int remainder = combination;
+        List<float[]> values = new ArrayList<>(sweeps.values());
+        for (int i = values.size() - 1; i >= 0; i--) {
+            float[] options = values.get(i);
+            result[i] = options[remainder % options.length];
+            remainder /= options.length;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the keys of the swept parameters, each of the form
+     * {@code Group.Parameter}.
+     *
+     * @return The swept parameter keys.
+     */
+    public List<String> getSweptParameters() {
+        return Collections.unmodifiableList(new ArrayList<>(sweeps.keySet()));
+    }
+
+    public int getBoidCount() {
+        return boidCount;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public int getReplicates() {
+        return replicates;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public float getClusterRadius() {
+        return clusterRadius;
+    }
+
+    public List<String> getEnabledBehaviours() {
+        return Collections.unmodifiableList(enabledBehaviours);
+    }
+
+    public List<String> getDisabledBehaviours() {
+        return Collections.unmodifiableList(disabledBehaviours);
+    }
+}
@@ -1,22 +1,32 @@
 package behaviour;
 
-import java.util.List;
-
 import models.Boid;
+import models.Flock;
 import models.Parameter;
 import models.ParameterGroup;
-import util.Vector;
+import models.SpeciesTable;
+import spatial.Aggregate;
+import spatial.NeighbourList;
+import spatial.SpatialIndex;
 
 public class AlignmentBehaviour implements BoidBehaviour {
-    // All parameters are static so that they can be accessed from the ControlPanel
-    // All boids share the same parameters
-    private static boolean isEnabled;
-    private static boolean isDebugging;
-    private static Parameter rangeParam;
-    private static Parameter factorParam;
-    private static ParameterGroup parameters;
-
-    static {
+    // Parameters belong to this instance, so every simulation can be configured
+    // independently of any other running in the same JVM
+    private volatile boolean isEnabled;
+    private volatile boolean isDebugging;
+    private final Parameter rangeParam;
+    private final Parameter factorParam;
+    private final Parameter errorBoundParam;
+    // The least error bound used whatever the parameter says, raised to save
+    // time by the engine's fidelity governor
+    private volatile float minimumErrorBound = 0;
+    // The error bound in effect since the last prepare
+    private float errorBound = 0;
+    private final ParameterGroup parameters;
+    private final SpeciesTable species;
+
+    public AlignmentBehaviour(SpeciesTable species) {
+        this.species = species;
         parameters = new ParameterGroup("Alignment");
 
         // Initialize parameters and add them to the group
@@ -26,7 +36,7 @@ public class AlignmentBehaviour implements BoidBehaviour {
                 "Controls the perception range for alignment",
                 0.0f,
                 50.0f,
-                100.0f);
+                500.0f);
         parameters.addParameter(rangeParam);
 
         factorParam = new Parameter(
@@ -37,36 +47,66 @@ public class AlignmentBehaviour implements BoidBehaviour {
                 0.1f,
                 0.2f);
         parameters.addParameter(factorParam);
-    }
 
-    public AlignmentBehaviour() {
+        errorBoundParam = new Parameter(
+                "Approximation",
+                "Alignment Error Bound",
+                "Trades accuracy for speed at large ranges: 0 visits every neighbour, higher values treat more distant groups of boids as one",
+                0.0f,
+                0.0f,
+                1.0f);
+        parameters.addParameter(errorBoundParam);
     }
 
     /**
      * Method to apply the alignment behavior to the boid
      * 
      * @param boid  the boid to apply the behavior to
-     * @param boids the list of boids in the simulation
+     * @param flock the flock the boid belongs to
+     * @param index the spatial index of the flock's current state
+     * @param dt    the time the update covers, in reference ticks
      */
     @Override
-    public void applyBehavior(Boid boid, List<Boid> boids) {
-        if (!isEnabled)
-            return;
-
+    public void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt) {
         float xvelAvg = 0;
         float yvelAvg = 0;
-        int neighboringBoids = 0;
-
-        float range = rangeParam.getValue();
-        float factor = factorParam.getValue();
+        float neighboringBoids = 0;
+
+        int mySpecies = boid.getSpecies();
+        float range = species.getResolved(SpeciesTable.Property.ALIGNMENT_RANGE)[mySpecies];
+        float factor = species.getResolved(SpeciesTable.Property.ALIGNMENT_FACTOR)[mySpecies];
+        float errorBound = getEffectiveErrorBound();
+
+        // Neighbours count by the weight this boid's species gives theirs. Summing
+        // whole cells of boids up front cannot tell species apart, so it is only
+        // used when every species weighs the same to this one.
+        float[] weights = species.getResolvedWeights(SpeciesTable.Interaction.ALIGNMENT);
+        int weightRow = mySpecies * species.getResolvedCount();
+
+        // Either every nearby boid is a candidate, or whole cells of boids are
+        // summed up front and only those crossing the edge of the range remain
+        NeighbourList candidates = boid.getNeighbours();
+        if (errorBound > 0 && species.isResolvedUniform(SpeciesTable.Interaction.ALIGNMENT, mySpecies)) {
+            Aggregate sums = boid.getAggregate();
+            index.aggregate(boid.position.x, boid.position.y, range, errorBound, boid.getIndex(), sums, candidates);
+            xvelAvg = sums.sumVelocityX;
+            yvelAvg = sums.sumVelocityY;
+            neighboringBoids = sums.count;
+        } else {
+            index.query(boid.position.x, boid.position.y, range, candidates);
+        }
 
-        for (Boid otherBoid : boids) {
-            if (boid != otherBoid) {
-                float distance = Vector.dist(boid.position, otherBoid.position);
+        for (int k = 0; k < candidates.size(); k++) {
+            int otherBoid = candidates.get(k);
+            if (boid.getIndex() != otherBoid) {
+                float dx = flock.getX(otherBoid) - boid.position.x;
+                float dy = flock.getY(otherBoid) - boid.position.y;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
                 if (distance < range) {
-                    xvelAvg += otherBoid.velocity.x;
-                    yvelAvg += otherBoid.velocity.y;
-                    neighboringBoids++;
+                    float weight = weights[weightRow + flock.getSpecies(otherBoid)];
+                    xvelAvg += flock.getVelocityX(otherBoid) * weight;
+                    yvelAvg += flock.getVelocityY(otherBoid) * weight;
+                    neighboringBoids += weight;
                 }
             }
         }
@@ -76,24 +116,29 @@ public class AlignmentBehaviour implements BoidBehaviour {
             yvelAvg /= neighboringBoids;
 
             // Adjust the boid's velocity towards the average velocity of its neighbors
-            boid.velocity.x += (xvelAvg - boid.velocity.x) * factor;
-            boid.velocity.y += (yvelAvg - boid.velocity.y) * factor;
+            float rate = factor * dt;
+            boid.velocity.x += (xvelAvg - boid.velocity.x) * rate;
+            boid.velocity.y += (yvelAvg - boid.velocity.y) * rate;
         }
     }
 
-    public static boolean isEnabled() {
+    @Override
+    public boolean isEnabled() {
         return isEnabled;
     }
 
-    public static void setEnabled(boolean enabled) {
+    @Override
+    public void setEnabled(boolean enabled) {
         isEnabled = enabled;
     }
 
-    public static boolean isDebugging() {
+    @Override
+    public boolean isDebugging() {
         return isDebugging;
     }
 
-    public static void setDebugging(boolean debugging) {
+    @Override
+    public void setDebugging(boolean debugging) {
         isDebugging = debugging;
     }
 
@@ -102,23 +147,80 @@ public class AlignmentBehaviour implements BoidBehaviour {
      * 
      * @return the alignment parameters
      */
-    public static ParameterGroup getParameters() {
+    @Override
+    public ParameterGroup getParameters() {
         return parameters;
     }
 
-    public static void setFactor(float factor) {
+    /**
+     * Gets the largest alignment range of any species, as of the last
+     * {@link BehaviourSet#prepare()}.
+     */
+    @Override
+    public float getPerceptionRange() {
+        return species.getResolvedMax(SpeciesTable.Property.ALIGNMENT_RANGE);
+    }
+
+    /**
+     * Gets whether whole cells of neighbours are summed at once, which they
+     * are whenever the error bound in use is above 0.
+     */
+    @Override
+    public boolean isAggregating() {
+        return getEffectiveErrorBound() > 0;
+    }
+
+    public void setFactor(float factor) {
         factorParam.setValue(factor);
     }
 
-    public static float getFactor() {
+    public float getFactor() {
         return factorParam.getValue();
     }
 
-    public static void setRange(float range) {
+    public void setRange(float range) {
         rangeParam.setValue(range);
     }
 
-    public static float getRange() {
+    public float getRange() {
         return rangeParam.getValue();
     }
+
+    public void setErrorBound(float errorBound) {
+        errorBoundParam.setValue(errorBound);
+    }
+
+    public float getErrorBound() {
+        return errorBoundParam.getValue();
+    }
+
+    /**
+     * Sets the least error bound to use, whatever the Error Bound parameter
+     * says, without changing the parameter itself.
+     *
+     * @param minimumErrorBound The least error bound, 0 to follow the
+     *                          parameter.
+     */
+    public void setMinimumErrorBound(float minimumErrorBound) {
+        this.minimumErrorBound = minimumErrorBound;
+    }
+
+    /**
+     * Takes the error bound for the coming tick, so that every boid and
+     * {@link #isAggregating()} agree on it even if the parameter changes
+     * meanwhile. Called by {@link BehaviourSet#prepare()}.
+     */
+    void prepare() {
+        errorBound = Math.max(errorBoundParam.getValue(), minimumErrorBound);
+    }
+
+    /**
+     * Gets the error bound in use, as of the last prepare: the parameter's, or
+     * the minimum if that is larger.
+     *
+     * @return The error bound.
+     */
+    public float getEffectiveErrorBound() {
+        return errorBound;
+    }
 }
@@ -1,21 +1,25 @@
 package behaviour;
 
-import java.util.List;
-
 import models.Boid;
+import models.Flock;
 import models.Parameter;
 import models.ParameterGroup;
+import models.SpeciesTable;
+import spatial.NeighbourList;
+import spatial.SpatialIndex;
 import util.Vector;
 
 public class AvoidanceBehaviour implements BoidBehaviour {
-    private static boolean isEnabled;
-    private static boolean isDebugging;
-    private static Parameter factorParam;
-    private static Parameter rangeParam;
-    private static Parameter fovParam;
-    private static ParameterGroup parameters;
-
-    static {
+    private volatile boolean isEnabled;
+    private volatile boolean isDebugging;
+    private final Parameter factorParam;
+    private final Parameter rangeParam;
+    private final Parameter fovParam;
+    private final ParameterGroup parameters;
+    private final SpeciesTable species;
+
+    public AvoidanceBehaviour(SpeciesTable species) {
+        this.species = species;
         parameters = new ParameterGroup("Avoidance");
 
         rangeParam = new Parameter(
@@ -46,31 +50,38 @@ public class AvoidanceBehaviour implements BoidBehaviour {
         parameters.addParameter(fovParam);
     }
 
-    public AvoidanceBehaviour() {
-    }
-
     /**
      * Method to apply the alignment behavior to the boid
      * 
      * @param boid  the boid to apply the behavior to
-     * @param boids the list of boids in the simulation
+     * @param flock the flock the boid belongs to
+     * @param index the spatial index of the flock's current state
+     * @param dt    the time the update covers, in reference ticks
      */
     @Override
-    public void applyBehavior(Boid boid, List<Boid> boids) {
-        if (!isEnabled)
-            return;
-
-        float factor = factorParam.getValue();
-        float range = rangeParam.getValue();
-        float fovRad = (float) Math.toRadians(fovParam.getValue());
+    public void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt) {
+        // This boid's species decides its range, factor and field of view, and
+        // how strongly it avoids each species of neighbour
+        int mySpecies = boid.getSpecies();
+        float factor = species.getResolved(SpeciesTable.Property.AVOIDANCE_FACTOR)[mySpecies];
+        float range = species.getResolved(SpeciesTable.Property.AVOIDANCE_RANGE)[mySpecies];
+        float fovRad = (float) Math.toRadians(species.getResolved(SpeciesTable.Property.AVOIDANCE_FOV)[mySpecies]);
+        float[] weights = species.getResolvedWeights(SpeciesTable.Interaction.AVOIDANCE);
+        int weightRow = mySpecies * species.getResolvedCount();
 
         Vector steer = new Vector(0, 0); // Initialize a vector for the steering force
 
         Vector boidVelocityNormalized = new Vector(boid.velocity.x, boid.velocity.y).normalize();
 
-        for (Boid otherBoid : boids) {
-            if (boid != otherBoid) {
-                Vector toOtherBoid = Vector.sub(otherBoid.position, boid.position);
+        NeighbourList candidates = boid.getNeighbours();
+        index.query(boid.position.x, boid.position.y, range, candidates);
+
+        for (int k = 0; k < candidates.size(); k++) {
+            int otherBoid = candidates.get(k);
+            float weight = weights[weightRow + flock.getSpecies(otherBoid)];
+            if (boid.getIndex() != otherBoid && weight != 0) {
+                Vector toOtherBoid = new Vector(flock.getX(otherBoid) - boid.position.x,
+                        flock.getY(otherBoid) - boid.position.y);
                 float distance = toOtherBoid.magnitude();
 
                 if (distance < range) {
@@ -82,15 +93,15 @@ public class AvoidanceBehaviour implements BoidBehaviour {
                         // The scaling factor ensures that the closer the boids are, the stronger the
                         // steering force
                         Vector avoidanceForce = toOtherBoid.normalize().multiply(-1).divide(distance)
-                                .multiply(range).multiply(factor);
+                                .multiply(range).multiply(factor).multiply(weight);
                         steer.add(avoidanceForce);
                     }
                 }
             }
         }
 
-        // Apply the steering force to the boid's velocity
-        boid.velocity.add(steer);
+        // Apply the steering force to the boid's velocity over the time step
+        boid.velocity.add(steer.multiply(dt));
     }
 
     /**
@@ -98,47 +109,61 @@ public class AvoidanceBehaviour implements BoidBehaviour {
      * 
      * @return the alignment parameters
      */
-    public static ParameterGroup getParameters() {
+    @Override
+    public ParameterGroup getParameters() {
         return parameters;
     }
 
-    public static boolean isEnabled() {
+    /**
+     * Gets the largest avoidance range of any species, as of the last
+     * {@link BehaviourSet#prepare()}.
+     */
+    @Override
+    public float getPerceptionRange() {
+        return species.getResolvedMax(SpeciesTable.Property.AVOIDANCE_RANGE);
+    }
+
+    @Override
+    public boolean isEnabled() {
         return isEnabled;
     }
 
-    public static void setEnabled(boolean enabled) {
+    @Override
+    public void setEnabled(boolean enabled) {
         isEnabled = enabled;
     }
 
-    public static boolean isDebugging() {
+    @Override
+    public boolean isDebugging() {
         return isDebugging;
     }
 
-    public static void setDebugging(boolean debugging) {
+    @Override
+    public void setDebugging(boolean debugging) {
         isDebugging = debugging;
     }
 
-    public static void setFactor(float factor) {
-        AvoidanceBehaviour.factorParam.setValue(factor);
+    public void setFactor(float factor) {
+        factorParam.setValue(factor);
     }
 
-    public static float getFactor() {
-        return AvoidanceBehaviour.factorParam.getValue();
+    public float getFactor() {
+        return factorParam.getValue();
     }
 
-    public static void setRange(float range) {
-        AvoidanceBehaviour.rangeParam.setValue(range);
+    public void setRange(float range) {
+        rangeParam.setValue(range);
     }
 
-    public static float getRange() {
-        return AvoidanceBehaviour.rangeParam.getValue();
+    public float getRange() {
+        return rangeParam.getValue();
     }
 
-    public static void setFOV(float fov) {
-        AvoidanceBehaviour.fovParam.setValue(fov);
+    public void setFOV(float fov) {
+        fovParam.setValue(fov);
     }
 
-    public static float getFOV() {
-        return AvoidanceBehaviour.fovParam.getValue();
+    public float getFOV() {
+        return fovParam.getValue();
     }
 }
@@ -0,0 +1,144 @@
+package behaviour;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import models.Boid;
+import models.Flock;
+import spatial.SpatialIndex;
+
+/**
+ * The enabled behaviours of a simulation, in the order a boid's update runs
+ * them. Disabled behaviours are left out altogether rather than called and
+ * skipped, so turning one off removes its cost. A pipeline never changes; a
+ * {@link BehaviourSet} compiles a new one when a behaviour is turned on or off,
+ * and keeps it for the whole tick.
+ */
+public final class BehaviourPipeline {
+    private final BoidBehaviour[] steering;
+    private final BoidBehaviour[] constraints;
+    // The index of each behaviour above in its BehaviourSet
+    private final int[] steeringIds;
+    private final int[] constraintIds;
+
+    /**
+     * Compiles the pipeline of the behaviours enabled now.
+     *
+     * @param behaviours The behaviours of a simulation, in registry order.
+     * @param providers  The provider of each behaviour.
+     */
+    BehaviourPipeline(List<BoidBehaviour> behaviours, List<BehaviourProvider> providers) {
+        List<Integer> enabledSteering = new ArrayList<>();
+        List<Integer> enabledConstraints = new ArrayList<>();
+        for (int i = 0; i < behaviours.size(); i++) {
+            if (!behaviours.get(i).isEnabled())
+                continue;
+            if (providers.get(i).getStage() == BehaviourProvider.Stage.STEERING)
+                enabledSteering.add(i);
+            else
+                enabledConstraints.add(i);
+        }
+        steeringIds = enabledSteering.stream().mapToInt(Integer::intValue).toArray();
+        constraintIds = enabledConstraints.stream().mapToInt(Integer::intValue).toArray();
+        steering = select(behaviours, steeringIds);
+        constraints = select(behaviours, constraintIds);
+    }
+
+    private static BoidBehaviour[] select(List<BoidBehaviour> behaviours, int[] ids) {
+        BoidBehaviour[] selected = new BoidBehaviour[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            selected[i] = behaviours.get(ids[i]);
+        return selected;
+    }
+
+    /**
+     * Runs every enabled steering behaviour on a boid, before it moves.
+     */
+    public void steer(Boid boid, Flock flock, SpatialIndex index, float dt) {
+        for (BoidBehaviour behaviour : steering)
+            behaviour.applyBehavior(boid, flock, index, dt);
+    }
+
+    /**
+     * Runs every enabled constraint on a boid, after it moves.
+     */
+    public void constrain(Boid boid, Flock flock, SpatialIndex index, float dt) {
+        for (BoidBehaviour behaviour : constraints)
+            behaviour.applyBehavior(boid, flock, index, dt);
+    }
+
+    /**
+     * Runs every enabled steering behaviour on a boid, like
+     * {@link #steer(Boid, Flock, SpatialIndex, float)}, and adds the time each
+     * one takes to its total.
+     *
+     * @param nanos The time taken so far by each behaviour, by its index in the
+     *              {@link BehaviourSet}.
+     */
+    public void steer(Boid boid, Flock flock, SpatialIndex index, float dt, long[] nanos) {
+        run(steering, steeringIds, boid, flock, index, dt, nanos);
+    }
+
+    /**
+     * Runs every enabled constraint on a boid, like
+     * {@link #constrain(Boid, Flock, SpatialIndex, float)}, and adds the time
+     * each one takes to its total.
+     *
+     * @param nanos The time taken so far by each behaviour, by its index in the
+     *              {@link BehaviourSet}.
+     */
+    public void constrain(Boid boid, Flock flock, SpatialIndex index, float dt, long[] nanos) {
+        run(constraints, constraintIds, boid, flock, index, dt, nanos);
+    }
+
+    private static void run(BoidBehaviour[] behaviours, int[] ids, Boid boid, Flock flock, SpatialIndex index,
+            float dt, long[] nanos) {
+        long start = System.nanoTime();
+        for (int i = 0; i < behaviours.length; i++) {
+            behaviours[i].applyBehavior(boid, flock, index, dt);
+            long end = System.nanoTime();
+            nanos[ids[i]] += end - start;
+            start = end;
+        }
+    }
+
+    /**
+     * Gets the largest perception range of the enabled behaviours.
+     *
+     * @return The largest range, or 0 if none looks at neighbours.
+     */
+    public float getPerceptionRange() {
+        float range = 0;
+        for (BoidBehaviour behaviour : steering)
+            range = Math.max(range, behaviour.getPerceptionRange());
+        for (BoidBehaviour behaviour : constraints)
+            range = Math.max(range, behaviour.getPerceptionRange());
+        return range;
+    }
+
+    /**
+     * Gets whether any enabled behaviour sums whole cells of neighbours.
+     *
+     * @return Whether any enabled behaviour aggregates.
+     */
+    public boolean isAggregating() {
+        for (BoidBehaviour behaviour : steering) {
+            if (behaviour.isAggregating())
+                return true;
+        }
+        for (BoidBehaviour behaviour : constraints) {
+            if (behaviour.isAggregating())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of behaviours a boid's update runs.
+     *
+     * @return The number of enabled behaviours.
+     */
+    public int size() {
+        return steering.length + constraints.length;
+    }
+}
@@ -0,0 +1,48 @@
+package behaviour;
+
+import models.SpeciesTable;
+
+/**
+ * Makes a behaviour available to every simulation. Providers are found by
+ * {@link BehaviourRegistry}, either built in or through
+ * {@link java.util.ServiceLoader}: a jar adds behaviours by listing its
+ * providers in {@code META-INF/services/behaviour.BehaviourProvider}. Each
+ * simulation gets its own behaviour from every provider.
+ */
+public interface BehaviourProvider {
+    /** When in a boid's update a behaviour runs. */
+    enum Stage {
+        /** Before the boid moves, steering it by changing its velocity. */
+        STEERING,
+        /** After the boid moves, correcting its velocity or position. */
+        CONSTRAINT
+    }
+
+    /**
+     * Gets the name the behaviour is known by in the control panel,
+     * checkpoints and sweep specs. Names must be unique.
+     *
+     * @return The name of the behaviour.
+     */
+    String getName();
+
+    /**
+     * Gets where the behaviour runs relative to others in the same stage;
+     * lower runs first. The built-in behaviours are spaced 100 apart, so others
+     * can run between them.
+     *
+     * @return The position of the behaviour.
+     */
+    int getOrder();
+
+    Stage getStage();
+
+    /**
+     * Creates the behaviour for one simulation.
+     *
+     * @param species The simulation's species table, for behaviours that look
+     *                up values per species.
+     * @return A new behaviour.
+     */
+    BoidBehaviour create(SpeciesTable species);
+}
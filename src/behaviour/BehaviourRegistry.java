@@ -0,0 +1,111 @@
+package behaviour;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.Function;
+
+import models.SpeciesTable;
+
+/**
+ * Every behaviour a simulation can run: the built-in ones, followed by any
+ * found through {@link ServiceLoader} on the class path. The registry is read
+ * once, and every {@link BehaviourSet} creates one behaviour per provider, so
+ * the control panel, checkpoints and pipeline all see the same behaviours in
+ * the same order: steering behaviours first, then constraints, each by their
+ * order.
+ *
+ * The built-in behaviours are registered here rather than in a service file,
+ * so they are present however the classes were compiled and packaged. A
+ * discovered provider with the name of one already registered is ignored.
+ */
+public final class BehaviourRegistry {
+    private static final List<BehaviourProvider> PROVIDERS = load();
+
+    private BehaviourRegistry() {
+    }
+
+    /**
+     * Gets every registered provider, steering behaviours first, then
+     * constraints, each in order.
+     *
+     * @return The providers, which cannot be modified.
+     */
+    public static List<BehaviourProvider> getProviders() {
+        return PROVIDERS;
+    }
+
+    private static List<BehaviourProvider> load() {
+        List<BehaviourProvider> providers = new ArrayList<>();
+        providers.add(new BuiltIn("Avoidance", 100, BehaviourProvider.Stage.STEERING, AvoidanceBehaviour::new));
+        providers.add(new BuiltIn("Alignment", 200, BehaviourProvider.Stage.STEERING, AlignmentBehaviour::new));
+        providers.add(new BuiltIn("Cohesion", 300, BehaviourProvider.Stage.STEERING, CohesionBehaviour::new));
+        providers.add(new BuiltIn("Bias", 400, BehaviourProvider.Stage.STEERING, species -> new BiasBehaviour()));
+        providers.add(new BuiltIn("Environment", 500, BehaviourProvider.Stage.STEERING,
+                species -> new EnvironmentBehaviour()));
+        providers.add(new BuiltIn("Speed Limiter", 100, BehaviourProvider.Stage.CONSTRAINT,
+                species -> new SpeedLimiterBehaviour()));
+        providers.add(new BuiltIn("Wrap", 200, BehaviourProvider.Stage.CONSTRAINT, species -> new WrapBehaviour()));
+
+        try {
+            for (BehaviourProvider provider : ServiceLoader.load(BehaviourProvider.class)) {
+                if (find(providers, provider.getName()) == null)
+                    providers.add(provider);
+                else
+                    System.err.println("Ignoring a second behaviour named " + provider.getName());
+            }
+        } catch (ServiceConfigurationError e) {
+            System.err.println("Could not load behaviour providers: " + e.getMessage());
+        }
+
+        // Stable, so behaviours with the same order keep the order they were found in
+        providers.sort(Comparator.comparing(BehaviourProvider::getStage)
+                .thenComparingInt(BehaviourProvider::getOrder));
+        return Collections.unmodifiableList(providers);
+    }
+
+    private static BehaviourProvider find(List<BehaviourProvider> providers, String name) {
+        for (BehaviourProvider provider : providers) {
+            if (provider.getName().equals(name))
+                return provider;
+        }
+        return null;
+    }
+
+    private static final class BuiltIn implements BehaviourProvider {
+        private final String name;
+        private final int order;
+        private final Stage stage;
+        private final Function<SpeciesTable, BoidBehaviour> factory;
+
+        BuiltIn(String name, int order, Stage stage, Function<SpeciesTable, BoidBehaviour> factory) {
+            this.name = name;
+            this.order = order;
+            this.stage = stage;
+            this.factory = factory;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+
+        @Override
+        public Stage getStage() {
+            return stage;
+        }
+
+        @Override
+        public BoidBehaviour create(SpeciesTable species) {
+            return factory.apply(species);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package behaviour;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import models.ParameterGroup;
+import models.SpeciesTable;
+
+/**
+ * The behaviours of one simulation, one from every provider in the
+ * {@link BehaviourRegistry}. Each behaviour owns its own parameters and flags,
+ * so every simulation holding a BehaviourSet can be configured without
+ * affecting any other simulation in the same JVM. The behaviours that look at
+ * neighbours also share the simulation's {@link SpeciesTable}, which overrides
+ * their parameters per species.
+ *
+ * Boids are updated through a {@link BehaviourPipeline} of only the enabled
+ * behaviours, compiled again by {@link #prepare()} whenever one has been turned
+ * on or off.
+ */
+public class BehaviourSet {
+    private final SpeciesTable species = new SpeciesTable();
+    private final List<BehaviourProvider> providers = BehaviourRegistry.getProviders();
+    private final List<BoidBehaviour> behaviours = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final AvoidanceBehaviour avoidance;
+    private final AlignmentBehaviour alignment;
+    private final CohesionBehaviour cohesion;
+    private final BiasBehaviour bias;
+    private final EnvironmentBehaviour environment;
+    private final SpeedLimiterBehaviour speedLimiter;
+    private final WrapBehaviour wrap;
+    private final TimeStep timeStep = new TimeStep();
+
+    // The pipeline in use, and the enabled flags it was compiled from
+    private BehaviourPipeline pipeline;
+    private final boolean[] compiledFlags;
+
+    public BehaviourSet() {
+        for (BehaviourProvider provider : providers) {
+            behaviours.add(provider.create(species));
+            names.add(provider.getName());
+        }
+        avoidance = (AvoidanceBehaviour) get("Avoidance");
+        alignment = (AlignmentBehaviour) get("Alignment");
+        cohesion = (CohesionBehaviour) get("Cohesion");
+        bias = (BiasBehaviour) get("Bias");
+        environment = (EnvironmentBehaviour) get("Environment");
+        speedLimiter = (SpeedLimiterBehaviour) get("Speed Limiter");
+        wrap = (WrapBehaviour) get("Wrap");
+
+        compiledFlags = new boolean[behaviours.size()];
+        prepare();
+    }
+
+    public AvoidanceBehaviour getAvoidance() {
+        return avoidance;
+    }
+
+    public AlignmentBehaviour getAlignment() {
+        return alignment;
+    }
+
+    public CohesionBehaviour getCohesion() {
+        return cohesion;
+    }
+
+    public BiasBehaviour getBias() {
+        return bias;
+    }
+
+    public EnvironmentBehaviour getEnvironment() {
+        return environment;
+    }
+
+    public SpeedLimiterBehaviour getSpeedLimiter() {
+        return speedLimiter;
+    }
+
+    public WrapBehaviour getWrap() {
+        return wrap;
+    }
+
+    public SpeciesTable getSpecies() {
+        return species;
+    }
+
+    public TimeStep getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * Readies the behaviours for the coming tick, resolving the species table
+     * against the current parameter values, fixing the time step, the bias
+     * target, the speed limits and the error bounds, and compiling the pipeline
+     * again if a behaviour has been turned on or off. Must be called before
+     * every tick, from the thread driving the simulation.
+     */
+    public void prepare() {
+        timeStep.prepare();
+        bias.prepare();
+        speedLimiter.prepare();
+        cohesion.prepare();
+        alignment.prepare();
+        compilePipeline();
+
+        float[] defaults = new float[SpeciesTable.Property.values().length];
+        defaults[SpeciesTable.Property.AVOIDANCE_RANGE.ordinal()] = avoidance.getRange();
+        defaults[SpeciesTable.Property.AVOIDANCE_FACTOR.ordinal()] = avoidance.getFactor();
+        defaults[SpeciesTable.Property.AVOIDANCE_FOV.ordinal()] = avoidance.getFOV();
+        defaults[SpeciesTable.Property.ALIGNMENT_RANGE.ordinal()] = alignment.getRange();
+        defaults[SpeciesTable.Property.ALIGNMENT_FACTOR.ordinal()] = alignment.getFactor();
+        defaults[SpeciesTable.Property.COHESION_RANGE.ordinal()] = cohesion.getRange();
+        defaults[SpeciesTable.Property.COHESION_FACTOR.ordinal()] = cohesion.getFactor();
+        species.resolve(defaults);
+    }
+
+    private void compilePipeline() {
+        boolean isChanged = pipeline == null;
+        for (int i = 0; i < compiledFlags.length; i++) {
+            boolean isEnabled = behaviours.get(i).isEnabled();
+            isChanged |= isEnabled != compiledFlags[i];
+            compiledFlags[i] = isEnabled;
+        }
+        if (isChanged)
+            pipeline = new BehaviourPipeline(behaviours, providers);
+    }
+
+    /**
+     * Gets the enabled behaviours in the order a boid's update runs them, as of
+     * the last {@link #prepare()}.
+     *
+     * @return The pipeline.
+     */
+    public BehaviourPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Gets the largest perception range any species uses in an enabled
+     * behaviour that looks at neighbours, as of the last {@link #prepare()}.
+     *
+     * @return The largest perception range.
+     */
+    public float getPerceptionRange() {
+        return pipeline.getPerceptionRange();
+    }
+
+    /**
+     * Gets whether any enabled behaviour, such as cohesion or alignment with an
+     * error bound above 0, sums whole groups of neighbours at once.
+     *
+     * @return Whether an enabled behaviour aggregates.
+     */
+    public boolean isAggregating() {
+        return pipeline.isAggregating();
+    }
+
+    /**
+     * Sets the least error bound cohesion and alignment use, whatever their
+     * Error Bound parameters say, so that they sum distant neighbours a cell at
+     * a time. Takes effect from the next {@link #prepare()}.
+     *
+     * @param minimumErrorBound The least error bound, 0 to follow the
+     *                          parameters.
+     */
+    public void setMinimumErrorBound(float minimumErrorBound) {
+        cohesion.setMinimumErrorBound(minimumErrorBound);
+        alignment.setMinimumErrorBound(minimumErrorBound);
+    }
+
+    /**
+     * Chooses the grid cell size for the coming tick from the perception ranges
+     * in use by any species. Cells as large as the largest range keep exact
+     * queries to a few cells; when cohesion or alignment aggregate their
+     * neighbours, finer cells let more of a large range be summed a cell at a
+     * time.
+     *
+     * @return The cell size.
+     */
+    public float getNeighbourCellSize() {
+        float range = getPerceptionRange();
+        return isAggregating() ? range / 4 : range;
+    }
+
+    /**
+     * Finds a behaviour by its name.
+     *
+     * @param name The name of the behaviour, one of {@link #getNames()}.
+     * @return The behaviour, or null if there is no behaviour with that name.
+     */
+    public BoidBehaviour get(String name) {
+        int i = names.indexOf(name);
+        return i >= 0 ? behaviours.get(i) : null;
+    }
+
+    /**
+     * Gets the names of every behaviour, in registry order. These are the
+     * names used in the control panel, checkpoints and sweep specs.
+     *
+     * @return The names, which cannot be modified.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Gets the parameter groups of every behaviour that has parameters, in
+     * registry order, followed by the time step's.
+     *
+     * @return The parameter groups.
+     */
+    public List<ParameterGroup> getParameterGroups() {
+        List<ParameterGroup> parameterGroups = new ArrayList<>();
+        for (BoidBehaviour behaviour : behaviours) {
+            if (behaviour.getParameters() != null)
+                parameterGroups.add(behaviour.getParameters());
+        }
+        parameterGroups.add(timeStep.getParameters());
+        return parameterGroups;
+    }
+}
@@ -1,28 +1,34 @@
 package behaviour;
 
-import java.util.List;
-
 import models.Boid;
+import models.Flock;
 import models.Parameter;
 import models.ParameterGroup;
+import spatial.SpatialIndex;
 
 public class BiasBehaviour implements BoidBehaviour {
-    private static boolean isEnabled;
-    private static boolean isDebugging;
-    private static Parameter percentageParam;
-    private static Parameter positionXParam;
-    private static Parameter positionYParam;
-    private static Parameter strengthParam;
-    private static Parameter radiusParam;
-    private static ParameterGroup parameters;
-
-    static {
+    private volatile boolean isEnabled;
+    private volatile boolean isDebugging;
+    private final Parameter percentageParam;
+    private final Parameter positionXParam;
+    private final Parameter positionYParam;
+    private final Parameter strengthParam;
+    private final Parameter radiusParam;
+    private final ParameterGroup parameters;
+
+    // The values in effect since the last prepare
+    private float strength;
+    private float positionX;
+    private float positionY;
+    private float radius;
+
+    public BiasBehaviour() {
         parameters = new ParameterGroup("Bias");
 
         // Initialize parameters and add them to the group
         percentageParam = new Parameter(
                 "Bias",
-                "Position X",
+                "Percentage",
                 "Controls the percentage of boids the bias applies to",
                 0.0f,
                 50.0f,
@@ -66,23 +72,38 @@ public class BiasBehaviour implements BoidBehaviour {
         parameters.addParameter(radiusParam);
 
         isEnabled = true;
+        prepare();
+    }
+
+    /**
+     * Takes the current parameter values for the coming tick, so that every
+     * boid is steered towards the same target even if the parameters change
+     * meanwhile. Called by {@link BehaviourSet#prepare()}.
+     */
+    void prepare() {
+        strength = strengthParam.getValue();
+        positionX = positionXParam.getValue();
+        positionY = positionYParam.getValue();
+        radius = radiusParam.getValue();
     }
 
     /**
-     * Method to apply the alignment behavior to the boid
+     * Method to steer a biased boid towards the target area. Which boids are
+     * biased is kept by the flock, in line with the percentage parameter, and
+     * is checked with a single bit test.
      * 
      * @param boid  the boid to apply the behavior to
-     * @param boids the list of boids in the simulation
+     * @param flock the flock the boid belongs to
+     * @param index the spatial index of the flock's current state
+     * @param dt    the time the update covers, in reference ticks
      */
     @Override
-    public void applyBehavior(Boid boid, List<Boid> boids) {
-        if (!isEnabled || !boid.isBiased())
+    public void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt) {
+        if (!boid.isBiased())
             return;
 
-        float strength = strengthParam.getValue();
-        float targetPosX = positionXParam.getValue() * boid.screenSize.x;
-        float targetPosY = positionYParam.getValue() * boid.screenSize.y;
-        float radius = radiusParam.getValue();
+        float targetPosX = positionX * boid.screenSize.x;
+        float targetPosY = positionY * boid.screenSize.y;
 
         // Calculate the vector from the boid to the target position
         float vectorToTargetX = targetPosX - boid.position.x;
@@ -97,8 +118,8 @@ public class BiasBehaviour implements BoidBehaviour {
             vectorToTargetY /= distanceToTarget;
 
             // Apply the bias by adjusting the boid's velocity towards the target area
-            boid.velocity.x += vectorToTargetX * strength / boid.velocity.magnitude();
-            boid.velocity.y += vectorToTargetY * strength / boid.velocity.magnitude();
+            boid.velocity.x += vectorToTargetX * (strength * dt) / boid.velocity.magnitude();
+            boid.velocity.y += vectorToTargetY * (strength * dt) / boid.velocity.magnitude();
         }
     }
 
@@ -107,63 +128,68 @@ public class BiasBehaviour implements BoidBehaviour {
      * 
      * @return the alignment parameters
      */
-    public static ParameterGroup getParameters() {
+    @Override
+    public ParameterGroup getParameters() {
         return parameters;
     }
 
-    public static boolean isEnabled() {
+    @Override
+    public boolean isEnabled() {
         return isEnabled;
     }
 
-    public static void setEnabled(boolean enabled) {
+    @Override
+    public void setEnabled(boolean enabled) {
         isEnabled = enabled;
     }
 
-    public static boolean isDebugging() {
+    @Override
+    public boolean isDebugging() {
         return isDebugging;
     }
 
-    public static void setDebugging(boolean debugging) {
+    @Override
+    public void setDebugging(boolean debugging) {
         isDebugging = debugging;
     }
 
-    public static void setPercentage(float percentage) {
+    public void setPercentage(float percentage) {
         percentageParam.setValue(percentage);
     }
 
-    public static float getPercentage() {
+    public float getPercentage() {
         return percentageParam.getValue();
     }
 
-    public static void setXPosition(float xPos) {
+    public void setXPosition(float xPos) {
         positionXParam.setValue(xPos);
     }
 
-    public static float getXPosition() {
+    public float getXPosition() {
         return positionXParam.getValue();
     }
 
-    public static void setYPosition(float yPos) {
+    public void setYPosition(float yPos) {
         positionYParam.setValue(yPos);
     }
 
-    public static float getYPosition() {
+    public float getYPosition() {
         return positionYParam.getValue();
     }
 
-    public static void setStrength(float strength) {
+    public void setStrength(float strength) {
         strengthParam.setValue(strength);
     }
 
-    public static float getStrength() {
+    public float getStrength() {
         return strengthParam.getValue();
     }
 
-    public static void setRadius(float radius) {
+    public void setRadius(float radius) {
         radiusParam.setValue(radius);
     }
 
-    public static float getRadius() {
+    public float getRadius() {
         return radiusParam.getValue();
     }
 }
@@ -1,9 +1,63 @@
 package behaviour;
 
-import java.util.List;
-
 import models.Boid;
+import models.Flock;
+import models.ParameterGroup;
+import spatial.SpatialIndex;
 
+/**
+ * One stage of the update every boid goes through each tick. Behaviours are
+ * created per simulation by a {@link BehaviourProvider}, and only the enabled
+ * ones are run, in the order of their providers, see {@link BehaviourPipeline}.
+ */
 public interface BoidBehaviour {
-    void applyBehavior(Boid boid, List<Boid> boids);
+    /**
+     * Applies the behaviour to a boid.
+     *
+     * @param boid  The boid to apply the behavior to.
+     * @param flock The flock the boid belongs to.
+     * @param index The spatial index of the flock's current state.
+     * @param dt    The time the update covers, in reference ticks, see
+     *              {@link TimeStep}.
+     */
+    void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt);
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    boolean isDebugging();
+
+    void setDebugging(boolean debugging);
+
+    /**
+     * Gets the parameters shown for the behaviour in the control panel and
+     * saved with checkpoints.
+     *
+     * @return The parameters, or null if the behaviour has none.
+     */
+    default ParameterGroup getParameters() {
+        return null;
+    }
+
+    /**
+     * Gets the furthest any boid looks for neighbours in this behaviour, as of
+     * the last {@link BehaviourSet#prepare()}. The spatial index is sized to
+     * the largest range of the enabled behaviours.
+     *
+     * @return The perception range, or 0 if the behaviour ignores neighbours.
+     */
+    default float getPerceptionRange() {
+        return 0;
+    }
+
+    /**
+     * Gets whether the behaviour sums whole cells of neighbours at once, which
+     * calls for a finer grid and a wider halo between tiles.
+     *
+     * @return Whether the behaviour aggregates neighbours.
+     */
+    default boolean isAggregating() {
+        return false;
+    }
 }
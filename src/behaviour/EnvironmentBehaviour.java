@@ -0,0 +1,180 @@
+package behaviour;
+
+import models.Boid;
+import models.Environment;
+import models.Flock;
+import models.Parameter;
+import models.ParameterGroup;
+import spatial.NeighbourList;
+import spatial.SpatialIndex;
+
+public class EnvironmentBehaviour implements BoidBehaviour {
+    private volatile boolean isEnabled;
+    private volatile boolean isDebugging;
+    private volatile Environment environment = Environment.EMPTY;
+    private final Parameter attractionParam;
+    private final Parameter obstacleRangeParam;
+    private final Parameter obstacleFactorParam;
+    private final ParameterGroup parameters;
+
+    public EnvironmentBehaviour() {
+        parameters = new ParameterGroup("Environment");
+
+        attractionParam = new Parameter(
+                "Environment",
+                "Attraction",
+                "Controls how strongly boids steer towards attractors, scaled by each attractor's weight",
+                0.0f,
+                0.05f,
+                1.0f);
+        parameters.addParameter(attractionParam);
+
+        obstacleRangeParam = new Parameter(
+                "Environment",
+                "Obstacle Range",
+                "Controls how far away boids start steering around obstacles",
+                0.0f,
+                30.0f,
+                100.0f);
+        parameters.addParameter(obstacleRangeParam);
+
+        obstacleFactorParam = new Parameter(
+                "Environment",
+                "Obstacle Factor",
+                "Controls how aggressively boids steer away from obstacles",
+                0.0f,
+                0.5f,
+                2.0f);
+        parameters.addParameter(obstacleFactorParam);
+
+        isEnabled = true;
+    }
+
+    /**
+     * Method to steer the boid towards nearby attractors and away from nearby
+     * obstacles
+     *
+     * @param boid  the boid to apply the behavior to
+     * @param flock the flock the boid belongs to
+     * @param index the spatial index of the flock's current state
+     * @param dt    the time the update covers, in reference ticks
+     */
+    @Override
+    public void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt) {
+        Environment current = environment;
+        if (current.isEmpty())
+            return;
+
+        NeighbourList nearby = boid.getNeighbours();
+        float x = boid.position.x;
+        float y = boid.position.y;
+
+        // Every attractor whose radius reaches this boid's cell
+        float attraction = attractionParam.getValue();
+        current.getAttractorGrid().queryPoint(x, y, nearby);
+        for (int k = 0; k < nearby.size(); k++) {
+            int attractor = nearby.get(k);
+            float dx = current.getAttractorX(attractor) - x;
+            float dy = current.getAttractorY(attractor) - y;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy);
+            if (distance > 0 && distance < current.getAttractorRadius(attractor)) {
+                float pull = current.getAttractorWeight(attractor) * attraction / distance * dt;
+                boid.velocity.x += dx * pull;
+                boid.velocity.y += dy * pull;
+            }
+        }
+
+        // Every obstacle segment within range, pushing harder the closer it is
+        float range = obstacleRangeParam.getValue();
+        float factor = obstacleFactorParam.getValue();
+        current.getSegmentGrid().queryBox(x - range, y - range, x + range, y + range, nearby);
+        for (int k = 0; k < nearby.size(); k++) {
+            int segment = nearby.get(k);
+            float x1 = current.getSegmentX1(segment);
+            float y1 = current.getSegmentY1(segment);
+            float segmentX = current.getSegmentX2(segment) - x1;
+            float segmentY = current.getSegmentY2(segment) - y1;
+
+            // Closest point on the segment to the boid
+            float lengthSquared = segmentX * segmentX + segmentY * segmentY;
+            float t = lengthSquared > 0 ? ((x - x1) * segmentX + (y - y1) * segmentY) / lengthSquared : 0;
+            t = Math.max(0, Math.min(1, t));
+            float awayX = x - (x1 + t * segmentX);
+            float awayY = y - (y1 + t * segmentY);
+            float distance = (float) Math.sqrt(awayX * awayX + awayY * awayY);
+
+            if (distance > 0 && distance < range) {
+                float push = (range - distance) / range * factor / distance * dt;
+                boid.velocity.x += awayX * push;
+                boid.velocity.y += awayY * push;
+            }
+        }
+    }
+
+    /**
+     * Method to get the environment parameters
+     *
+     * @return the environment parameters
+     */
+    @Override
+    public ParameterGroup getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    @Override
+    public boolean isDebugging() {
+        return isDebugging;
+    }
+
+    @Override
+    public void setDebugging(boolean debugging) {
+        isDebugging = debugging;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Replaces the attractors and obstacles boids steer by.
+     *
+     * @param environment The new environment, or {@link Environment#EMPTY}.
+     */
+    public void setEnvironment(Environment environment) {
+        this.environment = environment != null ? environment : Environment.EMPTY;
+    }
+
+    public void setAttraction(float attraction) {
+        attractionParam.setValue(attraction);
+    }
+
+    public float getAttraction() {
+        return attractionParam.getValue();
+    }
+
+    public void setObstacleRange(float range) {
+        obstacleRangeParam.setValue(range);
+    }
+
+    public float getObstacleRange() {
+        return obstacleRangeParam.getValue();
+    }
+
+    public void setObstacleFactor(float factor) {
+        obstacleFactorParam.setValue(factor);
+    }
+
+    public float getObstacleFactor() {
+        return obstacleFactorParam.getValue();
+    }
+}
@@ -1,19 +1,23 @@
 package behaviour;
 
-import java.util.List;
-
 import models.Boid;
+import models.Flock;
 import models.Parameter;
 import models.ParameterGroup;
+import spatial.SpatialIndex;
 
 public class SpeedLimiterBehaviour implements BoidBehaviour {
-    private static boolean isEnabled;
-    private static boolean isDebugging;
-    private static Parameter minSpeedParam;
-    private static Parameter maxSpeedParam;
-    private static ParameterGroup parameters;
+    private volatile boolean isEnabled;
+    private volatile boolean isDebugging;
+    private final Parameter minSpeedParam;
+    private final Parameter maxSpeedParam;
+    private final ParameterGroup parameters;
+
+    // The values in effect since the last prepare
+    private float minSpeed;
+    private float maxSpeed;
 
-    static {
+    public SpeedLimiterBehaviour() {
         parameters = new ParameterGroup("Speed Limiter");
 
         // Initialize parameters and add them to the group
@@ -36,25 +40,29 @@ public class SpeedLimiterBehaviour implements BoidBehaviour {
         parameters.addParameter(maxSpeedParam);
 
         isEnabled = true;
+        prepare();
     }
 
-    public SpeedLimiterBehaviour() {
+    /**
+     * Takes the current speed limits for the coming tick, so that every boid is
+     * held to the same ones even if the parameters change meanwhile. Called by
+     * {@link BehaviourSet#prepare()}.
+     */
+    void prepare() {
+        minSpeed = minSpeedParam.getValue();
+        maxSpeed = maxSpeedParam.getValue();
     }
 
     /**
      * Method to apply the alignment behavior to the boid
      * 
      * @param boid  the boid to apply the behavior to
-     * @param boids the list of boids in the simulation
+     * @param flock the flock the boid belongs to
+     * @param index the spatial index of the flock's current state
+     * @param dt    the time the update covers, in reference ticks
      */
     @Override
-    public void applyBehavior(Boid boid, List<Boid> boids) {
-        if (!isEnabled)
-            return;
-
-        float minSpeed = minSpeedParam.getValue();
-        float maxSpeed = maxSpeedParam.getValue();
-
+    public void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt) {
         boid.velocity.limit(minSpeed, maxSpeed);
     }
 
@@ -63,39 +71,44 @@ public class SpeedLimiterBehaviour implements BoidBehaviour {
      * 
      * @return the alignment parameters
      */
-    public static ParameterGroup getParameters() {
+    @Override
+    public ParameterGroup getParameters() {
         return parameters;
     }
 
-    public static boolean isEnabled() {
+    @Override
+    public boolean isEnabled() {
         return isEnabled;
     }
 
-    public static void setEnabled(boolean enabled) {
+    @Override
+    public void setEnabled(boolean enabled) {
         isEnabled = enabled;
     }
 
-    public static boolean isDebugging() {
+    @Override
+    public boolean isDebugging() {
         return isDebugging;
     }
 
-    public static void setDebugging(boolean debugging) {
+    @Override
+    public void setDebugging(boolean debugging) {
         isDebugging = debugging;
     }
 
-    public static void setMinSpeed(float speed) {
+    public void setMinSpeed(float speed) {
         minSpeedParam.setValue(speed);
     }
 
-    public static float getMinSpeed() {
+    public float getMinSpeed() {
         return minSpeedParam.getValue();
     }
 
-    public static void setMaxSpeed(float speed) {
+    public void setMaxSpeed(float speed) {
         maxSpeedParam.setValue(speed);
     }
 
-    public static float getMaxSpeed() {
+    public float getMaxSpeed() {
         return maxSpeedParam.getValue();
     }
 
@@ -1,57 +1,48 @@
 package behaviour;
 
-import java.util.List;
-
 import models.Boid;
+import models.Flock;
+import spatial.SpatialIndex;
 
 public class WrapBehaviour implements BoidBehaviour {
-    private static boolean isEnabled;
-    private static boolean isDebugging;
-
-    static {
-        isEnabled = true;
-    }
+    private volatile boolean isEnabled;
+    private volatile boolean isDebugging;
 
     public WrapBehaviour() {
+        isEnabled = true;
     }
 
     /**
      * Method to apply the alignment behavior to the boid
      * 
      * @param boid  the boid to apply the behavior to
-     * @param boids the list of boids in the simulation
+     * @param flock the flock the boid belongs to
+     * @param index the spatial index of the flock's current state
+     * @param dt    the time the update covers, in reference ticks
      */
     @Override
-    public void applyBehavior(Boid boid, List<Boid> boids) {
-        if (!isEnabled)
-            return;
-
-        // Check horizontal boundaries
-        if (boid.position.x < 0)
-            boid.position.x += boid.screenSize.x;
-        if (boid.position.x > boid.screenSize.x)
-            boid.position.x -= boid.screenSize.x;
-
-        // Check vertical boundaries
-        if (boid.position.y < 0)
-            boid.position.y += boid.screenSize.y;
-        if (boid.position.y > boid.screenSize.y)
-            boid.position.y -= boid.screenSize.y;
+    public void applyBehavior(Boid boid, Flock flock, SpatialIndex index, float dt) {
+        // The flock knows how its positions are stored, and so how to wrap them
+        flock.wrap(boid.position);
     }
 
-    public static boolean isEnabled() {
+    @Override
+    public boolean isEnabled() {
         return isEnabled;
     }
 
-    public static void setEnabled(boolean enabled) {
+    @Override
+    public void setEnabled(boolean enabled) {
         isEnabled = enabled;
     }
 
-    public static boolean isDebugging() {
+    @Override
+    public boolean isDebugging() {
         return isDebugging;
     }
 
-    public static void setDebugging(boolean debugging) {
+    @Override
+    public void setDebugging(boolean debugging) {
         isDebugging = debugging;
     }
 }
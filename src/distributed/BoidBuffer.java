@@ -0,0 +1,88 @@
+package distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A growable list of boids identified by their global index, in the parallel
+ * array layout of {@link models.Flock}. Workers keep the boids they own, the
+ * halo they receive and the boids leaving them in these.
+ */
+class BoidBuffer {
+    int count;
+    int[] ids = new int[16];
+    float[] x = new float[16];
+    float[] y = new float[16];
+    float[] velocityX = new float[16];
+    float[] velocityY = new float[16];
+
+    void clear() {
+        count = 0;
+    }
+
+    void add(int id, float x, float y, float velocityX, float velocityY) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.velocityX = Arrays.copyOf(this.velocityX, capacity);
+            this.velocityY = Arrays.copyOf(this.velocityY, capacity);
+        }
+        ids[count] = id;
+        this.x[count] = x;
+        this.y[count] = y;
+        this.velocityX[count] = velocityX;
+        this.velocityY[count] = velocityY;
+        count++;
+    }
+
+    void add(BoidBuffer source, int i) {
+        add(source.ids[i], source.x[i], source.y[i], source.velocityX[i], source.velocityY[i]);
+    }
+
+    /**
+     * Sorts the boids by global index, so that local indices follow the same
+     * order as in a single flock.
+     */
+    void sortByIndex() {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = (long) ids[i] << 32 | i;
+        Arrays.sort(keys);
+
+        BoidBuffer sorted = new BoidBuffer();
+        for (long key : keys)
+            sorted.add(this, (int) key);
+        ids = sorted.ids;
+        x = sorted.x;
+        y = sorted.y;
+        velocityX = sorted.velocityX;
+        velocityY = sorted.velocityY;
+    }
+
+    /**
+     * Writes the boids, preceded by their count.
+     */
+    void write(DataOutputStream output) throws IOException {
+        output.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            output.writeInt(ids[i]);
+            output.writeFloat(x[i]);
+            output.writeFloat(y[i]);
+            output.writeFloat(velocityX[i]);
+            output.writeFloat(velocityY[i]);
+        }
+    }
+
+    /**
+     * Reads boids written by {@link #write}, adding them to this buffer.
+     */
+    void read(DataInputStream input) throws IOException {
+        int boids = input.readInt();
+        for (int i = 0; i < boids; i++)
+            add(input.readInt(), input.readFloat(), input.readFloat(), input.readFloat(), input.readFloat());
+    }
+}
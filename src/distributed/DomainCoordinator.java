@@ -0,0 +1,360 @@
+package distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import behaviour.BehaviourSet;
+import models.Flock;
+import simulation.FlockEngine;
+
+/**
+ * Runs a flock split across several worker processes, each simulating one
+ * vertical strip of the world. Workers only hold the boids in their strip, so a
+ * flock too large for one process can be spread over several.
+ *
+ * Each tick the coordinator sends the current settings and the bounds of the
+ * whole flock to every worker, relays the boids each worker's neighbours need
+ * to see near its edges, and then relays the boids that crossed from one strip
+ * into another. The result matches a {@link FlockEngine} with the same seed
+ * that rebuilds its grid every tick, the default, bit for bit.
+ *
+ * Only the behaviours and their parameters are shared with the workers; the
+ * flock runs with a single species and without an environment.
+ */
+public class DomainCoordinator implements Closeable {
+    private final int boidCount;
+    private final float width;
+    private final float height;
+    private final int tiles;
+    private final BehaviourSet behaviours = new BehaviourSet();
+
+    private final ServerSocket serverSocket;
+    private final List<Process> processes = new ArrayList<>();
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    private final DataOutputStream[] outputs;
+
+    // Boids relayed this tick, by source tile and then destination tile
+    private final byte[][][] relayed;
+    private final int[][] relayedCounts;
+
+    // Bounds of the whole flock at the start of the coming tick
+    private float minX, minY, maxX, maxY;
+    private boolean isFlockEmpty;
+    private long tick = 0;
+
+    /**
+     * Starts a worker process per tile and initializes the flock across them.
+     *
+     * @param seed      The seed of the flock, as given to a {@link FlockEngine}.
+     * @param boidCount The number of boids in the flock.
+     * @param width     The width of the world.
+     * @param height    The height of the world.
+     * @param tiles     The number of worker processes.
+     * @throws IOException If a worker could not be started or connected to.
+     */
+    public DomainCoordinator(long seed, int boidCount, float width, float height, int tiles) throws IOException {
+        if (tiles < 1)
+            throw new IllegalArgumentException("At least one tile is needed");
+
+        this.boidCount = boidCount;
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+        this.sockets = new Socket[tiles];
+        this.inputs = new DataInputStream[tiles];
+        this.outputs = new DataOutputStream[tiles];
+        this.relayed = new byte[tiles][tiles][];
+        this.relayedCounts = new int[tiles][tiles];
+
+        serverSocket = new ServerSocket(0, tiles, InetAddress.getLoopbackAddress());
+        try {
+            startWorkers();
+            for (int i = 0; i < tiles; i++) {
+                outputs[i].writeInt(DomainProtocol.INIT);
+                outputs[i].writeLong(seed);
+                outputs[i].writeInt(boidCount);
+                outputs[i].writeFloat(width);
+                outputs[i].writeFloat(height);
+                outputs[i].writeInt(tiles);
+                outputs[i].flush();
+            }
+            resetBounds();
+            for (DataInputStream input : inputs)
+                readBounds(input);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void startWorkers() throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        String classPath = System.getProperty("java.class.path");
+        for (int i = 0; i < tiles; i++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, DomainWorker.class.getName(),
+                    Integer.toString(serverSocket.getLocalPort()), Integer.toString(i));
+            builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            processes.add(builder.start());
+        }
+
+        // Workers connect in any order and name their tile first
+        for (int i = 0; i < tiles; i++) {
+            Socket socket = serverSocket.accept();
+            socket.setTcpNoDelay(true);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int tile = input.readInt();
+            if (tile < 0 || tile >= tiles || sockets[tile] != null) {
+                socket.close();
+                throw new IOException("Unexpected worker for tile " + tile);
+            }
+            sockets[tile] = socket;
+            inputs[tile] = input;
+            outputs[tile] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    /**
+     * Advances the flock by one tick on every worker, one exchange per
+     * sub-step of the time step.
+     *
+     * @throws IOException If a worker failed.
+     */
+    public void step() throws IOException {
+        behaviours.prepare();
+        for (int subStep = 0; subStep < behaviours.getTimeStep().getSubSteps(); subStep++) {
+            for (DataOutputStream output : outputs) {
+                output.writeInt(DomainProtocol.STEP);
+                DomainProtocol.writeSettings(output, behaviours);
+                output.writeFloat(minX);
+                output.writeFloat(minY);
+                output.writeFloat(maxX);
+                output.writeFloat(maxY);
+                output.flush();
+            }
+
+            relay(DomainProtocol.HALO_IN, false);
+            relay(DomainProtocol.MIGRANTS_IN, true);
+        }
+        tick++;
+    }
+
+    /**
+     * Reads the boids each worker sends to every other tile, then forwards to
+     * each worker everything sent to it.
+     */
+    private void relay(int message, boolean isFollowedByBounds) throws IOException {
+        if (isFollowedByBounds)
+            resetBounds();
+        for (int source = 0; source < tiles; source++) {
+            for (int destination = 0; destination < tiles; destination++) {
+                if (destination == source)
+                    continue;
+                int count = inputs[source].readInt();
+                byte[] boids = relayed[source][destination];
+                if (boids == null || boids.length < count * DomainProtocol.BOID_SIZE)
+                    boids = relayed[source][destination] = new byte[count * DomainProtocol.BOID_SIZE];
+                inputs[source].readFully(boids, 0, count * DomainProtocol.BOID_SIZE);
+                relayedCounts[source][destination] = count;
+            }
+            if (isFollowedByBounds)
+                readBounds(inputs[source]);
+        }
+
+        for (int destination = 0; destination < tiles; destination++) {
+            DataOutputStream output = outputs[destination];
+            output.writeInt(message);
+            for (int source = 0; source < tiles; source++) {
+                if (source == destination)
+                    continue;
+                int count = relayedCounts[source][destination];
+                output.writeInt(count);
+                output.write(relayed[source][destination], 0, count * DomainProtocol.BOID_SIZE);
+            }
+            output.flush();
+        }
+    }
+
+    private void resetBounds() {
+        isFlockEmpty = true;
+        minX = minY = maxX = maxY = 0;
+    }
+
+    /**
+     * Widens the bounds of the whole flock, which every worker's grid is built
+     * over, to take in the bounds a worker reports of its boids.
+     */
+    private void readBounds(DataInputStream input) throws IOException {
+        boolean hasBoids = input.readBoolean();
+        float tileMinX = input.readFloat();
+        float tileMinY = input.readFloat();
+        float tileMaxX = input.readFloat();
+        float tileMaxY = input.readFloat();
+        if (!hasBoids)
+            return;
+
+        minX = isFlockEmpty ? tileMinX : Math.min(minX, tileMinX);
+        minY = isFlockEmpty ? tileMinY : Math.min(minY, tileMinY);
+        maxX = isFlockEmpty ? tileMaxX : Math.max(maxX, tileMaxX);
+        maxY = isFlockEmpty ? tileMaxY : Math.max(maxY, tileMaxY);
+        isFlockEmpty = false;
+    }
+
+    /**
+     * Collects every boid from the workers into one flock. This copies the whole
+     * flock into this process, so it is meant for checking results and saving
+     * them rather than for every tick.
+     *
+     * @return The current state of the flock.
+     * @throws IOException If a worker failed.
+     */
+    public Flock gather() throws IOException {
+        Flock flock = new Flock(boidCount, width, height);
+        BoidBuffer boids = new BoidBuffer();
+        for (int i = 0; i < tiles; i++) {
+            outputs[i].writeInt(DomainProtocol.GATHER);
+            outputs[i].flush();
+            boids.clear();
+            boids.read(inputs[i]);
+            for (int k = 0; k < boids.count; k++)
+                flock.set(boids.ids[k], boids.x[k], boids.y[k], boids.velocityX[k], boids.velocityY[k]);
+        }
+        return flock;
+    }
+
+    /**
+     * Gets the behaviours, whose settings are sent to the workers at the start
+     * of every tick.
+     *
+     * @return The behaviours.
+     */
+    public BehaviourSet getBehaviours() {
+        return behaviours;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getTileCount() {
+        return tiles;
+    }
+
+    /**
+     * Stops every worker and closes their connections.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < tiles; i++) {
+            if (outputs[i] == null)
+                continue;
+            try {
+                outputs[i].writeInt(DomainProtocol.QUIT);
+                outputs[i].flush();
+            } catch (IOException e) {
+                // The worker has already gone
+            }
+            sockets[i].close();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS))
+                    process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+        serverSocket.close();
+    }
+
+    /**
+     * Runs a flock across worker processes for a number of ticks, optionally
+     * checking the result against a single engine. Avoidance, alignment and
+     * cohesion are turned on, so that boids near the edges of a strip see
+     * their neighbours across it.
+     *
+     * @param args The number of workers, boids and ticks, and {@code --verify}
+     *             to compare with a single engine afterwards.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: DomainCoordinator <workers> <boids> <ticks> [--verify]");
+            System.exit(1);
+        }
+        int tiles = Integer.parseInt(args[0]);
+        int boidCount = Integer.parseInt(args[1]);
+        int ticks = Integer.parseInt(args[2]);
+        boolean isVerifying = args.length > 3 && args[3].equals("--verify");
+        long seed = 1;
+        float width = 800, height = 600;
+
+        try (DomainCoordinator coordinator = new DomainCoordinator(seed, boidCount, width, height, tiles)) {
+            enableNeighbourBehaviours(coordinator.getBehaviours());
+            long start = System.nanoTime();
+            for (int i = 0; i < ticks; i++)
+                coordinator.step();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%d ticks of %d boids on %d workers in %.1f ms%n", ticks, boidCount, tiles,
+                    elapsed / 1e6);
+
+            if (!isVerifying)
+                return;
+
+            Flock distributed = coordinator.gather();
+            try (FlockEngine engine = new FlockEngine(seed, 1, boidCount, width, height)) {
+                engine.setNeighbourIndex(FlockEngine.NeighbourIndex.GRID);
+                enableNeighbourBehaviours(engine.getBehaviours());
+                for (int i = 0; i < ticks; i++)
+                    engine.step();
+
+                int mismatches = countMismatches(engine.getFlock(), distributed);
+                System.out.println(mismatches == 0 ? "Matches the single engine"
+                        : mismatches + " boids differ from the single engine");
+            }
+        }
+    }
+
+    /**
+     * Turns on the behaviours that look at neighbours, which are off by default
+     * and without which no boid is ever relayed as part of a halo.
+     *
+     * @param behaviours The behaviours to change.
+     */
+    public static void enableNeighbourBehaviours(BehaviourSet behaviours) {
+        behaviours.getAvoidance().setEnabled(true);
+        behaviours.getAlignment().setEnabled(true);
+        behaviours.getCohesion().setEnabled(true);
+    }
+
+    /**
+     * Counts the boids whose position or velocity differs in any bit between
+     * two flocks of the same size.
+     *
+     * @param expected The flock to compare against.
+     * @param actual   The flock to compare.
+     * @return The number of boids that differ.
+     */
+    public static int countMismatches(Flock expected, Flock actual) {
+        int mismatches = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            if (Float.floatToIntBits(expected.getX(i)) != Float.floatToIntBits(actual.getX(i))
+                    || Float.floatToIntBits(expected.getY(i)) != Float.floatToIntBits(actual.getY(i))
+                    || Float.floatToIntBits(expected.getVelocityX(i)) != Float.floatToIntBits(actual.getVelocityX(i))
+                    || Float.floatToIntBits(expected.getVelocityY(i)) != Float.floatToIntBits(actual.getVelocityY(i)))
+                mismatches++;
+        }
+        return mismatches;
+    }
+}
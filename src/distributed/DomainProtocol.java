@@ -0,0 +1,131 @@
+package distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import behaviour.BehaviourSet;
+import behaviour.BoidBehaviour;
+import models.Parameter;
+import models.ParameterGroup;
+
+/**
+ * The messages exchanged between a {@link DomainCoordinator} and its
+ * {@link DomainWorker}s, and the rules both sides share for dividing the world
+ * into tiles.
+ *
+ * The world is divided into vertical strips of equal width, one per worker.
+ * Boids left of the world belong to the first strip and boids right of it to
+ * the last, so every boid has exactly one owner even with wrapping off.
+ *
+ * Each sub-step of a tick is a fixed exchange, always started by the
+ * coordinator:
+ *
+ * <pre>
+ * STEP        coordinator -&gt; worker : settings, bounds of the whole flock
+ * halo        worker -&gt; coordinator : per tile, owned boids near that tile
+ * HALO_IN     coordinator -&gt; worker : every boid near the worker's tile
+ * migrants    worker -&gt; coordinator : per tile, boids that moved into it,
+ *                                      bounds of the worker's updated boids
+ * MIGRANTS_IN coordinator -&gt; worker : every boid that moved into the tile
+ * </pre>
+ *
+ * A boid travels as its global index followed by its position and velocity.
+ */
+final class DomainProtocol {
+    static final int INIT = 1;
+    static final int STEP = 2;
+    static final int HALO_IN = 3;
+    static final int MIGRANTS_IN = 4;
+    static final int GATHER = 5;
+    static final int QUIT = 6;
+
+    /** Bytes per boid on the wire: index, x, y, velocity x, velocity y. */
+    static final int BOID_SIZE = 20;
+
+    // Extra halo width covering rounding at the edges of a tile
+    private static final float EDGE_MARGIN = 1;
+
+    private DomainProtocol() {
+    }
+
+    /**
+     * Finds the tile that owns a position.
+     *
+     * @param x     The x coordinate of the position.
+     * @param width The width of the world.
+     * @param tiles The number of tiles.
+     * @return The tile.
+     */
+    static int tileOf(float x, float width, int tiles) {
+        int tile = (int) Math.floor(x * tiles / width);
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    /**
+     * Checks whether a position is close enough to a tile that boids owned by
+     * the tile may see a boid there.
+     *
+     * @param x     The x coordinate of the position.
+     * @param tile  The tile.
+     * @param halo  The width of the halo around each tile.
+     * @param width The width of the world.
+     * @param tiles The number of tiles.
+     * @return Whether the position lies within the tile's halo.
+     */
+    static boolean isInHalo(float x, int tile, float halo, float width, int tiles) {
+        float margin = halo + EDGE_MARGIN;
+        boolean isAfterStart = tile == 0 || x >= width * tile / tiles - margin;
+        boolean isBeforeEnd = tile == tiles - 1 || x < width * (tile + 1) / tiles + margin;
+        return isAfterStart && isBeforeEnd;
+    }
+
+    /**
+     * Writes every behaviour flag and parameter value, which workers apply
+     * before each tick so that they all simulate with the coordinator's
+     * settings.
+     */
+    static void writeSettings(DataOutputStream output, BehaviourSet behaviours) throws IOException {
+        for (String name : behaviours.getNames())
+            output.writeBoolean(behaviours.get(name).isEnabled());
+
+        List<ParameterGroup> groups = behaviours.getParameterGroups();
+        output.writeInt(groups.size());
+        for (ParameterGroup group : groups) {
+            output.writeUTF(group.getName());
+            output.writeInt(group.getParameters().size());
+            for (Parameter parameter : group.getParameters().values()) {
+                output.writeUTF(parameter.getName());
+                output.writeFloat(parameter.getValue());
+            }
+        }
+    }
+
+    static void readSettings(DataInputStream input, BehaviourSet behaviours) throws IOException {
+        for (String name : behaviours.getNames()) {
+            BoidBehaviour behaviour = behaviours.get(name);
+            behaviour.setEnabled(input.readBoolean());
+        }
+
+        int groupCount = input.readInt();
+        List<ParameterGroup> groups = behaviours.getParameterGroups();
+        for (int i = 0; i < groupCount; i++) {
+            String groupName = input.readUTF();
+            ParameterGroup group = null;
+            for (ParameterGroup candidate : groups) {
+                if (candidate.getName().equals(groupName))
+                    group = candidate;
+            }
+
+            int parameterCount = input.readInt();
+            for (int j = 0; j < parameterCount; j++) {
+                String name = input.readUTF();
+                float value = input.readFloat();
+                Parameter parameter = group != null ? group.getParameter(name) : null;
+                if (parameter != null)
+                    parameter.setValue(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import behaviour.BehaviourSet;
+import models.Boid;
+import models.Flock;
+import spatial.UniformGrid;
+import util.RandomSource;
+import util.Vector;
+
+/**
+ * Simulates one tile of a flock split across processes by a
+ * {@link DomainCoordinator}. A worker only ever holds the boids it owns plus,
+ * during a tick, the halo of boids near its tile that it needs to see.
+ *
+ * Each tick the worker lays its own and halo boids out in one {@link Flock} in
+ * global index order, and indexes them with a grid built over the bounds of
+ * the whole flock. Neighbours are then visited in exactly the order a single
+ * engine would visit them, so every boid comes out bit for bit the same.
+ */
+public class DomainWorker {
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private final int tile;
+
+    private int tiles;
+    private int boidCount;
+    private float width;
+    private float height;
+    // Position of each boid in the order boids become biased, by global index
+    private int[] biasRank;
+
+    private final BehaviourSet behaviours = new BehaviourSet();
+    private final UniformGrid grid = new UniformGrid(50);
+    private final Boid boid = new Boid();
+
+    private BoidBuffer owned = new BoidBuffer();
+    private BoidBuffer kept = new BoidBuffer();
+    private final BoidBuffer halo = new BoidBuffer();
+    private final BoidBuffer outgoing = new BoidBuffer();
+    private BoidBuffer[] emigrants;
+
+    private DomainWorker(Socket socket, int tile) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.tile = tile;
+    }
+
+    private void run() throws IOException {
+        output.writeInt(tile);
+        output.flush();
+
+        expect(DomainProtocol.INIT);
+        long seed = input.readLong();
+        boidCount = input.readInt();
+        width = input.readFloat();
+        height = input.readFloat();
+        tiles = input.readInt();
+        emigrants = new BoidBuffer[tiles];
+        for (int i = 0; i < tiles; i++)
+            emigrants[i] = new BoidBuffer();
+
+        initialize(seed);
+        writeBounds(owned);
+        output.flush();
+
+        while (true) {
+            int message = input.readInt();
+            switch (message) {
+                case DomainProtocol.STEP:
+                    step();
+                    break;
+                case DomainProtocol.GATHER:
+                    owned.write(output);
+                    output.flush();
+                    break;
+                case DomainProtocol.QUIT:
+                    return;
+                default:
+                    throw new IOException("Unexpected message " + message);
+            }
+        }
+    }
+
+    /**
+     * Draws the initial state of every boid exactly as a single engine with the
+     * same seed does, keeping only the boids in this worker's tile. Every worker
+     * also shuffles the same bias order, so all of them agree on which boids are
+     * biased without exchanging it.
+     */
+    private void initialize(long seed) {
+        RandomSource random = new RandomSource(seed);
+        RandomSource boidRandom = new RandomSource(0);
+        for (int i = 0; i < boidCount; i++) {
+            random.stream(i, boidRandom);
+            float x = boidRandom.nextFloat() * width;
+            float y = boidRandom.nextFloat() * height;
+            Vector velocity = Vector.random2D(boidRandom);
+            if (DomainProtocol.tileOf(x, width, tiles) == tile)
+                owned.add(i, x, y, velocity.x, velocity.y);
+        }
+        random.nextLong();
+
+        int[] biasOrder = new int[boidCount];
+        for (int i = 0; i < boidCount; i++)
+            biasOrder[i] = i;
+        RandomSource shuffle = random.split();
+        for (int i = boidCount - 1; i > 0; i--) {
+            int j = shuffle.nextInt(i + 1);
+            int swap = biasOrder[i];
+            biasOrder[i] = biasOrder[j];
+            biasOrder[j] = swap;
+        }
+        biasRank = new int[boidCount];
+        for (int i = 0; i < boidCount; i++)
+            biasRank[biasOrder[i]] = i;
+    }
+
+    private void step() throws IOException {
+        DomainProtocol.readSettings(input, behaviours);
+        float minX = input.readFloat();
+        float minY = input.readFloat();
+        float maxX = input.readFloat();
+        float maxY = input.readFloat();
+
+        // The same preparation a single engine makes at the start of a tick
+        behaviours.prepare();
+        float share = behaviours.getBias().getPercentage() / 100;
+        int biasedCount = Math.round(share * boidCount);
+        float dt = behaviours.getTimeStep().getDeltaTime();
+        grid.setCellSize(behaviours.getNeighbourCellSize());
+
+        // Boids further from a tile than the largest range cannot be seen from
+        // it, except that aggregation also sums the rest of any cell it reaches
+        float haloWidth = behaviours.getPerceptionRange();
+        if (behaviours.isAggregating())
+            haloWidth += 2 * grid.getEffectiveCellSize(Math.max(maxX - minX, maxY - minY));
+
+        for (int other = 0; other < tiles; other++) {
+            if (other == tile)
+                continue;
+            outgoing.clear();
+            for (int i = 0; i < owned.count; i++) {
+                if (DomainProtocol.isInHalo(owned.x[i], other, haloWidth, width, tiles))
+                    outgoing.add(owned, i);
+            }
+            outgoing.write(output);
+        }
+        output.flush();
+
+        expect(DomainProtocol.HALO_IN);
+        halo.clear();
+        for (int other = 1; other < tiles; other++)
+            halo.read(input);
+        halo.sortByIndex();
+
+        // Merge owned and halo boids into one flock in global index order
+        Flock local = new Flock(owned.count + halo.count, width, height);
+        int[] ownedLocal = new int[owned.count];
+        int o = 0, h = 0;
+        for (int i = 0; i < local.size(); i++) {
+            boolean isOwned = h == halo.count || (o < owned.count && owned.ids[o] < halo.ids[h]);
+            BoidBuffer source = isOwned ? owned : halo;
+            int k = isOwned ? o++ : h++;
+            local.set(i, source.x[k], source.y[k], source.velocityX[k], source.velocityY[k]);
+            local.setBiased(i, biasRank[source.ids[k]] < biasedCount);
+            if (isOwned)
+                ownedLocal[k] = i;
+        }
+
+        grid.build(local, minX, minY, maxX, maxY);
+        for (int k = 0; k < owned.count; k++)
+            boid.load(local, ownedLocal[k]).update(local, behaviours, grid, dt);
+        local.swap();
+
+        // Hand boids that left the tile to their new owner
+        kept.clear();
+        for (BoidBuffer leaving : emigrants)
+            leaving.clear();
+        float boundsMinX = 0, boundsMinY = 0, boundsMaxX = 0, boundsMaxY = 0;
+        for (int k = 0; k < owned.count; k++) {
+            int i = ownedLocal[k];
+            float x = local.getX(i);
+            float y = local.getY(i);
+            BoidBuffer destination = DomainProtocol.tileOf(x, width, tiles) == tile ? kept
+                    : emigrants[DomainProtocol.tileOf(x, width, tiles)];
+            destination.add(owned.ids[k], x, y, local.getVelocityX(i), local.getVelocityY(i));
+
+            boundsMinX = k == 0 ? x : Math.min(boundsMinX, x);
+            boundsMinY = k == 0 ? y : Math.min(boundsMinY, y);
+            boundsMaxX = k == 0 ? x : Math.max(boundsMaxX, x);
+            boundsMaxY = k == 0 ? y : Math.max(boundsMaxY, y);
+        }
+        for (int other = 0; other < tiles; other++) {
+            if (other != tile)
+                emigrants[other].write(output);
+        }
+        output.writeBoolean(owned.count > 0);
+        output.writeFloat(boundsMinX);
+        output.writeFloat(boundsMinY);
+        output.writeFloat(boundsMaxX);
+        output.writeFloat(boundsMaxY);
+        output.flush();
+
+        expect(DomainProtocol.MIGRANTS_IN);
+        for (int other = 1; other < tiles; other++)
+            kept.read(input);
+        kept.sortByIndex();
+
+        BoidBuffer swap = owned;
+        owned = kept;
+        kept = swap;
+    }
+
+    private void writeBounds(BoidBuffer boids) throws IOException {
+        float minX = 0, minY = 0, maxX = 0, maxY = 0;
+        for (int i = 0; i < boids.count; i++) {
+            minX = i == 0 ? boids.x[i] : Math.min(minX, boids.x[i]);
+            minY = i == 0 ? boids.y[i] : Math.min(minY, boids.y[i]);
+            maxX = i == 0 ? boids.x[i] : Math.max(maxX, boids.x[i]);
+            maxY = i == 0 ? boids.y[i] : Math.max(maxY, boids.y[i]);
+        }
+        output.writeBoolean(boids.count > 0);
+        output.writeFloat(minX);
+        output.writeFloat(minY);
+        output.writeFloat(maxX);
+        output.writeFloat(maxY);
+    }
+
+    private void expect(int message) throws IOException {
+        int received = input.readInt();
+        if (received != message)
+            throw new IOException("Expected message " + message + " but received " + received);
+    }
+
+    /**
+     * Runs a worker, connecting to a coordinator on the loopback interface.
+     * Workers are normally started by {@link DomainCoordinator} itself.
+     *
+     * @param args The coordinator's port and the index of the tile to simulate.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: DomainWorker <coordinator port> <tile>");
+            System.exit(1);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            new DomainWorker(socket, Integer.parseInt(args[1])).run();
+        } catch (IOException e) {
+            System.err.println("Worker for tile " + args[1] + " stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package host;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import behaviour.BoidBehaviour;
+import models.Parameter;
+import simulation.Scenario;
+import util.RandomSource;
+
+/**
+ * Controls a {@link SimulationHost} over a socket on the loopback interface,
+ * so sessions can be started, steered and watched from scripts and tests
+ * without a display. Every connection is served on its own thread, as in
+ * {@link net.StreamServer}, rather than a virtual thread, so that clients are
+ * answered promptly even while the sessions keep every carrier busy.
+ *
+ * Clients send tab separated lines of UTF-8 text, and get one line back for
+ * each: {@code ok}, followed by any results, or {@code error} and a message.
+ *
+ * <pre>
+ * create  &lt;boids&gt; [seed]                     ok &lt;id&gt;
+ * load    &lt;scenario file&gt; [seed]             ok &lt;id&gt;
+ * list                                      ok [&lt;id&gt; ...]
+ * stats   &lt;id&gt;                              ok &lt;key=value&gt; ...
+ * set     &lt;id&gt; &lt;group&gt; &lt;parameter&gt; &lt;value&gt;
+ * enable  &lt;id&gt; &lt;behaviour&gt; true|false
+ * limit   &lt;id&gt; &lt;share of a processor&gt;
+ * pause   &lt;id&gt;
+ * resume  &lt;id&gt;
+ * serve   &lt;id&gt; &lt;port&gt;                       ok &lt;port&gt;
+ * close   &lt;id&gt;
+ * </pre>
+ *
+ * The group, parameter and behaviour names are those shown in the control
+ * panel. {@code serve} streams the session to {@link ui.RemoteViewer} on the
+ * given port, or any free port for 0, and {@code stats} reports the session's
+ * state, tick, tick rate, CPU time, recent CPU share, CPU limit and how far
+ * behind schedule its ticks have started in total.
+ */
+public class HostServer implements Closeable {
+    // Longest a client waits for a command to run on a session thread, in
+    // seconds
+    private static final long COMMAND_TIMEOUT = 10;
+
+    private final SimulationHost host;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Starts listening for clients on the loopback interface.
+     *
+     * @param host The host to control.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public HostServer(SimulationHost host, int port) throws IOException {
+        this.host = host;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(this::accept, "host-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops listening. Connected clients are dropped as their next command
+     * fails; the host and its sessions keep running.
+     *
+     * @throws IOException If the server socket could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        serverSocket.close();
+        try {
+            acceptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        while (!isClosed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread client = new Thread(() -> serve(socket), "host-client");
+                client.setDaemon(true);
+                client.start();
+            } catch (IOException e) {
+                if (!isClosed)
+                    System.err.println("Host server stopped accepting clients: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line;
+            while (!isClosed && (line = reader.readLine()) != null) {
+                if (!line.isEmpty())
+                    writer.println(apply(line));
+            }
+        } catch (IOException e) {
+            // The client went away or the server is closing
+        }
+    }
+
+    /**
+     * Applies one command line from a client.
+     *
+     * @param line The line.
+     * @return The reply, without a line break.
+     */
+    String apply(String line) {
+        String[] words = line.split("\t");
+        try {
+            switch (words[0]) {
+            case "create":
+                if (words.length < 2 || words.length > 3)
+                    return error("Usage: create <boids> [seed]");
+                Scenario scenario = Scenario.parse(List.of("boids = " + Integer.parseInt(words[1])));
+                return ok(host.create(seed(words, 2, scenario), scenario).getId());
+            case "load":
+                if (words.length < 2 || words.length > 3)
+                    return error("Usage: load <scenario file> [seed]");
+                Scenario loaded = Scenario.read(Paths.get(words[1]));
+                return ok(host.create(seed(words, 2, loaded), loaded).getId());
+            case "list": {
+                StringBuilder reply = new StringBuilder("ok");
+                for (Session session : host.getSessions())
+                    reply.append('\t').append(session.getId());
+                return reply.toString();
+            }
+            default:
+                break;
+            }
+
+            if (words.length < 2)
+                return error("Unknown command " + words[0]);
+            Session session = host.get(Integer.parseInt(words[1]));
+            if (session == null)
+                return error("No session " + words[1]);
+            return apply(session, words);
+        } catch (NumberFormatException e) {
+            return error("Not a number: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    private String apply(Session session, String[] words) throws IOException {
+        switch (words[0]) {
+        case "stats":
+            return ok(stats(session));
+        case "set": {
+            if (words.length != 5)
+                return error("Usage: set <id> <group> <parameter> <value>");
+            Parameter parameter = session.getEngine().getParameter(words[2], words[3]);
+            if (parameter == null)
+                return error("No parameter " + words[3] + " in " + words[2]);
+            float value = Float.parseFloat(words[4]);
+            if (!(value >= parameter.getMin() && value <= parameter.getMax()))
+                return error(words[3] + " must be from " + parameter.getMin() + " to " + parameter.getMax());
+            parameter.setValue(value);
+            return ok();
+        }
+        case "enable": {
+            if (words.length != 4)
+                return error("Usage: enable <id> <behaviour> true|false");
+            BoidBehaviour behaviour = session.getEngine().getBehaviours().get(words[2]);
+            if (behaviour == null)
+                return error("No behaviour " + words[2]);
+            behaviour.setEnabled(Boolean.parseBoolean(words[3]));
+            return ok();
+        }
+        case "limit":
+            if (words.length != 3)
+                return error("Usage: limit <id> <share>");
+            session.setCpuLimit(Float.parseFloat(words[2]));
+            return ok();
+        case "pause":
+            session.pause();
+            return ok();
+        case "resume":
+            session.resume();
+            return ok();
+        case "serve": {
+            if (words.length != 3)
+                return error("Usage: serve <id> <port>");
+            int port = Integer.parseInt(words[2]);
+            // The engine publishes to its server from the session thread, so the
+            // server is started there, between ticks
+            try {
+                return ok(session.submit(() -> session.getEngine().startStreaming(port).getPort())
+                        .get(COMMAND_TIMEOUT, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException(e.getCause().getMessage(), e.getCause());
+            } catch (TimeoutException e) {
+                throw new IOException("Session " + session.getId() + " did not start the stream in time", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting the stream", e);
+            }
+        }
+        case "close":
+            host.close(session.getId());
+            return ok();
+        default:
+            return error("Unknown command " + words[0]);
+        }
+    }
+
+    private static long seed(String[] words, int index, Scenario scenario) {
+        if (words.length > index)
+            return Long.parseLong(words[index]);
+        return scenario.hasSeed() ? scenario.getSeed() : new RandomSource().nextLong();
+    }
+
+    private static String stats(Session session) {
+        return String.format(Locale.ROOT,
+                "state=%s\ttick=%d\ttickRate=%.1f\tcpuMs=%.1f\tcpuShare=%.3f\tcpuLimit=%.3f\tlateMs=%.1f",
+                session.getState().name().toLowerCase(Locale.ROOT), session.getEngine().getTick(),
+                session.getRecentTickRate(), session.getCpuNanos() / 1e6, session.getRecentCpuShare(),
+                session.getCpuLimit(), session.getLateNanos() / 1e6);
+    }
+
+    private static String ok(Object... results) {
+        StringBuilder reply = new StringBuilder("ok");
+        for (Object result : results)
+            reply.append('\t').append(result);
+        return reply.toString();
+    }
+
+    private static String error(String message) {
+        return "error\t" + message;
+    }
+
+    /**
+     * Runs a host until the process is stopped.
+     *
+     * @param args Any of {@code --port <n>}, 0 for any free port and the
+     *             default, {@code --max-sessions <n>},
+     *             {@code --max-boids <n>} and {@code --cpu-limit <share>} for
+     *             new sessions.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        int port = 0;
+        int maxSessions = 1000;
+        int maxBoids = 20000;
+        float cpuLimit = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length)
+                port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--max-sessions") && i + 1 < args.length)
+                maxSessions = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--max-boids") && i + 1 < args.length)
+                maxBoids = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--cpu-limit") && i + 1 < args.length)
+                cpuLimit = Float.parseFloat(args[++i]);
+        }
+
+        SimulationHost host = new SimulationHost(maxSessions, maxBoids, cpuLimit);
+        HostServer server = new HostServer(host, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Could not stop the host server: " + e.getMessage());
+            }
+            host.close();
+        }));
+        System.out.println("Host listening on port " + server.getPort());
+        server.acceptThread.join();
+    }
+}
@@ -0,0 +1,296 @@
+package host;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import simulation.FlockEngine;
+
+/**
+ * One simulation running in a {@link SimulationHost}. Each session owns its
+ * engine, and with it its own behaviours and parameters, and ticks it on its
+ * own virtual thread at the engine's tick rate.
+ *
+ * Virtual threads run on as many carrier threads as there are processors and
+ * are never interrupted mid-tick, so a tick holds its carrier until it is
+ * done. Between ticks a session always parks for a time, however short, even
+ * when it is behind, and is woken by the same timer as every other session, in
+ * the order their waits end: when the host has more work than processors,
+ * sessions take turns a tick at a time and none can starve the others. Other
+ * threads never wake a session themselves; a session checks for commands,
+ * pauses and closing each time it wakes, which is at least every 20 ms.
+ *
+ * The time each tick takes is charged to the session as CPU time; ticks never
+ * block, so it is very nearly the processor time they use. A session may be
+ * limited to a share of one processor: after each tick it waits until that
+ * share of the time since the tick started covers what the tick cost, slowing
+ * it below its tick rate if need be.
+ */
+public class Session implements Closeable {
+    /** What a session is doing. */
+    public enum State {
+        RUNNING, PAUSED, FAILED, CLOSED
+    }
+
+    // Ticks a session may fall behind its tick rate before it stops catching up
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // Weight of the newest tick in the recent tick cost and period
+    private static final float SMOOTHING = 0.1f;
+    // Longest a session waits before looking for commands again, in nanoseconds
+    private static final long MAX_WAIT = 20_000_000L;
+
+    private final int id;
+    private final FlockEngine engine;
+    private final Thread thread;
+    // Work to do on the session thread between ticks
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean isPaused = false;
+    private volatile boolean isClosed = false;
+    private volatile RuntimeException failure;
+    private volatile float cpuLimit;
+
+    // Written by the session thread only
+    private volatile long cpuNanos = 0;
+    private volatile long lateNanos = 0;
+    private volatile float recentCost = 0;
+    private volatile float recentPeriod = 0;
+
+    Session(int id, FlockEngine engine, float cpuLimit) {
+        this.id = id;
+        this.engine = engine;
+        setCpuLimit(cpuLimit);
+        thread = Thread.ofVirtual().name("session-" + id).unstarted(this::run);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the session's engine. Parameters and behaviours may be changed from
+     * any thread, as in the control panel; anything else should go through
+     * {@link #submit} to run between ticks.
+     *
+     * @return The engine.
+     */
+    public FlockEngine getEngine() {
+        return engine;
+    }
+
+    public State getState() {
+        if (failure != null)
+            return State.FAILED;
+        if (isClosed)
+            return State.CLOSED;
+        return isPaused ? State.PAUSED : State.RUNNING;
+    }
+
+    /**
+     * Gets the exception that stopped the session, if a tick failed.
+     *
+     * @return The failure, or null if the session has not failed.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public void pause() {
+        isPaused = true;
+    }
+
+    public void resume() {
+        isPaused = false;
+    }
+
+    /**
+     * Limits the session to a share of one processor, from the next tick on.
+     *
+     * @param cpuLimit The share, from just above 0 to 1 for no limit beyond one
+     *                 processor.
+     */
+    public void setCpuLimit(float cpuLimit) {
+        if (!(cpuLimit > 0))
+            throw new IllegalArgumentException("A CPU limit must be above 0");
+        this.cpuLimit = Math.min(1, cpuLimit);
+    }
+
+    public float getCpuLimit() {
+        return cpuLimit;
+    }
+
+    /**
+     * Gets the CPU time the session's ticks have taken so far.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * Gets how far behind schedule the session's ticks have started in total,
+     * which grows when the host has more work than processors.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getLateNanos() {
+        return lateNanos;
+    }
+
+    /**
+     * Gets the share of one processor the session has been using lately.
+     *
+     * @return The share, from 0 upwards, or 0 while it is not running.
+     */
+    public float getRecentCpuShare() {
+        float period = recentPeriod;
+        return getState() == State.RUNNING && period > 0 ? recentCost / period : 0;
+    }
+
+    /**
+     * Gets how many ticks per second the session has been running lately, which
+     * is below the engine's tick rate when it is limited or the host is busy.
+     *
+     * @return The tick rate in Hz, or 0 while it is not running.
+     */
+    public float getRecentTickRate() {
+        float period = recentPeriod;
+        return getState() == State.RUNNING && period > 0 ? 1e9f / period : 0;
+    }
+
+    /**
+     * Runs a task on the session thread between two ticks, even while paused.
+     * A task submitted while the session closes either runs before the engine
+     * is closed or fails without running.
+     *
+     * @param task The task.
+     * @return The task's result, or its exception, once it has run.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (isClosed) {
+            result.completeExceptionally(new IllegalStateException("Session " + id + " is closed"));
+            return result;
+        }
+        Runnable command = () -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        };
+        commands.add(command);
+
+        // The session may have closed and run its last commands since the check
+        // above. Whichever of it and this thread takes the command off the queue
+        // first decides whether it runs.
+        if (isClosed && commands.remove(command))
+            result.completeExceptionally(new IllegalStateException("Session " + id + " is closed"));
+        return result;
+    }
+
+    /**
+     * Stops the session and waits for its current tick to finish. The engine is
+     * closed on the session thread, along with anything it was streaming or
+     * recording.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        // When the last tick started and what it cost, 0 before the first and
+        // after a pause
+        long lastStart = 0;
+        long lastCost = 0;
+        try {
+            while (!isClosed && failure == null) {
+                runCommands();
+                if (isPaused) {
+                    LockSupport.parkNanos(this, MAX_WAIT);
+                    // Carry on from whenever the session resumes
+                    next = System.nanoTime();
+                    lastStart = 0;
+                    continue;
+                }
+                long start = System.nanoTime();
+                if (start < next) {
+                    LockSupport.parkNanos(this, Math.min(next - start, MAX_WAIT));
+                    continue;
+                }
+
+                try {
+                    engine.step();
+                } catch (RuntimeException e) {
+                    failure = e;
+                    break;
+                }
+                long cost = System.nanoTime() - start;
+                cpuNanos += cost;
+                lateNanos += Math.max(0, start - next);
+                if (lastStart != 0)
+                    measure(start - lastStart, lastCost);
+                lastStart = start;
+                lastCost = cost;
+
+                // Keep to the tick rate, spaced further apart if the ticks cost
+                // more than the session's share, without racing to catch up
+                // after falling far behind
+                long interval = engine.getBehaviours().getTimeStep().getTickInterval();
+                next = Math.max(next + interval, start + (long) (cost / cpuLimit));
+                long end = start + cost;
+                if (end - next > interval * MAX_CATCH_UP_TICKS)
+                    next = end;
+
+                // Take a turn behind every other session already waiting, even
+                // when this one is behind
+                LockSupport.parkNanos(this, Math.max(1, Math.min(next - System.nanoTime(), MAX_WAIT)));
+            }
+        } finally {
+            isClosed = true;
+            runCommands();
+            try {
+                engine.close();
+            } catch (IOException e) {
+                System.err.println("Session " + id + " did not close cleanly: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Folds the time from one tick's start to the next, and what the first of
+     * them cost, into the recent averages the CPU share and tick rate are
+     * worked out from.
+     */
+    private void measure(long period, long cost) {
+        if (recentPeriod == 0) {
+            recentCost = cost;
+            recentPeriod = period;
+            return;
+        }
+        recentCost += SMOOTHING * (cost - recentCost);
+        recentPeriod += SMOOTHING * (period - recentPeriod);
+    }
+
+    private void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null)
+            command.run();
+    }
+}
@@ -0,0 +1,136 @@
+package host;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import simulation.FlockEngine;
+import simulation.Scenario;
+
+/**
+ * Runs many small simulations side by side in one process, one
+ * {@link Session} per user or experiment. Every session ticks on its own
+ * virtual thread, so hundreds cost little more than their flocks, and the
+ * sessions take turns at the processors a tick at a time.
+ *
+ * The host limits how many sessions it runs and how large each flock may be,
+ * and gives new sessions a default share of a processor, which each session's
+ * {@link Session#setCpuLimit} may change. {@link HostServer} makes all of this
+ * available over a local socket.
+ */
+public class SimulationHost implements Closeable {
+    private final int maxSessions;
+    private final int maxBoids;
+    private final float defaultCpuLimit;
+    private final Map<Integer, Session> sessions = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile boolean isClosed = false;
+
+    /**
+     * Creates a host with room for 1000 sessions of up to 20000 boids each, and
+     * no limit on the share of a processor each session uses.
+     */
+    public SimulationHost() {
+        this(1000, 20000, 1);
+    }
+
+    /**
+     * Creates a host.
+     *
+     * @param maxSessions     The most sessions to run at once.
+     * @param maxBoids        The most boids in any one session's flock.
+     * @param defaultCpuLimit The share of one processor new sessions may use.
+     */
+    public SimulationHost(int maxSessions, int maxBoids, float defaultCpuLimit) {
+        if (!(defaultCpuLimit > 0))
+            throw new IllegalArgumentException("A CPU limit must be above 0");
+        this.maxSessions = maxSessions;
+        this.maxBoids = maxBoids;
+        this.defaultCpuLimit = Math.min(1, defaultCpuLimit);
+    }
+
+    /**
+     * Starts a session from a scenario.
+     *
+     * @param seed     The seed of the session's random source.
+     * @param scenario The scenario to start from.
+     * @return The running session.
+     * @throws IllegalArgumentException If the scenario's flock is too large.
+     * @throws IllegalStateException    If the host is closed or already runs as
+     *                                  many sessions as it may.
+     */
+    public Session create(long seed, Scenario scenario) {
+        if (scenario.getBoidCount() > maxBoids)
+            throw new IllegalArgumentException(
+                    "Sessions may have at most " + maxBoids + " boids, not " + scenario.getBoidCount());
+
+        Session session;
+        synchronized (this) {
+            if (isClosed)
+                throw new IllegalStateException("The host is closed");
+            if (sessions.size() >= maxSessions)
+                throw new IllegalStateException("The host already runs its limit of " + maxSessions + " sessions");
+            int id = nextId.getAndIncrement();
+            session = new Session(id, new FlockEngine(seed, 1, scenario), defaultCpuLimit);
+            sessions.put(id, session);
+        }
+        session.start();
+        return session;
+    }
+
+    /**
+     * Finds a session.
+     *
+     * @param id The session's id.
+     * @return The session, or null if there is no such session.
+     */
+    public Session get(int id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Gets every session, in the order they were created.
+     *
+     * @return A copy of the list of sessions.
+     */
+    public List<Session> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Stops a session and forgets it.
+     *
+     * @param id The session's id.
+     * @return Whether there was such a session.
+     */
+    public boolean close(int id) {
+        Session session = sessions.remove(id);
+        if (session == null)
+            return false;
+        session.close();
+        return true;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getMaxBoids() {
+        return maxBoids;
+    }
+
+    /**
+     * Stops every session.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            isClosed = true;
+        }
+        for (Session session : getSessions())
+            close(session.getId());
+    }
+}
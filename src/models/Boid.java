@@ -1,14 +1,10 @@
 package models;
 
-import java.util.List;
-
-import behaviour.AlignmentBehaviour;
-import behaviour.AvoidanceBehaviour;
-import behaviour.BiasBehaviour;
-import behaviour.BoidBehaviour;
-import behaviour.CohesionBehaviour;
-import behaviour.SpeedLimiterBehaviour;
-import behaviour.WrapBehaviour;
+import behaviour.BehaviourPipeline;
+import behaviour.BehaviourSet;
+import spatial.Aggregate;
+import spatial.NeighbourList;
+import spatial.SpatialIndex;
 import util.Vector;
 
 /**
@@ -16,57 +12,104 @@ import util.Vector;
  * flocking, alignment, cohesion, and separation in a group of similar agents.
  * Boids are often used in computer graphics to simulate the collective behavior
  * of animals, such as birds or fish.
- * 
+ *
+ * The state of every boid lives in a {@link Flock}. A Boid is a working copy of
+ * one of them: it is loaded from the flock, updated by the behaviours, and its
+ * new state is written back. Each thread updating the flock reuses a single
+ * Boid for every boid it updates.
+ *
  * @author Samuel Logan <contact@samuellogan.dev>
  */
 public class Boid {
+    private int index;
     private boolean isDebug = false;
     private boolean isBiased = false;
+    private int species;
 
     public Vector position;
     public Vector velocity;
     public Vector acceleration;
     public Vector screenSize;
 
-    private BoidBehaviour avoidanceBehavior;
-    private BoidBehaviour alignmentBehavior;
-    private BoidBehaviour cohesionBehavior;
-    private BoidBehaviour biasBehaviour;
-    private BoidBehaviour wrapBehaviour;
-    private BoidBehaviour limitSpeedBehaviour;
+    // Scratch space for spatial queries, reused for every boid this Boid is
+    // loaded from so that behaviours do not allocate per neighbourhood
+    private final NeighbourList neighbours = new NeighbourList();
+    private final Aggregate aggregate = new Aggregate();
 
     /**
-     * Constructs a Boid given an initial position. The Boid's velocity is
-     * initialized to a random 2D unit vector to give it an initial direction,
-     * and its acceleration is initialized to zero.
-     *
-     * @param x The initial x-coordinate of the Boid's position.
-     * @param y The initial y-coordinate of the Boid's position.
+     * Constructs a Boid with its position, velocity and acceleration at zero,
+     * ready to be loaded from a flock.
      */
-    public Boid(float x, float y) {
-        position = new Vector(x, y);
-        velocity = Vector.random2D();
+    public Boid() {
+        position = new Vector(0, 0);
+        velocity = new Vector(0, 0);
         acceleration = new Vector(0, 0);
-        screenSize = new Vector(800, 600);
-
-        avoidanceBehavior = new AvoidanceBehaviour();
-        alignmentBehavior = new AlignmentBehaviour();
-        cohesionBehavior = new CohesionBehaviour();
-        biasBehaviour = new BiasBehaviour();
-        wrapBehaviour = new WrapBehaviour();
-        limitSpeedBehaviour = new SpeedLimiterBehaviour();
+        screenSize = new Vector(0, 0);
+    }
+
+    /**
+     * Loads the current state of a boid in the flock into this Boid.
+     *
+     * @param flock The flock the boid belongs to.
+     * @param index The index of the boid in the flock.
+     * @return This Boid.
+     */
+    public Boid load(Flock flock, int index) {
+        this.index = index;
+        position.x = flock.getX(index);
+        position.y = flock.getY(index);
+        velocity.x = flock.getVelocityX(index);
+        velocity.y = flock.getVelocityY(index);
+        acceleration.x = 0;
+        acceleration.y = 0;
+        screenSize.x = flock.getWidth();
+        screenSize.y = flock.getHeight();
+        isBiased = flock.isBiased(index);
+        isDebug = flock.isDebug(index);
+        species = flock.getSpecies(index);
+        return this;
+    }
+
+    /**
+     * Updates the Boid's position and velocity based on the current state of the
+     * flock, and writes the result as the boid's next state in the flock.
+     * Neighbours are always read from the flock's current state, so the result
+     * does not depend on the order in which boids are updated.
+     *
+     * @param flock        The flock the boid belongs to.
+     * @param behaviours   The behaviours, and with them the parameters, of the
+     *                     simulation the flock belongs to. Only the behaviours
+     *                     in its pipeline are run.
+     * @param spatialIndex A spatial index built from the flock's current state.
+     * @param dt           The time the update covers, in reference ticks, see
+     *                     {@link behaviour.TimeStep}.
+     */
+    public void update(Flock flock, BehaviourSet behaviours, SpatialIndex spatialIndex, float dt) {
+        update(flock, behaviours, spatialIndex, dt, dt, null);
     }
 
     /**
-     * Updates the Boid's position and velocity based on its current acceleration.
-     * After updating, it resets the acceleration for the next cycle and ensures
-     * that the Boid wraps around the screen borders, creating a toroidal space.
+     * Updates the Boid like {@link #update(Flock, BehaviourSet, SpatialIndex,
+     * float)}, optionally steering it on only some updates, and measuring the
+     * time each behaviour takes.
+     *
+     * @param steeringDt     The time the steering behaviours cover: dt when the
+     *                       boid is steered on every update, a multiple of it
+     *                       when only on some, or 0 to let it coast on this one.
+     *                       Constraints always run.
+     * @param behaviourNanos The time taken so far by each behaviour, by its
+     *                       index in the {@link BehaviourSet}, or null not to
+     *                       measure.
      */
-    public void update(List<Boid> boids) {
-        avoidanceBehavior.applyBehavior(this, boids);
-        alignmentBehavior.applyBehavior(this, boids);
-        cohesionBehavior.applyBehavior(this, boids);
-        biasBehaviour.applyBehavior(this, boids);
+    public void update(Flock flock, BehaviourSet behaviours, SpatialIndex spatialIndex, float dt, float steeringDt,
+            long[] behaviourNanos) {
+        BehaviourPipeline pipeline = behaviours.getPipeline();
+        if (steeringDt > 0) {
+            if (behaviourNanos == null)
+                pipeline.steer(this, flock, spatialIndex, steeringDt);
+            else
+                pipeline.steer(this, flock, spatialIndex, steeringDt, behaviourNanos);
+        }
 
         // Calculate new velocity based on current acceleration
         Vector newVelocity = new Vector(velocity.x, velocity.y);
@@ -78,51 +121,69 @@ public class Boid {
             newVelocity.multiply(velocity.magnitude()); // Maintain original speed
         }
 
-        // Apply the adjusted velocity and update the position
+        // Apply the adjusted velocity and move for the length of the time step
         velocity = newVelocity;
-        position.add(velocity);
+        position.x += velocity.x * dt;
+        position.y += velocity.y * dt;
 
-        limitSpeedBehaviour.applyBehavior(this, boids);
-        wrapBehaviour.applyBehavior(this, boids);
+        if (behaviourNanos == null)
+            pipeline.constrain(this, flock, spatialIndex, dt);
+        else
+            pipeline.constrain(this, flock, spatialIndex, dt, behaviourNanos);
 
         acceleration.multiply(0);
-    }
 
-    /**
-     * Sets the size of the screen for the Boid to use when wrapping around the
-     * edges.
-     * 
-     * @param width  The width of the screen.
-     * @param height The height of the screen.
-     */
-    public void setScreenSize(float width, float height) {
-        screenSize = new Vector(width, height);
+        flock.setNext(index, position.x, position.y, velocity.x, velocity.y);
     }
 
     /**
-     * Sets the debug mode for the Boid. When debug mode is enabled, the Boid will
-     * display additional information, such as its protected area and field of view.
-     * 
-     * @param isDebug Whether to enable debug mode.
+     * Gets the index of the boid this Boid was last loaded from.
+     *
+     * @return The index of the boid in its flock.
      */
-    public void setDebug(boolean isDebug) {
-        this.isDebug = isDebug;
+    public int getIndex() {
+        return index;
     }
 
     /**
      * Gets the debug mode for the Boid.
-     * 
+     *
      * @return Whether debug mode is enabled.
      */
     public boolean isDebug() {
         return isDebug;
     }
 
-    public void setBiased(boolean isBiased) {
-        this.isBiased = isBiased;
-    }
-
     public boolean isBiased() {
         return isBiased;
     }
+
+    /**
+     * Gets the species of the boid this Boid was last loaded from.
+     *
+     * @return The ID of the species in the simulation's {@link SpeciesTable}.
+     */
+    public int getSpecies() {
+        return species;
+    }
+
+    /**
+     * Gets the list behaviours collect this Boid's neighbours in. Its contents
+     * are only valid until the next query.
+     *
+     * @return The neighbour list.
+     */
+    public NeighbourList getNeighbours() {
+        return neighbours;
+    }
+
+    /**
+     * Gets the sums behaviours aggregate this Boid's neighbours in. Its contents
+     * are only valid until the next query.
+     *
+     * @return The aggregate.
+     */
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
 }
@@ -0,0 +1,279 @@
+package models;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import spatial.StaticGrid;
+
+/**
+ * The static surroundings of a flock: weighted attractors that draw boids in
+ * (or, with a negative weight, push them away) and obstacles made of line
+ * segments. Like {@link Flock}, the geometry is held in parallel primitive
+ * arrays. It never changes once built, and is indexed up front by two
+ * {@link StaticGrid}s so that each boid only looks at the geometry near it.
+ *
+ * An environment can be read from a plain text file, one item per line:
+ *
+ * <pre>
+ * # attractor x y weight radius
+ * attractor 200 150 1 250
+ * attractor 600 450 -0.5 100
+ * # obstacle x1 y1 x2 y2 x3 y3 ... (a closed polygon)
+ * obstacle 350 250 450 250 450 350 350 350
+ * # wall x1 y1 x2 y2 ... (an open chain of segments)
+ * wall 100 500 300 550
+ * </pre>
+ *
+ * Lines starting with {@code #} are ignored.
+ */
+public class Environment {
+    /** An environment with nothing in it. */
+    public static final Environment EMPTY = new Builder().build();
+
+    // Cell size of the static grids, about the size of a boid's neighbourhood
+    private static final float CELL_SIZE = 32;
+
+    private final float[] attractorX;
+    private final float[] attractorY;
+    private final float[] attractorWeight;
+    private final float[] attractorRadius;
+
+    private final float[] segmentX1;
+    private final float[] segmentY1;
+    private final float[] segmentX2;
+    private final float[] segmentY2;
+
+    private final StaticGrid attractorGrid;
+    private final StaticGrid segmentGrid;
+
+    private Environment(Builder builder) {
+        int attractors = builder.attractors.size() / 4;
+        attractorX = new float[attractors];
+        attractorY = new float[attractors];
+        attractorWeight = new float[attractors];
+        attractorRadius = new float[attractors];
+        float[] minX = new float[attractors];
+        float[] minY = new float[attractors];
+        float[] maxX = new float[attractors];
+        float[] maxY = new float[attractors];
+        for (int i = 0; i < attractors; i++) {
+            attractorX[i] = builder.attractors.get(i * 4);
+            attractorY[i] = builder.attractors.get(i * 4 + 1);
+            attractorWeight[i] = builder.attractors.get(i * 4 + 2);
+            attractorRadius[i] = builder.attractors.get(i * 4 + 3);
+            minX[i] = attractorX[i] - attractorRadius[i];
+            minY[i] = attractorY[i] - attractorRadius[i];
+            maxX[i] = attractorX[i] + attractorRadius[i];
+            maxY[i] = attractorY[i] + attractorRadius[i];
+        }
+        attractorGrid = new StaticGrid(CELL_SIZE, minX, minY, maxX, maxY);
+
+        int segments = builder.segments.size() / 4;
+        segmentX1 = new float[segments];
+        segmentY1 = new float[segments];
+        segmentX2 = new float[segments];
+        segmentY2 = new float[segments];
+        minX = new float[segments];
+        minY = new float[segments];
+        maxX = new float[segments];
+        maxY = new float[segments];
+        for (int i = 0; i < segments; i++) {
+            segmentX1[i] = builder.segments.get(i * 4);
+            segmentY1[i] = builder.segments.get(i * 4 + 1);
+            segmentX2[i] = builder.segments.get(i * 4 + 2);
+            segmentY2[i] = builder.segments.get(i * 4 + 3);
+            minX[i] = Math.min(segmentX1[i], segmentX2[i]);
+            minY[i] = Math.min(segmentY1[i], segmentY2[i]);
+            maxX[i] = Math.max(segmentX1[i], segmentX2[i]);
+            maxY[i] = Math.max(segmentY1[i], segmentY2[i]);
+        }
+        segmentGrid = new StaticGrid(CELL_SIZE, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Reads an environment from a file.
+     *
+     * @param file The file to read.
+     * @return The environment.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    public static Environment read(Path file) throws IOException {
+        return parse(Files.readAllLines(file));
+    }
+
+    /**
+     * Parses an environment from its lines.
+     *
+     * @param lines The lines of the environment file.
+     * @return The environment.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    public static Environment parse(List<String> lines) {
+        Builder builder = new Builder();
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] words = line.split("\\s+");
+            float[] values = new float[words.length - 1];
+            try {
+                for (int i = 0; i < values.length; i++)
+                    values[i] = Float.parseFloat(words[i + 1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": invalid number", e);
+            }
+
+            switch (words[0]) {
+                case "attractor":
+                    if (values.length != 4)
+                        throw new IllegalArgumentException("Line " + lineNumber + ": expected x y weight radius");
+                    builder.addAttractor(values[0], values[1], values[2], values[3]);
+                    break;
+                case "obstacle":
+                    if (values.length < 6 || values.length % 2 != 0)
+                        throw new IllegalArgumentException("Line " + lineNumber + ": expected at least 3 points");
+                    builder.addPolygon(values);
+                    break;
+                case "wall":
+                    if (values.length < 4 || values.length % 2 != 0)
+                        throw new IllegalArgumentException("Line " + lineNumber + ": expected at least 2 points");
+                    builder.addChain(values);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Line " + lineNumber + ": unknown item " + words[0]);
+            }
+        }
+        return builder.build();
+    }
+
+    public boolean isEmpty() {
+        return attractorX.length == 0 && segmentX1.length == 0;
+    }
+
+    public int getAttractorCount() {
+        return attractorX.length;
+    }
+
+    public float getAttractorX(int attractor) {
+        return attractorX[attractor];
+    }
+
+    public float getAttractorY(int attractor) {
+        return attractorY[attractor];
+    }
+
+    public float getAttractorWeight(int attractor) {
+        return attractorWeight[attractor];
+    }
+
+    public float getAttractorRadius(int attractor) {
+        return attractorRadius[attractor];
+    }
+
+    public int getSegmentCount() {
+        return segmentX1.length;
+    }
+
+    public float getSegmentX1(int segment) {
+        return segmentX1[segment];
+    }
+
+    public float getSegmentY1(int segment) {
+        return segmentY1[segment];
+    }
+
+    public float getSegmentX2(int segment) {
+        return segmentX2[segment];
+    }
+
+    public float getSegmentY2(int segment) {
+        return segmentY2[segment];
+    }
+
+    /**
+     * Gets the index of the attractors, which lists each attractor in every cell
+     * its radius reaches. A point query returns every attractor that may
+     * influence a boid at that point.
+     *
+     * @return The attractor index.
+     */
+    public StaticGrid getAttractorGrid() {
+        return attractorGrid;
+    }
+
+    /**
+     * Gets the index of the obstacle segments.
+     *
+     * @return The segment index.
+     */
+    public StaticGrid getSegmentGrid() {
+        return segmentGrid;
+    }
+
+    /**
+     * Collects attractors and obstacles, then builds an environment and its
+     * indexes from them in one go.
+     */
+    public static class Builder {
+        private final List<Float> attractors = new ArrayList<>();
+        private final List<Float> segments = new ArrayList<>();
+
+        /**
+         * Adds an attractor.
+         *
+         * @param x      The x position of the attractor.
+         * @param y      The y position of the attractor.
+         * @param weight How strongly boids are drawn in, negative to push them away.
+         * @param radius The distance within which the attractor has an effect.
+         * @return This builder.
+         */
+        public Builder addAttractor(float x, float y, float weight, float radius) {
+            attractors.add(x);
+            attractors.add(y);
+            attractors.add(weight);
+            attractors.add(Math.max(0, radius));
+            return this;
+        }
+
+        /**
+         * Adds a closed polygonal obstacle.
+         *
+         * @param points The corners of the polygon as x, y pairs.
+         * @return This builder.
+         */
+        public Builder addPolygon(float... points) {
+            addChain(points);
+            int last = points.length - 2;
+            addSegment(points[last], points[last + 1], points[0], points[1]);
+            return this;
+        }
+
+        /**
+         * Adds an open chain of obstacle segments.
+         *
+         * @param points The points along the chain as x, y pairs.
+         * @return This builder.
+         */
+        public Builder addChain(float... points) {
+            for (int i = 0; i + 3 < points.length; i += 2)
+                addSegment(points[i], points[i + 1], points[i + 2], points[i + 3]);
+            return this;
+        }
+
+        private void addSegment(float x1, float y1, float x2, float y2) {
+            segments.add(x1);
+            segments.add(y1);
+            segments.add(x2);
+            segments.add(y2);
+        }
+
+        public Environment build() {
+            return new Environment(this);
+        }
+    }
+}
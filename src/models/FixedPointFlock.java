@@ -0,0 +1,190 @@
+package models;
+
+import java.nio.FloatBuffer;
+
+import util.Vector;
+
+/**
+ * A flock whose positions are stored as fixed-point integers rather than
+ * floats. Every position lies on the same grid of 2<sup>-bits</sup> pixels,
+ * so a boid has the same precision anywhere in the world, where a float has
+ * more near the origin than at the far edge. Wrapping is exact integer
+ * arithmetic: a boid leaving one edge reappears at exactly the matching point
+ * on the other, however many times it crosses.
+ *
+ * Behaviours still see positions as floats. The number of fraction bits is the
+ * largest that keeps every stored position, at least three worlds beyond
+ * either edge, within the 24 significant bits of a float, so reading a
+ * position never rounds it and a flock restored from floats holds exactly the
+ * same values. For an 800 by 600 world that is 12 bits. Positions further out
+ * are clamped to that range. Velocities are stored as floats.
+ */
+public class FixedPointFlock extends Flock {
+    // Largest magnitude a float holds exactly as an integer
+    private static final int LIMIT = (1 << 24) - 1;
+    private static final int MAX_FRACTION_BITS = 16;
+
+    private final float scale;
+    private final float inverseScale;
+    private final int fixedWidth;
+    private final int fixedHeight;
+
+    private int[] x;
+    private int[] y;
+    private float[] velocityX;
+    private float[] velocityY;
+
+    private int[] nextX;
+    private int[] nextY;
+    private float[] nextVelocityX;
+    private float[] nextVelocityY;
+
+    /**
+     * Constructs a flock of boids, all initially at the origin and at rest.
+     *
+     * @param size   The number of boids in the flock.
+     * @param width  The width of the world the flock lives in.
+     * @param height The height of the world the flock lives in.
+     */
+    public FixedPointFlock(int size, float width, float height) {
+        super(size, width, height, false);
+
+        // Room for positions at least three worlds beyond either edge
+        float extent = 4 * Math.max(Math.max(width, height), 1);
+        int bits = 0;
+        while (bits < MAX_FRACTION_BITS && extent * (1 << (bits + 1)) <= LIMIT)
+            bits++;
+        scale = 1 << bits;
+        inverseScale = 1f / scale;
+        fixedWidth = toFixed(width);
+        fixedHeight = toFixed(height);
+
+        x = new int[size];
+        y = new int[size];
+        velocityX = new float[size];
+        velocityY = new float[size];
+        nextX = new int[size];
+        nextY = new int[size];
+        nextVelocityX = new float[size];
+        nextVelocityY = new float[size];
+    }
+
+    private int toFixed(float value) {
+        // Scaling by a power of two is exact, so only the rounding loses anything
+        return Math.max(-LIMIT, Math.min(LIMIT, Math.round(value * scale)));
+    }
+
+    private float toFloat(int fixed) {
+        return fixed * inverseScale;
+    }
+
+    @Override
+    public float getX(int boid) {
+        return toFloat(x[boid]);
+    }
+
+    @Override
+    public float getY(int boid) {
+        return toFloat(y[boid]);
+    }
+
+    @Override
+    public float getVelocityX(int boid) {
+        return velocityX[boid];
+    }
+
+    @Override
+    public float getVelocityY(int boid) {
+        return velocityY[boid];
+    }
+
+    @Override
+    public void set(int boid, float x, float y, float velocityX, float velocityY) {
+        this.x[boid] = toFixed(x);
+        this.y[boid] = toFixed(y);
+        this.velocityX[boid] = velocityX;
+        this.velocityY[boid] = velocityY;
+    }
+
+    @Override
+    public void setNext(int boid, float x, float y, float velocityX, float velocityY) {
+        nextX[boid] = toFixed(x);
+        nextY[boid] = toFixed(y);
+        nextVelocityX[boid] = velocityX;
+        nextVelocityY[boid] = velocityY;
+    }
+
+    @Override
+    public void swap() {
+        int[] swapFixed = x;
+        x = nextX;
+        nextX = swapFixed;
+
+        swapFixed = y;
+        y = nextY;
+        nextY = swapFixed;
+
+        float[] swap = velocityX;
+        velocityX = nextVelocityX;
+        nextVelocityX = swap;
+
+        swap = velocityY;
+        velocityY = nextVelocityY;
+        nextVelocityY = swap;
+    }
+
+    /**
+     * Wraps a position into the world in fixed point, so that it ends up in
+     * [0, width) and [0, height) exactly.
+     */
+    @Override
+    public void wrap(Vector position) {
+        if (fixedWidth > 0)
+            position.x = toFloat(Math.floorMod(toFixed(position.x), fixedWidth));
+        if (fixedHeight > 0)
+            position.y = toFloat(Math.floorMod(toFixed(position.y), fixedHeight));
+    }
+
+    /**
+     * Gets the current state as floats. The positions are converted copies, so
+     * {@link #setState} converts back rather than writing into these.
+     */
+    @Override
+    protected FloatBuffer[] getColumns() {
+        int size = size();
+        float[] floatX = new float[size];
+        float[] floatY = new float[size];
+        for (int i = 0; i < size; i++) {
+            floatX[i] = toFloat(x[i]);
+            floatY[i] = toFloat(y[i]);
+        }
+        return new FloatBuffer[] { FloatBuffer.wrap(floatX), FloatBuffer.wrap(floatY), FloatBuffer.wrap(velocityX),
+                FloatBuffer.wrap(velocityY) };
+    }
+
+    /**
+     * Converts only the positions of the boids asked for, so that copying the
+     * flock a piece at a time does not convert all of it for every piece.
+     */
+    @Override
+    public void getState(int from, int to, FloatBuffer x, FloatBuffer y, FloatBuffer velocityX,
+            FloatBuffer velocityY) {
+        for (int i = from; i < to; i++)
+            x.put(toFloat(this.x[i]));
+        for (int i = from; i < to; i++)
+            y.put(toFloat(this.y[i]));
+        velocityX.put(this.velocityX, from, to - from);
+        velocityY.put(this.velocityY, from, to - from);
+    }
+
+    @Override
+    public void setState(int from, int to, FloatBuffer x, FloatBuffer y, FloatBuffer velocityX,
+            FloatBuffer velocityY) {
+        for (int i = from; i < to; i++)
+            this.x[i] = toFixed(x.get());
+        for (int i = from; i < to; i++)
+            this.y[i] = toFixed(y.get());
+        velocityX.get(this.velocityX, from, to - from);
+        velocityY.get(this.velocityY, from, to - from);
+    }
+}
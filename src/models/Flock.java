@@ -0,0 +1,406 @@
+package models;
+
+import java.nio.FloatBuffer;
+
+import util.RandomSource;
+import util.Vector;
+
+/**
+ * Stores the state of every boid in a flock as parallel primitive arrays, one
+ * entry per boid. The state is double buffered: behaviours read the current
+ * positions and velocities of every boid while each boid's new state is
+ * written to a separate buffer, and {@link #swap()} publishes the new state
+ * once every boid has been updated. Because no boid ever sees a neighbour's
+ * half-updated state, the flock can be updated by any number of threads and
+ * always produces the same result.
+ *
+ * Positions and velocities live on the heap here; {@link OffHeapFlock} keeps
+ * them outside it for flocks too large for the heap, and
+ * {@link FixedPointFlock} stores positions as fixed-point integers. Bulk copies
+ * go through {@link #getState}, {@link #setState} and {@link #copyTo}, which
+ * work with any of them.
+ */
+public class Flock {
+    private final int size;
+    private final float width;
+    private final float height;
+
+    private float[] x;
+    private float[] y;
+    private float[] velocityX;
+    private float[] velocityY;
+
+    private float[] nextX;
+    private float[] nextY;
+    private float[] nextVelocityX;
+    private float[] nextVelocityY;
+
+    // Biased boids, one bit per boid. The biased boids are always the first
+    // biasedCount entries of biasOrder, so the share of biased boids can be
+    // changed by flipping only the boids at the boundary.
+    private final long[] biasedBits;
+    private final int[] biasOrder;
+    private final int[] biasRank;
+    private int biasedCount;
+
+    private final boolean[] isDebug;
+    // Species of each boid, an ID into the simulation's SpeciesTable
+    private final byte[] species;
+
+    /**
+     * Constructs a flock of boids, all initially at the origin and at rest.
+     *
+     * @param size   The number of boids in the flock.
+     * @param width  The width of the world the flock lives in.
+     * @param height The height of the world the flock lives in.
+     */
+    public Flock(int size, float width, float height) {
+        this(size, width, height, true);
+    }
+
+    /**
+     * Constructs a flock, leaving out the position and velocity arrays when a
+     * subclass stores them elsewhere.
+     */
+    protected Flock(int size, float width, float height, boolean hasArrays) {
+        this.size = size;
+        this.width = width;
+        this.height = height;
+
+        if (hasArrays) {
+            x = new float[size];
+            y = new float[size];
+            velocityX = new float[size];
+            velocityY = new float[size];
+            nextX = new float[size];
+            nextY = new float[size];
+            nextVelocityX = new float[size];
+            nextVelocityY = new float[size];
+        }
+
+        biasedBits = new long[(size + 63) >>> 6];
+        biasOrder = new int[size];
+        biasRank = new int[size];
+        for (int i = 0; i < size; i++) {
+            biasOrder[i] = i;
+            biasRank[i] = i;
+        }
+        isDebug = new boolean[size];
+        species = new byte[size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public float getX(int boid) {
+        return x[boid];
+    }
+
+    public float getY(int boid) {
+        return y[boid];
+    }
+
+    public float getVelocityX(int boid) {
+        return velocityX[boid];
+    }
+
+    public float getVelocityY(int boid) {
+        return velocityY[boid];
+    }
+
+    /**
+     * Sets the current state of a boid. Only used to initialise the flock,
+     * updates during a tick go through {@link #setNext}.
+     *
+     * @param boid      The index of the boid.
+     * @param x         The x position.
+     * @param y         The y position.
+     * @param velocityX The x velocity.
+     * @param velocityY The y velocity.
+     */
+    public void set(int boid, float x, float y, float velocityX, float velocityY) {
+        this.x[boid] = x;
+        this.y[boid] = y;
+        this.velocityX[boid] = velocityX;
+        this.velocityY[boid] = velocityY;
+    }
+
+    /**
+     * Sets the state a boid will have after the current tick.
+     *
+     * @param boid      The index of the boid.
+     * @param x         The new x position.
+     * @param y         The new y position.
+     * @param velocityX The new x velocity.
+     * @param velocityY The new y velocity.
+     */
+    public void setNext(int boid, float x, float y, float velocityX, float velocityY) {
+        nextX[boid] = x;
+        nextY[boid] = y;
+        nextVelocityX[boid] = velocityX;
+        nextVelocityY[boid] = velocityY;
+    }
+
+    /**
+     * Publishes the state written with {@link #setNext} as the current state.
+     * Must only be called once every boid has been updated.
+     */
+    public void swap() {
+        float[] swap = x;
+        x = nextX;
+        nextX = swap;
+
+        swap = y;
+        y = nextY;
+        nextY = swap;
+
+        swap = velocityX;
+        velocityX = nextVelocityX;
+        nextVelocityX = swap;
+
+        swap = velocityY;
+        velocityY = nextVelocityY;
+        nextVelocityY = swap;
+    }
+
+    /**
+     * Brings a position that has left the world back in on the opposite side.
+     *
+     * @param position The position, changed in place.
+     */
+    public void wrap(Vector position) {
+        // Check horizontal boundaries
+        if (position.x < 0)
+            position.x += width;
+        if (position.x > width)
+            position.x -= width;
+
+        // Check vertical boundaries
+        if (position.y < 0)
+            position.y += height;
+        if (position.y > height)
+            position.y -= height;
+    }
+
+    public boolean isBiased(int boid) {
+        return (biasedBits[boid >>> 6] & (1L << boid)) != 0;
+    }
+
+    /**
+     * Adds a boid to or removes it from the biased boids.
+     *
+     * @param boid   The index of the boid.
+     * @param biased Whether the boid is biased.
+     */
+    public void setBiased(int boid, boolean biased) {
+        if (biased == isBiased(boid))
+            return;
+
+        // Swap the boid across the boundary between biased and unbiased boids
+        int boundary = biased ? biasedCount : biasedCount - 1;
+        swapBiasOrder(biasRank[boid], boundary);
+        biasedCount += biased ? 1 : -1;
+        biasedBits[boid >>> 6] ^= 1L << boid;
+    }
+
+    public int getBiasedCount() {
+        return biasedCount;
+    }
+
+    /**
+     * Changes the number of biased boids. Boids join and leave in a fixed order,
+     * so only the boids between the old and new count change, and raising the
+     * count again brings back the same boids that were removed.
+     *
+     * @param count The number of boids that should be biased.
+     */
+    public void setBiasedCount(int count) {
+        count = Math.max(0, Math.min(size, count));
+        while (biasedCount < count) {
+            int boid = biasOrder[biasedCount++];
+            biasedBits[boid >>> 6] |= 1L << boid;
+        }
+        while (biasedCount > count) {
+            int boid = biasOrder[--biasedCount];
+            biasedBits[boid >>> 6] &= ~(1L << boid);
+        }
+    }
+
+    /**
+     * Shuffles the order in which boids become biased, keeping the number of
+     * biased boids. Used once when a flock is created, so that biased boids are
+     * spread through the flock rather than taken in index order.
+     *
+     * @param random The source of the shuffle.
+     */
+    public void shuffleBiasOrder(RandomSource random) {
+        int count = biasedCount;
+        setBiasedCount(0);
+        for (int i = size - 1; i > 0; i--)
+            swapBiasOrder(i, random.nextInt(i + 1));
+        setBiasedCount(count);
+    }
+
+    /**
+     * Gets the order in which boids become biased, for saving with a checkpoint.
+     * The first {@link #getBiasedCount()} entries are the biased boids.
+     *
+     * @return The live order array, which must not be modified.
+     */
+    public int[] getBiasOrder() {
+        return biasOrder;
+    }
+
+    /**
+     * Replaces the order in which boids become biased and the number of biased
+     * boids, as saved with a checkpoint.
+     *
+     * @param order The order, a permutation of every boid index.
+     * @param count The number of biased boids.
+     */
+    public void setBiasOrder(int[] order, int count) {
+        setBiasedCount(0);
+        System.arraycopy(order, 0, biasOrder, 0, size);
+        for (int i = 0; i < size; i++)
+            biasRank[biasOrder[i]] = i;
+        setBiasedCount(count);
+    }
+
+    private void swapBiasOrder(int a, int b) {
+        int boidA = biasOrder[a];
+        int boidB = biasOrder[b];
+        biasOrder[a] = boidB;
+        biasOrder[b] = boidA;
+        biasRank[boidB] = a;
+        biasRank[boidA] = b;
+    }
+
+    public boolean isDebug(int boid) {
+        return isDebug[boid];
+    }
+
+    public void setDebug(int boid, boolean debug) {
+        isDebug[boid] = debug;
+    }
+
+    public int getSpecies(int boid) {
+        return species[boid];
+    }
+
+    /**
+     * Moves a boid to another species.
+     *
+     * @param boid    The index of the boid.
+     * @param species The ID of the species, less than
+     *                {@link SpeciesTable#MAX_SPECIES}.
+     */
+    public void setSpecies(int boid, int species) {
+        this.species[boid] = (byte) species;
+    }
+
+    /**
+     * Gets the species of every boid, for bulk copies such as checkpoints.
+     *
+     * @return The live species array, indexed by boid.
+     */
+    public byte[] getSpeciesIds() {
+        return species;
+    }
+
+    /**
+     * Gets the current x positions, y positions, x velocities and y velocities
+     * of every boid as buffers over the flock's own storage, for bulk copies.
+     * They are replaced on every swap, so must not be held on to.
+     *
+     * @return The four columns, each positioned at the first boid.
+     */
+    protected FloatBuffer[] getColumns() {
+        return new FloatBuffer[] { FloatBuffer.wrap(x, 0, size), FloatBuffer.wrap(y, 0, size),
+                FloatBuffer.wrap(velocityX, 0, size), FloatBuffer.wrap(velocityY, 0, size) };
+    }
+
+    /**
+     * Copies the current position and velocity of every boid into buffers, for
+     * bulk copies such as checkpoints and recordings. Each buffer is advanced
+     * past one value per boid, so the same buffer may be passed more than once
+     * to lay the columns out one after another.
+     *
+     * @param x         Receives the x positions.
+     * @param y         Receives the y positions.
+     * @param velocityX Receives the x velocities.
+     * @param velocityY Receives the y velocities.
+     */
+    public void getState(FloatBuffer x, FloatBuffer y, FloatBuffer velocityX, FloatBuffer velocityY) {
+        getState(0, size, x, y, velocityX, velocityY);
+    }
+
+    /**
+     * Copies the current position and velocity of a run of boids into buffers,
+     * like {@link #getState(FloatBuffer, FloatBuffer, FloatBuffer, FloatBuffer)},
+     * so that a flock can be copied a piece at a time.
+     *
+     * @param from The first boid to copy.
+     * @param to   One past the last boid to copy.
+     */
+    public void getState(int from, int to, FloatBuffer x, FloatBuffer y, FloatBuffer velocityX,
+            FloatBuffer velocityY) {
+        FloatBuffer[] columns = getColumns();
+        FloatBuffer[] targets = { x, y, velocityX, velocityY };
+        for (int i = 0; i < columns.length; i++) {
+            targets[i].put(targets[i].position(), columns[i], from, to - from);
+            targets[i].position(targets[i].position() + to - from);
+        }
+    }
+
+    /**
+     * Replaces the current position and velocity of every boid with values read
+     * from buffers, the reverse of {@link #getState}.
+     *
+     * @param x         The x positions.
+     * @param y         The y positions.
+     * @param velocityX The x velocities.
+     * @param velocityY The y velocities.
+     */
+    public void setState(FloatBuffer x, FloatBuffer y, FloatBuffer velocityX, FloatBuffer velocityY) {
+        setState(0, size, x, y, velocityX, velocityY);
+    }
+
+    /**
+     * Replaces the current position and velocity of a run of boids with values
+     * read from buffers, the reverse of
+     * {@link #getState(int, int, FloatBuffer, FloatBuffer, FloatBuffer, FloatBuffer)}.
+     *
+     * @param from The first boid to replace.
+     * @param to   One past the last boid to replace.
+     */
+    public void setState(int from, int to, FloatBuffer x, FloatBuffer y, FloatBuffer velocityX,
+            FloatBuffer velocityY) {
+        FloatBuffer[] columns = getColumns();
+        FloatBuffer[] sources = { x, y, velocityX, velocityY };
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].put(from, sources[i], sources[i].position(), to - from);
+            sources[i].position(sources[i].position() + to - from);
+        }
+    }
+
+    /**
+     * Copies the current position, velocity and species of every boid into
+     * another flock of the same size, such as a snapshot.
+     *
+     * @param target The flock to copy into.
+     */
+    public void copyTo(Flock target) {
+        FloatBuffer[] columns = getColumns();
+        target.setState(columns[0], columns[1], columns[2], columns[3]);
+        System.arraycopy(species, 0, target.species, 0, size);
+    }
+}
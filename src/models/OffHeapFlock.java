@@ -0,0 +1,244 @@
+package models;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A flock whose positions and velocities are stored outside the Java heap, so
+ * that the state rewritten on every tick gives the garbage collector nothing
+ * to copy, and can live in a file. Behaviours read and write it through the
+ * same accessors as any other {@link Flock}.
+ *
+ * The state can live in anonymous native memory, or in a memory-mapped file
+ * that the operating system writes back on its own. A mapped flock survives
+ * the process: {@link #open} maps the file again, to inspect or continue the
+ * last state written. Such a file holds a header followed by both buffers of
+ * the double buffered state, column by column, in little-endian order:
+ *
+ * <pre>
+ * header  : magic, version, boid count, width, height, current buffer,
+ *           reserved
+ * buffers : x[], y[], velocity x[], velocity y[], twice
+ * </pre>
+ *
+ * The header's current buffer is updated on every swap, so the file always
+ * names the buffer holding the last complete tick.
+ *
+ * Only those 32 bytes per boid leave the heap; the heap still grows with the
+ * flock. Bias membership and order, debug flags and species stay on it, at
+ * about 10 bytes per boid, and so does the engine's neighbour index: about 24
+ * bytes per boid for a grid rebuilt every tick, about 43 for the incremental
+ * grid, and 12 more once the quad tree has been used. An engine around an
+ * off-heap flock measured about 34 bytes of heap per boid with the rebuilt
+ * grid and 53 with the incremental one, and a
+ * {@link spatial.FlockView} snapshot adds about 42 while one is being asked
+ * for.
+ */
+public class OffHeapFlock extends Flock {
+    private static final int MAGIC = 0x4B4C4642; // "BFLK" in file order
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int CURRENT_OFFSET = 20;
+
+    /** The largest flock a single buffer per column can address. */
+    public static final int MAX_SIZE = Integer.MAX_VALUE / Float.BYTES;
+
+    // Header of the mapped file, or null for anonymous memory
+    private final ByteBuffer header;
+    private int current;
+
+    private FloatBuffer x;
+    private FloatBuffer y;
+    private FloatBuffer velocityX;
+    private FloatBuffer velocityY;
+
+    private FloatBuffer nextX;
+    private FloatBuffer nextY;
+    private FloatBuffer nextVelocityX;
+    private FloatBuffer nextVelocityY;
+
+    /**
+     * Constructs a flock in anonymous native memory, all boids initially at the
+     * origin and at rest. The memory counts towards the JVM's direct memory
+     * limit, {@code -XX:MaxDirectMemorySize}.
+     *
+     * @param size   The number of boids in the flock, at most {@link #MAX_SIZE}.
+     * @param width  The width of the world the flock lives in.
+     * @param height The height of the world the flock lives in.
+     */
+    public OffHeapFlock(int size, float width, float height) {
+        super(checkSize(size), width, height, false);
+        this.header = null;
+
+        FloatBuffer[] columns = new FloatBuffer[8];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = ByteBuffer.allocateDirect(size * Float.BYTES).order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        useColumns(columns);
+    }
+
+    private OffHeapFlock(int size, float width, float height, ByteBuffer header, FloatBuffer[] columns) {
+        super(size, width, height, false);
+        this.header = header;
+        this.current = header.getInt(CURRENT_OFFSET);
+        useColumns(columns);
+    }
+
+    private void useColumns(FloatBuffer[] columns) {
+        int first = current * 4;
+        int second = (1 - current) * 4;
+        x = columns[first];
+        y = columns[first + 1];
+        velocityX = columns[first + 2];
+        velocityY = columns[first + 3];
+        nextX = columns[second];
+        nextY = columns[second + 1];
+        nextVelocityX = columns[second + 2];
+        nextVelocityY = columns[second + 3];
+    }
+
+    /**
+     * Creates a flock stored in a memory-mapped file, all boids initially at the
+     * origin and at rest. The file is replaced if it already exists.
+     *
+     * @param file   The file to store the flock in.
+     * @param size   The number of boids in the flock, at most {@link #MAX_SIZE}.
+     * @param width  The width of the world the flock lives in.
+     * @param height The height of the world the flock lives in.
+     * @return The flock.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public static OffHeapFlock create(Path file, int size, float width, float height) throws IOException {
+        checkSize(size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, size);
+            header.putFloat(12, width);
+            header.putFloat(16, height);
+            header.putInt(CURRENT_OFFSET, 0);
+            return new OffHeapFlock(size, width, height, header, mapColumns(channel, size));
+        }
+    }
+
+    /**
+     * Maps a flock stored by an earlier {@link #create}, with its state as of
+     * the last swap. Changes are written back to the file.
+     *
+     * Only positions and velocities are stored, so every boid comes back
+     * unbiased and in the default species.
+     *
+     * @param file The file the flock is stored in.
+     * @return The flock.
+     * @throws IOException If the file cannot be mapped or does not hold a flock.
+     */
+    public static OffHeapFlock open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException("Not a flock file: " + file);
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException("Not a flock file: " + file);
+            int version = header.getInt(4);
+            if (version != VERSION)
+                throw new IOException("Unsupported flock file version " + version);
+
+            int size = header.getInt(8);
+            int current = header.getInt(CURRENT_OFFSET);
+            if (size < 0 || size > MAX_SIZE || (current != 0 && current != 1)
+                    || channel.size() < HEADER_SIZE + 8L * size * Float.BYTES)
+                throw new IOException("Corrupt flock file: " + file);
+            return new OffHeapFlock(size, header.getFloat(12), header.getFloat(16), header,
+                    mapColumns(channel, size));
+        }
+    }
+
+    private static FloatBuffer[] mapColumns(FileChannel channel, int size) throws IOException {
+        long columnSize = (long) size * Float.BYTES;
+        FloatBuffer[] columns = new FloatBuffer[8];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * columnSize, columnSize)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+        return columns;
+    }
+
+    private static int checkSize(int size) {
+        if (size < 0 || size > MAX_SIZE)
+            throw new IllegalArgumentException("An off-heap flock holds at most " + MAX_SIZE + " boids");
+        return size;
+    }
+
+    @Override
+    public float getX(int boid) {
+        return x.get(boid);
+    }
+
+    @Override
+    public float getY(int boid) {
+        return y.get(boid);
+    }
+
+    @Override
+    public float getVelocityX(int boid) {
+        return velocityX.get(boid);
+    }
+
+    @Override
+    public float getVelocityY(int boid) {
+        return velocityY.get(boid);
+    }
+
+    @Override
+    public void set(int boid, float x, float y, float velocityX, float velocityY) {
+        this.x.put(boid, x);
+        this.y.put(boid, y);
+        this.velocityX.put(boid, velocityX);
+        this.velocityY.put(boid, velocityY);
+    }
+
+    @Override
+    public void setNext(int boid, float x, float y, float velocityX, float velocityY) {
+        nextX.put(boid, x);
+        nextY.put(boid, y);
+        nextVelocityX.put(boid, velocityX);
+        nextVelocityY.put(boid, velocityY);
+    }
+
+    @Override
+    public void swap() {
+        FloatBuffer swap = x;
+        x = nextX;
+        nextX = swap;
+
+        swap = y;
+        y = nextY;
+        nextY = swap;
+
+        swap = velocityX;
+        velocityX = nextVelocityX;
+        nextVelocityX = swap;
+
+        swap = velocityY;
+        velocityY = nextVelocityY;
+        nextVelocityY = swap;
+
+        current = 1 - current;
+        if (header != null)
+            header.putInt(CURRENT_OFFSET, current);
+    }
+
+    @Override
+    protected FloatBuffer[] getColumns() {
+        return new FloatBuffer[] { x.duplicate(), y.duplicate(), velocityX.duplicate(), velocityY.duplicate() };
+    }
+}
@@ -6,7 +6,8 @@ public class Parameter {
     private String description;
     private float min;
     private float max;
-    private float value;
+    // Written by the control panel while simulation threads read it
+    private volatile float value;
 
     public Parameter(String category, String name, String description, float min, float defaultValue, float max) {
         this.category = category;
@@ -0,0 +1,284 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The species of a simulation and how each of them flocks. Every boid belongs
+ * to one species, stored per boid in the {@link Flock}, and behaviours look up
+ * the boid's perception ranges, factors and field of view in this table by its
+ * species ID. How strongly a boid reacts to a neighbour is further scaled by an
+ * interaction weight for the pair of species, one matrix per behaviour, which
+ * is how predators and prey are expressed: prey avoid predators strongly and do
+ * not align with them, while predators are drawn towards prey.
+ *
+ * A value that has not been set for a species follows the behaviour's own
+ * parameter, so a simulation with the single default species behaves exactly
+ * as the control panel says, and added species only override what differs.
+ *
+ * The table may be edited from any thread. Behaviours never read the edited
+ * values directly: {@link #resolve} copies them, with unset values filled in,
+ * into flat arrays at the start of every tick, so a tick sees one consistent
+ * table and the inner loops cost an array load per lookup.
+ */
+public class SpeciesTable {
+    /** Most species a simulation can have, as species IDs are stored in bytes. */
+    public static final int MAX_SPECIES = 128;
+
+    /** The per-species values behaviours look up. */
+    public enum Property {
+        AVOIDANCE_RANGE, AVOIDANCE_FACTOR, AVOIDANCE_FOV, ALIGNMENT_RANGE, ALIGNMENT_FACTOR, COHESION_RANGE,
+        COHESION_FACTOR
+    }
+
+    /** The behaviours with a weight for every pair of species. */
+    public enum Interaction {
+        AVOIDANCE, ALIGNMENT, COHESION
+    }
+
+    private static final Property[] PROPERTIES = Property.values();
+    private static final Interaction[] INTERACTIONS = Interaction.values();
+
+    // Names and values as set, NaN where unset, indexed [species][property]
+    private final List<String> names = new ArrayList<>();
+    private final List<float[]> values = new ArrayList<>();
+    // Interaction weights, indexed [interaction][species * count + other]
+    private final float[][] weights = new float[INTERACTIONS.length][];
+
+    // Resolved copies read by behaviours during a tick
+    private int resolvedCount;
+    private float[][] resolvedValues = new float[PROPERTIES.length][0];
+    private float[][] resolvedWeights = new float[INTERACTIONS.length][0];
+    private boolean[][] resolvedUniform = new boolean[INTERACTIONS.length][0];
+
+    /**
+     * Constructs a table with a single species following every behaviour
+     * parameter.
+     */
+    public SpeciesTable() {
+        for (int i = 0; i < INTERACTIONS.length; i++)
+            weights[i] = new float[0];
+        addSpecies("Boid");
+    }
+
+    /**
+     * Adds a species, with every value following the behaviour parameters and
+     * every interaction weight to and from other species set to 1.
+     *
+     * @param name The name of the species.
+     * @return The ID of the new species.
+     * @throws IllegalStateException If the table already holds
+     *                               {@link #MAX_SPECIES} species.
+     */
+    public synchronized int addSpecies(String name) {
+        int species = names.size();
+        if (species == MAX_SPECIES)
+            throw new IllegalStateException("At most " + MAX_SPECIES + " species are supported");
+
+        names.add(name);
+        float[] unset = new float[PROPERTIES.length];
+        Arrays.fill(unset, Float.NaN);
+        values.add(unset);
+
+        int count = species + 1;
+        for (int i = 0; i < INTERACTIONS.length; i++) {
+            float[] grown = new float[count * count];
+            for (int a = 0; a < count; a++) {
+                for (int b = 0; b < count; b++)
+                    grown[a * count + b] = a < species && b < species ? weights[i][a * species + b] : 1;
+            }
+            weights[i] = grown;
+        }
+        return species;
+    }
+
+    /**
+     * Finds a species by its name.
+     *
+     * @param name The name of the species.
+     * @return The ID of the species, or -1 if there is no species with that name.
+     */
+    public synchronized int find(String name) {
+        return names.indexOf(name);
+    }
+
+    public synchronized int getCount() {
+        return names.size();
+    }
+
+    public synchronized String getName(int species) {
+        return names.get(species);
+    }
+
+    public synchronized void setName(int species, String name) {
+        names.set(species, name);
+    }
+
+    /**
+     * Sets one of a species' values.
+     *
+     * @param species  The ID of the species.
+     * @param property The value to set.
+     * @param value    The new value, or NaN to follow the behaviour parameter.
+     */
+    public synchronized void set(int species, Property property, float value) {
+        values.get(species)[property.ordinal()] = value;
+    }
+
+    /**
+     * Gets one of a species' values as set.
+     *
+     * @param species  The ID of the species.
+     * @param property The value to get.
+     * @return The value, or NaN if it follows the behaviour parameter.
+     */
+    public synchronized float get(int species, Property property) {
+        return values.get(species)[property.ordinal()];
+    }
+
+    /**
+     * Sets how strongly boids of one species react to neighbours of another in
+     * one behaviour. A weight of 0 makes them ignore those neighbours; weights
+     * are never negative, as cohesion and alignment average their neighbours by
+     * weight. Prey flee predators through a large avoidance weight.
+     *
+     * @param interaction The behaviour the weight applies to.
+     * @param species     The ID of the species reacting.
+     * @param other       The ID of the species reacted to.
+     * @param weight      The weight, 1 by default, clamped to at least 0.
+     */
+    public synchronized void setWeight(Interaction interaction, int species, int other, float weight) {
+        int count = names.size();
+        if (species >= count || other >= count)
+            throw new IndexOutOfBoundsException("No such species");
+        weights[interaction.ordinal()][species * count + other] = Math.max(0, weight);
+    }
+
+    public synchronized float getWeight(Interaction interaction, int species, int other) {
+        int count = names.size();
+        if (species >= count || other >= count)
+            throw new IndexOutOfBoundsException("No such species");
+        return weights[interaction.ordinal()][species * count + other];
+    }
+
+    /**
+     * Replaces the whole table with a copy of another, as when a checkpoint is
+     * restored.
+     *
+     * @param other The table to copy.
+     */
+    public void copyFrom(SpeciesTable other) {
+        List<String> otherNames;
+        List<float[]> otherValues = new ArrayList<>();
+        float[][] otherWeights = new float[INTERACTIONS.length][];
+        synchronized (other) {
+            otherNames = new ArrayList<>(other.names);
+            for (float[] row : other.values)
+                otherValues.add(row.clone());
+            for (int i = 0; i < INTERACTIONS.length; i++)
+                otherWeights[i] = other.weights[i].clone();
+        }
+        synchronized (this) {
+            names.clear();
+            names.addAll(otherNames);
+            values.clear();
+            values.addAll(otherValues);
+            System.arraycopy(otherWeights, 0, weights, 0, INTERACTIONS.length);
+        }
+    }
+
+    /**
+     * Takes a consistent copy of the table for the coming tick, filling in each
+     * unset value from the behaviour parameter it follows. Must be called
+     * between ticks, from the thread driving the simulation.
+     *
+     * @param defaults The current behaviour parameter for every property,
+     *                 indexed by {@link Property#ordinal()}.
+     */
+    public synchronized void resolve(float[] defaults) {
+        int count = names.size();
+        if (count != resolvedCount) {
+            resolvedCount = count;
+            for (int i = 0; i < PROPERTIES.length; i++)
+                resolvedValues[i] = new float[count];
+            for (int i = 0; i < INTERACTIONS.length; i++) {
+                resolvedWeights[i] = new float[count * count];
+                resolvedUniform[i] = new boolean[count];
+            }
+        }
+
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            for (int species = 0; species < count; species++) {
+                float value = values.get(species)[i];
+                resolvedValues[i][species] = Float.isNaN(value) ? defaults[i] : value;
+            }
+        }
+        for (int i = 0; i < INTERACTIONS.length; i++) {
+            System.arraycopy(weights[i], 0, resolvedWeights[i], 0, count * count);
+            for (int species = 0; species < count; species++) {
+                boolean isUniform = true;
+                for (int other = 0; other < count; other++)
+                    isUniform &= weights[i][species * count + other] == 1;
+                resolvedUniform[i][species] = isUniform;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of species in the table as of the last {@link #resolve}.
+     *
+     * @return The number of species the resolved arrays cover.
+     */
+    public int getResolvedCount() {
+        return resolvedCount;
+    }
+
+    /**
+     * Gets one value of every species as of the last {@link #resolve}.
+     *
+     * @param property The value to get.
+     * @return The live array indexed by species ID, which must not be modified.
+     */
+    public float[] getResolved(Property property) {
+        return resolvedValues[property.ordinal()];
+    }
+
+    /**
+     * Gets the interaction weights of one behaviour as of the last
+     * {@link #resolve}, a boid of species {@code s} weighing a neighbour of
+     * species {@code o} by entry {@code s * getResolvedCount() + o}.
+     *
+     * @param interaction The behaviour.
+     * @return The live weight matrix, which must not be modified.
+     */
+    public float[] getResolvedWeights(Interaction interaction) {
+        return resolvedWeights[interaction.ordinal()];
+    }
+
+    /**
+     * Gets whether a species weighs every neighbour by 1 in one behaviour, as of
+     * the last {@link #resolve}. Only such species can have their neighbours
+     * summed a group at a time without looking at each neighbour's species.
+     *
+     * @param interaction The behaviour.
+     * @param species     The ID of the species.
+     * @return Whether every weight of the species is 1.
+     */
+    public boolean isResolvedUniform(Interaction interaction, int species) {
+        return resolvedUniform[interaction.ordinal()][species];
+    }
+
+    /**
+     * Gets the largest value any species has, as of the last {@link #resolve}.
+     *
+     * @param property The value to compare.
+     * @return The largest value.
+     */
+    public float getResolvedMax(Property property) {
+        float max = 0;
+        for (float value : resolvedValues[property.ordinal()])
+            max = Math.max(max, value);
+        return max;
+    }
+}
@@ -0,0 +1,206 @@
+package net;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import recording.TrajectoryFormat;
+
+/**
+ * Connects to a {@link StreamServer}, decodes the frames it sends and sends
+ * parameter updates back. Frames are read on the caller's thread with
+ * {@link #readFrame()}; updates may be sent from any thread.
+ */
+public class StreamClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final float velocityScale;
+
+    private long tick = -1;
+    private float width;
+    private float height;
+    private int boidCount;
+    private short[] columns = new short[0];
+    private byte[] payload = new byte[0];
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] vx = new float[0];
+    private float[] vy = new float[0];
+
+    /**
+     * Connects to a server on the loopback interface and reads its greeting.
+     *
+     * @param port The port the server listens on.
+     * @throws IOException If the connection fails or the server does not speak
+     *                     the stream protocol.
+     */
+    public StreamClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        input = new DataInputStream(socket.getInputStream());
+        output = new BufferedOutputStream(socket.getOutputStream());
+
+        try {
+            if (input.readInt() != StreamFormat.MAGIC)
+                throw new IOException("Not a flock stream server on port " + port);
+            int version = input.readInt();
+            if (version != StreamFormat.VERSION)
+                throw new IOException("Unsupported stream version " + version);
+            velocityScale = input.readFloat();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the next frame and decodes it.
+     *
+     * @return Whether a frame was read, false once the server has gone.
+     * @throws IOException If the stream is corrupt.
+     */
+    public boolean readFrame() throws IOException {
+        byte type;
+        try {
+            type = input.readByte();
+        } catch (EOFException e) {
+            return false;
+        }
+
+        long frameTick = input.readLong();
+        int count = input.readInt();
+        float frameWidth = input.readFloat();
+        float frameHeight = input.readFloat();
+        int length = input.readInt();
+        if (count < 0 || length < 0)
+            throw new IOException("Corrupt frame header");
+        if (payload.length < length)
+            payload = new byte[length];
+        input.readFully(payload, 0, length);
+
+        if (type == StreamFormat.KEY_FRAME) {
+            if (length != count * 8)
+                throw new IOException("Corrupt key frame");
+            if (columns.length != count * 4)
+                columns = new short[count * 4];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = (short) ((payload[i * 2] << 8) | (payload[i * 2 + 1] & 0xFF));
+        } else if (type == StreamFormat.DELTA_FRAME) {
+            if (count != boidCount || tick < 0)
+                throw new IOException("Delta frame without a key frame");
+            int position = 0;
+            for (int i = 0; i < columns.length; i++) {
+                int zigZag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    if (position == length)
+                        throw new IOException("Corrupt delta frame");
+                    b = payload[position++];
+                    zigZag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                columns[i] = (short) (columns[i] + TrajectoryFormat.unZigZag(zigZag));
+            }
+        } else {
+            throw new IOException("Unknown frame type " + type);
+        }
+
+        tick = frameTick;
+        width = frameWidth;
+        height = frameHeight;
+        boidCount = count;
+        if (x.length != count) {
+            x = new float[count];
+            y = new float[count];
+            vx = new float[count];
+            vy = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            x[i] = TrajectoryFormat.dequantisePosition(columns[i], width);
+            y[i] = TrajectoryFormat.dequantisePosition(columns[count + i], height);
+            vx[i] = TrajectoryFormat.dequantiseVelocity(columns[2 * count + i], velocityScale);
+            vy[i] = TrajectoryFormat.dequantiseVelocity(columns[3 * count + i], velocityScale);
+        }
+        return true;
+    }
+
+    /**
+     * Sets a parameter of the simulation, as the control panel would.
+     *
+     * @param group     The name of the parameter group, e.g. "Cohesion".
+     * @param parameter The name of the parameter, e.g. "Range".
+     * @param value     The new value.
+     * @throws IOException If the update could not be sent.
+     */
+    public void setParameter(String group, String parameter, float value) throws IOException {
+        send(StreamFormat.SET + "\t" + group + "\t" + parameter + "\t" + value);
+    }
+
+    /**
+     * Enables or disables a behaviour of the simulation.
+     *
+     * @param behaviour The name of the behaviour, e.g. "Cohesion".
+     * @param enabled   Whether the behaviour should be enabled.
+     * @throws IOException If the update could not be sent.
+     */
+    public void setEnabled(String behaviour, boolean enabled) throws IOException {
+        send(StreamFormat.ENABLE + "\t" + behaviour + "\t" + enabled);
+    }
+
+    private synchronized void send(String line) throws IOException {
+        output.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    /**
+     * Gets the tick of the last frame read.
+     *
+     * @return The tick, or -1 before the first frame.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public int getBoidCount() {
+        return boidCount;
+    }
+
+    // The decoded state of the last frame read, replaced by the next one
+
+    public float[] getXs() {
+        return x;
+    }
+
+    public float[] getYs() {
+        return y;
+    }
+
+    public float[] getVelocityXs() {
+        return vx;
+    }
+
+    public float[] getVelocityYs() {
+        return vy;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
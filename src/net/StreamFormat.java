@@ -0,0 +1,53 @@
+package net;
+
+/**
+ * Constants of the protocol spoken between a {@link StreamServer} and its
+ * clients over a local socket.
+ *
+ * The server starts every connection with a greeting, then sends one frame
+ * per tick it manages to deliver to that client:
+ *
+ * <pre>
+ * greeting : magic, version, velocity scale
+ * frame    : type (key/delta), tick, boid count, width, height,
+ *            payload length, payload
+ * </pre>
+ *
+ * Payloads are quantised exactly like recorded trajectories: x, y, velocity x
+ * and velocity y as 16-bit values, one column after another. Key frames store
+ * the columns in full, delta frames store the difference to the last frame
+ * sent to the same client as zig-zag varints. A slow client is sent fewer
+ * frames rather than holding up the simulation, so its deltas simply span
+ * more ticks.
+ *
+ * Clients drive the simulation with tab separated lines of UTF-8 text:
+ *
+ * <pre>
+ * set     &lt;group&gt;     &lt;parameter&gt; &lt;value&gt;
+ * enable  &lt;behaviour&gt; true|false
+ * </pre>
+ *
+ * where the group, parameter and behaviour names are those shown in the
+ * control panel. There are no replies: a line the server cannot apply, such as
+ * a value outside the parameter's range, is reported on its error output and
+ * otherwise ignored.
+ */
+public final class StreamFormat {
+    public static final int MAGIC = 0x42535452; // "BSTR"
+    public static final int VERSION = 1;
+
+    public static final int GREETING_SIZE = 12;
+    public static final int FRAME_HEADER_SIZE = 25;
+
+    public static final byte KEY_FRAME = 0;
+    public static final byte DELTA_FRAME = 1;
+
+    /** Number of frames sent to a client between key frames. */
+    public static final int KEYFRAME_INTERVAL = 60;
+
+    public static final String SET = "set";
+    public static final String ENABLE = "enable";
+
+    private StreamFormat() {
+    }
+}
@@ -0,0 +1,347 @@
+package net;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import behaviour.BoidBehaviour;
+import models.Flock;
+import models.Parameter;
+import recording.TrajectoryFormat;
+import simulation.FlockEngine;
+
+/**
+ * Streams the flock of a running simulation to viewers in other processes over
+ * a socket on the loopback interface, and lets them change its parameters.
+ * See {@link StreamFormat} for the protocol.
+ *
+ * The simulation thread only quantises each tick once, and only while a client
+ * is connected. Every client then has its own sender thread, which encodes the
+ * newest frame against the last one that client received and writes it out. A
+ * client that cannot keep up never holds the simulation up: while its sender is
+ * still writing, newer frames replace the one waiting for it, so it is sent
+ * fewer frames instead.
+ *
+ * Parameter updates from clients go straight into the simulation's parameter
+ * groups, the same ones the control panel edits.
+ */
+public class StreamServer implements Closeable {
+    private static final int SEND_BUFFER_SIZE = 64 * 1024;
+
+    private final FlockEngine engine;
+    private final ServerSocketChannel serverChannel;
+    private final Thread acceptThread;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final AtomicLong decimatedCount = new AtomicLong();
+    private final float velocityScale = TrajectoryFormat.DEFAULT_VELOCITY_SCALE;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Starts listening for clients on the loopback interface.
+     *
+     * @param engine The simulation to stream and drive.
+     * @param port   The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public StreamServer(FlockEngine engine, int port) throws IOException {
+        this.engine = engine;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+        acceptThread = new Thread(this::accept, "stream-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Gets the port the server is listening on, useful when it was started on
+     * any free port.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        ServerSocket socket = serverChannel.socket();
+        return socket.getLocalPort();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Gets the number of frames that were replaced before a slow client could
+     * be sent them.
+     *
+     * @return The number of frames skipped across all clients.
+     */
+    public long getDecimatedCount() {
+        return decimatedCount.get();
+    }
+
+    /**
+     * Hands the state of the flock to every connected client. Called by the
+     * simulation thread after every tick; never blocks on a client.
+     *
+     * @param tick  The tick the flock has just reached.
+     * @param flock The flock.
+     */
+    public void publish(long tick, Flock flock) {
+        if (clients.isEmpty())
+            return;
+
+        Frame frame = new Frame(tick, flock, velocityScale);
+        for (Client client : clients)
+            client.offer(frame);
+    }
+
+    /**
+     * Disconnects every client and stops listening.
+     *
+     * @throws IOException If the server socket could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        serverChannel.close();
+        for (Client client : clients)
+            client.close();
+        try {
+            acceptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        while (!isClosed) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.socket().setTcpNoDelay(true);
+                // Keep little in flight, so a slow client falls behind by frames
+                // skipped rather than by a growing backlog in the socket
+                channel.socket().setSendBufferSize(SEND_BUFFER_SIZE);
+                Client client = new Client(channel);
+                clients.add(client);
+                client.start();
+            } catch (IOException e) {
+                if (!isClosed)
+                    System.err.println("Stream server stopped accepting clients: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies one command line from a client.
+     *
+     * @param line The line, see {@link StreamFormat}.
+     * @return Whether the line was understood and applied, false for a value
+     *         outside the parameter's range.
+     */
+    boolean apply(String line) {
+        String[] words = line.split("\t");
+        if (words.length == 4 && words[0].equals(StreamFormat.SET)) {
+            Parameter parameter = engine.getParameter(words[1], words[2]);
+            if (parameter == null)
+                return false;
+            float value;
+            try {
+                value = Float.parseFloat(words[3]);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (!(value >= parameter.getMin() && value <= parameter.getMax()))
+                return false;
+            parameter.setValue(value);
+            return true;
+        }
+        if (words.length == 3 && words[0].equals(StreamFormat.ENABLE)) {
+            BoidBehaviour behaviour = engine.getBehaviours().get(words[1]);
+            if (behaviour == null)
+                return false;
+            behaviour.setEnabled(Boolean.parseBoolean(words[2]));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * One tick of the flock, quantised once and shared by every client.
+     */
+    private static class Frame {
+        final long tick;
+        final float width;
+        final float height;
+        final int boidCount;
+        final short[] columns;
+
+        Frame(long tick, Flock flock, float velocityScale) {
+            this.tick = tick;
+            width = flock.getWidth();
+            height = flock.getHeight();
+            boidCount = flock.size();
+            columns = new short[boidCount * 4];
+            for (int i = 0; i < boidCount; i++) {
+                columns[i] = (short) TrajectoryFormat.quantisePosition(flock.getX(i), width);
+                columns[boidCount + i] = (short) TrajectoryFormat.quantisePosition(flock.getY(i), height);
+                columns[2 * boidCount + i] = (short) TrajectoryFormat.quantiseVelocity(flock.getVelocityX(i),
+                        velocityScale);
+                columns[3 * boidCount + i] = (short) TrajectoryFormat.quantiseVelocity(flock.getVelocityY(i),
+                        velocityScale);
+            }
+        }
+    }
+
+    private class Client {
+        private final SocketChannel channel;
+        private final Thread sender;
+        private final Thread receiver;
+
+        // The newest frame not yet sent, replaced by newer ones while sending
+        private Frame waiting;
+        private boolean isDisconnected = false;
+
+        // Only touched by the sender thread
+        private Frame previous;
+        private int framesSinceKey;
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            sender = new Thread(this::send, "stream-send");
+            sender.setDaemon(true);
+            receiver = new Thread(this::receive, "stream-receive");
+            receiver.setDaemon(true);
+        }
+
+        void start() {
+            sender.start();
+            receiver.start();
+        }
+
+        synchronized void offer(Frame frame) {
+            if (waiting != null)
+                decimatedCount.incrementAndGet();
+            waiting = frame;
+            notifyAll();
+        }
+
+        private synchronized Frame take() throws InterruptedException {
+            while (waiting == null && !isDisconnected)
+                wait();
+            Frame frame = waiting;
+            waiting = null;
+            return frame;
+        }
+
+        void close() {
+            synchronized (this) {
+                if (isDisconnected)
+                    return;
+                isDisconnected = true;
+                notifyAll();
+            }
+            clients.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+
+        private void send() {
+            try {
+                ByteBuffer greeting = ByteBuffer.allocate(StreamFormat.GREETING_SIZE);
+                greeting.putInt(StreamFormat.MAGIC);
+                greeting.putInt(StreamFormat.VERSION);
+                greeting.putFloat(velocityScale);
+                greeting.flip();
+                writeFully(greeting);
+
+                while (true) {
+                    Frame frame = take();
+                    if (frame == null)
+                        return;
+                    writeFully(encode(frame));
+                }
+            } catch (IOException | InterruptedException e) {
+                // The client went away or the server is closing
+            } finally {
+                close();
+            }
+        }
+
+        private ByteBuffer encode(Frame frame) {
+            boolean isKeyFrame = previous == null || previous.boidCount != frame.boidCount
+                    || framesSinceKey >= StreamFormat.KEYFRAME_INTERVAL;
+            framesSinceKey = isKeyFrame ? 1 : framesSinceKey + 1;
+
+            // Worst case for a delta frame is a three byte varint per value
+            int capacity = StreamFormat.FRAME_HEADER_SIZE + frame.columns.length * 3;
+            if (buffer.capacity() < capacity)
+                buffer = ByteBuffer.allocateDirect(capacity);
+
+            buffer.clear();
+            buffer.put(isKeyFrame ? StreamFormat.KEY_FRAME : StreamFormat.DELTA_FRAME);
+            buffer.putLong(frame.tick);
+            buffer.putInt(frame.boidCount);
+            buffer.putFloat(frame.width);
+            buffer.putFloat(frame.height);
+            buffer.putInt(0); // Payload length, patched below
+
+            if (isKeyFrame) {
+                for (short value : frame.columns)
+                    buffer.putShort(value);
+            } else {
+                for (int i = 0; i < frame.columns.length; i++) {
+                    // Values wrap at 16 bits, so a boid crossing the edge stays small
+                    int zigZag = TrajectoryFormat.zigZag((short) (frame.columns[i] - previous.columns[i]));
+                    while ((zigZag & ~0x7F) != 0) {
+                        buffer.put((byte) ((zigZag & 0x7F) | 0x80));
+                        zigZag >>>= 7;
+                    }
+                    buffer.put((byte) zigZag);
+                }
+            }
+
+            buffer.putInt(StreamFormat.FRAME_HEADER_SIZE - 4, buffer.position() - StreamFormat.FRAME_HEADER_SIZE);
+            buffer.flip();
+            previous = frame;
+            return buffer;
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining())
+                channel.write(source);
+        }
+
+        private void receive() {
+            Socket socket = channel.socket();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty() && !apply(line))
+                        System.err.println("Ignored command from " + socket.getRemoteSocketAddress() + ": " + line);
+                }
+            } catch (IOException e) {
+                // The client went away or the server is closing
+            } finally {
+                close();
+            }
+        }
+    }
+}
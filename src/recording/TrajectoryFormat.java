@@ -0,0 +1,89 @@
+package recording;
+
+/**
+ * Constants and shared encoding helpers for the binary trajectory format used
+ * to record and replay a flock.
+ *
+ * A trajectory file is laid out as a fixed size header, followed by one record
+ * per recorded tick, followed by a frame index and a footer:
+ *
+ * <pre>
+ * header : magic, version, flags, boid count, width, height,
+ *          velocity scale, keyframe interval
+ * frame  : type (key/delta), tick, payload length, payload
+ * index  : frame count, one file offset per frame
+ * footer : index offset, magic
+ * </pre>
+ *
+ * Every payload stores the four columns (x, y, velocity x, velocity y) one
+ * after another. Key frames store each column in full, either as raw floats or
+ * as 16-bit quantised values. Delta frames store the difference to the previous
+ * frame as zig-zag varints, so boids that barely moved cost a single byte per
+ * component.
+ */
+public final class TrajectoryFormat {
+    public static final int MAGIC = 0x424F4944; // "BOID"
+    public static final int VERSION = 1;
+
+    public static final int FLAG_QUANTISED = 1;
+    public static final int FLAG_DELTA = 1 << 1;
+
+    public static final byte KEY_FRAME = 0;
+    public static final byte DELTA_FRAME = 1;
+
+    public static final int HEADER_SIZE = 32;
+    public static final int FRAME_HEADER_SIZE = 13;
+    public static final int FOOTER_SIZE = 12;
+
+    public static final int COLUMNS = 4;
+
+    /** Number of frames between key frames when delta encoding is enabled. */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+
+    /** Largest absolute velocity component that survives quantisation. */
+    public static final float DEFAULT_VELOCITY_SCALE = 16.0f;
+
+    private TrajectoryFormat() {
+    }
+
+    /**
+     * Quantises a position component into an unsigned 16-bit value relative to
+     * the size of the world. Wrapping is preserved, so a boid crossing the edge
+     * only produces a small delta.
+     *
+     * @param value The position component.
+     * @param size  The world size along that axis.
+     * @return The quantised value in the range [0, 65535].
+     */
+    public static int quantisePosition(float value, float size) {
+        return Math.round(value / size * 65536.0f) & 0xFFFF;
+    }
+
+    public static float dequantisePosition(int value, float size) {
+        return (value & 0xFFFF) / 65536.0f * size;
+    }
+
+    /**
+     * Quantises a velocity component into a signed 16-bit value.
+     *
+     * @param value The velocity component.
+     * @param scale The largest absolute value that can be represented.
+     * @return The quantised value in the range [-32767, 32767].
+     */
+    public static int quantiseVelocity(float value, float scale) {
+        float clamped = Math.max(-scale, Math.min(scale, value));
+        return Math.round(clamped / scale * 32767.0f);
+    }
+
+    public static float dequantiseVelocity(int value, float scale) {
+        return (short) value / 32767.0f * scale;
+    }
+
+    public static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,284 @@
+package recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Random access reader for trajectory files written by
+ * {@link TrajectoryWriter}. The file is memory-mapped and indexed once when it
+ * is opened, so seeking to any frame only has to decode forwards from the
+ * nearest key frame. Sequential playback reuses the previously decoded frame
+ * and decodes a single delta per step.
+ *
+ * A single mapping cannot reach past 2 GB, so a larger file is mapped a window
+ * of up to {@link #WINDOW_SIZE} bytes at a time, always holding whole frames,
+ * and moved on as playback reaches its end. A smaller file is mapped once,
+ * whole.
+ *
+ * A file without a frame index, for example one left behind by a crashed run,
+ * is indexed by scanning the frame records instead.
+ */
+public class TrajectoryReader implements Closeable {
+    /** Most bytes of the file mapped at once, the most one mapping can hold. */
+    public static final int WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+    // The mapped part of the file and where in the file it starts
+    private MappedByteBuffer data;
+    private long dataStart;
+
+    private final int boidCount;
+    private final float width;
+    private final float height;
+    private final float velocityScale;
+    private final boolean isQuantised;
+
+    private final long[] frameOffsets;
+    private final int frameCount;
+
+    private final int[] columns;
+    private int decodedFrame = -1;
+
+    /**
+     * Opens and indexes a trajectory file.
+     *
+     * @param file The trajectory file to read.
+     * @throws IOException If the file cannot be read or is not a trajectory file.
+     */
+    public TrajectoryReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        try {
+            map(0, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (size < TrajectoryFormat.HEADER_SIZE || data.getInt(0) != TrajectoryFormat.MAGIC) {
+            channel.close();
+            throw new IOException("Not a trajectory file: " + file);
+        }
+        if (data.getInt(4) != TrajectoryFormat.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported trajectory version " + data.getInt(4));
+        }
+
+        int flags = data.getInt(8);
+        isQuantised = (flags & TrajectoryFormat.FLAG_QUANTISED) != 0;
+        boidCount = data.getInt(12);
+        width = data.getFloat(16);
+        height = data.getFloat(20);
+        velocityScale = data.getFloat(24);
+
+        try {
+            frameOffsets = readIndex();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        frameCount = frameOffsets.length;
+        columns = new int[boidCount * TrajectoryFormat.COLUMNS];
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getBoidCount() {
+        return boidCount;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public boolean isQuantised() {
+        return isQuantised;
+    }
+
+    /**
+     * Gets the simulation tick a frame was captured at.
+     *
+     * @param frame The index of the frame.
+     * @return The tick of the frame.
+     * @throws IOException If the part of the file holding the frame cannot be
+     *                     mapped.
+     */
+    public long getTick(int frame) throws IOException {
+        checkFrame(frame);
+        return getLong(frameOffsets[frame] + 1);
+    }
+
+    /**
+     * Decodes a frame into the given arrays, each of which must hold at least
+     * {@link #getBoidCount()} values.
+     *
+     * @param frame The index of the frame to read.
+     * @param x     Receives the x positions.
+     * @param y     Receives the y positions.
+     * @param vx    Receives the x velocities.
+     * @param vy    Receives the y velocities.
+     * @throws IOException If the part of the file holding the frame cannot be
+     *                     mapped.
+     */
+    public void readFrame(int frame, float[] x, float[] y, float[] vx, float[] vy) throws IOException {
+        checkFrame(frame);
+        seek(frame);
+
+        int n = boidCount;
+        for (int i = 0; i < n; i++) {
+            if (isQuantised) {
+                x[i] = TrajectoryFormat.dequantisePosition(columns[i], width);
+                y[i] = TrajectoryFormat.dequantisePosition(columns[n + i], height);
+                vx[i] = TrajectoryFormat.dequantiseVelocity(columns[2 * n + i], velocityScale);
+                vy[i] = TrajectoryFormat.dequantiseVelocity(columns[3 * n + i], velocityScale);
+            } else {
+                x[i] = Float.intBitsToFloat(columns[i]);
+                y[i] = Float.intBitsToFloat(columns[n + i]);
+                vx[i] = Float.intBitsToFloat(columns[2 * n + i]);
+                vy[i] = Float.intBitsToFloat(columns[3 * n + i]);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void seek(int frame) throws IOException {
+        if (frame == decodedFrame)
+            return;
+
+        // Walk back to the nearest key frame, unless the frame we already have
+        // decoded lies between it and the target
+        int start = frame;
+        while (getByte(frameOffsets[start]) != TrajectoryFormat.KEY_FRAME)
+            start--;
+        if (decodedFrame >= start && decodedFrame < frame)
+            start = decodedFrame + 1;
+
+        for (int i = start; i <= frame; i++)
+            decode(i);
+        decodedFrame = frame;
+    }
+
+    private void decode(int frame) throws IOException {
+        int length = getInt(frameOffsets[frame] + 9);
+        int offset = window(frameOffsets[frame], TrajectoryFormat.FRAME_HEADER_SIZE + length);
+        byte type = data.get(offset);
+        int position = offset + TrajectoryFormat.FRAME_HEADER_SIZE;
+
+        if (type == TrajectoryFormat.KEY_FRAME) {
+            for (int i = 0; i < columns.length; i++) {
+                if (isQuantised) {
+                    columns[i] = data.getShort(position);
+                    position += 2;
+                } else {
+                    columns[i] = data.getInt(position);
+                    position += 4;
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            int zigZag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(position++);
+                zigZag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            int delta = TrajectoryFormat.unZigZag(zigZag);
+            columns[i] = isQuantised ? (short) (columns[i] + delta) : columns[i] ^ delta;
+        }
+    }
+
+    private long[] readIndex() throws IOException {
+        if (size >= TrajectoryFormat.HEADER_SIZE + TrajectoryFormat.FOOTER_SIZE
+                && getInt(size - 4) == TrajectoryFormat.MAGIC) {
+            long indexOffset = getLong(size - TrajectoryFormat.FOOTER_SIZE);
+            int count = getInt(indexOffset);
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++)
+                offsets[i] = getLong(indexOffset + 4 + i * 8L);
+            return offsets;
+        }
+
+        // No footer, recover whatever complete frames were written
+        long[] offsets = new long[64];
+        int count = 0;
+        long offset = TrajectoryFormat.HEADER_SIZE;
+        while (offset + TrajectoryFormat.FRAME_HEADER_SIZE <= size) {
+            int length = getInt(offset + 9);
+            if (length < 0 || offset + TrajectoryFormat.FRAME_HEADER_SIZE + length > size)
+                break;
+            // A recording always starts on a key frame
+            if (count == 0 && getByte(offset) != TrajectoryFormat.KEY_FRAME)
+                break;
+
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = offset;
+            offset += TrajectoryFormat.FRAME_HEADER_SIZE + length;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private byte getByte(long offset) throws IOException {
+        int position = window(offset, 1);
+        return data.get(position);
+    }
+
+    private int getInt(long offset) throws IOException {
+        int position = window(offset, 4);
+        return data.getInt(position);
+    }
+
+    private long getLong(long offset) throws IOException {
+        int position = window(offset, 8);
+        return data.getLong(position);
+    }
+
+    /**
+     * Makes sure a range of the file is mapped, moving the window if it is not.
+     *
+     * @param offset The offset of the range in the file.
+     * @param length The length of the range, which must not be more than
+     *               {@link #WINDOW_SIZE}.
+     * @return The offset of the range in {@link #data}.
+     * @throws IOException If the range cannot be mapped.
+     */
+    private int window(long offset, int length) throws IOException {
+        if (offset < dataStart || offset + length > dataStart + data.capacity())
+            map(offset, length);
+        return (int) (offset - dataStart);
+    }
+
+    private void map(long offset, int length) throws IOException {
+        if (length > WINDOW_SIZE || offset + length > size)
+            throw new IOException("Corrupt trajectory file, a frame reaches past the end");
+        // Start the window early enough that small files are mapped whole
+        long start = Math.max(0, Math.min(offset, size - WINDOW_SIZE));
+        data = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+        dataStart = start;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of range 0-" + (frameCount - 1));
+    }
+}
@@ -0,0 +1,291 @@
+package recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import models.Flock;
+
+/**
+ * Streams flock frames into a trajectory file. The simulation thread only
+ * copies the current positions and velocities into a pooled frame buffer; the
+ * encoding and file IO happen on a dedicated writer thread. When the writer
+ * falls behind, {@link #write} blocks until a buffer is free so that no frame
+ * is ever dropped from a recording.
+ *
+ * @see TrajectoryFormat
+ */
+public class TrajectoryWriter implements Closeable {
+    private static final int QUEUE_CAPACITY = 8;
+
+    private final FileChannel channel;
+    private final int boidCount;
+    private final float width;
+    private final float height;
+    private final float velocityScale;
+    private final boolean isQuantised;
+    private final boolean isDeltaEncoded;
+    private final int keyframeInterval;
+
+    private final BlockingQueue<Frame> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Frame> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Frame endOfStream = new Frame(0);
+    private final Thread writerThread;
+
+    // Only touched by the writer thread
+    private long[] frameOffsets = new long[1024];
+    private int frameCount = 0;
+    private long position = TrajectoryFormat.HEADER_SIZE;
+    private final int[] previous;
+    private final int[] current;
+    private final ByteBuffer buffer;
+
+    private volatile IOException failure;
+    private boolean isClosed = false;
+
+    /**
+     * Creates a trajectory file and starts the writer thread.
+     *
+     * @param file           The file to write to, replaced if it already exists.
+     * @param boidCount      The number of boids in every frame.
+     * @param width          The width of the simulated world.
+     * @param height         The height of the simulated world.
+     * @param isQuantised    Whether to store 16-bit quantised values instead of
+     *                       raw floats.
+     * @param isDeltaEncoded Whether to store frames as deltas against the
+     *                       previous frame between periodic key frames.
+     * @throws IOException If the file cannot be created.
+     */
+    public TrajectoryWriter(Path file, int boidCount, float width, float height, boolean isQuantised,
+            boolean isDeltaEncoded) throws IOException {
+        this.boidCount = boidCount;
+        this.width = width;
+        this.height = height;
+        this.velocityScale = TrajectoryFormat.DEFAULT_VELOCITY_SCALE;
+        this.isQuantised = isQuantised;
+        this.isDeltaEncoded = isDeltaEncoded;
+        this.keyframeInterval = isDeltaEncoded ? TrajectoryFormat.DEFAULT_KEYFRAME_INTERVAL : 1;
+
+        this.previous = new int[boidCount * TrajectoryFormat.COLUMNS];
+        this.current = new int[boidCount * TrajectoryFormat.COLUMNS];
+        // Worst case for a delta frame is a five byte varint per value
+        this.buffer = ByteBuffer.allocateDirect(TrajectoryFormat.FRAME_HEADER_SIZE + current.length * 5);
+
+        for (int i = 0; i < QUEUE_CAPACITY; i++)
+            free.add(new Frame(boidCount));
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader();
+
+        writerThread = new Thread(this::drain, "trajectory-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a frame for writing. The flock's state is copied before this
+     * method returns, so the caller is free to update it immediately.
+     *
+     * @param tick  The simulation tick the frame was captured at.
+     * @param flock The flock, of the size given when the writer was created.
+     * @throws IOException If a previous frame failed to write.
+     */
+    public void write(long tick, Flock flock) throws IOException {
+        if (isClosed)
+            throw new IOException("Trajectory writer is closed");
+        checkFailure();
+
+        Frame frame;
+        try {
+            frame = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the trajectory writer", e);
+        }
+
+        frame.tick = tick;
+        flock.getState(FloatBuffer.wrap(frame.x), FloatBuffer.wrap(frame.y), FloatBuffer.wrap(frame.vx),
+                FloatBuffer.wrap(frame.vy));
+        pending.add(frame);
+    }
+
+    /**
+     * Flushes every queued frame, writes the frame index and closes the file.
+     *
+     * @throws IOException If any frame or the index failed to write.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed)
+            return;
+        isClosed = true;
+
+        try {
+            pending.put(endOfStream);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the trajectory writer", e);
+        }
+
+        try {
+            checkFailure();
+            writeIndex();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Frame frame = pending.take();
+                if (frame == endOfStream)
+                    return;
+
+                try {
+                    if (failure == null)
+                        encode(frame);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    free.add(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Trajectory writer was interrupted", e);
+        }
+    }
+
+    private void encode(Frame frame) throws IOException {
+        toColumns(frame, current);
+
+        boolean isKeyFrame = frameCount % keyframeInterval == 0;
+        buffer.clear();
+        buffer.put(isKeyFrame ? TrajectoryFormat.KEY_FRAME : TrajectoryFormat.DELTA_FRAME);
+        buffer.putLong(frame.tick);
+        buffer.putInt(0); // Payload length, patched below
+
+        if (isKeyFrame)
+            putKeyFrame();
+        else
+            putDeltaFrame();
+
+        int payloadLength = buffer.position() - TrajectoryFormat.FRAME_HEADER_SIZE;
+        buffer.putInt(9, payloadLength);
+        buffer.flip();
+
+        if (frameCount == frameOffsets.length)
+            frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+        frameOffsets[frameCount++] = position;
+
+        position += writeFully(buffer, position);
+        System.arraycopy(current, 0, previous, 0, current.length);
+    }
+
+    private void toColumns(Frame frame, int[] columns) {
+        int n = boidCount;
+        for (int i = 0; i < n; i++) {
+            if (isQuantised) {
+                columns[i] = TrajectoryFormat.quantisePosition(frame.x[i], width);
+                columns[n + i] = TrajectoryFormat.quantisePosition(frame.y[i], height);
+                columns[2 * n + i] = TrajectoryFormat.quantiseVelocity(frame.vx[i], velocityScale);
+                columns[3 * n + i] = TrajectoryFormat.quantiseVelocity(frame.vy[i], velocityScale);
+            } else {
+                columns[i] = Float.floatToRawIntBits(frame.x[i]);
+                columns[n + i] = Float.floatToRawIntBits(frame.y[i]);
+                columns[2 * n + i] = Float.floatToRawIntBits(frame.vx[i]);
+                columns[3 * n + i] = Float.floatToRawIntBits(frame.vy[i]);
+            }
+        }
+    }
+
+    private void putKeyFrame() {
+        for (int value : current) {
+            if (isQuantised)
+                buffer.putShort((short) value);
+            else
+                buffer.putInt(value);
+        }
+    }
+
+    private void putDeltaFrame() {
+        for (int i = 0; i < current.length; i++) {
+            // Quantised values wrap at 16 bits so an edge crossing stays small, raw
+            // floats share their sign and exponent bits so the XOR stays small
+            int delta = isQuantised ? (short) (current[i] - previous[i]) : current[i] ^ previous[i];
+            int zigZag = TrajectoryFormat.zigZag(delta);
+            while ((zigZag & ~0x7F) != 0) {
+                buffer.put((byte) ((zigZag & 0x7F) | 0x80));
+                zigZag >>>= 7;
+            }
+            buffer.put((byte) zigZag);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TrajectoryFormat.HEADER_SIZE);
+        int flags = (isQuantised ? TrajectoryFormat.FLAG_QUANTISED : 0)
+                | (isDeltaEncoded ? TrajectoryFormat.FLAG_DELTA : 0);
+        header.putInt(TrajectoryFormat.MAGIC);
+        header.putInt(TrajectoryFormat.VERSION);
+        header.putInt(flags);
+        header.putInt(boidCount);
+        header.putFloat(width);
+        header.putFloat(height);
+        header.putFloat(velocityScale);
+        header.putInt(keyframeInterval);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void writeIndex() throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(4 + frameCount * 8 + TrajectoryFormat.FOOTER_SIZE);
+        index.putInt(frameCount);
+        for (int i = 0; i < frameCount; i++)
+            index.putLong(frameOffsets[i]);
+        index.putLong(position);
+        index.putInt(TrajectoryFormat.MAGIC);
+        index.flip();
+        writeFully(index, position);
+    }
+
+    private int writeFully(ByteBuffer source, long offset) throws IOException {
+        int written = 0;
+        while (source.hasRemaining())
+            written += channel.write(source, offset + written);
+        return written;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw new IOException("Failed to write trajectory frame", failure);
+    }
+
+    private static class Frame {
+        long tick;
+        final float[] x;
+        final float[] y;
+        final float[] vx;
+        final float[] vy;
+
+        Frame(int boidCount) {
+            x = new float[boidCount];
+            y = new float[boidCount];
+            vx = new float[boidCount];
+            vy = new float[boidCount];
+        }
+    }
+}
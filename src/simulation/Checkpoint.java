@@ -0,0 +1,415 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import behaviour.BoidBehaviour;
+import models.Flock;
+import models.Parameter;
+import models.ParameterGroup;
+import models.SpeciesTable;
+
+/**
+ * Saves and restores the complete state of a {@link FlockEngine}: every
+ * boid, every parameter value, the behaviour enable and debug flags and the
+ * state of the random generator and the species table, and the index the
+ * engine looks neighbours up in. Floats are stored as their raw bits, so a
+ * restored simulation continues bit for bit where the saved one left off.
+ *
+ * The boid state is stored column by column, and copied between the file and
+ * the flock's storage in bulk, a run of boids at a time, so a checkpoint may
+ * be far larger than any one buffer:
+ *
+ * <pre>
+ * header     : magic, version, tick, width, height, random state, boid count,
+ *              biased count, neighbour index
+ * columns    : x[], y[], velocity x[], velocity y[], flags[], bias order[],
+ *              species[]
+ * behaviours : count, then name, enabled, debugging
+ * parameters : group count, then group name, parameter count,
+ *              then parameter name, value
+ * species    : count, then name, values (NaN where unset),
+ *              then one weight matrix per interaction
+ * </pre>
+ *
+ * Older files can still be restored. Version 1 files have no biased count or
+ * bias order, so their biased boids are taken from the flags; version 1 and 2
+ * files have no species, so every boid is restored into the default species.
+ * Files before version 4 leave the engine's neighbour index as it is.
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x424B5054; // "BKPT"
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 44;
+    private static final int VERSION_1_HEADER_SIZE = 36;
+
+    private static final byte FLAG_BIASED = 1;
+    private static final byte FLAG_DEBUG = 1 << 1;
+
+    // Boids copied between the file and the flock at a time
+    private static final int CHUNK_BOIDS = 1 << 18;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes the state of a simulation to a checkpoint file.
+     *
+     * @param simulation The simulation to save.
+     * @param file       The file to write, replaced if it already exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(FlockEngine simulation, Path file) throws IOException {
+        Flock flock = simulation.flock;
+        int count = flock.size();
+
+        byte[] flags = new byte[count];
+        for (int i = 0; i < count; i++)
+            flags[i] = (byte) ((flock.isBiased(i) ? FLAG_BIASED : 0) | (flock.isDebug(i) ? FLAG_DEBUG : 0));
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(simulation.tick);
+        header.putFloat(flock.getWidth());
+        header.putFloat(flock.getHeight());
+        header.putLong(simulation.random.getState());
+        header.putInt(count);
+        header.putInt(flock.getBiasedCount());
+        header.putInt(simulation.getNeighbourIndex().ordinal());
+        header.flip();
+
+        ByteBuffer settings = ByteBuffer.allocate(settingsSize(simulation));
+        List<String> names = simulation.getBehaviours().getNames();
+        settings.putInt(names.size());
+        for (String behaviour : names) {
+            putString(settings, behaviour);
+            BoidBehaviour boidBehaviour = simulation.getBehaviours().get(behaviour);
+            settings.put((byte) (boidBehaviour.isEnabled() ? 1 : 0));
+            settings.put((byte) (boidBehaviour.isDebugging() ? 1 : 0));
+        }
+
+        List<ParameterGroup> groups = simulation.getParameterGroups();
+        settings.putInt(groups.size());
+        for (ParameterGroup group : groups) {
+            putString(settings, group.getName());
+            settings.putInt(group.getParameters().size());
+            for (Parameter parameter : group.getParameters().values()) {
+                putString(settings, parameter.getName());
+                settings.putFloat(parameter.getValue());
+            }
+        }
+        putSpecies(settings, simulation.getSpecies());
+        settings.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+
+            // Each column of a run of boids goes to its own place in the file
+            long stateStart = HEADER_SIZE;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BOIDS * 16);
+            for (int from = 0, to; from < count; from = to) {
+                to = from + Math.min(CHUNK_BOIDS, count - from);
+                FloatBuffer[] parts = split(chunk, to - from);
+                flock.getState(from, to, parts[0], parts[1], parts[2], parts[3]);
+                for (int column = 0; column < 4; column++)
+                    writeFully(channel, chunk.slice(column * (to - from) * 4, (to - from) * 4),
+                            stateStart + (long) column * count * 4 + (long) from * 4);
+            }
+
+            long position = stateStart + (long) count * 16;
+            writeFully(channel, ByteBuffer.wrap(flags), position);
+            position += count;
+            int[] biasOrder = flock.getBiasOrder();
+            for (int from = 0, to; from < count; from = to) {
+                to = from + Math.min(CHUNK_BOIDS, count - from);
+                chunk.clear().asIntBuffer().put(biasOrder, from, to - from);
+                writeFully(channel, chunk.slice(0, (to - from) * 4), position + (long) from * 4);
+            }
+            position += (long) count * 4;
+            writeFully(channel, ByteBuffer.wrap(flock.getSpeciesIds(), 0, count), position);
+            position += count;
+            writeFully(channel, settings, position);
+        }
+    }
+
+    /**
+     * Replaces the state of a simulation with the state stored in a checkpoint
+     * file. Must be called from the thread that drives the simulation.
+     *
+     * @param simulation The simulation to restore into.
+     * @param file       The checkpoint file to read.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public static void restore(FlockEngine simulation, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_SIZE, fileSize));
+            readFully(channel, header, 0, file);
+            header.flip();
+            if (header.remaining() < VERSION_1_HEADER_SIZE || header.getInt() != MAGIC)
+                throw new IOException("Not a checkpoint file: " + file);
+            int version = header.getInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported checkpoint version " + version);
+
+            long tick = header.getLong();
+            float width = header.getFloat();
+            float height = header.getFloat();
+            long randomState = header.getLong();
+            int count = header.getInt();
+            int biasedCount = version >= 2 ? header.getInt() : -1;
+            int neighbourIndex = version >= 4 ? header.getInt() : -1;
+            if (count < 0)
+                throw new IOException("Corrupt boid count in checkpoint file: " + file);
+            if (neighbourIndex < -1 || neighbourIndex >= FlockEngine.NeighbourIndex.values().length)
+                throw new IOException("Corrupt neighbour index in checkpoint file: " + file);
+
+            byte[] flags = new byte[count];
+            byte[] speciesIds = new byte[count];
+            int[] biasOrder = null;
+
+            // Positions and velocities are copied straight into the flock once
+            // the rest of the file has been checked
+            long stateStart = header.position();
+            long position = stateStart + (long) count * 16;
+            readFully(channel, ByteBuffer.wrap(flags), position, file);
+            position += count;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BOIDS * 16);
+            if (version >= 2) {
+                biasOrder = new int[count];
+                for (int from = 0, to; from < count; from = to) {
+                    to = from + Math.min(CHUNK_BOIDS, count - from);
+                    ByteBuffer part = chunk.clear().limit((to - from) * 4);
+                    readFully(channel, part, position + (long) from * 4, file);
+                    part.flip().asIntBuffer().get(biasOrder, from, to - from);
+                }
+                position += (long) count * 4;
+                if (biasedCount < 0 || biasedCount > count || !isPermutation(biasOrder))
+                    throw new IOException("Corrupt bias order in checkpoint file: " + file);
+            }
+            if (version >= 3) {
+                readFully(channel, ByteBuffer.wrap(speciesIds), position, file);
+                position += count;
+            }
+
+            // The settings that follow are small, and read in one go
+            if (fileSize - position > Integer.MAX_VALUE)
+                throw new IOException("Corrupt checkpoint file: " + file);
+            ByteBuffer data = ByteBuffer.allocate((int) Math.max(0, fileSize - position));
+            readFully(channel, data, position, file);
+            data.flip();
+
+            // Read everything before applying anything, so a truncated file
+            // leaves the simulation untouched
+            int behaviourCount = data.getInt();
+            String[] behaviours = new String[behaviourCount];
+            byte[] behaviourFlags = new byte[behaviourCount * 2];
+            for (int i = 0; i < behaviourCount; i++) {
+                behaviours[i] = getString(data);
+                data.get(behaviourFlags, i * 2, 2);
+            }
+
+            List<Parameter> parameters = new ArrayList<>();
+            List<Float> values = new ArrayList<>();
+            int groupCount = data.getInt();
+            for (int i = 0; i < groupCount; i++) {
+                ParameterGroup group = findGroup(simulation, getString(data));
+                int parameterCount = data.getInt();
+                for (int j = 0; j < parameterCount; j++) {
+                    String name = getString(data);
+                    float value = data.getFloat();
+                    Parameter parameter = group != null ? group.getParameter(name) : null;
+                    if (parameter != null) {
+                        parameters.add(parameter);
+                        values.add(value);
+                    }
+                }
+            }
+
+            SpeciesTable species = new SpeciesTable();
+            if (version >= 3) {
+                species = getSpecies(data);
+                for (byte id : speciesIds) {
+                    if (id < 0 || id >= species.getCount())
+                        throw new IOException("Corrupt species in checkpoint file: " + file);
+                }
+            }
+
+            for (int i = 0; i < behaviourCount; i++) {
+                BoidBehaviour behaviour = simulation.getBehaviours().get(behaviours[i]);
+                if (behaviour == null)
+                    continue;
+                behaviour.setEnabled(behaviourFlags[i * 2] != 0);
+                behaviour.setDebugging(behaviourFlags[i * 2 + 1] != 0);
+            }
+            for (int i = 0; i < parameters.size(); i++)
+                parameters.get(i).setValue(values.get(i));
+            simulation.getSpecies().copyFrom(species);
+
+            // A flock of the same size is restored in place, keeping its
+            // storage, which may be off the heap
+            Flock flock = simulation.flock;
+            if (flock.size() != count || flock.getWidth() != width || flock.getHeight() != height)
+                flock = new Flock(count, width, height);
+            for (int from = 0, to; from < count; from = to) {
+                to = from + Math.min(CHUNK_BOIDS, count - from);
+                chunk.clear();
+                for (int column = 0; column < 4; column++) {
+                    ByteBuffer part = chunk.slice(column * (to - from) * 4, (to - from) * 4);
+                    readFully(channel, part, stateStart + (long) column * count * 4 + (long) from * 4, file);
+                }
+                FloatBuffer[] parts = split(chunk, to - from);
+                flock.setState(from, to, parts[0], parts[1], parts[2], parts[3]);
+            }
+            System.arraycopy(speciesIds, 0, flock.getSpeciesIds(), 0, count);
+
+            if (biasOrder != null)
+                flock.setBiasOrder(biasOrder, biasedCount);
+            for (int i = 0; i < count; i++) {
+                if (biasOrder == null)
+                    flock.setBiased(i, (flags[i] & FLAG_BIASED) != 0);
+                flock.setDebug(i, (flags[i] & FLAG_DEBUG) != 0);
+            }
+
+            simulation.flock = flock;
+            simulation.tick = tick;
+            if (neighbourIndex >= 0)
+                simulation.setNeighbourIndex(FlockEngine.NeighbourIndex.values()[neighbourIndex]);
+            simulation.random.setState(randomState);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated checkpoint file: " + file, e);
+        }
+    }
+
+    /**
+     * Views the start of a chunk as four columns of floats, one after another.
+     */
+    private static FloatBuffer[] split(ByteBuffer chunk, int boids) {
+        FloatBuffer[] parts = new FloatBuffer[4];
+        for (int column = 0; column < 4; column++)
+            parts[column] = chunk.slice(column * boids * 4, boids * 4).asFloatBuffer();
+        return parts;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    // Fills the buffer from a position in the file, which must hold enough
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path file)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Truncated checkpoint file: " + file);
+            position += read;
+        }
+    }
+
+    private static boolean isPermutation(int[] order) {
+        boolean[] seen = new boolean[order.length];
+        for (int boid : order) {
+            if (boid < 0 || boid >= order.length || seen[boid])
+                return false;
+            seen[boid] = true;
+        }
+        return true;
+    }
+
+    private static ParameterGroup findGroup(FlockEngine simulation, String name) {
+        for (ParameterGroup group : simulation.getParameterGroups()) {
+            if (group.getName().equals(name))
+                return group;
+        }
+        return null;
+    }
+
+    private static int settingsSize(FlockEngine simulation) {
+        int size = 4;
+        for (String behaviour : simulation.getBehaviours().getNames())
+            size += stringSize(behaviour) + 2;
+
+        size += 4;
+        for (ParameterGroup group : simulation.getParameterGroups()) {
+            size += stringSize(group.getName()) + 4;
+            for (Parameter parameter : group.getParameters().values())
+                size += stringSize(parameter.getName()) + 4;
+        }
+
+        SpeciesTable species = simulation.getSpecies();
+        int count = species.getCount();
+        size += 4;
+        for (int i = 0; i < count; i++)
+            size += stringSize(species.getName(i)) + SpeciesTable.Property.values().length * 4;
+        size += SpeciesTable.Interaction.values().length * count * count * 4;
+        return size;
+    }
+
+    private static void putSpecies(ByteBuffer buffer, SpeciesTable species) {
+        int count = species.getCount();
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            putString(buffer, species.getName(i));
+            for (SpeciesTable.Property property : SpeciesTable.Property.values())
+                buffer.putFloat(species.get(i, property));
+        }
+        for (SpeciesTable.Interaction interaction : SpeciesTable.Interaction.values()) {
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < count; j++)
+                    buffer.putFloat(species.getWeight(interaction, i, j));
+            }
+        }
+    }
+
+    private static SpeciesTable getSpecies(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if (count < 1 || count > SpeciesTable.MAX_SPECIES)
+            throw new IOException("Corrupt species count " + count);
+
+        SpeciesTable species = new SpeciesTable();
+        for (int i = 0; i < count; i++) {
+            String name = getString(buffer);
+            if (i == 0)
+                species.setName(0, name);
+            else
+                species.addSpecies(name);
+            for (SpeciesTable.Property property : SpeciesTable.Property.values())
+                species.set(i, property, buffer.getFloat());
+        }
+        for (SpeciesTable.Interaction interaction : SpeciesTable.Interaction.values()) {
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < count; j++)
+                    species.setWeight(interaction, i, j, buffer.getFloat());
+            }
+        }
+        return species;
+    }
+
+    private static int stringSize(String value) {
+        return 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,214 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals of what an engine's ticks cost, kept by the engine as it
+ * ticks. Every value only ever grows, so readers such as the performance
+ * section of the control panel take two readings some time apart and divide
+ * the differences, without the engine keeping any history or the readers
+ * having to agree on when to reset anything.
+ *
+ * Tick and index times, ticks and allocations are always counted. The time
+ * each behaviour takes and how many neighbours boids have are only measured
+ * while profiling is on, and then only on every {@link #SAMPLE_STRIDE}th boid,
+ * which keeps the cost of measuring to a small share of the tick. Totals are
+ * written by the thread driving the engine and may be read from any thread.
+ */
+public class EngineMetrics {
+    /** Profiling measures one boid in this many. */
+    public static final int SAMPLE_STRIDE = 32;
+
+    // Measures allocations per thread, or null if the JVM cannot
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    private volatile long ticks = 0;
+    private volatile long tickNanos = 0;
+    private volatile long lastTickNanos = 0;
+    private volatile long indexNanos = 0;
+    private volatile long allocatedBytes = 0;
+    private volatile long frames = 0;
+    private volatile long frameNanos = 0;
+    private volatile boolean isProfiling = false;
+    private volatile long updatedBoids = 0;
+    private volatile long profiledBoids = 0;
+    private volatile long neighbours = 0;
+    private final AtomicLongArray behaviourNanos;
+
+    /**
+     * Creates empty totals.
+     *
+     * @param behaviourCount The number of behaviours in the engine's
+     *                       {@link behaviour.BehaviourSet}.
+     */
+    EngineMetrics(int behaviourCount) {
+        behaviourNanos = new AtomicLongArray(behaviourCount);
+    }
+
+    /**
+     * Gets whether the time each behaviour takes and the number of neighbours
+     * are being measured.
+     *
+     * @return Whether profiling is on.
+     */
+    public boolean isProfiling() {
+        return isProfiling;
+    }
+
+    /**
+     * Sets whether to measure the time each behaviour takes and the number of
+     * neighbours of a sample of boids, from the next tick on.
+     *
+     * @param profiling Whether profiling is on.
+     */
+    public void setProfiling(boolean profiling) {
+        isProfiling = profiling;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Gets the wall time every tick so far has taken, from the start of
+     * {@link FlockEngine#step()} to the end.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Gets the wall time the last tick took.
+     *
+     * @return The time in nanoseconds, 0 before the first tick.
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Gets the part of the tick time spent indexing the flock.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getIndexNanos() {
+        return indexNanos;
+    }
+
+    /**
+     * Gets the memory the threads running ticks have allocated while doing so.
+     *
+     * @return The memory in bytes, or 0 if the JVM does not measure it.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Gets the number of frames drawn, as reported by {@link #recordFrame}.
+     *
+     * @return The number of frames.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gets the time drawing every frame so far has taken.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * Gets the number of boid updates run, one per boid per sub-step.
+     *
+     * @return The number of updates.
+     */
+    public long getUpdatedBoids() {
+        return updatedBoids;
+    }
+
+    /**
+     * Gets the number of boid updates measured while profiling. The behaviour
+     * times and neighbour counts are totals over these updates alone.
+     *
+     * @return The number of measured updates.
+     */
+    public long getProfiledBoids() {
+        return profiledBoids;
+    }
+
+    /**
+     * Gets the number of neighbours within the largest perception range of the
+     * enabled behaviours, summed over the measured updates.
+     *
+     * @return The number of neighbours.
+     */
+    public long getNeighbours() {
+        return neighbours;
+    }
+
+    /**
+     * Gets the time a behaviour has taken over the measured updates, summed
+     * over every thread.
+     *
+     * @param behaviour The behaviour's index in
+     *                  {@link behaviour.BehaviourSet#getNames()}.
+     * @return The time in nanoseconds.
+     */
+    public long getBehaviourNanos(int behaviour) {
+        return behaviourNanos.get(behaviour);
+    }
+
+    /**
+     * Counts a frame of the simulation drawn by whatever shows it.
+     *
+     * @param nanos The time drawing the frame took.
+     */
+    public void recordFrame(long nanos) {
+        frameNanos += nanos;
+        frames++;
+    }
+
+    void recordTick(long nanos, long indexNanos, long allocatedBytes) {
+        tickNanos += nanos;
+        lastTickNanos = nanos;
+        this.indexNanos += indexNanos;
+        this.allocatedBytes += allocatedBytes;
+        ticks++;
+    }
+
+    void recordUpdates(long updated, long profiled, long neighbours, long[] behaviourNanos) {
+        updatedBoids += updated;
+        if (profiled == 0)
+            return;
+        profiledBoids += profiled;
+        this.neighbours += neighbours;
+        for (int i = 0; i < behaviourNanos.length; i++)
+            this.behaviourNanos.addAndGet(i, behaviourNanos[i]);
+    }
+
+    /**
+     * Gets the memory the calling thread has allocated since it started.
+     *
+     * @return The memory in bytes, or 0 if the JVM does not measure it.
+     */
+    static long threadAllocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads
+                : null;
+    }
+}
@@ -0,0 +1,306 @@
+package simulation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import models.Parameter;
+import models.ParameterGroup;
+
+/**
+ * Holds an engine to a frame budget by trading away fidelity when ticks run
+ * long, and giving it back once there is time to spare. Every
+ * {@link #WINDOW_TICKS} ticks the governor works out what each tick cost from
+ * the engine's {@link EngineMetrics}: the tick itself and the frames drawn of
+ * it. Over budget, it drops one {@link Level}; well under budget for
+ * {@link #RESTORE_WINDOWS} windows in a row, it climbs back one, so it does not
+ * flap between two levels that sit either side of the budget.
+ *
+ * Every change is kept in a short history for the control panel to show. The governor is off until {@link #setEnabled} turns it on, as a run
+ * whose fidelity follows the speed of the machine it runs on cannot be
+ * reproduced from its seed. Turning it off restores full fidelity.
+ */
+public class FidelityGovernor {
+    /** Ticks measured before each decision. */
+    public static final int WINDOW_TICKS = 30;
+    /** Share of the budget a window must stay under to count towards restoring. */
+    public static final float RESTORE_SHARE = 0.5f;
+    /** Windows in a row under {@link #RESTORE_SHARE} before fidelity is restored. */
+    public static final int RESTORE_WINDOWS = 4;
+    // Adjustments kept in the history
+    private static final int HISTORY = 50;
+
+    /**
+     * The steps of fidelity the governor moves between, from full down to the
+     * cheapest. Each level keeps every saving of the levels above it.
+     */
+    public enum Level {
+        FULL("full fidelity", 0, false, 0, 1),
+        APPROXIMATE("approximate cohesion and alignment", 0.5f, false, 0, 1),
+        SIMPLE_RENDERING("boids drawn as dots", 0.5f, true, 0, 1),
+        CAPPED_NEIGHBOURS("at most 32 neighbours per query", 0.5f, true, 32, 1),
+        HALF_STEERING("half the boids steered each tick", 0.5f, true, 32, 2),
+        QUARTER_STEERING("a quarter of the boids steered each tick", 0.5f, true, 32, 4);
+
+        private final String description;
+        private final float minimumErrorBound;
+        private final boolean isSimpleRendering;
+        private final int neighbourCap;
+        private final int steeringStride;
+
+        Level(String description, float minimumErrorBound, boolean isSimpleRendering, int neighbourCap,
+                int steeringStride) {
+            this.description = description;
+            this.minimumErrorBound = minimumErrorBound;
+            this.isSimpleRendering = isSimpleRendering;
+            this.neighbourCap = neighbourCap;
+            this.steeringStride = steeringStride;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Gets the least error bound cohesion and alignment use, so that they
+         * sum distant neighbours a cell at a time.
+         *
+         * @return The error bound, 0 to leave the behaviours' own.
+         */
+        public float getMinimumErrorBound() {
+            return minimumErrorBound;
+        }
+
+        /**
+         * Gets whether boids are drawn as dots, without any debugging drawings.
+         *
+         * @return Whether rendering is simplified.
+         */
+        public boolean isSimpleRendering() {
+            return isSimpleRendering;
+        }
+
+        /**
+         * Gets the most neighbours any boid looks at one by one, see
+         * {@link spatial.CappedIndex}.
+         *
+         * @return The cap, 0 for none.
+         */
+        public int getNeighbourCap() {
+            return neighbourCap;
+        }
+
+        /**
+         * Gets how many ticks apart each boid is steered. In between, boids
+         * coast, and each steering covers the ticks since the last.
+         *
+         * @return The stride, 1 to steer every boid every tick.
+         */
+        public int getSteeringStride() {
+            return steeringStride;
+        }
+    }
+
+    /**
+     * One change of level, with the measurement that caused it.
+     */
+    public static class Adjustment {
+        private final long tick;
+        private final Level from;
+        private final Level to;
+        private final long costNanos;
+        private final long budgetNanos;
+
+        Adjustment(long tick, Level from, Level to, long costNanos, long budgetNanos) {
+            this.tick = tick;
+            this.from = from;
+            this.to = to;
+            this.costNanos = costNanos;
+            this.budgetNanos = budgetNanos;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public Level getFrom() {
+            return from;
+        }
+
+        public Level getTo() {
+            return to;
+        }
+
+        /**
+         * Gets the cost of each tick over the window that caused the change.
+         *
+         * @return The cost in nanoseconds, or -1 if the governor was turned off.
+         */
+        public long getCostNanos() {
+            return costNanos;
+        }
+
+        public long getBudgetNanos() {
+            return budgetNanos;
+        }
+
+        @Override
+        public String toString() {
+            String direction = to.ordinal() > from.ordinal() ? "lowered" : "raised";
+            if (costNanos < 0)
+                return String.format("tick %d: governor off, %s to %s", tick, direction, to.getDescription());
+            return String.format("tick %d: %.2f ms per tick against a budget of %.2f ms, %s to %s", tick,
+                    costNanos / 1e6, budgetNanos / 1e6, direction, to.getDescription());
+        }
+    }
+
+    private final EngineMetrics metrics;
+    private final ParameterGroup parameters;
+    private final Parameter budgetParam;
+    private volatile boolean isEnabled = false;
+    private volatile Level level = Level.FULL;
+    private final Deque<Adjustment> adjustments = new ArrayDeque<>();
+
+    // The engine's totals at the start of the current window, which starts
+    // again whenever the governor is turned on
+    private volatile boolean isWindowStale = true;
+    private long windowTicks;
+    private long windowNanos;
+    // Windows in a row well under budget
+    private int quietWindows = 0;
+
+    FidelityGovernor(EngineMetrics metrics) {
+        this.metrics = metrics;
+        parameters = new ParameterGroup("Governor");
+
+        budgetParam = new Parameter(
+                "Governor",
+                "Budget",
+                "The time each tick and its frame may take, in ms, before the governor lowers fidelity",
+                2.0f,
+                12.0f,
+                100.0f);
+        parameters.addParameter(budgetParam);
+    }
+
+    /**
+     * Measures the window ending with the tick just run, if it is complete, and
+     * moves one level if the measurement calls for it. Called by the engine
+     * after every tick, on the thread driving it.
+     *
+     * @param tick The number of the tick just run.
+     */
+    void afterTick(long tick) {
+        if (!isEnabled)
+            return;
+
+        long totalTicks = metrics.getTicks();
+        long totalNanos = metrics.getTickNanos() + metrics.getFrameNanos();
+        if (isWindowStale) {
+            isWindowStale = false;
+            windowTicks = totalTicks;
+            windowNanos = totalNanos;
+            quietWindows = 0;
+            return;
+        }
+        long ticks = totalTicks - windowTicks;
+        if (ticks < WINDOW_TICKS)
+            return;
+
+        long cost = (totalNanos - windowNanos) / ticks;
+        long budget = getBudgetNanos();
+        windowTicks = totalTicks;
+        windowNanos = totalNanos;
+
+        Level current = level;
+        Level[] levels = Level.values();
+        if (cost > budget) {
+            quietWindows = 0;
+            if (current.ordinal() < levels.length - 1)
+                adjust(tick, levels[current.ordinal() + 1], cost, budget);
+        } else if (cost < budget * RESTORE_SHARE && current != Level.FULL) {
+            if (++quietWindows >= RESTORE_WINDOWS) {
+                quietWindows = 0;
+                adjust(tick, levels[current.ordinal() - 1], cost, budget);
+            }
+        } else {
+            quietWindows = 0;
+        }
+    }
+
+    private void adjust(long tick, Level to, long cost, long budget) {
+        Adjustment adjustment = new Adjustment(tick, level, to, cost, budget);
+        level = to;
+        synchronized (adjustments) {
+            if (adjustments.size() == HISTORY)
+                adjustments.removeFirst();
+            adjustments.addLast(adjustment);
+        }
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Turns the governor on or off. Turning it on starts a fresh window;
+     * turning it off restores full fidelity from the next tick.
+     *
+     * @param enabled Whether the governor adjusts fidelity.
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled == isEnabled)
+            return;
+        isEnabled = enabled;
+        isWindowStale = true;
+        if (!enabled && level != Level.FULL)
+            adjust(metrics.getTicks(), Level.FULL, -1, getBudgetNanos());
+    }
+
+    /**
+     * Gets the level of fidelity the engine runs at.
+     *
+     * @return The level, {@link Level#FULL} while the governor is off.
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the time each tick and its frames may take.
+     *
+     * @return The budget in milliseconds.
+     */
+    public float getBudget() {
+        return budgetParam.getValue();
+    }
+
+    public void setBudget(float budget) {
+        budgetParam.setValue(budget);
+    }
+
+    private long getBudgetNanos() {
+        return (long) (budgetParam.getValue() * 1e6);
+    }
+
+    /**
+     * Gets the governor's parameters, for the control panel.
+     *
+     * @return The parameters.
+     */
+    public ParameterGroup getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Gets the most recent changes of level, oldest first.
+     *
+     * @return A copy of the history.
+     */
+    public List<Adjustment> getAdjustments() {
+        synchronized (adjustments) {
+            return new ArrayList<>(adjustments);
+        }
+    }
+}
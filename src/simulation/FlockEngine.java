@@ -0,0 +1,725 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import analytics.FlockAnalytics;
+import behaviour.BehaviourSet;
+import models.Boid;
+import models.Environment;
+import models.Flock;
+import models.OffHeapFlock;
+import models.Parameter;
+import models.ParameterGroup;
+import net.StreamServer;
+import models.SpeciesTable;
+import recording.TrajectoryWriter;
+import spatial.CappedIndex;
+import spatial.FlockView;
+import spatial.IncrementalGrid;
+import spatial.NeighbourList;
+import spatial.Partitioner;
+import spatial.Partitioner.PartitionTask;
+import spatial.QuadTree;
+import spatial.SpatialIndex;
+import spatial.UniformGrid;
+import util.RandomSource;
+
+/**
+ * Runs a flocking simulation without any user interface. An engine owns its
+ * flock, its random source and its own set of behaviours and parameters, so
+ * any number of engines can run side by side in one JVM, each configured
+ * differently.
+ *
+ * The same seed always produces the same run, regardless of the number of
+ * threads used: each boid draws its initial state from its own random stream,
+ * and every tick reads only the state of the previous tick.
+ */
+public class FlockEngine implements Closeable {
+    /**
+     * The indexes neighbours can be looked up in. Each lays out the flock
+     * differently and so sums neighbours in a different order, so a run
+     * follows a different trajectory with each.
+     */
+    public enum NeighbourIndex {
+        /** A grid rebuilt over the flock's bounding box every tick. */
+        GRID,
+        /**
+         * A grid anchored to the world, moving only the boids that changed cell
+         * since the last tick.
+         */
+        INCREMENTAL_GRID,
+        /** An adaptive quad tree, rebuilt every tick. */
+        QUAD_TREE
+    }
+
+    // State of every boid in the simulation
+    Flock flock;
+    // Number of ticks simulated so far
+    long tick = 0;
+    // Source of all randomness in the simulation, saved with checkpoints
+    final RandomSource random;
+    // Behaviours and their parameters, owned by this engine alone
+    private final BehaviourSet behaviours;
+    // Indexes of the flock's current state, brought up to date at the start of
+    // every tick
+    private final UniformGrid grid = new UniformGrid(50);
+    private final IncrementalGrid incrementalGrid = new IncrementalGrid(50);
+    private final QuadTree quadTree = new QuadTree();
+    // Thins the queries of the index in use while the governor caps neighbours
+    private final CappedIndex cappedIndex = new CappedIndex();
+    // The index in use, the rebuilt grid unless another is asked for, as
+    // IndexBenchmark measures neither of the others as faster
+    private volatile NeighbourIndex neighbourIndex = NeighbourIndex.GRID;
+
+    // Threads the flock is updated on, null when running single-threaded
+    private final ExecutorService workers;
+    private final int threads;
+    // The same threads, for building the grids
+    private final Partitioner partitioner = new Partitioner() {
+        @Override
+        public int getPartitionCount() {
+            return workers != null ? threads : 1;
+        }
+
+        @Override
+        public void forEachPartition(int count, PartitionTask task) {
+            FlockEngine.this.forEachPartition(count, task);
+        }
+    };
+    // One working Boid per partition, reused for every boid in that partition
+    private final Boid[] partitionBoids;
+
+    // What ticks cost, and per partition what the current tick's profiled
+    // updates have cost so far
+    private final EngineMetrics metrics;
+    private final long[][] partitionBehaviourNanos;
+    private final long[] tickBehaviourNanos;
+    private final long[] partitionProfiled;
+    private final long[] partitionNeighbours;
+    // Memory the worker threads have allocated during the current tick
+    private final AtomicLong workerAllocatedBytes = new AtomicLong();
+    // Lowers fidelity when ticks run over budget, off unless turned on
+    private final FidelityGovernor governor;
+
+    // Active trajectory recording, analytics and server streaming to viewers in
+    // other processes, each of which may be stopped from another thread
+    private volatile TrajectoryWriter recorder;
+    private volatile FlockAnalytics analytics;
+    private volatile StreamServer server;
+    // Latest snapshot for queries from other threads, and whether one has been
+    // asked for since it was taken
+    private volatile FlockView view;
+    private volatile boolean isViewRequested = false;
+
+    /**
+     * Constructs an engine and initializes its flock.
+     *
+     * @param seed      The seed of the engine's random source.
+     * @param threads   The number of threads to initialize and update the flock
+     *                  on.
+     * @param boidCount The number of boids in the flock.
+     * @param width     The width of the world.
+     * @param height    The height of the world.
+     */
+    public FlockEngine(long seed, int threads, int boidCount, float width, float height) {
+        this(seed, threads, new Flock(boidCount, width, height));
+    }
+
+    /**
+     * Constructs an engine around a flock supplied by the caller, such as an
+     * {@link OffHeapFlock} for flocks too large for the heap, and initializes
+     * every boid in it. The result is the same as with a flock of the same size
+     * created by the engine.
+     *
+     * @param seed    The seed of the engine's random source.
+     * @param threads The number of threads to initialize and update the flock
+     *                on.
+     * @param flock   The flock to simulate, whose current state is replaced.
+     */
+    public FlockEngine(long seed, int threads, Flock flock) {
+        this(seed, threads, flock, new Scenario());
+    }
+
+    /**
+     * Constructs an engine and starts it as a scenario describes, with a flock
+     * of the scenario's size.
+     *
+     * @param seed     The seed of the engine's random source.
+     * @param threads  The number of threads to initialize and update the flock
+     *                 on.
+     * @param scenario The scenario to start from.
+     * @throws IllegalArgumentException If the scenario names a species,
+     *                                  behaviour or parameter that does not
+     *                                  exist.
+     */
+    public FlockEngine(long seed, int threads, Scenario scenario) {
+        this(seed, threads, scenario.createFlock(), scenario);
+    }
+
+    /**
+     * Constructs an engine around a flock supplied by the caller and starts it
+     * as a scenario describes. The scenario's size and dimensions are ignored
+     * in favour of the flock's.
+     *
+     * @param seed     The seed of the engine's random source.
+     * @param threads  The number of threads to initialize and update the flock
+     *                 on.
+     * @param flock    The flock to simulate, whose current state is replaced.
+     * @param scenario The scenario to start from.
+     * @throws IllegalArgumentException If the scenario names a species,
+     *                                  behaviour or parameter that does not
+     *                                  exist.
+     */
+    public FlockEngine(long seed, int threads, Flock flock, Scenario scenario) {
+        this.random = new RandomSource(seed);
+        this.behaviours = new BehaviourSet();
+        this.threads = Math.max(1, threads);
+        this.workers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads, FlockEngine::newWorker) : null;
+        this.partitionBoids = new Boid[this.threads];
+        for (int i = 0; i < this.threads; i++)
+            partitionBoids[i] = new Boid();
+        int behaviourCount = behaviours.getNames().size();
+        this.metrics = new EngineMetrics(behaviourCount);
+        this.partitionBehaviourNanos = new long[this.threads][behaviourCount];
+        this.tickBehaviourNanos = new long[behaviourCount];
+        this.partitionProfiled = new long[this.threads];
+        this.partitionNeighbours = new long[this.threads];
+        this.governor = new FidelityGovernor(metrics);
+
+        try {
+            scenario.configure(this);
+        } catch (IllegalArgumentException e) {
+            if (workers != null)
+                workers.shutdown();
+            throw e;
+        }
+        initializeFlock(flock, scenario);
+    }
+
+    /**
+     * Places every boid as the scenario describes. Each boid draws from a stream
+     * derived from its index rather than from a shared generator, so partitions
+     * can be filled in parallel without contention and without the result
+     * depending on how the flock was partitioned.
+     */
+    private void initializeFlock(Flock flock, Scenario scenario) {
+        this.flock = flock;
+        int count = flock.size();
+
+        forEachPartition((partition, start, end) -> scenario.place(flock, start, end, random));
+        random.nextLong(); // Move on so later streams differ from the ones used above
+
+        flock.shuffleBiasOrder(random.split());
+        rebalanceBias();
+
+        if (count > 0)
+            flock.setDebug(0, true); // Set the first boid to debug mode
+    }
+
+    /**
+     * Advances the simulation by one tick, updating every boid from the state of
+     * the previous tick. A tick covers the time set by the behaviours'
+     * {@link behaviour.TimeStep}, in as many updates as it has sub-steps, each
+     * with its own index. When a recording is active the resulting frame is
+     * handed to the trajectory writer, and when analytics or a stream server
+     * are running it is offered to them. What the tick cost is added to the
+     * engine's {@link #getMetrics() metrics}, and the tick runs at the fidelity
+     * its {@link #getGovernor() governor} has chosen.
+     */
+    public void step() {
+        long tickStart = System.nanoTime();
+        long allocatedBefore = EngineMetrics.threadAllocatedBytes();
+        workerAllocatedBytes.set(0);
+
+        FidelityGovernor.Level level = governor.getLevel();
+        behaviours.setMinimumErrorBound(level.getMinimumErrorBound());
+        behaviours.prepare();
+        rebalanceBias();
+        int subSteps = behaviours.getTimeStep().getSubSteps();
+        float dt = behaviours.getTimeStep().getDeltaTime();
+        boolean isProfiling = metrics.isProfiling();
+        float range = behaviours.getPerceptionRange();
+        int stride = level.getSteeringStride();
+
+        long indexNanos = 0;
+        for (int subStep = 0; subStep < subSteps; subStep++) {
+            long indexStart = System.nanoTime();
+            SpatialIndex built = buildIndex();
+            SpatialIndex index = level.getNeighbourCap() > 0
+                    ? cappedIndex.wrap(built, flock, level.getNeighbourCap())
+                    : built;
+            indexNanos += System.nanoTime() - indexStart;
+            // Which boids steer this update, when only one in every stride does
+            int phase = (int) ((tick * subSteps + subStep) % stride);
+            forEachPartition((partition, start, end) -> {
+                Boid boid = partitionBoids[partition];
+                if (!isProfiling && stride == 1) {
+                    for (int i = start; i < end; i++)
+                        boid.load(flock, i).update(flock, behaviours, index, dt);
+                    return;
+                }
+
+                long[] behaviourNanos = partitionBehaviourNanos[partition];
+                for (int i = start; i < end; i++) {
+                    boid.load(flock, i);
+                    float steeringDt = i % stride == phase ? dt * stride : 0;
+                    if (!isProfiling || i % EngineMetrics.SAMPLE_STRIDE != 0) {
+                        boid.update(flock, behaviours, index, dt, steeringDt, null);
+                        continue;
+                    }
+                    partitionNeighbours[partition] += countNeighbours(boid, index, range);
+                    partitionProfiled[partition]++;
+                    boid.update(flock, behaviours, index, dt, steeringDt, behaviourNanos);
+                }
+            });
+            flock.swap();
+        }
+        tick++;
+        recordMetrics(subSteps, tickStart, indexNanos, allocatedBefore);
+        governor.afterTick(tick);
+
+        TrajectoryWriter writer = recorder;
+        if (writer != null)
+            recordFrame(writer);
+        FlockAnalytics sampling = analytics;
+        if (sampling != null)
+            sampling.offer(tick, flock);
+        StreamServer streaming = server;
+        if (streaming != null)
+            streaming.publish(tick, flock);
+        if (isViewRequested)
+            publishView();
+    }
+
+    /**
+     * Counts the boids within a range of one about to be updated, from the
+     * index the update will use.
+     */
+    private int countNeighbours(Boid boid, SpatialIndex index, float range) {
+        NeighbourList candidates = boid.getNeighbours();
+        index.query(boid.position.x, boid.position.y, range, candidates);
+        int count = 0;
+        for (int k = 0; k < candidates.size(); k++) {
+            int other = candidates.get(k);
+            float dx = flock.getX(other) - boid.position.x;
+            float dy = flock.getY(other) - boid.position.y;
+            if (other != boid.getIndex() && dx * dx + dy * dy < range * range)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Adds what the tick just run cost to the metrics, and clears the totals
+     * the partitions kept during it.
+     */
+    private void recordMetrics(int subSteps, long tickStart, long indexNanos, long allocatedBefore) {
+        long profiled = 0;
+        long neighbours = 0;
+        long[] behaviourNanos = tickBehaviourNanos;
+        Arrays.fill(behaviourNanos, 0);
+        for (int partition = 0; partition < threads; partition++) {
+            profiled += partitionProfiled[partition];
+            neighbours += partitionNeighbours[partition];
+            partitionProfiled[partition] = 0;
+            partitionNeighbours[partition] = 0;
+            long[] partitionNanos = partitionBehaviourNanos[partition];
+            for (int i = 0; i < behaviourNanos.length; i++) {
+                behaviourNanos[i] += partitionNanos[i];
+                partitionNanos[i] = 0;
+            }
+        }
+        metrics.recordUpdates((long) flock.size() * subSteps, profiled, neighbours, behaviourNanos);
+
+        long allocated = EngineMetrics.threadAllocatedBytes() - allocatedBefore + workerAllocatedBytes.get();
+        metrics.recordTick(System.nanoTime() - tickStart, indexNanos, allocated);
+    }
+
+    private void publishView() {
+        isViewRequested = false;
+        view = new FlockView(tick, flock, grid.getCellSize());
+    }
+
+    /**
+     * Gets a snapshot of the flock that can be queried from any thread while the
+     * simulation keeps running. Snapshots are only taken while they are being
+     * asked for: after a call, the next tick publishes a fresh one, so a caller
+     * polling regularly keeps seeing recent state, and nothing is copied while
+     * nobody is asking. The first snapshot is taken by the tick after the first
+     * call, and restoring a checkpoint drops the last one, as it no longer
+     * describes the flock.
+     *
+     * @return The latest snapshot, or null if no tick has taken one since the
+     *         engine started or was restored.
+     */
+    public FlockView getView() {
+        isViewRequested = true;
+        return view;
+    }
+
+    /**
+     * Brings the number of biased boids in line with the bias percentage. Only
+     * the boids joining or leaving the biased share are touched, so this costs
+     * nothing while the percentage is unchanged.
+     */
+    private void rebalanceBias() {
+        float share = behaviours.getBias().getPercentage() / 100;
+        flock.setBiasedCount(Math.round(share * flock.size()));
+    }
+
+    /**
+     * Indexes the flock's current state for the coming tick, in the index
+     * chosen with {@link #setNeighbourIndex}. The incremental grid holds the
+     * same cells however it got there, so runs are the same however many
+     * threads run and after a checkpoint restore, which restores the choice
+     * too. When no enabled behaviour looks for neighbours, nothing is indexed
+     * at all.
+     *
+     * @return The index to use for the coming tick.
+     */
+    private SpatialIndex buildIndex() {
+        float cellSize = behaviours.getNeighbourCellSize();
+        grid.setCellSize(cellSize);
+        // Nothing looks for neighbours, so there is nothing to index
+        if (behaviours.getPerceptionRange() <= 0)
+            return SpatialIndex.EMPTY;
+        switch (neighbourIndex) {
+            case INCREMENTAL_GRID:
+                incrementalGrid.setCellSize(cellSize);
+                incrementalGrid.build(flock, partitioner);
+                return incrementalGrid;
+            case QUAD_TREE:
+                quadTree.build(flock);
+                return quadTree;
+            default:
+                grid.build(flock, partitioner);
+                return grid;
+        }
+    }
+
+    /**
+     * Runs a task over contiguous partitions of the flock, one per thread, and
+     * waits for all of them to finish.
+     *
+     * @param task The task to run for each partition.
+     */
+    private void forEachPartition(PartitionTask task) {
+        forEachPartition(flock.size(), task);
+    }
+
+    /**
+     * Runs a task over contiguous partitions of a number of items, one per
+     * thread, and waits for all of them to finish. Also lets the grids build on
+     * the same threads, through {@link #partitioner}.
+     *
+     * @param count The number of items.
+     * @param task  The task to run for each partition.
+     */
+    private void forEachPartition(int count, PartitionTask task) {
+        if (workers == null) {
+            task.run(0, 0, count);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int partition = 0; partition < threads; partition++) {
+            int p = partition;
+            int start = (int) ((long) count * partition / threads);
+            int end = (int) ((long) count * (partition + 1) / threads);
+            tasks.add(() -> {
+                long allocatedBefore = EngineMetrics.threadAllocatedBytes();
+                task.run(p, start, end);
+                workerAllocatedBytes.addAndGet(EngineMetrics.threadAllocatedBytes() - allocatedBefore);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> result : workers.invokeAll(tasks))
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while updating the flock", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to update the flock", e.getCause());
+        }
+    }
+
+    private static Thread newWorker(Runnable runnable) {
+        Thread thread = new Thread(runnable, "flock-worker");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Starts recording every subsequent tick to a trajectory file. Any recording
+     * already in progress is finished first.
+     *
+     * @param file           The file to record to.
+     * @param isQuantised    Whether to store quantised 16-bit values.
+     * @param isDeltaEncoded Whether to delta encode frames between key frames.
+     * @throws IOException If the file cannot be created.
+     */
+    public void startRecording(Path file, boolean isQuantised, boolean isDeltaEncoded) throws IOException {
+        stopRecording();
+        recorder = new TrajectoryWriter(file, flock.size(), flock.getWidth(), flock.getHeight(), isQuantised,
+                isDeltaEncoded);
+    }
+
+    /**
+     * Finishes the current recording, if any, flushing outstanding frames.
+     *
+     * @throws IOException If the recording could not be completed.
+     */
+    public void stopRecording() throws IOException {
+        TrajectoryWriter finished = recorder;
+        if (finished == null)
+            return;
+
+        recorder = null;
+        // Wait for a frame being written on the simulation thread
+        synchronized (finished) {
+            finished.close();
+        }
+    }
+
+    /**
+     * Writes the current tick to a recording, unless it has been stopped since
+     * the tick began.
+     *
+     * @param writer The recording to write to.
+     */
+    private void recordFrame(TrajectoryWriter writer) {
+        synchronized (writer) {
+            if (recorder != writer)
+                return;
+            try {
+                writer.write(tick, flock);
+            } catch (IOException e) {
+                System.err.println("Recording stopped: " + e.getMessage());
+                recorder = null;
+            }
+        }
+    }
+
+    /**
+     * Starts measuring the flock in the background. Any analytics already
+     * running are stopped first.
+     *
+     * @param clusterRadius The distance within which two boids count as
+     *                      neighbours of the same cluster.
+     * @param interval      The number of ticks between samples.
+     * @return The analytics, to subscribe to.
+     */
+    public FlockAnalytics startAnalytics(float clusterRadius, int interval) {
+        stopAnalytics();
+        analytics = new FlockAnalytics(clusterRadius, interval);
+        return analytics;
+    }
+
+    /**
+     * Stops the background analytics, if any, after measuring every queued
+     * tick.
+     */
+    public void stopAnalytics() {
+        FlockAnalytics finished = analytics;
+        if (finished == null)
+            return;
+
+        analytics = null;
+        finished.close();
+    }
+
+    /**
+     * Gets the running analytics.
+     *
+     * @return The analytics, or null if none are running.
+     */
+    public FlockAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Starts streaming every subsequent tick to viewers connecting over a local
+     * socket, and accepting parameter updates from them. Any server already
+     * running is stopped first.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @return The server, to find the port it listens on.
+     * @throws IOException If the port cannot be bound.
+     */
+    public StreamServer startStreaming(int port) throws IOException {
+        stopStreaming();
+        server = new StreamServer(this, port);
+        return server;
+    }
+
+    /**
+     * Disconnects every viewer and stops the stream server, if any.
+     *
+     * @throws IOException If the server could not be closed.
+     */
+    public void stopStreaming() throws IOException {
+        StreamServer finished = server;
+        if (finished == null)
+            return;
+
+        server = null;
+        finished.close();
+    }
+
+    /**
+     * Saves the complete state of the simulation to a checkpoint file.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     * @see Checkpoint
+     */
+    public void saveCheckpoint(Path file) throws IOException {
+        Checkpoint.save(this, file);
+    }
+
+    /**
+     * Restores the simulation from a checkpoint file. Any active recording is
+     * finished first, as the restored flock may have a different size.
+     *
+     * @param file The checkpoint file to read.
+     * @throws IOException If the file cannot be read.
+     * @see Checkpoint
+     */
+    public void restoreCheckpoint(Path file) throws IOException {
+        stopRecording();
+        Checkpoint.restore(this, file);
+        view = null;
+    }
+
+    /**
+     * Finishes any active recording, stops the analytics, the stream server and
+     * the worker threads.
+     *
+     * @throws IOException If the recording could not be completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (workers != null)
+            workers.shutdown();
+        stopAnalytics();
+        stopStreaming();
+        stopRecording();
+    }
+
+    public Flock getFlock() {
+        return flock;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public BehaviourSet getBehaviours() {
+        return behaviours;
+    }
+
+    /**
+     * Gets the running totals of what the engine's ticks have cost, which the
+     * control panel's performance section reads.
+     *
+     * @return The metrics.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the governor that lowers the engine's fidelity to hold a frame
+     * budget, which is off until turned on.
+     *
+     * @return The governor.
+     */
+    public FidelityGovernor getGovernor() {
+        return governor;
+    }
+
+    public NeighbourIndex getNeighbourIndex() {
+        return neighbourIndex;
+    }
+
+    /**
+     * Gets the share of the flock that changed grid cell in the last sub-step,
+     * as a measure of how much work keeping the index up to date takes. Only
+     * measured while the incremental grid is in use.
+     *
+     * @return The migration rate, from 0 to 1, or 1 after the grid's layout
+     *         changed.
+     */
+    public float getMigrationRate() {
+        return incrementalGrid.getMigrationRate();
+    }
+
+    /**
+     * Sets the index neighbours are looked up in from the next tick, the
+     * rebuilt grid by default. A run only matches the tiled runs of
+     * {@link distributed.DomainCoordinator}, which always rebuild the grid,
+     * with the default. Checkpoints save the choice.
+     *
+     * @param neighbourIndex The index to use.
+     */
+    public void setNeighbourIndex(NeighbourIndex neighbourIndex) {
+        this.neighbourIndex = neighbourIndex;
+    }
+
+    /**
+     * Gets the species of the simulation, whose parameters and interaction
+     * weights may be edited at any time and take effect from the next tick.
+     * Boids are moved between species with {@link Flock#setSpecies}.
+     *
+     * @return The species table.
+     */
+    public SpeciesTable getSpecies() {
+        return behaviours.getSpecies();
+    }
+
+    public Environment getEnvironment() {
+        return behaviours.getEnvironment().getEnvironment();
+    }
+
+    /**
+     * Replaces the attractors and obstacles of the simulation. The environment
+     * is static, so it is not part of checkpoints; restore it alongside one.
+     *
+     * @param environment The new environment, or {@link Environment#EMPTY}.
+     */
+    public void setEnvironment(Environment environment) {
+        behaviours.getEnvironment().setEnvironment(environment);
+    }
+
+    public List<ParameterGroup> getParameterGroups() {
+        return behaviours.getParameterGroups();
+    }
+
+    /**
+     * Finds a parameter by the name of its group and its own name.
+     *
+     * @param groupName     The name of the parameter group, e.g. "Cohesion".
+     * @param parameterName The name of the parameter, e.g. "Range".
+     * @return The parameter, or null if there is no such parameter.
+     */
+    public Parameter getParameter(String groupName, String parameterName) {
+        for (ParameterGroup group : getParameterGroups()) {
+            if (group.getName().equals(groupName))
+                return group.getParameter(parameterName);
+        }
+        return null;
+    }
+}
@@ -2,15 +2,22 @@ package simulation;
 
 import javax.swing.*;
 
+import analytics.FlockAnalytics;
+import analytics.SampleWriter;
 import models.Boid;
 import behaviour.*;
-import models.Parameter;
-import models.ParameterGroup;
+import models.Environment;
+import models.Flock;
+import ui.BoidPainter;
 import ui.ControlPanel;
+import util.RandomSource;
 
 import java.awt.*;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * A JPanel-based class that simulates flocking behavior using Boid objects.
@@ -18,132 +25,196 @@ import java.util.List;
  * movement in a window, applying flocking rules to create natural, collective
  * movement patterns. The simulation uses a Swing Timer to update and repaint
  * the Boids at regular intervals.
+ *
+ * The simulation itself is run by a {@link FlockEngine}; this panel advances
+ * it and draws the result. Ticks are scheduled by real time at the tick rate of
+ * the engine's {@link behaviour.TimeStep}, not once per repaint, so the flock
+ * moves at the same speed however often the panel is drawn.
  * 
  * @author Samuel Logan <contact@samuellogan.dev>
  */
 public class FlockSimulation extends JPanel {
     // Timer used for animation updates
     Timer timer;
-    // List of all Boids in the simulation
-    List<Boid> boids = new ArrayList<>();
-    // List of parameter groups for the control panel
-    private List<ParameterGroup> parameterGroups;
+    // The engine running the simulation shown in this panel
+    private final FlockEngine engine;
+    // Working Boid used to draw debug information on the EDT
+    private final Boid debugBoid;
+
+    // Real time not yet simulated, and when the timer last fired
+    private long pendingNanos = 0;
+    private long lastAdvance = System.nanoTime();
+    // Most ticks run on one firing of the timer; after a longer stall the
+    // simulation falls behind real time rather than trying to catch up
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // Fidelity level last printed, so each change of the governor is printed once
+    private FidelityGovernor.Level printedLevel = FidelityGovernor.Level.FULL;
 
-    static float maxSpeed = 2.0f;
-    static float minSpeed = 4.0f;
+    /**
+     * Constructs the FlockSimulation panel with an arbitrary seed, updating the
+     * flock on a single thread.
+     */
+    public FlockSimulation() {
+        this(new RandomSource().nextLong(), 1);
+    }
 
     /**
      * Constructs the FlockSimulation panel, initializes the simulation environment,
      * and starts the simulation. This constructor sets the preferred size of the
      * panel, the background color, initializes the boids with random positions, and
      * sets up a timer to update the simulation at regular intervals.
+     *
+     * @param seed    The seed of the simulation's random source.
+     * @param threads The number of threads to initialize and update the flock on.
      */
-    public FlockSimulation() {
-        parameterGroups = new ArrayList<>();
-        initializeParameterGroups();
+    public FlockSimulation(long seed, int threads) {
+        this(seed, threads, new Scenario());
+    }
+
+    /**
+     * Constructs the FlockSimulation panel starting from a scenario, sized to
+     * the scenario's world.
+     *
+     * @param seed     The seed of the simulation's random source.
+     * @param threads  The number of threads to initialize and update the flock
+     *                 on.
+     * @param scenario The scenario to start from.
+     */
+    public FlockSimulation(long seed, int threads, Scenario scenario) {
+        engine = new FlockEngine(seed, threads, scenario);
+        debugBoid = new Boid();
 
         // Set the size and background color of the simulation panel
-        setPreferredSize(new Dimension(800, 600));
-        Color backgroundColor = new Color(0x252628);
-        setBackground(backgroundColor);
+        setPreferredSize(new Dimension(Math.round(scenario.getWidth()), Math.round(scenario.getHeight())));
+        setBackground(BoidPainter.BACKGROUND_COLOR);
 
         // Setup the timer for regular updates
-        timer = new Timer(16, e -> repaint());
-
-        // Initialize boids with random positions within the panel's bounds
-        for (int i = 0; i < 100; i++) {
-            Boid boid = new Boid((float) Math.random() * 800, (float) Math.random() * 600);
-            if (i % 2 == 0)
-                boid.setBiased(true);
-
-            boids.add(boid);
-
-        }
-        boids.get(0).setDebug(true); // Set the first boid to debug mode
+        timer = new Timer(16, e -> advance());
 
         // Start the simulation
         timer.start();
     }
 
-    private void initializeParameterGroups() {
-        ParameterGroup avoidanceGroup = AvoidanceBehaviour.getParameters();
-        ParameterGroup alignmentGroup = AlignmentBehaviour.getParameters();
-        ParameterGroup cohesionGroup = CohesionBehaviour.getParameters();
-        ParameterGroup limitSpeedGroup = SpeedLimiterBehaviour.getParameters();
-        ParameterGroup biasBehaviour = BiasBehaviour.getParameters();
-
-        if (avoidanceGroup != null)
-            parameterGroups.add(avoidanceGroup);
-        if (alignmentGroup != null)
-            parameterGroups.add(alignmentGroup);
-        if (cohesionGroup != null)
-            parameterGroups.add(cohesionGroup);
-        if (limitSpeedGroup != null)
-            parameterGroups.add(limitSpeedGroup);
-        if (biasBehaviour != null)
-            parameterGroups.add(biasBehaviour);
-    }
-
-    // Getter for parameter groups to be used by the UI
-    public List<ParameterGroup> getParameterGroups() {
-        return parameterGroups;
+    /**
+     * Advances the simulation by one tick, printing any change of fidelity the
+     * engine's governor made.
+     */
+    public void step() {
+        engine.step();
+        FidelityGovernor governor = engine.getGovernor();
+        if (governor.getLevel() != printedLevel) {
+            printedLevel = governor.getLevel();
+            List<FidelityGovernor.Adjustment> adjustments = governor.getAdjustments();
+            System.out.println("Fidelity " + adjustments.get(adjustments.size() - 1));
+        }
     }
 
-    // Method to update a parameter value
-    public void updateParameter(String parameterName, float newValue) {
-        // Find the parameter and update its value only if it's different
-        for (ParameterGroup group : parameterGroups) {
-            for (Parameter parameter : group.getParameters().values()) {
-                if (parameter.getName().equals(parameterName) && parameter.getValue() != newValue) {
-                    parameter.setValue(newValue);
-                    break; // Break out of the loop once the correct parameter is updated
-                }
-            }
+    /**
+     * Runs as many ticks as the real time since the last call covers at the
+     * current tick rate, and repaints if any ran. Nothing runs while the panel
+     * is not showing.
+     */
+    private void advance() {
+        long now = System.nanoTime();
+        pendingNanos = isShowing() ? pendingNanos + now - lastAdvance : 0;
+        lastAdvance = now;
+
+        long interval = engine.getBehaviours().getTimeStep().getTickInterval();
+        int ticks = 0;
+        while (pendingNanos >= interval && ticks < MAX_CATCH_UP_TICKS) {
+            step();
+            pendingNanos -= interval;
+            ticks++;
         }
+        if (pendingNanos >= interval)
+            pendingNanos = 0;
+
+        if (ticks > 0)
+            repaint();
     }
 
     /**
      * Overrides the paintComponent method to draw each Boid in the simulation. This
      * method is called automatically by the repaint request in the Timer's
-     * ActionListener. It updates each Boid's state and then draws it on the panel.
+     * ActionListener, after the simulation has been advanced. The time it takes
+     * is reported to the engine's metrics. While the engine's governor has
+     * simplified rendering, boids are drawn as dots, without debugging drawings.
      *
      * @param g The Graphics object to protect.
      */
     @Override
     protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g; // Cast to use Java2D features
-        for (Boid boid : boids) {
-            boid.update(boids);
-            // Convert the direction of velocity to an angle
-            double angle = Math.atan2(boid.velocity.y, boid.velocity.x);
-
-            // Adjust these values to change the shape of the triangle
-            int tipSize = 6; // Distance from center to tip
-            int baseSize = 8; // Distance from center to base corners
-
-            // Calculate the points for a pointier triangle
-            int[] xPoints = {
-                    (int) (boid.position.x + Math.cos(angle) * tipSize), // Tip
-                    (int) (boid.position.x + Math.cos(angle + Math.PI - Math.PI / 6) * baseSize), // Base corner 1
-                    (int) (boid.position.x + Math.cos(angle + Math.PI + Math.PI / 6) * baseSize) // Base corner 2
-            };
-            int[] yPoints = {
-                    (int) (boid.position.y + Math.sin(angle) * tipSize), // Tip
-                    (int) (boid.position.y + Math.sin(angle + Math.PI - Math.PI / 6) * baseSize), // Base corner 1
-                    (int) (boid.position.y + Math.sin(angle + Math.PI + Math.PI / 6) * baseSize) // Base corner 2
-            };
 
-            // Draw the debug boid in a different color
-            Color debugColor = new Color(0x1AB6E5);
-            Color standardColor = new Color(0x808080);
-            g2d.setColor(boid.isDebug() ? debugColor : standardColor);
+        BoidPainter.paintEnvironment(g2d, engine.getEnvironment());
 
-            g2d.fillPolygon(xPoints, yPoints, 3);
+        Flock flock = engine.getFlock();
+        boolean isSimple = engine.getGovernor().getLevel().isSimpleRendering();
+        for (int i = 0; i < flock.size(); i++) {
+            // Draw the debug boid in a different color
+            Color color = flock.isDebug(i) ? BoidPainter.DEBUG_COLOR : BoidPainter.speciesColor(flock.getSpecies(i));
+            if (isSimple) {
+                BoidPainter.paintDot(g2d, flock.getX(i), flock.getY(i), color);
+                continue;
+            }
+            BoidPainter.paintBoid(g2d, flock.getX(i), flock.getY(i), flock.getVelocityX(i), flock.getVelocityY(i),
+                    color);
 
-            if (boid.isDebug())
-                drawDebugInfo(g2d, boid);
+            if (flock.isDebug(i))
+                drawDebugInfo(g2d, debugBoid.load(flock, i));
         }
+        engine.getMetrics().recordFrame(System.nanoTime() - start);
+    }
+
+    /**
+     * Starts recording every subsequent tick to a trajectory file.
+     *
+     * @see FlockEngine#startRecording(Path, boolean, boolean)
+     */
+    public void startRecording(Path file, boolean isQuantised, boolean isDeltaEncoded) throws IOException {
+        engine.startRecording(file, isQuantised, isDeltaEncoded);
+    }
+
+    /**
+     * Finishes the current recording, if any.
+     *
+     * @see FlockEngine#stopRecording()
+     */
+    public void stopRecording() throws IOException {
+        engine.stopRecording();
+    }
+
+    /**
+     * Saves the complete state of the simulation to a checkpoint file.
+     *
+     * @see FlockEngine#saveCheckpoint(Path)
+     */
+    public void saveCheckpoint(Path file) throws IOException {
+        engine.saveCheckpoint(file);
+    }
+
+    /**
+     * Restores the simulation from a checkpoint file.
+     *
+     * @see FlockEngine#restoreCheckpoint(Path)
+     */
+    public void restoreCheckpoint(Path file) throws IOException {
+        engine.restoreCheckpoint(file);
+        repaint();
+    }
+
+    public FlockEngine getEngine() {
+        return engine;
+    }
+
+    public Flock getFlock() {
+        return engine.getFlock();
+    }
+
+    public long getTick() {
+        return engine.getTick();
     }
 
     /**
@@ -154,25 +225,31 @@ public class FlockSimulation extends JPanel {
      * @param debugBoid The boid to draw debug information for.
      */
     private void drawDebugInfo(Graphics2D g2d, Boid debugBoid) {
-        float avoidRange = AvoidanceBehaviour.getRange();
-        float avoidFOV = AvoidanceBehaviour.getFOV();
-        float cohereRange = CohesionBehaviour.getRange();
-        float alignRange = AlignmentBehaviour.getRange();
-        float biasStrength = BiasBehaviour.getStrength();
-        float biasRange = BiasBehaviour.getRadius();
-        float biasXPosition = BiasBehaviour.getXPosition();
-        float biasYPosition = BiasBehaviour.getYPosition();
-
-        if (AvoidanceBehaviour.isEnabled() && AvoidanceBehaviour.isDebugging())
+        BehaviourSet behaviours = engine.getBehaviours();
+        AvoidanceBehaviour avoidance = behaviours.getAvoidance();
+        CohesionBehaviour cohesion = behaviours.getCohesion();
+        AlignmentBehaviour alignment = behaviours.getAlignment();
+        BiasBehaviour bias = behaviours.getBias();
+
+        float avoidRange = avoidance.getRange();
+        float avoidFOV = avoidance.getFOV();
+        float cohereRange = cohesion.getRange();
+        float alignRange = alignment.getRange();
+        float biasStrength = bias.getStrength();
+        float biasRange = bias.getRadius();
+        float biasXPosition = bias.getXPosition();
+        float biasYPosition = bias.getYPosition();
+
+        if (avoidance.isEnabled() && avoidance.isDebugging())
             drawFieldOfView(g2d, debugBoid, Color.RED, avoidRange, avoidFOV);
 
-        if (CohesionBehaviour.isEnabled() && CohesionBehaviour.isDebugging())
+        if (cohesion.isEnabled() && cohesion.isDebugging())
             drawFieldOfView(g2d, debugBoid, Color.BLUE, cohereRange, 360);
 
-        if (AlignmentBehaviour.isEnabled() && AlignmentBehaviour.isDebugging())
+        if (alignment.isEnabled() && alignment.isDebugging())
             drawFieldOfView(g2d, debugBoid, Color.GREEN, alignRange, 360);
 
-        if (BiasBehaviour.isEnabled() && BiasBehaviour.isDebugging()) {
+        if (bias.isEnabled() && bias.isDebugging()) {
             // Draw the bias areas color depending on the strength
             float value = Math.min(Math.max(biasStrength, 0), 1.0f);
             float normalizedValue = value / 1.0f;
@@ -239,104 +316,179 @@ public class FlockSimulation extends JPanel {
         g2d.setStroke(previousStroke); // Restore previous stroke
     }
 
+    private static FlockSimulation createSimulation(long seed, int threads, Scenario scenario, Path scenarioFile) {
+        try {
+            return new FlockSimulation(seed, threads, scenario);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not start " + scenarioFile + ": " + e.getMessage());
+            return new FlockSimulation(seed, threads);
+        }
+    }
+
     /**
      * The main method to run the FlockSimulation as an application.
      * It creates a JFrame to host the FlockSimulation panel.
      *
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments. {@code --record <file>} records the run
+     *             to a quantised, delta encoded trajectory file that can be played
+     *             back with {@link ui.ReplayViewer}. {@code --restore <file>}
+     *             resumes the run from a checkpoint. {@code --seed <n>} fixes the
+     *             seed for a reproducible run and {@code --threads <n>} updates
+     *             the flock on several threads. {@code --environment <file>}
+     *             loads attractors and obstacles, see {@link Environment}.
+     *             {@code --analytics <file>} streams the order parameter, mean
+     *             speed and clusters of every tick to a CSV file.
+     *             {@code --serve <port>} streams the run to
+     *             {@link ui.RemoteViewer}s and accepts parameter updates from
+     *             them. {@code --scenario <file>} starts from a
+     *             {@link Scenario}, whose seed {@code --seed} overrides.
+     *             {@code --budget <ms>} turns on the engine's
+     *             {@link FidelityGovernor} with that budget for each tick and
+     *             its frame. {@code --index <grid|incremental-grid|quad-tree>}
+     *             chooses the index neighbours are looked up in, see
+     *             {@link FlockEngine#setNeighbourIndex}.
      */
     public static void main(String[] args) {
+        Path recordFile = null;
+        Path restoreFile = null;
+        Path environmentFile = null;
+        Path analyticsFile = null;
+        Path scenarioFile = null;
+        int servePort = -1;
+        float budgetMillis = 0;
+        Long seedValue = null;
+        int threadCount = 1;
+        FlockEngine.NeighbourIndex indexChoice = FlockEngine.NeighbourIndex.GRID;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--record") && i + 1 < args.length)
+                recordFile = Paths.get(args[++i]);
+            else if (args[i].equals("--restore") && i + 1 < args.length)
+                restoreFile = Paths.get(args[++i]);
+            else if (args[i].equals("--seed") && i + 1 < args.length)
+                seedValue = Long.parseLong(args[++i]);
+            else if (args[i].equals("--threads") && i + 1 < args.length)
+                threadCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--environment") && i + 1 < args.length)
+                environmentFile = Paths.get(args[++i]);
+            else if (args[i].equals("--analytics") && i + 1 < args.length)
+                analyticsFile = Paths.get(args[++i]);
+            else if (args[i].equals("--serve") && i + 1 < args.length)
+                servePort = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--scenario") && i + 1 < args.length)
+                scenarioFile = Paths.get(args[++i]);
+            else if (args[i].equals("--budget") && i + 1 < args.length)
+                budgetMillis = Float.parseFloat(args[++i]);
+            else if (args[i].equals("--index") && i + 1 < args.length)
+                indexChoice = FlockEngine.NeighbourIndex
+                        .valueOf(args[++i].toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+
+        Scenario scenario = new Scenario();
+        if (scenarioFile != null) {
+            try {
+                scenario = Scenario.read(scenarioFile);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not load " + scenarioFile + ": " + e.getMessage());
+            }
+        }
+        if (seedValue == null)
+            seedValue = scenario.hasSeed() ? scenario.getSeed() : new RandomSource().nextLong();
+
+        Environment environment = Environment.EMPTY;
+        if (environmentFile != null) {
+            try {
+                environment = Environment.read(environmentFile);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not load " + environmentFile + ": " + e.getMessage());
+            }
+        }
+        Environment surroundings = environment;
+        Path recording = recordFile;
+        Path checkpoint = restoreFile;
+        Path samples = analyticsFile;
+        int port = servePort;
+        Path scenarioPath = scenarioFile;
+        Scenario start = scenario;
+        long seed = seedValue;
+        int threads = threadCount;
+        float budget = budgetMillis;
+        FlockEngine.NeighbourIndex neighbourIndex = indexChoice;
+
         SwingUtilities.invokeLater(() -> {
-            FlockSimulation simulation = new FlockSimulation();
+            FlockSimulation simulation = createSimulation(seed, threads, start, scenarioPath);
+            simulation.getEngine().setEnvironment(surroundings);
+            simulation.getEngine().setNeighbourIndex(neighbourIndex);
             JFrame frame = new JFrame("Flock Simulation");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.add(simulation);
             frame.pack();
             frame.setVisible(true);
 
-            new ControlPanel(simulation);
-        });
-    }
-
-    public static void toggleBehaviorEnabled(String behaviorName, boolean isEnabled) {
-        switch (behaviorName) {
-            case "Alignment":
-                AlignmentBehaviour.setEnabled(isEnabled);
-                break;
-            case "Cohesion":
-                CohesionBehaviour.setEnabled(isEnabled);
-                break;
-            case "Avoidance":
-                AvoidanceBehaviour.setEnabled(isEnabled);
-                break;
-            case "Speed Limiter":
-                SpeedLimiterBehaviour.setEnabled(isEnabled);
-                break;
-            case "Bias":
-                BiasBehaviour.setEnabled(isEnabled);
-                break;
-
-        }
-    }
+            if (checkpoint != null) {
+                try {
+                    simulation.restoreCheckpoint(checkpoint);
+                } catch (IOException e) {
+                    System.err.println("Could not restore " + checkpoint + ": " + e.getMessage());
+                }
+            }
 
-    public static boolean isBehaviorEnabled(String behaviorName) {
-        switch (behaviorName) {
-            case "Alignment":
-                return AlignmentBehaviour.isEnabled();
-            case "Cohesion":
-                return CohesionBehaviour.isEnabled();
-            case "Avoidance":
-                return AvoidanceBehaviour.isEnabled();
-            case "Speed Limiter":
-                return SpeedLimiterBehaviour.isEnabled();
-            case "Bias":
-                return BiasBehaviour.isEnabled();
-        }
-        return false;
-    }
+            if (recording != null) {
+                try {
+                    simulation.startRecording(recording, true, true);
+                } catch (IOException e) {
+                    System.err.println("Could not record to " + recording + ": " + e.getMessage());
+                }
 
-    public static void toggleBehaviorDebugging(String behaviorName, boolean isEnabled) {
-        switch (behaviorName) {
-            case "Alignment":
-                AlignmentBehaviour.setDebugging(isEnabled);
-                break;
-            case "Cohesion":
-                CohesionBehaviour.setDebugging(isEnabled);
-                break;
-            case "Avoidance":
-                AvoidanceBehaviour.setDebugging(isEnabled);
-                break;
-            case "Speed Limiter":
-                SpeedLimiterBehaviour.setDebugging(isEnabled);
-                break;
-            case "Bias":
-                BiasBehaviour.setDebugging(isEnabled);
-                break;
+                // Make sure the frame index is written when the window closes,
+                // stopping the ticks first so none is written after it
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    simulation.timer.stop();
+                    try {
+                        simulation.stopRecording();
+                    } catch (IOException e) {
+                        System.err.println("Could not finish recording: " + e.getMessage());
+                    }
+                }));
+            }
 
-        }
-    }
+            if (samples != null) {
+                try {
+                    SampleWriter writer = new SampleWriter(samples);
+                    FlockEngine engine = simulation.getEngine();
+                    FlockAnalytics analytics = engine.startAnalytics(engine.getBehaviours().getCohesion().getRange(), 1);
+                    analytics.subscribe(writer);
+
+                    // Flush the samples still queued when the window closes
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        simulation.timer.stop();
+                        engine.stopAnalytics();
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            System.err.println("Could not finish analytics: " + e.getMessage());
+                        }
+                    }));
+                } catch (IOException e) {
+                    System.err.println("Could not write analytics to " + samples + ": " + e.getMessage());
+                }
+            }
 
-    public static boolean isBehaviorDebugging(String behaviorName) {
-        switch (behaviorName) {
-            case "Alignment":
-                return AlignmentBehaviour.isDebugging();
-            case "Cohesion":
-                return CohesionBehaviour.isDebugging();
-            case "Avoidance":
-                return AvoidanceBehaviour.isDebugging();
-            case "Speed Limiter":
-                return SpeedLimiterBehaviour.isDebugging();
-            case "Bias":
-                return BiasBehaviour.isDebugging();
-        }
-        return false;
-    }
+            if (port >= 0) {
+                try {
+                    int listening = simulation.getEngine().startStreaming(port).getPort();
+                    System.out.println("Streaming on port " + listening);
+                } catch (IOException e) {
+                    System.err.println("Could not stream on port " + port + ": " + e.getMessage());
+                }
+            }
 
-    public static float getMaxSpeed() {
-        return maxSpeed;
-    }
+            if (budget > 0) {
+                FidelityGovernor governor = simulation.getEngine().getGovernor();
+                governor.setBudget(budget);
+                governor.setEnabled(true);
+            }
 
-    public static float getMinSpeed() {
-        return minSpeed;
+            new ControlPanel(simulation.getEngine());
+        });
     }
 }
@@ -0,0 +1,507 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import behaviour.BoidBehaviour;
+import models.Flock;
+import models.Parameter;
+import models.SpeciesTable;
+import util.RandomSource;
+
+/**
+ * Describes how a simulation starts: how many boids there are and where, which
+ * species they belong to, and the parameter values to start from. A scenario is
+ * a plain text file of {@code key = value} lines:
+ *
+ * <pre>
+ * boids = 1000000
+ * width = 1600
+ * height = 1200
+ * seed = 7
+ * distribution = clustered
+ * clusters = 12
+ * clusterRadius = 60
+ * species = Starling 95, Hawk 5
+ * species.Hawk.Cohesion Range = 120
+ * interaction.Avoidance.Starling.Hawk = 4
+ * bias = 10
+ * preset = calm.preset
+ * disable = Speed Limiter
+ * Cohesion.Factor = 0.02
+ * </pre>
+ *
+ * The distribution places boids:
+ * <ul>
+ * <li>{@code uniform}, the default, spreads them evenly over the world.</li>
+ * <li>{@code clustered} spreads them over {@code clusters} discs of radius
+ * {@code clusterRadius}, placed at random.</li>
+ * <li>{@code poisson-disk} spreads them evenly but never closer than half the
+ * average spacing, by jittering each boid within its own cell of a grid with
+ * one cell per boid. Dart throwing would place them one at a time; the grid
+ * places every boid independently.</li>
+ * <li>{@code ring} spreads them over a ring of radius {@code ringRadius} and
+ * width {@code ringWidth} around the centre of the world.</li>
+ * </ul>
+ * Every boid starts heading in a random direction.
+ *
+ * {@code species} lists the species with their share of the flock; the first
+ * renames the default species. Their values are set with
+ * {@code species.Name.Property} and the weights between them with
+ * {@code interaction.Behaviour.Species.Other}, using the names of
+ * {@link SpeciesTable.Property} and {@link SpeciesTable.Interaction} in any
+ * case, with spaces for underscores. {@code bias} is the percentage of biased
+ * boids. Keys of the form {@code Group.Parameter} set a parameter, and
+ * {@code enable} and {@code disable} list behaviours to turn on and off. A
+ * {@code preset} names a file of such settings, relative to the scenario, that
+ * is applied where it appears, so later lines override it. Lines starting with
+ * {@code #} are ignored.
+ *
+ * Every boid is placed from its own random stream, as by a
+ * {@link FlockEngine} without a scenario, so a flock of millions is filled in
+ * parallel straight into its arrays and comes out the same however many
+ * threads fill it. A uniform scenario with one species starts exactly like an
+ * engine without one.
+ */
+public class Scenario {
+    /** How boids are spread over the world at the start. */
+    public enum Distribution {
+        UNIFORM, CLUSTERED, POISSON_DISK, RING
+    }
+
+    private int boidCount = 100;
+    private float width = 800;
+    private float height = 600;
+    private Long seed;
+    private Distribution distribution = Distribution.UNIFORM;
+    private int clusters = 5;
+    private float clusterRadius = 50;
+    private float ringRadius = 200;
+    private float ringWidth = 40;
+    private Float biasPercentage;
+
+    // Species names and their shares of the flock, in ID order
+    private final List<String> speciesNames = new ArrayList<>();
+    private final List<Float> speciesShares = new ArrayList<>();
+    private final Map<String, Float> speciesValues = new LinkedHashMap<>();
+    private final Map<String, Float> interactions = new LinkedHashMap<>();
+
+    private final List<String> enabledBehaviours = new ArrayList<>();
+    private final List<String> disabledBehaviours = new ArrayList<>();
+    private final Map<String, Float> parameters = new LinkedHashMap<>();
+
+    /**
+     * Reads a scenario from a file, along with any presets it names.
+     *
+     * @param file The file to read.
+     * @return The parsed scenario.
+     * @throws IOException              If the file or a preset cannot be read.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    public static Scenario read(Path file) throws IOException {
+        Scenario scenario = new Scenario();
+        scenario.parse(Files.readAllLines(file), file.toAbsolutePath().getParent(), false);
+        return scenario;
+    }
+
+    /**
+     * Parses a scenario from its lines. Presets cannot be resolved without a
+     * file to resolve them against, so they are not allowed here.
+     *
+     * @param lines The lines of the scenario.
+     * @return The parsed scenario.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    public static Scenario parse(List<String> lines) {
+        Scenario scenario = new Scenario();
+        try {
+            scenario.parse(lines, null, false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return scenario;
+    }
+
+    private void parse(List<String> lines, Path directory, boolean isPreset) throws IOException {
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            int equals = line.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected key = value");
+
+            String key = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1).trim();
+            try {
+                if (isPreset && !isPresetKey(key))
+                    throw new IllegalArgumentException("A preset may only set parameters and behaviours");
+                if (key.equals("preset"))
+                    readPreset(directory, value);
+                else
+                    set(key, value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": invalid number in " + value, e);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void readPreset(Path directory, String name) throws IOException {
+        if (directory == null)
+            throw new IllegalArgumentException("Presets can only be used in scenario files");
+
+        Path file = directory.resolve(name);
+        try {
+            parse(Files.readAllLines(file), file.getParent(), true);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Preset " + name + ", " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isPresetKey(String key) {
+        return key.equals("preset") || key.equals("bias") || key.equals("enable") || key.equals("disable")
+                || (key.indexOf('.') > 0 && !key.startsWith("species.") && !key.startsWith("interaction."));
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "boids":
+                boidCount = Integer.parseInt(value);
+                if (boidCount < 0)
+                    throw new IllegalArgumentException("The number of boids cannot be negative");
+                break;
+            case "width":
+                width = parseExtent("width", value);
+                break;
+            case "height":
+                height = parseExtent("height", value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "distribution":
+                distribution = parseDistribution(value);
+                break;
+            case "clusters":
+                clusters = Math.max(1, Integer.parseInt(value));
+                break;
+            case "clusterRadius":
+                clusterRadius = Float.parseFloat(value);
+                break;
+            case "ringRadius":
+                ringRadius = Float.parseFloat(value);
+                break;
+            case "ringWidth":
+                ringWidth = Float.parseFloat(value);
+                break;
+            case "species":
+                parseSpecies(value);
+                break;
+            case "bias":
+                biasPercentage = Float.parseFloat(value);
+                break;
+            case "enable":
+                enabledBehaviours.addAll(splitList(value));
+                break;
+            case "disable":
+                disabledBehaviours.addAll(splitList(value));
+                break;
+            default:
+                if (key.startsWith("species."))
+                    speciesValues.put(key.substring("species.".length()), Float.parseFloat(value));
+                else if (key.startsWith("interaction."))
+                    interactions.put(key.substring("interaction.".length()), Float.parseFloat(value));
+                else if (key.indexOf('.') > 0)
+                    parameters.put(key, Float.parseFloat(value));
+                else
+                    throw new IllegalArgumentException("Unknown setting " + key);
+        }
+    }
+
+    private static float parseExtent(String name, String value) {
+        float extent = Float.parseFloat(value);
+        if (!(extent > 0) || Float.isInfinite(extent))
+            throw new IllegalArgumentException("The world " + name + " must be a positive number");
+        return extent;
+    }
+
+    private static Distribution parseDistribution(String value) {
+        try {
+            return Distribution.valueOf(toConstant(value));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown distribution " + value);
+        }
+    }
+
+    private void parseSpecies(String value) {
+        speciesNames.clear();
+        speciesShares.clear();
+        for (String item : splitList(value)) {
+            int space = item.lastIndexOf(' ');
+            if (space <= 0)
+                throw new IllegalArgumentException("Expected a name and a share in " + item);
+            float share = Float.parseFloat(item.substring(space + 1));
+            if (share < 0)
+                throw new IllegalArgumentException("Negative share in " + item);
+            speciesNames.add(item.substring(0, space).trim());
+            speciesShares.add(share);
+        }
+        if (speciesNames.size() > SpeciesTable.MAX_SPECIES)
+            throw new IllegalArgumentException("At most " + SpeciesTable.MAX_SPECIES + " species are supported");
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty())
+                items.add(item.trim());
+        }
+        return items;
+    }
+
+    private static String toConstant(String name) {
+        return name.trim().toUpperCase(Locale.ROOT).replace(' ', '_').replace('-', '_');
+    }
+
+    /**
+     * Creates an empty flock of the scenario's size, in a world of its
+     * dimensions, for {@link FlockEngine#FlockEngine(long, int, Flock, Scenario)}.
+     *
+     * @return The flock.
+     */
+    public Flock createFlock() {
+        return new Flock(boidCount, width, height);
+    }
+
+    /**
+     * Sets up the species, parameters and behaviours of an engine. Called by
+     * the engine before the flock is placed.
+     *
+     * @param engine The engine to set up.
+     * @throws IllegalArgumentException If a species, behaviour or parameter
+     *                                  does not exist, or a value is out of
+     *                                  range.
+     */
+    void configure(FlockEngine engine) {
+        SpeciesTable table = engine.getSpecies();
+        for (int i = 0; i < speciesNames.size(); i++) {
+            if (i == 0)
+                table.setName(0, speciesNames.get(0));
+            else
+                table.addSpecies(speciesNames.get(i));
+        }
+
+        for (Map.Entry<String, Float> entry : speciesValues.entrySet()) {
+            String[] parts = splitKey(entry.getKey(), 2, "species.Name.Property");
+            table.set(findSpecies(table, parts[0]), findEnum(SpeciesTable.Property.class, parts[1]),
+                    entry.getValue());
+        }
+        for (Map.Entry<String, Float> entry : interactions.entrySet()) {
+            String[] parts = splitKey(entry.getKey(), 3, "interaction.Behaviour.Species.Other");
+            table.setWeight(findEnum(SpeciesTable.Interaction.class, parts[0]), findSpecies(table, parts[1]),
+                    findSpecies(table, parts[2]), entry.getValue());
+        }
+
+        for (String name : enabledBehaviours)
+            findBehaviour(engine, name).setEnabled(true);
+        for (String name : disabledBehaviours)
+            findBehaviour(engine, name).setEnabled(false);
+
+        if (biasPercentage != null)
+            setParameter(engine, "Bias.Percentage", biasPercentage);
+        for (Map.Entry<String, Float> entry : parameters.entrySet())
+            setParameter(engine, entry.getKey(), entry.getValue());
+    }
+
+    private static String[] splitKey(String key, int parts, String form) {
+        String[] split = key.split("\\.");
+        if (split.length != parts)
+            throw new IllegalArgumentException("Expected " + form + " but found " + key);
+        return split;
+    }
+
+    private static int findSpecies(SpeciesTable table, String name) {
+        int species = table.find(name.trim());
+        if (species < 0)
+            throw new IllegalArgumentException("Unknown species " + name);
+        return species;
+    }
+
+    private static <E extends Enum<E>> E findEnum(Class<E> type, String name) {
+        try {
+            return Enum.valueOf(type, toConstant(name));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName().toLowerCase(Locale.ROOT) + " "
+                    + name);
+        }
+    }
+
+    private static BoidBehaviour findBehaviour(FlockEngine engine, String name) {
+        BoidBehaviour behaviour = engine.getBehaviours().get(name);
+        if (behaviour == null)
+            throw new IllegalArgumentException("Unknown behaviour " + name);
+        return behaviour;
+    }
+
+    private static void setParameter(FlockEngine engine, String key, float value) {
+        int dot = key.indexOf('.');
+        Parameter parameter = engine.getParameter(key.substring(0, dot), key.substring(dot + 1));
+        if (parameter == null)
+            throw new IllegalArgumentException("Unknown parameter " + key);
+        if (value < parameter.getMin() || value > parameter.getMax())
+            throw new IllegalArgumentException(key + " value " + value + " is outside " + parameter.getMin()
+                    + " to " + parameter.getMax());
+        parameter.setValue(value);
+    }
+
+    /**
+     * Places a range of boids and assigns their species. Each boid draws only
+     * from its own stream of the given source, so ranges can be placed on
+     * different threads in any order. Called by the engine for each partition,
+     * with one generator reseeded for each boid in turn.
+     *
+     * @param flock  The flock to place the boids in.
+     * @param start  The first boid to place.
+     * @param end    The boid after the last to place.
+     * @param random The engine's random source, which is not advanced.
+     */
+    void place(Flock flock, int start, int end, RandomSource random) {
+        float worldWidth = flock.getWidth();
+        float worldHeight = flock.getHeight();
+        int count = flock.size();
+
+        // Cluster centres come from streams no boid uses
+        float[] centreX = null;
+        float[] centreY = null;
+        if (distribution == Distribution.CLUSTERED) {
+            centreX = new float[clusters];
+            centreY = new float[clusters];
+            for (int c = 0; c < clusters; c++) {
+                RandomSource centreRandom = random.stream(-1 - c);
+                centreX[c] = centreRandom.nextFloat() * worldWidth;
+                centreY[c] = centreRandom.nextFloat() * worldHeight;
+            }
+        }
+
+        // One grid cell per boid for Poisson-disk spacing
+        int columns = 1, rows = 1;
+        if (distribution == Distribution.POISSON_DISK && count > 0) {
+            double cellSize = Math.sqrt((double) worldWidth * worldHeight / count);
+            columns = Math.max(1, (int) Math.ceil(worldWidth / cellSize));
+            rows = Math.max(1, (int) Math.ceil((double) count / columns));
+        }
+
+        float[] cumulativeShares = getCumulativeShares();
+
+        RandomSource boidRandom = new RandomSource(0);
+        for (int i = start; i < end; i++) {
+            random.stream(i, boidRandom);
+            float x, y;
+            switch (distribution) {
+                case CLUSTERED: {
+                    int c = boidRandom.nextInt(clusters);
+                    double angle = boidRandom.nextDouble() * Math.PI * 2;
+                    double radius = clusterRadius * Math.sqrt(boidRandom.nextDouble());
+                    x = wrap((float) (centreX[c] + Math.cos(angle) * radius), worldWidth);
+                    y = wrap((float) (centreY[c] + Math.sin(angle) * radius), worldHeight);
+                    break;
+                }
+                case POISSON_DISK: {
+                    // Keep to the middle half of each cell so neighbours are at
+                    // least half a cell apart
+                    long cell = (long) i * columns * rows / count;
+                    x = (cell % columns + 0.25f + 0.5f * boidRandom.nextFloat()) * worldWidth / columns;
+                    y = (cell / columns + 0.25f + 0.5f * boidRandom.nextFloat()) * worldHeight / rows;
+                    break;
+                }
+                case RING: {
+                    double angle = boidRandom.nextDouble() * Math.PI * 2;
+                    double radius = ringRadius + (boidRandom.nextDouble() - 0.5) * ringWidth;
+                    x = wrap((float) (worldWidth / 2 + Math.cos(angle) * radius), worldWidth);
+                    y = wrap((float) (worldHeight / 2 + Math.sin(angle) * radius), worldHeight);
+                    break;
+                }
+                default:
+                    x = boidRandom.nextFloat() * worldWidth;
+                    y = boidRandom.nextFloat() * worldHeight;
+            }
+
+            // The same draw as Vector.random2D, without creating a vector
+            float heading = (float) (boidRandom.nextDouble() * Math.PI * 2);
+            flock.set(i, x, y, (float) Math.cos(heading), (float) Math.sin(heading));
+
+            if (cumulativeShares.length > 1)
+                flock.setSpecies(i, pickSpecies(cumulativeShares, boidRandom.nextFloat()));
+        }
+    }
+
+    private float[] getCumulativeShares() {
+        float[] cumulative = new float[speciesShares.size()];
+        float total = 0;
+        for (int i = 0; i < cumulative.length; i++)
+            cumulative[i] = total += speciesShares.get(i);
+        for (int i = 0; i < cumulative.length; i++)
+            cumulative[i] = total > 0 ? cumulative[i] / total : (i + 1f) / cumulative.length;
+        return cumulative;
+    }
+
+    private static int pickSpecies(float[] cumulativeShares, float draw) {
+        for (int species = 0; species < cumulativeShares.length - 1; species++) {
+            if (draw < cumulativeShares[species])
+                return species;
+        }
+        return cumulativeShares.length - 1;
+    }
+
+    private static float wrap(float value, float size) {
+        if (size <= 0)
+            return value;
+        float wrapped = value % size;
+        if (wrapped < 0)
+            wrapped += size;
+        return wrapped < size ? wrapped : 0;
+    }
+
+    public int getBoidCount() {
+        return boidCount;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets whether the scenario names the seed to run with.
+     *
+     * @return Whether a seed is set.
+     */
+    public boolean hasSeed() {
+        return seed != null;
+    }
+
+    /**
+     * Gets the seed the scenario names.
+     *
+     * @return The seed, or 0 if the scenario does not set one.
+     */
+    public long getSeed() {
+        return seed != null ? seed : 0;
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+}
@@ -0,0 +1,30 @@
+package spatial;
+
+/**
+ * Running sums of the positions and velocities of a group of boids. The
+ * averaging behaviours only need these sums, so a spatial index can hand them
+ * whole regions of the flock at once instead of one boid at a time.
+ */
+public class Aggregate {
+    public float sumX;
+    public float sumY;
+    public float sumVelocityX;
+    public float sumVelocityY;
+    public int count;
+
+    public void clear() {
+        sumX = 0;
+        sumY = 0;
+        sumVelocityX = 0;
+        sumVelocityY = 0;
+        count = 0;
+    }
+
+    public void add(float x, float y, float velocityX, float velocityY) {
+        sumX += x;
+        sumY += y;
+        sumVelocityX += velocityX;
+        sumVelocityY += velocityY;
+        count++;
+    }
+}
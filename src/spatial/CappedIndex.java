@@ -0,0 +1,62 @@
+package spatial;
+
+import models.Flock;
+
+/**
+ * Wraps another index and thins the neighbours of every query to at most a
+ * fixed number, so that no boid looks at more than that many however crowded
+ * it is. Only once a query finds more candidates than the cap are they
+ * narrowed down to those actually within its radius, and then thinned evenly
+ * through what is left, so boids the index returned but a behaviour would
+ * ignore never take the place of real neighbours.
+ *
+ * Aggregate queries are passed through whole. The boids left on the edge of
+ * the range are a different share of every cell's neighbourhood, so thinning
+ * them would weigh the summed cells against the edge.
+ *
+ * A CappedIndex is pointed at the index and flock of the coming tick with
+ * {@link #wrap}, and can then be queried from any number of threads like the
+ * index it wraps.
+ */
+public class CappedIndex implements SpatialIndex {
+    private SpatialIndex index = SpatialIndex.EMPTY;
+    private Flock flock;
+    private int cap;
+
+    /**
+     * Points this index at another and sets the cap.
+     *
+     * @param index The index to wrap, already built.
+     * @param flock The flock the index was built over, to measure distances.
+     * @param cap   The most neighbours any query returns.
+     * @return This index.
+     */
+    public CappedIndex wrap(SpatialIndex index, Flock flock, int cap) {
+        if (cap < 1)
+            throw new IllegalArgumentException("The neighbour cap must be at least 1");
+        this.index = index;
+        this.flock = flock;
+        this.cap = cap;
+        return this;
+    }
+
+    @Override
+    public void build(Flock flock) {
+        index.build(flock);
+    }
+
+    @Override
+    public void query(float x, float y, float radius, NeighbourList result) {
+        index.query(x, y, radius, result);
+        if (result.size() <= cap)
+            return;
+        result.retainWithin(flock, x, y, radius);
+        result.thin(cap);
+    }
+
+    @Override
+    public void aggregate(float x, float y, float radius, float errorBound, int exclude, Aggregate sums,
+            NeighbourList boundary) {
+        index.aggregate(x, y, radius, errorBound, exclude, sums, boundary);
+    }
+}
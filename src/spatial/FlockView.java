@@ -0,0 +1,214 @@
+package spatial;
+
+import java.util.Arrays;
+
+import models.Flock;
+
+/**
+ * A read-only snapshot of a flock at one tick that can be asked which boids
+ * are near a point or inside an area, for tools such as tracking overlays and
+ * sampling probes. The snapshot is a copy, so it stays consistent while the
+ * simulation moves on, and any number of threads can query it at once.
+ *
+ * The snapshot is indexed with a {@link UniformGrid}, like the flock itself,
+ * but only when it is first queried, so taking a view that is never queried
+ * costs no more than copying the state.
+ *
+ * Unlike {@link SpatialIndex#query}, every query here returns exact results:
+ * only the boids within the radius or rectangle.
+ */
+public class FlockView {
+    private final long tick;
+    private final Flock flock;
+    private final float cellSize;
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    private volatile UniformGrid grid;
+
+    /**
+     * Takes a snapshot of a flock. Must be called from the thread driving the
+     * simulation, between ticks.
+     *
+     * @param tick     The tick the flock has reached.
+     * @param flock    The flock to copy.
+     * @param cellSize The cell size of the grid the snapshot is indexed with.
+     */
+    public FlockView(long tick, Flock flock, float cellSize) {
+        this.tick = tick;
+        this.cellSize = cellSize;
+        int count = flock.size();
+        this.flock = new Flock(count, flock.getWidth(), flock.getHeight());
+        flock.copyTo(this.flock);
+
+        float left = 0, top = 0, right = 0, bottom = 0;
+        if (count > 0) {
+            left = right = flock.getX(0);
+            top = bottom = flock.getY(0);
+            for (int i = 1; i < count; i++) {
+                left = Math.min(left, flock.getX(i));
+                right = Math.max(right, flock.getX(i));
+                top = Math.min(top, flock.getY(i));
+                bottom = Math.max(bottom, flock.getY(i));
+            }
+        }
+        minX = left;
+        minY = top;
+        maxX = right;
+        maxY = bottom;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int size() {
+        return flock.size();
+    }
+
+    public float getWidth() {
+        return flock.getWidth();
+    }
+
+    public float getHeight() {
+        return flock.getHeight();
+    }
+
+    public float getX(int boid) {
+        return flock.getX(boid);
+    }
+
+    public float getY(int boid) {
+        return flock.getY(boid);
+    }
+
+    public float getVelocityX(int boid) {
+        return flock.getVelocityX(boid);
+    }
+
+    public float getVelocityY(int boid) {
+        return flock.getVelocityY(boid);
+    }
+
+    public int getSpecies(int boid) {
+        return flock.getSpecies(boid);
+    }
+
+    /**
+     * Finds every boid within a radius of a point.
+     *
+     * @param x      The x coordinate of the point.
+     * @param y      The y coordinate of the point.
+     * @param radius The radius to search.
+     * @param result Receives the boids in index order, after being cleared.
+     */
+    public void withinRadius(float x, float y, float radius, NeighbourList result) {
+        NeighbourList candidates = new NeighbourList();
+        grid().query(x, y, radius, candidates);
+
+        result.clear();
+        float radiusSquared = radius * radius;
+        for (int k = 0; k < candidates.size(); k++) {
+            int boid = candidates.get(k);
+            float dx = flock.getX(boid) - x;
+            float dy = flock.getY(boid) - y;
+            if (dx * dx + dy * dy <= radiusSquared)
+                result.add(boid);
+        }
+        sort(result);
+    }
+
+    /**
+     * Finds every boid inside an axis-aligned rectangle, edges included.
+     *
+     * @param minX   The left edge of the rectangle.
+     * @param minY   The top edge of the rectangle.
+     * @param maxX   The right edge of the rectangle.
+     * @param maxY   The bottom edge of the rectangle.
+     * @param result Receives the boids in index order, after being cleared.
+     */
+    public void withinRectangle(float minX, float minY, float maxX, float maxY, NeighbourList result) {
+        NeighbourList candidates = new NeighbourList();
+        grid().queryRectangle(minX, minY, maxX, maxY, candidates);
+
+        result.clear();
+        for (int k = 0; k < candidates.size(); k++) {
+            int boid = candidates.get(k);
+            float x = flock.getX(boid);
+            float y = flock.getY(boid);
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY)
+                result.add(boid);
+        }
+        sort(result);
+    }
+
+    /**
+     * Finds the boids nearest to a point. The search starts with the cells
+     * around the point and doubles its radius until enough boids are found.
+     *
+     * @param x      The x coordinate of the point.
+     * @param y      The y coordinate of the point.
+     * @param k      The number of boids to find.
+     * @param result Receives up to k boids, nearest first with ties in index
+     *               order, after being cleared.
+     */
+    public void nearest(float x, float y, int k, NeighbourList result) {
+        result.clear();
+        if (k <= 0 || flock.size() == 0)
+            return;
+
+        // The furthest any boid can be from the point
+        float furthestX = Math.max(Math.abs(x - minX), Math.abs(x - maxX));
+        float furthestY = Math.max(Math.abs(y - minY), Math.abs(y - maxY));
+        float furthest = (float) Math.sqrt(furthestX * furthestX + furthestY * furthestY);
+
+        NeighbourList candidates = new NeighbourList();
+        float radius = cellSize;
+        while (true) {
+            withinRadius(x, y, radius, candidates);
+            if (candidates.size() >= k || radius >= furthest)
+                break;
+            radius *= 2;
+        }
+
+        // Order by squared distance then index: both are non-negative, so the raw
+        // float bits sort in the same order as the values
+        long[] keys = new long[candidates.size()];
+        for (int i = 0; i < keys.length; i++) {
+            int boid = candidates.get(i);
+            float dx = flock.getX(boid) - x;
+            float dy = flock.getY(boid) - y;
+            keys[i] = (long) Float.floatToIntBits(dx * dx + dy * dy) << 32 | boid;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < Math.min(k, keys.length); i++)
+            result.add((int) keys[i]);
+    }
+
+    private UniformGrid grid() {
+        UniformGrid indexed = grid;
+        if (indexed == null) {
+            synchronized (this) {
+                indexed = grid;
+                if (indexed == null) {
+                    indexed = new UniformGrid(cellSize);
+                    indexed.build(flock);
+                    grid = indexed;
+                }
+            }
+        }
+        return indexed;
+    }
+
+    private static void sort(NeighbourList list) {
+        // Grid queries return boids by cell, callers expect them by index
+        int[] boids = new int[list.size()];
+        for (int i = 0; i < boids.length; i++)
+            boids[i] = list.get(i);
+        Arrays.sort(boids);
+        list.clear();
+        list.addAll(boids, 0, boids.length);
+    }
+}
@@ -0,0 +1,465 @@
+package spatial;
+
+import java.util.Arrays;
+
+import models.Flock;
+
+/**
+ * A uniform grid that is kept up to date from tick to tick instead of being
+ * rebuilt. Boids move a few pixels per tick against cells tens of pixels wide,
+ * so most stay in the same cell; each build only finds the boids whose cell
+ * changed and moves those between their cells' arrays.
+ *
+ * Unlike {@link UniformGrid}, which covers the bounding box of the flock and so
+ * lays its cells out afresh every tick, this grid is anchored to the world, so
+ * a cell keeps its place as the flock moves. Boids outside the world, with
+ * wrapping off, are kept in the nearest edge cell. Such a cell no longer lies
+ * within its own bounds, so {@link #aggregate} never sums it whole but leaves
+ * its boids to be checked one by one. Each cell holds its boids
+ * in index order, exactly as a rebuild would, so results do not depend on the
+ * order boids migrated in.
+ *
+ * When more than {@link #REBUILD_THRESHOLD} of the flock changes cell in
+ * one tick, moving them one by one costs more than sorting the whole flock
+ * again, and the grid is rebuilt instead. The share of boids that changed
+ * cell is reported by {@link #getMigrationRate()}.
+ */
+public class IncrementalGrid implements SpatialIndex {
+    /** Share of the flock that may change cell in one build before it rebuilds. */
+    public static final float REBUILD_THRESHOLD = 0.3f;
+    // Most cells along either axis, as for UniformGrid
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    private float cellSize;
+
+    private Flock flock;
+    private int size = -1;
+    private float width;
+    private float height;
+    private float effectiveCellSize;
+    private int columns;
+    private int rows;
+
+    // Boid indices of each cell in index order, and how many each holds
+    private int[][] cellBoids = new int[0][];
+    private int[] cellCounts = new int[0];
+    // Cell of each boid, by boid index
+    private int[] boidCells = new int[0];
+    // Boids whose cell changed in the last build, and their new cells
+    private int[] dirtyBoids = new int[0];
+    private int[] dirtyCells = new int[0];
+    // Where each partition's part of the dirty list starts, and its length
+    private int[] partitionStart = new int[0];
+    private int[] partitionDirty = new int[0];
+    // Occupancy of each block of cells, while summing
+    private int[] blockOccupied = new int[0];
+    private int[] blockLargest = new int[0];
+    // Sorts the whole flock when the grid is rebuilt
+    private final UniformGrid sorter = new UniformGrid(1);
+
+    // Per cell sums of the position and velocity of its boids
+    private float[] sumX = new float[0];
+    private float[] sumY = new float[0];
+    private float[] sumVelocityX = new float[0];
+    private float[] sumVelocityY = new float[0];
+    // Whether each cell holds boids from outside the grid, clamped into it
+    private boolean[] spills = new boolean[0];
+
+    private float migrationRate = 0;
+    private boolean wasRebuilt = false;
+    private float occupancySkew = 1;
+
+    /**
+     * Constructs a grid.
+     *
+     * @param cellSize The width and height of each cell.
+     */
+    public IncrementalGrid(float cellSize) {
+        setCellSize(cellSize);
+    }
+
+    /**
+     * Sets the cell size used from the next build on. A different size means a
+     * different layout, so the next build rebuilds the grid.
+     *
+     * @param cellSize The width and height of each cell.
+     */
+    public void setCellSize(float cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Gets the share of the flock that changed cell in the last build, whether
+     * or not so many did that the grid was rebuilt, or 1 if the layout changed
+     * and every boid had to be placed afresh.
+     *
+     * @return The migration rate, from 0 to 1.
+     */
+    public float getMigrationRate() {
+        return migrationRate;
+    }
+
+    /**
+     * Gets whether the last build rebuilt the grid rather than updating it.
+     *
+     * @return Whether the grid was rebuilt.
+     */
+    public boolean wasRebuilt() {
+        return wasRebuilt;
+    }
+
+    /**
+     * Measures how unevenly the flock was spread over the grid when it was last
+     * built, as {@link UniformGrid#getOccupancySkew()} does.
+     *
+     * @return The occupancy skew, at least 1.
+     */
+    public float getOccupancySkew() {
+        return occupancySkew;
+    }
+
+    @Override
+    public void build(Flock flock) {
+        build(flock, Partitioner.SERIAL);
+    }
+
+    /**
+     * Brings the grid up to date with the current state of a flock. Only boids
+     * whose cell changed since the last build are moved, unless the flock's
+     * size or world, or the cell size, changed, or too many boids moved. Finding
+     * the boids that moved, summing the cells and any rebuild are split across
+     * partitions; the grid comes out the same however many there are.
+     *
+     * @param flock       The flock to index, normally the same flock every tick.
+     * @param partitioner The threads to build on.
+     */
+    public void build(Flock flock, Partitioner partitioner) {
+        this.flock = flock;
+        int count = flock.size();
+        partitioner = UniformGrid.choose(partitioner, count);
+        float extent = Math.max(flock.getWidth(), flock.getHeight());
+        float layoutCellSize = Math.max(cellSize, extent / (MAX_CELLS_PER_AXIS - 1));
+
+        if (count != size || flock.getWidth() != width || flock.getHeight() != height
+                || layoutCellSize != effectiveCellSize) {
+            layOut(count, flock.getWidth(), flock.getHeight(), layoutCellSize);
+            rebuild(partitioner);
+            migrationRate = 1;
+        } else if (!update(partitioner)) {
+            rebuild(partitioner);
+        }
+    }
+
+    private void layOut(int count, float width, float height, float layoutCellSize) {
+        this.size = count;
+        this.width = width;
+        this.height = height;
+        this.effectiveCellSize = layoutCellSize;
+        columns = (int) (width / layoutCellSize) + 1;
+        rows = (int) (height / layoutCellSize) + 1;
+        int cells = columns * rows;
+
+        if (cellBoids.length < cells) {
+            int[][] grown = Arrays.copyOf(cellBoids, cells);
+            for (int cell = cellBoids.length; cell < cells; cell++)
+                grown[cell] = new int[INITIAL_CELL_CAPACITY];
+            cellBoids = grown;
+            cellCounts = new int[cells];
+            sumX = new float[cells];
+            sumY = new float[cells];
+            sumVelocityX = new float[cells];
+            sumVelocityY = new float[cells];
+            spills = new boolean[cells];
+        }
+        if (boidCells.length < count) {
+            boidCells = new int[count];
+            dirtyBoids = new int[count];
+            dirtyCells = new int[count];
+        }
+    }
+
+    /**
+     * Finds the boids that changed cell and moves them, unless there are too
+     * many of them. Each partition lists the boids of its own range that moved
+     * in its own part of the dirty list; moving them is left to this thread, as
+     * several may move into the same cell.
+     *
+     * @return Whether the grid was updated; false if it must be rebuilt.
+     */
+    private boolean update(Partitioner partitioner) {
+        int count = size;
+        int partitions = partitioner.getPartitionCount();
+        if (partitionStart.length < partitions) {
+            partitionStart = new int[partitions];
+            partitionDirty = new int[partitions];
+            blockOccupied = new int[partitions];
+            blockLargest = new int[partitions];
+        }
+
+        partitioner.forEachPartition(count, (partition, start, end) -> {
+            int dirty = start;
+            for (int i = start; i < end; i++) {
+                int cell = cellOf(flock.getX(i), flock.getY(i));
+                if (cell == boidCells[i])
+                    continue;
+                dirtyBoids[dirty] = i;
+                dirtyCells[dirty] = cell;
+                dirty++;
+            }
+            partitionStart[partition] = start;
+            partitionDirty[partition] = dirty - start;
+        });
+
+        int dirty = 0;
+        for (int partition = 0; partition < partitions; partition++)
+            dirty += partitionDirty[partition];
+        migrationRate = count > 0 ? (float) dirty / count : 0;
+        if (migrationRate > REBUILD_THRESHOLD)
+            return false;
+
+        for (int partition = 0; partition < partitions; partition++) {
+            int start = partitionStart[partition];
+            for (int k = start; k < start + partitionDirty[partition]; k++) {
+                int boid = dirtyBoids[k];
+                remove(boidCells[boid], boid);
+                insert(dirtyCells[k], boid);
+                boidCells[boid] = dirtyCells[k];
+            }
+        }
+        sumCells(partitioner);
+        wasRebuilt = false;
+        return true;
+    }
+
+    private void remove(int cell, int boid) {
+        int[] boids = cellBoids[cell];
+        int cellCount = cellCounts[cell];
+        int position = Arrays.binarySearch(boids, 0, cellCount, boid);
+        System.arraycopy(boids, position + 1, boids, position, cellCount - position - 1);
+        cellCounts[cell] = cellCount - 1;
+    }
+
+    private void insert(int cell, int boid) {
+        int[] boids = cellBoids[cell];
+        int cellCount = cellCounts[cell];
+        if (cellCount == boids.length)
+            boids = cellBoids[cell] = Arrays.copyOf(boids, boids.length * 2);
+
+        // Keep the cell in index order
+        int position = -Arrays.binarySearch(boids, 0, cellCount, boid) - 1;
+        System.arraycopy(boids, position, boids, position + 1, cellCount - position);
+        boids[position] = boid;
+        cellCounts[cell] = cellCount + 1;
+    }
+
+    /**
+     * Places every boid afresh with the counting sort of a {@link UniformGrid}
+     * laid out over the world, which has exactly this grid's cells, and copies
+     * its runs into the per cell arrays.
+     */
+    private void rebuild(Partitioner partitioner) {
+        sorter.setCellSize(cellSize);
+        sorter.build(flock, 0, 0, width, height, partitioner);
+        System.arraycopy(sorter.getBoidCells(), 0, boidCells, 0, size);
+        int[] sorted = sorter.getCellBoids();
+
+        partitioner.forEachPartition(columns * rows, (block, start, end) -> {
+            for (int cell = start; cell < end; cell++) {
+                int runStart = sorter.getCellStart(cell);
+                int cellCount = sorter.getCellStart(cell + 1) - runStart;
+                if (cellBoids[cell].length < cellCount)
+                    cellBoids[cell] = new int[Math.max(cellCount, cellBoids[cell].length * 2)];
+                System.arraycopy(sorted, runStart, cellBoids[cell], 0, cellCount);
+                cellCounts[cell] = cellCount;
+                spills[cell] = spills(cell, cellBoids[cell], cellCount);
+                sorter.copySums(cell, sumX, sumY, sumVelocityX, sumVelocityY);
+            }
+        });
+        occupancySkew = sorter.getOccupancySkew();
+        wasRebuilt = true;
+    }
+
+    /**
+     * Sums every cell's boids in index order, the order a rebuild sums them in,
+     * and measures occupancy on the way. Every boid's position changes every
+     * tick, so the sums are taken afresh on every build.
+     */
+    private void sumCells(Partitioner partitioner) {
+        int partitions = partitioner.getPartitionCount();
+        partitioner.forEachPartition(columns * rows, (block, start, end) -> {
+            int occupied = 0;
+            int largest = 0;
+            for (int cell = start; cell < end; cell++) {
+                int[] boids = cellBoids[cell];
+                int cellCount = cellCounts[cell];
+                float x = 0, y = 0, vx = 0, vy = 0;
+                for (int k = 0; k < cellCount; k++) {
+                    int boid = boids[k];
+                    x += flock.getX(boid);
+                    y += flock.getY(boid);
+                    vx += flock.getVelocityX(boid);
+                    vy += flock.getVelocityY(boid);
+                }
+                sumX[cell] = x;
+                sumY[cell] = y;
+                sumVelocityX[cell] = vx;
+                sumVelocityY[cell] = vy;
+                spills[cell] = spills(cell, boids, cellCount);
+                if (cellCount > 0)
+                    occupied++;
+                largest = Math.max(largest, cellCount);
+            }
+            blockOccupied[block] = occupied;
+            blockLargest[block] = largest;
+        });
+
+        int occupied = 0;
+        int largest = 0;
+        for (int block = 0; block < partitions; block++) {
+            occupied += blockOccupied[block];
+            largest = Math.max(largest, blockLargest[block]);
+        }
+        occupancySkew = occupied > 0 ? largest / ((float) size / occupied) : 1;
+    }
+
+    @Override
+    public void query(float x, float y, float radius, NeighbourList result) {
+        result.clear();
+        int minColumn = column(x - radius);
+        int maxColumn = column(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                int cell = r * columns + c;
+                result.addAll(cellBoids[cell], 0, cellCounts[cell]);
+            }
+        }
+    }
+
+    /**
+     * Sums neighbours a cell at a time, as {@link UniformGrid#aggregate} does.
+     */
+    @Override
+    public void aggregate(float x, float y, float radius, float errorBound, int exclude, Aggregate sums,
+            NeighbourList boundary) {
+        sums.clear();
+        boundary.clear();
+        int minColumn = column(x - radius);
+        int maxColumn = column(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+
+        float radiusSquared = radius * radius;
+        boolean isExcludeSummed = false;
+        int excludeCell = exclude >= 0 ? boidCells[exclude] : -1;
+
+        for (int r = minRow; r <= maxRow; r++) {
+            float top = r * effectiveCellSize;
+            float bottom = top + effectiveCellSize;
+            // Vertical distance from the point to the nearest and furthest edge of the row
+            float nearY = y < top ? top - y : (y > bottom ? y - bottom : 0);
+            float farY = Math.max(Math.abs(y - top), Math.abs(y - bottom));
+
+            for (int c = minColumn; c <= maxColumn; c++) {
+                int cell = r * columns + c;
+                int count = cellCounts[cell];
+                if (count == 0)
+                    continue;
+                if (spills[cell]) {
+                    // The cell's bounds do not cover all of its boids
+                    boundary.addAll(cellBoids[cell], 0, count);
+                    continue;
+                }
+
+                float left = c * effectiveCellSize;
+                float right = left + effectiveCellSize;
+                float nearX = x < left ? left - x : (x > right ? x - right : 0);
+                if (nearX * nearX + nearY * nearY >= radiusSquared)
+                    continue; // Every boid in the cell is out of range
+
+                float farX = Math.max(Math.abs(x - left), Math.abs(x - right));
+                boolean isInside = farX * farX + farY * farY < radiusSquared;
+
+                if (!isInside && errorBound > 0) {
+                    // Treat a cell crossing the edge of the range as a single body at
+                    // its centre of mass when it is small compared to its distance
+                    float dx = sumX[cell] / count - x;
+                    float dy = sumY[cell] / count - y;
+                    float distanceSquared = dx * dx + dy * dy;
+                    float limit = effectiveCellSize / errorBound;
+                    if (distanceSquared > limit * limit) {
+                        if (distanceSquared >= radiusSquared)
+                            continue;
+                        isInside = true;
+                    }
+                }
+
+                if (isInside) {
+                    sums.sumX += sumX[cell];
+                    sums.sumY += sumY[cell];
+                    sums.sumVelocityX += sumVelocityX[cell];
+                    sums.sumVelocityY += sumVelocityY[cell];
+                    sums.count += count;
+                    if (cell == excludeCell)
+                        isExcludeSummed = true;
+                } else {
+                    boundary.addAll(cellBoids[cell], 0, count);
+                }
+            }
+        }
+
+        if (isExcludeSummed) {
+            sums.sumX -= flock.getX(exclude);
+            sums.sumY -= flock.getY(exclude);
+            sums.sumVelocityX -= flock.getVelocityX(exclude);
+            sums.sumVelocityY -= flock.getVelocityY(exclude);
+            sums.count--;
+        }
+    }
+
+    /**
+     * Checks whether any boid of a cell lies outside the grid, which only the
+     * cells along its edges can hold.
+     */
+    private boolean spills(int cell, int[] boids, int count) {
+        int r = cell / columns;
+        int c = cell - r * columns;
+        if (r > 0 && r < rows - 1 && c > 0 && c < columns - 1)
+            return false;
+
+        float right = columns * effectiveCellSize;
+        float bottom = rows * effectiveCellSize;
+        for (int k = 0; k < count; k++) {
+            float x = flock.getX(boids[k]);
+            float y = flock.getY(boids[k]);
+            if (x < 0 || x >= right || y < 0 || y >= bottom)
+                return true;
+        }
+        return false;
+    }
+
+    private int cellOf(float x, float y) {
+        return row(y) * columns + column(x);
+    }
+
+    // Truncating rather than flooring only differs below 0, where both clamp to
+    // the first cell
+    private int column(float x) {
+        return clamp((int) (x / effectiveCellSize), columns);
+    }
+
+    private int row(float y) {
+        return clamp((int) (y / effectiveCellSize), rows);
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+}
@@ -0,0 +1,169 @@
+package spatial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import models.Flock;
+import simulation.FlockEngine;
+
+/**
+ * Compares the uniform grid, the incremental grid and the quad tree on the
+ * flock of a running simulation. The default scenario is the one the quad tree
+ * is for: the bias behaviour pulls half the flock into its 50 pixel target
+ * area, leaving a few grid cells holding most of the boids.
+ *
+ * After letting the flock settle, the benchmark records a sequence of flock
+ * states and times building each index and querying it once per boid at the
+ * cohesion range over all of them. Query time includes filtering the candidates by distance, as
+ * the behaviours do, so an index returning fewer stray candidates is credited
+ * for it.
+ *
+ * Usage: {@code IndexBenchmark [boids] [settle ticks] [measured ticks] [--no-bias]}
+ */
+public class IndexBenchmark {
+    public static void main(String[] args) throws IOException {
+        int[] counts = { 5000, 600, 100 };
+        boolean isBiased = true;
+        int positional = 0;
+        for (String arg : args) {
+            if (arg.equals("--no-bias"))
+                isBiased = false;
+            else if (positional < counts.length)
+                counts[positional++] = Integer.parseInt(arg);
+        }
+        int boidCount = counts[0];
+        int settleTicks = counts[1];
+        int measuredTicks = counts[2];
+
+        try (FlockEngine engine = new FlockEngine(1, Runtime.getRuntime().availableProcessors(), boidCount, 800,
+                600)) {
+            engine.getBehaviours().getAvoidance().setEnabled(true);
+            engine.getBehaviours().getAlignment().setEnabled(true);
+            engine.getBehaviours().getCohesion().setEnabled(true);
+            engine.getBehaviours().getBias().setEnabled(isBiased);
+            engine.getBehaviours().getBias().setStrength(1); // Pull biased boids in as hard as possible
+            float radius = engine.getBehaviours().getCohesion().getRange();
+
+            for (int tick = 0; tick < settleTicks; tick++)
+                engine.step();
+
+            List<Flock> states = new ArrayList<>(measuredTicks);
+            for (int tick = 0; tick < measuredTicks; tick++) {
+                engine.step();
+                states.add(copy(engine.getFlock()));
+            }
+
+            // Each index is warmed up and measured on its own, as alternating
+            // between them leaves the JIT compiling the loop for neither
+            UniformGrid grid = new UniformGrid(radius);
+            IncrementalGrid incrementalGrid = new IncrementalGrid(radius);
+            QuadTree quadTree = new QuadTree();
+            Result gridResult = measure(grid, states, radius);
+            Result incrementalResult = measure(incrementalGrid, states, radius);
+            Result quadTreeResult = measure(quadTree, states, radius);
+
+            double skew = 0;
+            double migration = 0;
+            int rebuilds = 0;
+            long nodes = 0;
+            for (Flock flock : states) {
+                grid.build(flock);
+                skew += grid.getOccupancySkew();
+                incrementalGrid.build(flock);
+                migration += incrementalGrid.getMigrationRate();
+                if (incrementalGrid.wasRebuilt())
+                    rebuilds++;
+                quadTree.build(flock);
+                nodes += quadTree.getNodeCount();
+            }
+
+            System.out.printf(Locale.ROOT,
+                    "%d boids, %s, query radius %.0f, mean grid occupancy skew %.1f, mean migration rate %.3f, "
+                            + "incremental grid rebuilt on %d of %d ticks%n",
+                    boidCount, isBiased ? "bias on" : "bias off", radius, skew / measuredTicks,
+                    migration / measuredTicks, rebuilds, measuredTicks);
+            System.out.printf(Locale.ROOT, "%-12s %12s %12s %16s %16s%n", "index", "build ms", "query ms",
+                    "candidates/query", "neighbours/query");
+            gridResult.print("grid", measuredTicks, boidCount);
+            incrementalResult.print("incremental", measuredTicks, boidCount);
+            quadTreeResult.print("quad tree", measuredTicks, boidCount);
+            System.out.printf(Locale.ROOT,
+                    "quad tree takes %.2f times as long as the incremental grid, with %.0f nodes on average%n",
+                    (double) quadTreeResult.getNanos() / incrementalResult.getNanos(),
+                    (double) nodes / measuredTicks);
+        }
+    }
+
+    /**
+     * Times an index over a sequence of flock states, once to warm up and once
+     * for the result.
+     */
+    private static Result measure(SpatialIndex index, List<Flock> states, float radius) {
+        Result result = new Result();
+        for (int pass = 0; pass < 2; pass++) {
+            result = new Result();
+            for (Flock flock : states)
+                measure(index, flock, radius, result);
+        }
+        return result;
+    }
+
+    private static void measure(SpatialIndex index, Flock flock, float radius, Result result) {
+        NeighbourList neighbours = new NeighbourList();
+
+        long start = System.nanoTime();
+        index.build(flock);
+        long built = System.nanoTime();
+        long candidates = 0;
+        long neighbourCount = 0;
+        float radiusSquared = radius * radius;
+        for (int i = 0; i < flock.size(); i++) {
+            float x = flock.getX(i);
+            float y = flock.getY(i);
+            index.query(x, y, radius, neighbours);
+            candidates += neighbours.size();
+
+            // Filter the candidates as a behaviour would, since every extra
+            // candidate an index returns costs a distance test
+            for (int k = 0; k < neighbours.size(); k++) {
+                int other = neighbours.get(k);
+                float dx = flock.getX(other) - x;
+                float dy = flock.getY(other) - y;
+                if (dx * dx + dy * dy < radiusSquared)
+                    neighbourCount++;
+            }
+        }
+        long queried = System.nanoTime();
+
+        result.buildNanos += built - start;
+        result.queryNanos += queried - built;
+        result.candidates += candidates;
+        result.neighbours += neighbourCount;
+    }
+
+    private static Flock copy(Flock flock) {
+        Flock copy = new Flock(flock.size(), flock.getWidth(), flock.getHeight());
+        for (int i = 0; i < flock.size(); i++)
+            copy.set(i, flock.getX(i), flock.getY(i), flock.getVelocityX(i), flock.getVelocityY(i));
+        return copy;
+    }
+
+    private static class Result {
+        long buildNanos;
+        long queryNanos;
+        long candidates;
+        long neighbours;
+
+        long getNanos() {
+            return buildNanos + queryNanos;
+        }
+
+        void print(String name, int ticks, int boidCount) {
+            double queries = (double) ticks * Math.max(1, boidCount);
+            System.out.printf(Locale.ROOT, "%-12s %12.3f %12.3f %16.1f %16.1f%n", name, buildNanos / 1e6 / ticks,
+                    queryNanos / 1e6 / ticks, candidates / queries, neighbours / queries);
+        }
+    }
+}
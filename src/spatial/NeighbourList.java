@@ -0,0 +1,84 @@
+package spatial;
+
+import java.util.Arrays;
+
+import models.Flock;
+
+/**
+ * A growable list of boid indices filled by spatial index queries. Each thread
+ * keeps its own list and reuses it for every query, so queries do not allocate
+ * once the list has grown to the size of a typical neighbourhood.
+ */
+public class NeighbourList {
+    private int[] boids = new int[64];
+    private int size = 0;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int boid) {
+        if (size == boids.length)
+            boids = Arrays.copyOf(boids, size * 2);
+        boids[size++] = boid;
+    }
+
+    /**
+     * Adds a run of boid indices from an array.
+     *
+     * @param source The array to copy from.
+     * @param start  The first index to copy.
+     * @param end    One past the last index to copy.
+     */
+    public void addAll(int[] source, int start, int end) {
+        int count = end - start;
+        if (size + count > boids.length)
+            boids = Arrays.copyOf(boids, Math.max(boids.length * 2, size + count));
+        System.arraycopy(source, start, boids, size, count);
+        size += count;
+    }
+
+    /**
+     * Keeps at most a number of the boids in the list, evenly spaced through
+     * it, so that a thinned neighbourhood still covers its whole area.
+     *
+     * @param max The most boids to keep.
+     */
+    public void thin(int max) {
+        if (size <= max)
+            return;
+        // Each kept boid comes from at or after its new position, so the list
+        // can be thinned in place
+        for (int k = 0; k < max; k++)
+            boids[k] = boids[(int) ((long) k * size / max)];
+        size = max;
+    }
+
+    /**
+     * Keeps only the boids in the list that lie within a radius of a point, as
+     * the behaviours measure it, in the order they were found.
+     *
+     * @param flock  The flock the boids belong to.
+     * @param x      The x coordinate of the point.
+     * @param y      The y coordinate of the point.
+     * @param radius The radius boids must lie within.
+     */
+    public void retainWithin(Flock flock, float x, float y, float radius) {
+        int kept = 0;
+        for (int k = 0; k < size; k++) {
+            float dx = flock.getX(boids[k]) - x;
+            float dy = flock.getY(boids[k]) - y;
+            if ((float) Math.sqrt(dx * dx + dy * dy) < radius)
+                boids[kept++] = boids[k];
+        }
+        size = kept;
+    }
+
+    public int get(int i) {
+        return boids[i];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,46 @@
+package spatial;
+
+/**
+ * Runs work over contiguous ranges of items on several threads at once, so an
+ * index can be built on the threads its owner already updates the flock on.
+ * The ranges depend only on the number of items and partitions, never on
+ * timing, so indexes built in parallel can be made identical to ones built on
+ * a single thread.
+ */
+public interface Partitioner {
+    /** Runs every range in turn on the calling thread. */
+    Partitioner SERIAL = new Partitioner() {
+        @Override
+        public int getPartitionCount() {
+            return 1;
+        }
+
+        @Override
+        public void forEachPartition(int count, PartitionTask task) {
+            task.run(0, 0, count);
+        }
+    };
+
+    /**
+     * Gets the number of ranges work is split into.
+     *
+     * @return The number of partitions, at least 1.
+     */
+    int getPartitionCount();
+
+    /**
+     * Splits the items from 0 up to a count into {@link #getPartitionCount()}
+     * contiguous ranges of nearly equal size, runs a task for each, and waits for
+     * all of them to finish. Partition {@code p} covers the items from
+     * {@code count * p / partitions} up to {@code count * (p + 1) / partitions}.
+     *
+     * @param count The number of items.
+     * @param task  The task to run for each range.
+     */
+    void forEachPartition(int count, PartitionTask task);
+
+    @FunctionalInterface
+    interface PartitionTask {
+        void run(int partition, int start, int end);
+    }
+}
@@ -0,0 +1,298 @@
+package spatial;
+
+import java.util.Arrays;
+
+import models.Flock;
+
+/**
+ * A spatial index that recursively splits the flock's bounding square into
+ * quadrants until each leaf holds only a few boids. Unlike a uniform grid it
+ * adapts to the density of the flock: a tight cluster around an attractor is
+ * split as finely as it needs to be, while empty space costs nothing.
+ *
+ * The tree is rebuilt every tick. Building sorts the boid indices so that every
+ * node, not just every leaf, owns one contiguous run of them; a node lying
+ * entirely within a query's radius is then added in a single copy. Every node
+ * also stores the sums of the positions and velocities of its boids, which
+ * makes {@link #aggregate} a Barnes-Hut style traversal.
+ */
+public class QuadTree implements SpatialIndex {
+    // Leaves are split once they hold more boids than this
+    private static final int LEAF_CAPACITY = 32;
+    // Boids at the same position cannot be separated, so splitting stops here
+    private static final int MAX_DEPTH = 16;
+
+    private Flock flock;
+
+    // Boid indices ordered so every node owns a contiguous run, and the
+    // position of each boid within that order
+    private int[] order = new int[0];
+    private int[] slots = new int[0];
+    private int[] scratch = new int[0];
+    // Where each quadrant of the node being split starts, reused by every split
+    // as its children are split only once it is done with them
+    private final int[] quadrantStarts = new int[5];
+    private final int[] quadrantNext = new int[4];
+
+    // Nodes are packed into two arrays so that visiting one touches as few cache
+    // lines as possible: bounds and sums in one, the run of boids and first child
+    // in the other. The four children of a node are stored consecutively.
+    private static final int BOUNDS = 7; // x, y, size, sum x, sum y, sum velocity x, sum velocity y
+    private static final int LINKS = 3; // start, end, first child or -1 for a leaf
+    private int nodeCount;
+    private float[] bounds = new float[0];
+    private int[] links = new int[0];
+
+    // Queries run on many threads at once, so each thread walks the tree with
+    // its own stack; depth first, it never holds more than three siblings per level
+    private final ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[4 * MAX_DEPTH + 4]);
+
+    @Override
+    public void build(Flock flock) {
+        this.flock = flock;
+        int count = flock.size();
+        if (order.length < count) {
+            order = new int[count];
+            slots = new int[count];
+            scratch = new int[count];
+        }
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+
+        float minX = 0, minY = 0, maxX = 0, maxY = 0;
+        if (count > 0) {
+            minX = maxX = flock.getX(0);
+            minY = maxY = flock.getY(0);
+            for (int i = 1; i < count; i++) {
+                minX = Math.min(minX, flock.getX(i));
+                maxX = Math.max(maxX, flock.getX(i));
+                minY = Math.min(minY, flock.getY(i));
+                maxY = Math.max(maxY, flock.getY(i));
+            }
+        }
+
+        nodeCount = 0;
+        int root = addNode(minX, minY, Math.max(Math.max(maxX - minX, maxY - minY), 1), 0, count);
+        split(root, 0);
+
+        for (int slot = 0; slot < count; slot++)
+            slots[order[slot]] = slot;
+    }
+
+    /**
+     * Splits a node into quadrants if it holds too many boids, and sums the
+     * positions and velocities of its boids.
+     */
+    private void split(int node, int depth) {
+        int start = links[node * LINKS];
+        int end = links[node * LINKS + 1];
+        int b = node * BOUNDS;
+
+        if (end - start <= LEAF_CAPACITY || depth == MAX_DEPTH) {
+            float x = 0, y = 0, vx = 0, vy = 0;
+            for (int k = start; k < end; k++) {
+                int boid = order[k];
+                x += flock.getX(boid);
+                y += flock.getY(boid);
+                vx += flock.getVelocityX(boid);
+                vy += flock.getVelocityY(boid);
+            }
+            bounds[b + 3] = x;
+            bounds[b + 4] = y;
+            bounds[b + 5] = vx;
+            bounds[b + 6] = vy;
+            return;
+        }
+
+        float half = bounds[b + 2] / 2;
+        float centreX = bounds[b] + half;
+        float centreY = bounds[b + 1] + half;
+
+        // Stable counting sort of the node's boids by quadrant
+        int[] counts = quadrantStarts;
+        int[] next = quadrantNext;
+        Arrays.fill(counts, 0);
+        for (int k = start; k < end; k++)
+            counts[quadrant(order[k], centreX, centreY) + 1]++;
+        for (int q = 0; q < 4; q++) {
+            counts[q + 1] += counts[q];
+            next[q] = start + counts[q];
+        }
+        for (int k = start; k < end; k++) {
+            int boid = order[k];
+            scratch[next[quadrant(boid, centreX, centreY)]++] = boid;
+        }
+        System.arraycopy(scratch, start, order, start, end - start);
+
+        int child = nodeCount;
+        links[node * LINKS + 2] = child;
+        for (int q = 0; q < 4; q++) {
+            float x = (q & 1) == 0 ? bounds[b] : centreX;
+            float y = (q & 2) == 0 ? bounds[b + 1] : centreY;
+            addNode(x, y, half, start + counts[q], start + counts[q + 1]);
+        }
+
+        float x = 0, y = 0, vx = 0, vy = 0;
+        for (int q = 0; q < 4; q++) {
+            split(child + q, depth + 1);
+            int c = (child + q) * BOUNDS;
+            x += bounds[c + 3];
+            y += bounds[c + 4];
+            vx += bounds[c + 5];
+            vy += bounds[c + 6];
+        }
+        // The bounds array may have grown while splitting the children
+        b = node * BOUNDS;
+        bounds[b + 3] = x;
+        bounds[b + 4] = y;
+        bounds[b + 5] = vx;
+        bounds[b + 6] = vy;
+    }
+
+    private int quadrant(int boid, float centreX, float centreY) {
+        return (flock.getX(boid) < centreX ? 0 : 1) + (flock.getY(boid) < centreY ? 0 : 2);
+    }
+
+    private int addNode(float x, float y, float size, int start, int end) {
+        if (nodeCount * BOUNDS == bounds.length) {
+            int capacity = Math.max(64, nodeCount * 2);
+            bounds = Arrays.copyOf(bounds, capacity * BOUNDS);
+            links = Arrays.copyOf(links, capacity * LINKS);
+        }
+        int node = nodeCount++;
+        bounds[node * BOUNDS] = x;
+        bounds[node * BOUNDS + 1] = y;
+        bounds[node * BOUNDS + 2] = size;
+        links[node * LINKS] = start;
+        links[node * LINKS + 1] = end;
+        links[node * LINKS + 2] = -1;
+        return node;
+    }
+
+    @Override
+    public void query(float x, float y, float radius, NeighbourList result) {
+        result.clear();
+        if (nodeCount == 0)
+            return;
+
+        float radiusSquared = radius * radius;
+        float minimumNodeSize = radius / 2;
+        int[] stack = stacks.get();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int start = links[node * LINKS];
+            int end = links[node * LINKS + 1];
+            int child = links[node * LINKS + 2];
+            if (start == end || nearestSquared(node, x, y) >= radiusSquared)
+                continue;
+
+            // Nodes much smaller than the radius are taken whole: they are mostly in
+            // range anyway, and descending further costs more than the few extra
+            // candidates it would rule out
+            if (child < 0 || bounds[node * BOUNDS + 2] <= minimumNodeSize
+                    || furthestSquared(node, x, y) < radiusSquared) {
+                result.addAll(order, start, end);
+            } else {
+                for (int q = 0; q < 4; q++)
+                    stack[top++] = child + q;
+            }
+        }
+    }
+
+    @Override
+    public void aggregate(float x, float y, float radius, float errorBound, int exclude, Aggregate sums,
+            NeighbourList boundary) {
+        sums.clear();
+        boundary.clear();
+        if (nodeCount == 0)
+            return;
+
+        float radiusSquared = radius * radius;
+        int excludeSlot = exclude >= 0 ? slots[exclude] : -1;
+        boolean isExcludeSummed = false;
+
+        int[] stack = stacks.get();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int start = links[node * LINKS];
+            int end = links[node * LINKS + 1];
+            int child = links[node * LINKS + 2];
+            if (start == end || nearestSquared(node, x, y) >= radiusSquared)
+                continue; // Every boid in the node is out of range
+
+            int b = node * BOUNDS;
+            boolean isInside = furthestSquared(node, x, y) < radiusSquared;
+
+            if (!isInside && errorBound > 0) {
+                // Treat a node crossing the edge of the range as a single body at
+                // its centre of mass when it is small compared to its distance
+                int count = end - start;
+                float dx = bounds[b + 3] / count - x;
+                float dy = bounds[b + 4] / count - y;
+                float distanceSquared = dx * dx + dy * dy;
+                float limit = bounds[b + 2] / errorBound;
+                if (distanceSquared > limit * limit) {
+                    if (distanceSquared >= radiusSquared)
+                        continue;
+                    isInside = true;
+                }
+            }
+
+            if (isInside) {
+                sums.sumX += bounds[b + 3];
+                sums.sumY += bounds[b + 4];
+                sums.sumVelocityX += bounds[b + 5];
+                sums.sumVelocityY += bounds[b + 6];
+                sums.count += end - start;
+                if (excludeSlot >= start && excludeSlot < end)
+                    isExcludeSummed = true;
+            } else if (child < 0) {
+                boundary.addAll(order, start, end);
+            } else {
+                for (int q = 0; q < 4; q++)
+                    stack[top++] = child + q;
+            }
+        }
+
+        if (isExcludeSummed) {
+            sums.sumX -= flock.getX(exclude);
+            sums.sumY -= flock.getY(exclude);
+            sums.sumVelocityX -= flock.getVelocityX(exclude);
+            sums.sumVelocityY -= flock.getVelocityY(exclude);
+            sums.count--;
+        }
+    }
+
+    /**
+     * Gets the number of nodes in the tree as last built.
+     *
+     * @return The node count.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private float nearestSquared(int node, float x, float y) {
+        int b = node * BOUNDS;
+        float left = bounds[b];
+        float top = bounds[b + 1];
+        float size = bounds[b + 2];
+        float dx = x < left ? left - x : (x > left + size ? x - left - size : 0);
+        float dy = y < top ? top - y : (y > top + size ? y - top - size : 0);
+        return dx * dx + dy * dy;
+    }
+
+    private float furthestSquared(int node, float x, float y) {
+        int b = node * BOUNDS;
+        float left = bounds[b];
+        float top = bounds[b + 1];
+        float size = bounds[b + 2];
+        float dx = Math.max(Math.abs(x - left), Math.abs(x - left - size));
+        float dy = Math.max(Math.abs(y - top), Math.abs(y - top - size));
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,74 @@
+package spatial;
+
+import models.Flock;
+
+/**
+ * Answers "which boids are near here" for the current state of a flock. An
+ * index is rebuilt from the flock once per tick, before any boid is updated,
+ * and is then only read, so any number of threads can query it at once.
+ */
+public interface SpatialIndex {
+    /**
+     * An index that never finds any boids, for ticks on which no behaviour looks
+     * for neighbours.
+     */
+    SpatialIndex EMPTY = new SpatialIndex() {
+        @Override
+        public void build(Flock flock) {
+        }
+
+        @Override
+        public void query(float x, float y, float radius, NeighbourList result) {
+            result.clear();
+        }
+
+        @Override
+        public void aggregate(float x, float y, float radius, float errorBound, int exclude, Aggregate sums,
+                NeighbourList boundary) {
+            sums.clear();
+            boundary.clear();
+        }
+    };
+
+    /**
+     * Rebuilds the index from the current state of a flock.
+     *
+     * @param flock The flock to index.
+     */
+    void build(Flock flock);
+
+    /**
+     * Finds every boid that may lie within a radius of a point. The result may
+     * include boids slightly further away, so callers still check the distance
+     * of each candidate themselves.
+     *
+     * @param x      The x coordinate of the point.
+     * @param y      The y coordinate of the point.
+     * @param radius The radius to search.
+     * @param result Receives the candidates, after being cleared.
+     */
+    void query(float x, float y, float radius, NeighbourList result);
+
+    /**
+     * Sums the positions and velocities of the boids within a radius of a point.
+     * Regions that lie entirely within the radius contribute their pre-computed
+     * sums at once. Regions crossing the edge of the radius contribute their sums
+     * too when they are small compared to their distance, as measured by the
+     * error bound; otherwise their boids are added to {@code boundary} to be
+     * checked one by one.
+     *
+     * @param x          The x coordinate of the point.
+     * @param y          The y coordinate of the point.
+     * @param radius     The radius to sum within.
+     * @param errorBound How small a region crossing the radius must be relative
+     *                   to its distance to be summed as a whole, 0 to check all
+     *                   of them one by one.
+     * @param exclude    A boid to leave out of the sums, usually the one at the
+     *                   point, or -1.
+     * @param sums       Receives the sums, after being cleared.
+     * @param boundary   Receives the boids that must be checked one by one, after
+     *                   being cleared.
+     */
+    void aggregate(float x, float y, float radius, float errorBound, int exclude, Aggregate sums,
+            NeighbourList boundary);
+}
@@ -0,0 +1,155 @@
+package spatial;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over items that never move, such as obstacles and attractors.
+ * Each item is described by its bounding box and listed in every cell the box
+ * overlaps. The grid is built once, up front, so queries only ever read it and
+ * any number of threads can query it at once.
+ *
+ * Cell lists are stored back to back in a single array, like
+ * {@link UniformGrid} stores boids, so a query walks a few short runs of
+ * integers instead of following references.
+ */
+public class StaticGrid {
+    // Most cells along either axis, so far flung geometry coarsens the grid
+    // instead of exhausting memory
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    private final float originX;
+    private final float originY;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+
+    // Items listed by cell, and where each cell's list starts
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    // Range of cells each item's box covers, used to report an item only once
+    // when a box query overlaps several of its cells
+    private final int[] itemMinColumn;
+    private final int[] itemMinRow;
+
+    /**
+     * Builds a grid over a set of items.
+     *
+     * @param cellSize The width and height of each cell.
+     * @param minX     The left edge of each item's bounding box.
+     * @param minY     The top edge of each item's bounding box.
+     * @param maxX     The right edge of each item's bounding box.
+     * @param maxY     The bottom edge of each item's bounding box.
+     */
+    public StaticGrid(float cellSize, float[] minX, float[] minY, float[] maxX, float[] maxY) {
+        int count = minX.length;
+
+        float left = 0, top = 0, right = 0, bottom = 0;
+        if (count > 0) {
+            left = minX[0];
+            top = minY[0];
+            right = maxX[0];
+            bottom = maxY[0];
+            for (int i = 1; i < count; i++) {
+                left = Math.min(left, minX[i]);
+                top = Math.min(top, minY[i]);
+                right = Math.max(right, maxX[i]);
+                bottom = Math.max(bottom, maxY[i]);
+            }
+        }
+
+        originX = left;
+        originY = top;
+        float extent = Math.max(right - left, bottom - top);
+        this.cellSize = Math.max(Math.max(1, cellSize), extent / (MAX_CELLS_PER_AXIS - 1));
+        columns = (int) ((right - left) / this.cellSize) + 1;
+        rows = (int) ((bottom - top) / this.cellSize) + 1;
+
+        itemMinColumn = new int[count];
+        itemMinRow = new int[count];
+        int[] itemMaxColumn = new int[count];
+        int[] itemMaxRow = new int[count];
+
+        // Count the items listed in each cell
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++) {
+            itemMinColumn[i] = column(minX[i]);
+            itemMinRow[i] = row(minY[i]);
+            itemMaxColumn[i] = column(maxX[i]);
+            itemMaxRow[i] = row(maxY[i]);
+            for (int r = itemMinRow[i]; r <= itemMaxRow[i]; r++) {
+                for (int c = itemMinColumn[i]; c <= itemMaxColumn[i]; c++)
+                    cellStart[r * columns + c + 1]++;
+            }
+        }
+
+        for (int cell = 0; cell < columns * rows; cell++)
+            cellStart[cell + 1] += cellStart[cell];
+
+        // List the items in each cell, in index order
+        cellItems = new int[cellStart[columns * rows]];
+        int[] next = Arrays.copyOf(cellStart, columns * rows);
+        for (int i = 0; i < count; i++) {
+            for (int r = itemMinRow[i]; r <= itemMaxRow[i]; r++) {
+                for (int c = itemMinColumn[i]; c <= itemMaxColumn[i]; c++)
+                    cellItems[next[r * columns + c]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Finds the items whose bounding box may contain a point.
+     *
+     * @param x      The x coordinate of the point.
+     * @param y      The y coordinate of the point.
+     * @param result Receives the items, after being cleared.
+     */
+    public void queryPoint(float x, float y, NeighbourList result) {
+        result.clear();
+        int cell = row(y) * columns + column(x);
+        result.addAll(cellItems, cellStart[cell], cellStart[cell + 1]);
+    }
+
+    /**
+     * Finds the items whose bounding box may overlap a box, listing each item
+     * once.
+     *
+     * @param minX   The left edge of the box.
+     * @param minY   The top edge of the box.
+     * @param maxX   The right edge of the box.
+     * @param maxY   The bottom edge of the box.
+     * @param result Receives the items, after being cleared.
+     */
+    public void queryBox(float minX, float minY, float maxX, float maxY, NeighbourList result) {
+        result.clear();
+        int minColumn = column(minX);
+        int maxColumn = column(maxX);
+        int minRow = row(minY);
+        int maxRow = row(maxY);
+
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int item = cellItems[k];
+                    // An item spanning several of the queried cells is reported from
+                    // the first of them only
+                    if (Math.max(itemMinColumn[item], minColumn) == c && Math.max(itemMinRow[item], minRow) == r)
+                        result.add(item);
+                }
+            }
+        }
+    }
+
+    private int column(float x) {
+        return clamp((int) Math.floor((x - originX) / cellSize), columns);
+    }
+
+    private int row(float y) {
+        return clamp((int) Math.floor((y - originY) / cellSize), rows);
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+}
@@ -0,0 +1,498 @@
+package spatial;
+
+import java.util.Arrays;
+
+import models.Flock;
+
+/**
+ * A spatial index that bins boids into square cells of equal size. The grid is
+ * rebuilt every tick with a counting sort: boids are counted per cell, the
+ * counts are turned into the start of each cell's run, and the boid indices are
+ * scattered into one array ordered by cell. Cells are laid out row by row, so
+ * the cells of one row of a query rectangle form a single contiguous run. Given
+ * a {@link Partitioner}, every pass of the sort is split across its threads.
+ *
+ * While sorting, the grid also sums the positions and velocities of the boids in
+ * each cell, which lets {@link #aggregate} account for a whole cell in one step.
+ *
+ * The grid covers the bounding box of the flock rather than the world, so boids
+ * that have left the world, with wrapping off, are still binned correctly.
+ */
+public class UniformGrid implements SpatialIndex {
+    // Most cells along either axis, so a flock scattered far outside the world
+    // coarsens the grid instead of exhausting memory
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+    // Fewest boids worth building in parallel
+    private static final int MIN_PARALLEL_BOIDS = 10000;
+
+    private float cellSize;
+
+    private Flock flock;
+    private float originX;
+    private float originY;
+    private float effectiveCellSize;
+    private int columns;
+    private int rows;
+    private float occupancySkew;
+
+    // Boid indices ordered by cell, and where each cell's run starts
+    private int[] cellStart = new int[1];
+    private int[] cellBoids = new int[0];
+    // Cell of each boid, by boid index
+    private int[] boidCells = new int[0];
+
+    // Per cell sums of the position and velocity of its boids
+    private float[] sumX = new float[0];
+    private float[] sumY = new float[0];
+    private float[] sumVelocityX = new float[0];
+    private float[] sumVelocityY = new float[0];
+
+    // Position and velocity of each boid in cellBoids, in the same order
+    private float[] sortedX = new float[0];
+    private float[] sortedY = new float[0];
+    private float[] sortedVelocityX = new float[0];
+    private float[] sortedVelocityY = new float[0];
+
+    // Each partition's count of boids per cell, then where its next boid in
+    // each cell goes
+    private int[][] partitionCells = new int[0][];
+    // Each block of cells' total, then where its first cell starts
+    private int[] blockTotals = new int[0];
+    private int[] blockOccupied = new int[0];
+    private int[] blockLargest = new int[0];
+    private float[] partitionBounds = new float[0];
+
+    /**
+     * Constructs a grid.
+     *
+     * @param cellSize The width and height of each cell.
+     */
+    public UniformGrid(float cellSize) {
+        setCellSize(cellSize);
+    }
+
+    /**
+     * Sets the cell size used from the next build on. Cells about as large as
+     * the most common query radius keep queries to a handful of cells; smaller
+     * cells let {@link #aggregate} sum more of a large radius a cell at a time.
+     *
+     * @param cellSize The width and height of each cell.
+     */
+    public void setCellSize(float cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Measures how unevenly the flock was spread over the grid when it was last
+     * built: the number of boids in the fullest cell divided by the average
+     * number in an occupied cell. It is close to 1 for an evenly spread flock,
+     * and grows as boids pile up in a few cells, which every query touching
+     * those cells must then scan in full.
+     *
+     * @return The occupancy skew, at least 1.
+     */
+    public float getOccupancySkew() {
+        return occupancySkew;
+    }
+
+    /**
+     * Gets the size cells actually have when the grid covers an area, which is
+     * larger than the cell size set when the area is too large for the most
+     * cells the grid will use.
+     *
+     * @param extent The larger of the width and height of the area covered.
+     * @return The effective cell size.
+     */
+    public float getEffectiveCellSize(float extent) {
+        return Math.max(cellSize, extent / (MAX_CELLS_PER_AXIS - 1));
+    }
+
+    @Override
+    public void build(Flock flock) {
+        build(flock, Partitioner.SERIAL);
+    }
+
+    /**
+     * Rebuilds the grid over the flock's bounding box, splitting every pass of
+     * the sort across partitions. The grid comes out the same however many
+     * partitions there are.
+     *
+     * @param flock       The flock to index.
+     * @param partitioner The threads to build on.
+     */
+    public void build(Flock flock, Partitioner partitioner) {
+        int count = flock.size();
+        partitioner = choose(partitioner, count);
+        float[] bounds = ensureBounds(partitioner.getPartitionCount());
+        partitioner.forEachPartition(count, (partition, start, end) -> {
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                float x = flock.getX(i);
+                float y = flock.getY(i);
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            bounds[partition * 4] = minX;
+            bounds[partition * 4 + 1] = minY;
+            bounds[partition * 4 + 2] = maxX;
+            bounds[partition * 4 + 3] = maxY;
+        });
+
+        float minX = 0, minY = 0, maxX = 0, maxY = 0;
+        if (count > 0) {
+            minX = minY = Float.POSITIVE_INFINITY;
+            maxX = maxY = Float.NEGATIVE_INFINITY;
+            // Minima and maxima are exact, so combining the partitions' gives the
+            // same box as a single pass
+            for (int partition = 0; partition < partitioner.getPartitionCount(); partition++) {
+                minX = Math.min(minX, bounds[partition * 4]);
+                minY = Math.min(minY, bounds[partition * 4 + 1]);
+                maxX = Math.max(maxX, bounds[partition * 4 + 2]);
+                maxY = Math.max(maxY, bounds[partition * 4 + 3]);
+            }
+        }
+        build(flock, minX, minY, maxX, maxY, partitioner);
+    }
+
+    /**
+     * Rebuilds the grid over a given area rather than the flock's own bounding
+     * box. Grids built over the same area with the same cell size lay out their
+     * cells identically, so boids shared by two such grids are visited in the
+     * same order, which lets a part of a flock be indexed exactly like the whole.
+     *
+     * @param flock The flock to index, which must lie within the area.
+     * @param minX  The left edge of the area.
+     * @param minY  The top edge of the area.
+     * @param maxX  The right edge of the area.
+     * @param maxY  The bottom edge of the area.
+     */
+    public void build(Flock flock, float minX, float minY, float maxX, float maxY) {
+        build(flock, minX, minY, maxX, maxY, Partitioner.SERIAL);
+    }
+
+    /**
+     * Rebuilds the grid over a given area with a counting sort split across
+     * partitions. Each partition counts its own boids per cell; the counts are
+     * then summed over partitions a block of cells at a time, the blocks'
+     * totals give where each block starts, and each block turns its counts into
+     * where every partition's boids of every cell go. Partitions cover boids in
+     * index order, so scattering them leaves each cell in index order, exactly
+     * as a single pass would.
+     *
+     * The scatter also copies each boid's position and velocity into cell order
+     * beside its index, so the per-cell sums are taken over contiguous memory.
+     *
+     * @param flock       The flock to index, which must lie within the area.
+     * @param minX        The left edge of the area.
+     * @param minY        The top edge of the area.
+     * @param maxX        The right edge of the area.
+     * @param maxY        The bottom edge of the area.
+     * @param partitioner The threads to build on.
+     */
+    public void build(Flock flock, float minX, float minY, float maxX, float maxY, Partitioner partitioner) {
+        this.flock = flock;
+        int count = flock.size();
+        partitioner = choose(partitioner, count);
+        int partitions = partitioner.getPartitionCount();
+
+        originX = minX;
+        originY = minY;
+        float extent = Math.max(maxX - minX, maxY - minY);
+        effectiveCellSize = getEffectiveCellSize(extent);
+        columns = (int) ((maxX - minX) / effectiveCellSize) + 1;
+        rows = (int) ((maxY - minY) / effectiveCellSize) + 1;
+        int cells = columns * rows;
+
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+            sumX = new float[cells];
+            sumY = new float[cells];
+            sumVelocityX = new float[cells];
+            sumVelocityY = new float[cells];
+        }
+        if (cellBoids.length < count) {
+            cellBoids = new int[count];
+            boidCells = new int[count];
+            sortedX = new float[count];
+            sortedY = new float[count];
+            sortedVelocityX = new float[count];
+            sortedVelocityY = new float[count];
+        }
+        ensurePartitions(partitions, cells);
+        int[][] partitionCells = this.partitionCells;
+        int[] blockTotals = this.blockTotals;
+        int[] blockOccupied = this.blockOccupied;
+        int[] blockLargest = this.blockLargest;
+
+        // Count each partition's boids in each cell
+        partitioner.forEachPartition(count, (partition, start, end) -> {
+            int[] counts = partitionCells[partition];
+            Arrays.fill(counts, 0, cells, 0);
+            for (int i = start; i < end; i++) {
+                int cell = cellOf(flock.getX(i), flock.getY(i));
+                boidCells[i] = cell;
+                counts[cell]++;
+            }
+        });
+
+        // Total each block of cells, measuring occupancy on the way
+        partitioner.forEachPartition(cells, (block, start, end) -> {
+            int total = 0;
+            int occupied = 0;
+            int largest = 0;
+            for (int cell = start; cell < end; cell++) {
+                int cellCount = 0;
+                for (int partition = 0; partition < partitions; partition++)
+                    cellCount += partitionCells[partition][cell];
+                total += cellCount;
+                if (cellCount > 0)
+                    occupied++;
+                largest = Math.max(largest, cellCount);
+            }
+            blockTotals[block] = total;
+            blockOccupied[block] = occupied;
+            blockLargest[block] = largest;
+        });
+
+        int occupied = 0;
+        int largest = 0;
+        int offset = 0;
+        for (int block = 0; block < partitions; block++) {
+            int total = blockTotals[block];
+            blockTotals[block] = offset;
+            offset += total;
+            occupied += blockOccupied[block];
+            largest = Math.max(largest, blockLargest[block]);
+        }
+        occupancySkew = occupied > 0 ? largest / ((float) count / occupied) : 1;
+
+        // Turn the counts into the start of each cell's run, and of each
+        // partition's share of it
+        partitioner.forEachPartition(cells, (block, start, end) -> {
+            int next = blockTotals[block];
+            for (int cell = start; cell < end; cell++) {
+                cellStart[cell] = next;
+                for (int partition = 0; partition < partitions; partition++) {
+                    int cellCount = partitionCells[partition][cell];
+                    partitionCells[partition][cell] = next;
+                    next += cellCount;
+                }
+            }
+        });
+        cellStart[cells] = count;
+
+        // Scatter the boids into their cells, in index order within each cell
+        partitioner.forEachPartition(count, (partition, start, end) -> {
+            int[] next = partitionCells[partition];
+            for (int i = start; i < end; i++) {
+                int k = next[boidCells[i]]++;
+                cellBoids[k] = i;
+                sortedX[k] = flock.getX(i);
+                sortedY[k] = flock.getY(i);
+                sortedVelocityX[k] = flock.getVelocityX(i);
+                sortedVelocityY[k] = flock.getVelocityY(i);
+            }
+        });
+
+        partitioner.forEachPartition(cells, (block, start, end) -> {
+            for (int cell = start; cell < end; cell++) {
+                float x = 0, y = 0, vx = 0, vy = 0;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    x += sortedX[k];
+                    y += sortedY[k];
+                    vx += sortedVelocityX[k];
+                    vy += sortedVelocityY[k];
+                }
+                sumX[cell] = x;
+                sumY[cell] = y;
+                sumVelocityX[cell] = vx;
+                sumVelocityY[cell] = vy;
+            }
+        });
+    }
+
+    /**
+     * Builds small flocks on the calling thread, where handing the passes to
+     * other threads costs more than it saves.
+     */
+    static Partitioner choose(Partitioner partitioner, int count) {
+        return count < MIN_PARALLEL_BOIDS ? Partitioner.SERIAL : partitioner;
+    }
+
+    private float[] ensureBounds(int partitions) {
+        if (partitionBounds.length < partitions * 4)
+            partitionBounds = new float[partitions * 4];
+        return partitionBounds;
+    }
+
+    private void ensurePartitions(int partitions, int cells) {
+        if (partitionCells.length < partitions) {
+            partitionCells = Arrays.copyOf(partitionCells, partitions);
+            blockTotals = new int[partitions];
+            blockOccupied = new int[partitions];
+            blockLargest = new int[partitions];
+        }
+        for (int partition = 0; partition < partitions; partition++) {
+            if (partitionCells[partition] == null || partitionCells[partition].length < cells)
+                partitionCells[partition] = new int[cells];
+        }
+    }
+
+    /**
+     * Gets the start of a cell's run of boids, for indexes copying the grid.
+     */
+    int getCellStart(int cell) {
+        return cellStart[cell];
+    }
+
+    /**
+     * Gets the boid indices ordered by cell, for indexes copying the grid.
+     */
+    int[] getCellBoids() {
+        return cellBoids;
+    }
+
+    /**
+     * Gets the cell of every boid, by boid index, for indexes copying the grid.
+     */
+    int[] getBoidCells() {
+        return boidCells;
+    }
+
+    /**
+     * Copies the sums of a cell's boids into the given arrays at the same cell,
+     * for indexes copying the grid.
+     */
+    void copySums(int cell, float[] x, float[] y, float[] velocityX, float[] velocityY) {
+        x[cell] = sumX[cell];
+        y[cell] = sumY[cell];
+        velocityX[cell] = sumVelocityX[cell];
+        velocityY[cell] = sumVelocityY[cell];
+    }
+
+    @Override
+    public void query(float x, float y, float radius, NeighbourList result) {
+        queryRectangle(x - radius, y - radius, x + radius, y + radius, result);
+    }
+
+    /**
+     * Finds every boid that may lie within an axis-aligned rectangle. Like
+     * {@link #query}, the result may include boids slightly outside it.
+     *
+     * @param minX   The left edge of the rectangle.
+     * @param minY   The top edge of the rectangle.
+     * @param maxX   The right edge of the rectangle.
+     * @param maxY   The bottom edge of the rectangle.
+     * @param result Receives the candidates, after being cleared.
+     */
+    public void queryRectangle(float minX, float minY, float maxX, float maxY, NeighbourList result) {
+        result.clear();
+        int minColumn = column(minX);
+        int maxColumn = column(maxX);
+        int minRow = row(minY);
+        int maxRow = row(maxY);
+
+        for (int r = minRow; r <= maxRow; r++) {
+            int rowStart = r * columns;
+            result.addAll(cellBoids, cellStart[rowStart + minColumn], cellStart[rowStart + maxColumn + 1]);
+        }
+    }
+
+    @Override
+    public void aggregate(float x, float y, float radius, float errorBound, int exclude, Aggregate sums,
+            NeighbourList boundary) {
+        sums.clear();
+        boundary.clear();
+        int minColumn = column(x - radius);
+        int maxColumn = column(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+
+        float radiusSquared = radius * radius;
+        boolean isExcludeSummed = false;
+        int excludeCell = exclude >= 0 ? boidCells[exclude] : -1;
+
+        for (int r = minRow; r <= maxRow; r++) {
+            float top = originY + r * effectiveCellSize;
+            float bottom = top + effectiveCellSize;
+            // Vertical distance from the point to the nearest and furthest edge of the row
+            float nearY = y < top ? top - y : (y > bottom ? y - bottom : 0);
+            float farY = Math.max(Math.abs(y - top), Math.abs(y - bottom));
+
+            for (int c = minColumn; c <= maxColumn; c++) {
+                int cell = r * columns + c;
+                int start = cellStart[cell];
+                int end = cellStart[cell + 1];
+                if (start == end)
+                    continue;
+
+                float left = originX + c * effectiveCellSize;
+                float right = left + effectiveCellSize;
+                float nearX = x < left ? left - x : (x > right ? x - right : 0);
+                if (nearX * nearX + nearY * nearY >= radiusSquared)
+                    continue; // Every boid in the cell is out of range
+
+                float farX = Math.max(Math.abs(x - left), Math.abs(x - right));
+                boolean isInside = farX * farX + farY * farY < radiusSquared;
+
+                if (!isInside && errorBound > 0) {
+                    // Treat a cell crossing the edge of the range as a single body at
+                    // its centre of mass when it is small compared to its distance
+                    int count = end - start;
+                    float dx = sumX[cell] / count - x;
+                    float dy = sumY[cell] / count - y;
+                    float distanceSquared = dx * dx + dy * dy;
+                    float limit = effectiveCellSize / errorBound;
+                    if (distanceSquared > limit * limit) {
+                        if (distanceSquared >= radiusSquared)
+                            continue;
+                        isInside = true;
+                    }
+                }
+
+                if (isInside) {
+                    sums.sumX += sumX[cell];
+                    sums.sumY += sumY[cell];
+                    sums.sumVelocityX += sumVelocityX[cell];
+                    sums.sumVelocityY += sumVelocityY[cell];
+                    sums.count += end - start;
+                    if (cell == excludeCell)
+                        isExcludeSummed = true;
+                } else {
+                    boundary.addAll(cellBoids, start, end);
+                }
+            }
+        }
+
+        if (isExcludeSummed) {
+            sums.sumX -= flock.getX(exclude);
+            sums.sumY -= flock.getY(exclude);
+            sums.sumVelocityX -= flock.getVelocityX(exclude);
+            sums.sumVelocityY -= flock.getVelocityY(exclude);
+            sums.count--;
+        }
+    }
+
+    private int cellOf(float x, float y) {
+        return row(y) * columns + column(x);
+    }
+
+    private int column(float x) {
+        return clamp((int) Math.floor((x - originX) / effectiveCellSize), columns);
+    }
+
+    private int row(float y) {
+        return clamp((int) Math.floor((y - originY) / effectiveCellSize), rows);
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+}
@@ -0,0 +1,141 @@
+package ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+import models.Environment;
+
+/**
+ * Draws boids as small triangles pointing along their velocity, and the
+ * environment they fly through. Shared by the live simulation and the replay
+ * viewer so that both look identical.
+ */
+public final class BoidPainter {
+    public static final Color STANDARD_COLOR = new Color(0x808080);
+    public static final Color DEBUG_COLOR = new Color(0x1AB6E5);
+    public static final Color BACKGROUND_COLOR = new Color(0x252628);
+    public static final Color OBSTACLE_COLOR = new Color(0xB0B0B0);
+    public static final Color ATTRACTOR_COLOR = new Color(0x4CAF50);
+    public static final Color REPELLER_COLOR = new Color(0xE55A1A);
+    // Colours of the species after the first, which is drawn in STANDARD_COLOR
+    private static final Color[] SPECIES_COLORS = { new Color(0xE5A91A), new Color(0xB65AE5), new Color(0x5AE58C),
+            new Color(0xE55A8C), new Color(0x5A8CE5) };
+
+    // Adjust these values to change the shape of the triangle
+    private static final int TIP_SIZE = 6; // Distance from center to tip
+    private static final int BASE_SIZE = 8; // Distance from center to base corners
+
+    private BoidPainter() {
+    }
+
+    /**
+     * Draws a single boid.
+     *
+     * @param g2d   The Graphics2D object to draw with.
+     * @param x     The x position of the boid.
+     * @param y     The y position of the boid.
+     * @param vx    The x velocity of the boid.
+     * @param vy    The y velocity of the boid.
+     * @param color The fill color of the boid.
+     */
+    public static void paintBoid(Graphics2D g2d, float x, float y, float vx, float vy, Color color) {
+        paintBoid(g2d, x, y, vx, vy, color, 1);
+    }
+
+    /**
+     * Draws a single boid with the world scaled up or down, keeping the outline
+     * at whole pixels of the image rather than of the world.
+     *
+     * @param g2d   The Graphics2D object to draw with.
+     * @param x     The x position of the boid.
+     * @param y     The y position of the boid.
+     * @param vx    The x velocity of the boid.
+     * @param vy    The y velocity of the boid.
+     * @param color The fill color of the boid.
+     * @param scale The number of image pixels per world pixel.
+     */
+    public static void paintBoid(Graphics2D g2d, float x, float y, float vx, float vy, Color color, float scale) {
+        // Convert the direction of velocity to an angle
+        double angle = Math.atan2(vy, vx);
+        float centerX = x * scale;
+        float centerY = y * scale;
+        double tip = TIP_SIZE * scale;
+        double base = BASE_SIZE * scale;
+
+        // Calculate the points for a pointier triangle
+        int[] xPoints = {
+                (int) (centerX + Math.cos(angle) * tip), // Tip
+                (int) (centerX + Math.cos(angle + Math.PI - Math.PI / 6) * base), // Base corner 1
+                (int) (centerX + Math.cos(angle + Math.PI + Math.PI / 6) * base) // Base corner 2
+        };
+        int[] yPoints = {
+                (int) (centerY + Math.sin(angle) * tip), // Tip
+                (int) (centerY + Math.sin(angle + Math.PI - Math.PI / 6) * base), // Base corner 1
+                (int) (centerY + Math.sin(angle + Math.PI + Math.PI / 6) * base) // Base corner 2
+        };
+
+        g2d.setColor(color);
+        g2d.fillPolygon(xPoints, yPoints, 3);
+    }
+
+    /**
+     * Draws a single boid as a dot, which is much cheaper than a triangle when
+     * there are many boids to draw.
+     *
+     * @param g2d   The Graphics2D object to draw with.
+     * @param x     The x position of the boid.
+     * @param y     The y position of the boid.
+     * @param color The color of the boid.
+     */
+    public static void paintDot(Graphics2D g2d, float x, float y, Color color) {
+        g2d.setColor(color);
+        g2d.fillRect((int) x - 1, (int) y - 1, 2, 2);
+    }
+
+    /**
+     * Gets the colour boids of a species are drawn in.
+     *
+     * @param species The ID of the species.
+     * @return The colour of the species.
+     */
+    public static Color speciesColor(int species) {
+        return species == 0 ? STANDARD_COLOR : SPECIES_COLORS[(species - 1) % SPECIES_COLORS.length];
+    }
+
+    /**
+     * Draws the obstacles and attractors of an environment. Attractors are drawn
+     * as dots sized by the strength of their weight, repellers in a different
+     * colour.
+     *
+     * @param g2d         The Graphics2D object to draw with.
+     * @param environment The environment to draw.
+     */
+    public static void paintEnvironment(Graphics2D g2d, Environment environment) {
+        paintEnvironment(g2d, environment, 1);
+    }
+
+    /**
+     * Draws the obstacles and attractors of an environment with the world scaled
+     * up or down. Attractor dots grow and shrink with the world, while obstacle
+     * lines stay one image pixel wide.
+     *
+     * @param g2d         The Graphics2D object to draw with.
+     * @param environment The environment to draw.
+     * @param scale       The number of image pixels per world pixel.
+     */
+    public static void paintEnvironment(Graphics2D g2d, Environment environment, float scale) {
+        for (int i = 0; i < environment.getAttractorCount(); i++) {
+            float weight = environment.getAttractorWeight(i);
+            int size = (int) ((4 + (int) Math.min(8, Math.abs(weight) * 4)) * scale);
+            g2d.setColor(weight >= 0 ? ATTRACTOR_COLOR : REPELLER_COLOR);
+            g2d.fillOval((int) (environment.getAttractorX(i) * scale) - size / 2,
+                    (int) (environment.getAttractorY(i) * scale) - size / 2, size, size);
+        }
+
+        g2d.setColor(OBSTACLE_COLOR);
+        for (int i = 0; i < environment.getSegmentCount(); i++) {
+            g2d.drawLine((int) (environment.getSegmentX1(i) * scale), (int) (environment.getSegmentY1(i) * scale),
+                    (int) (environment.getSegmentX2(i) * scale), (int) (environment.getSegmentY2(i) * scale));
+        }
+    }
+}
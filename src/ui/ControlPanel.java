@@ -2,19 +2,31 @@ package ui;
 
 import javax.swing.*;
 
-import simulation.FlockSimulation;
+import behaviour.BehaviourSet;
+import behaviour.BoidBehaviour;
+import simulation.FidelityGovernor;
+import simulation.FlockEngine;
 import models.Parameter;
 import models.ParameterGroup;
 
 import java.awt.*;
+import java.io.IOException;
 import java.util.Hashtable;
-import java.util.List;
 
+/**
+ * A window of sliders and checkboxes that edit the parameters and behaviour
+ * flags of one simulation. Each control panel is bound to a single engine, so
+ * several simulations can each have their own. The panel has a section for
+ * every behaviour in the {@link behaviour.BehaviourRegistry}, so behaviours
+ * added through it appear here without any changes to the panel. A
+ * {@link PerformancePanel} at the bottom shows what the simulation costs, below
+ * the budget the engine's {@link FidelityGovernor} may hold it to.
+ */
 public class ControlPanel extends JFrame {
-    private final FlockSimulation simulation;
+    private final FlockEngine engine;
 
-    public ControlPanel(FlockSimulation simulation) {
-        this.simulation = simulation;
+    public ControlPanel(FlockEngine engine) {
+        this.engine = engine;
         initializeUI();
     }
 
@@ -22,6 +34,16 @@ public class ControlPanel extends JFrame {
         setTitle("Boid Simulation Parameters");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+        buildContent();
+
+        pack();
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    // Builds the controls from the engine's current values, so it can be called
+    // again to resynchronise them after the engine changes underneath
+    private void buildContent() {
         // Create a main panel with BoxLayout to hold the content and set padding via
         // border
         JPanel mainPanel = new JPanel();
@@ -29,28 +51,58 @@ public class ControlPanel extends JFrame {
         int padding = 10; // Adjust padding size as needed
         mainPanel.setBorder(BorderFactory.createEmptyBorder(padding, padding, padding, padding));
 
-        List<ParameterGroup> parameterGroups = simulation.getParameterGroups();
-        for (ParameterGroup group : parameterGroups) {
-            JPanel parameterPanel = new JPanel(new GridBagLayout());
-            GridBagConstraints gbc = new GridBagConstraints();
-            gbc.gridy = 0;
-            gbc.anchor = GridBagConstraints.NORTHWEST;
+        // One section per registered behaviour, with its parameters if it has any
+        BehaviourSet behaviours = engine.getBehaviours();
+        for (String name : behaviours.getNames()) {
+            BoidBehaviour behaviour = behaviours.get(name);
+            mainPanel.add(createSection(name, createParameterPanel(behaviour.getParameters()), behaviour));
+        }
 
-            for (Parameter parameter : group.getParameters().values()) {
-                parameterPanel.add(createParameterSlider(parameter), gbc);
-                gbc.gridy++;
-            }
+        // Settings that belong to no behaviour have no flags to toggle
+        ParameterGroup timeStep = behaviours.getTimeStep().getParameters();
+        mainPanel.add(createSection(timeStep.getName(), createParameterPanel(timeStep), null));
 
-            // Instead of adding directly to the frame, add to the main panel
-            mainPanel.add(createSection(group.getName(), parameterPanel, group.getName()));
-        }
+        // The budget to trade fidelity for, and whether to
+        mainPanel.add(createSection("Governor", createGovernorPanel(), null));
+
+        // What the simulation costs, to tune the behaviours against
+        mainPanel.add(createSection("Performance", new PerformancePanel(engine), null));
+
+        mainPanel.add(createCheckpointPanel());
 
         // Finally, add the main panel to the frame's content pane
+        getContentPane().removeAll();
         getContentPane().add(mainPanel);
+    }
 
-        pack();
-        setLocationRelativeTo(null);
-        setVisible(true);
+    // Stacks a slider for every parameter of a group, or nothing for no group
+    private JPanel createParameterPanel(ParameterGroup group) {
+        JPanel parameterPanel = new JPanel(new GridBagLayout());
+        if (group == null)
+            return parameterPanel;
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.NORTHWEST;
+        for (Parameter parameter : group.getParameters().values()) {
+            parameterPanel.add(createParameterSlider(parameter), gbc);
+            gbc.gridy++;
+        }
+        return parameterPanel;
+    }
+
+    // The governor's switch above its budget slider
+    private JPanel createGovernorPanel() {
+        FidelityGovernor governor = engine.getGovernor();
+        JPanel governorPanel = new JPanel(new BorderLayout());
+
+        JCheckBox holdCheckbox = new JCheckBox("Lower fidelity to hold the budget", governor.isEnabled());
+        holdCheckbox.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+        holdCheckbox.addActionListener(e -> governor.setEnabled(holdCheckbox.isSelected()));
+
+        governorPanel.add(holdCheckbox, BorderLayout.NORTH);
+        governorPanel.add(createParameterPanel(governor.getParameters()), BorderLayout.CENTER);
+        return governorPanel;
     }
 
     // Method to create sliders for each parameter
@@ -117,7 +169,7 @@ public class ControlPanel extends JFrame {
         return parameterPanel;
     }
 
-    private JPanel createSection(String title, JPanel contentPanel, String behaviorName) {
+    private JPanel createSection(String title, JPanel contentPanel, BoidBehaviour behaviour) {
         JPanel sectionPanel = new JPanel(new BorderLayout());
 
         // Panel for the title and checkboxes, using GridBagLayout for precise control
@@ -140,29 +192,29 @@ public class ControlPanel extends JFrame {
         // side-by-side layout)
         gbc.gridheight = 1;
 
-        // Configure the "Enable" checkbox on the right
-        gbc.gridx = 1; // Position "Enable" checkbox in the second column
-        gbc.gridy = 0; // Both checkboxes in the first row
-        gbc.weightx = 0; // Do not let checkboxes expand horizontally
-        gbc.anchor = GridBagConstraints.EAST; // Align to the east side but within the same block
+        if (behaviour != null) {
+            // Configure the "Enable" checkbox on the right
+            gbc.gridx = 1; // Position "Enable" checkbox in the second column
+            gbc.gridy = 0; // Both checkboxes in the first row
+            gbc.weightx = 0; // Do not let checkboxes expand horizontally
+            gbc.anchor = GridBagConstraints.EAST; // Align to the east side but within the same block
 
-        JCheckBox enableCheckbox = new JCheckBox("Enable", FlockSimulation.isBehaviorEnabled(behaviorName));
-        JCheckBox debugCheckbox = new JCheckBox("Debug", FlockSimulation.isBehaviorDebugging(behaviorName));
+            JCheckBox enableCheckbox = new JCheckBox("Enable", behaviour.isEnabled());
+            JCheckBox debugCheckbox = new JCheckBox("Debug", behaviour.isDebugging());
 
-        enableCheckbox.addActionListener(
-                e -> FlockSimulation.toggleBehaviorEnabled(behaviorName, enableCheckbox.isSelected()));
-        debugCheckbox.addActionListener(
-                e -> FlockSimulation.toggleBehaviorDebugging(behaviorName, debugCheckbox.isSelected()));
+            enableCheckbox.addActionListener(e -> behaviour.setEnabled(enableCheckbox.isSelected()));
+            debugCheckbox.addActionListener(e -> behaviour.setDebugging(debugCheckbox.isSelected()));
 
-        Font originalFont = enableCheckbox.getFont();
-        Font smallerFont = new Font(originalFont.getName(), originalFont.getStyle(), originalFont.getSize() - 2);
+            Font originalFont = enableCheckbox.getFont();
+            Font smallerFont = new Font(originalFont.getName(), originalFont.getStyle(), originalFont.getSize() - 2);
 
-        enableCheckbox.setFont(smallerFont);
-        debugCheckbox.setFont(smallerFont);
+            enableCheckbox.setFont(smallerFont);
+            debugCheckbox.setFont(smallerFont);
 
-        topPanel.add(debugCheckbox, gbc);
-        gbc.gridx = 2;
-        topPanel.add(enableCheckbox, gbc);
+            topPanel.add(debugCheckbox, gbc);
+            gbc.gridx = 2;
+            topPanel.add(enableCheckbox, gbc);
+        }
 
         // Adding spacing and alignment adjustments if necessary
         gbc.insets = new Insets(0, 5, 0, 5); // Add padding around components if needed
@@ -174,6 +226,44 @@ public class ControlPanel extends JFrame {
         return sectionPanel;
     }
 
+    // Buttons to save the running simulation to a checkpoint and restore it again
+    private JPanel createCheckpointPanel() {
+        JPanel checkpointPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton saveButton = new JButton("Save Checkpoint");
+        JButton loadButton = new JButton("Load Checkpoint");
+
+        saveButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+                return;
+            try {
+                engine.saveCheckpoint(chooser.getSelectedFile().toPath());
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, "Could not save checkpoint: " + ex.getMessage(), "Checkpoint",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        loadButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+                return;
+            try {
+                engine.restoreCheckpoint(chooser.getSelectedFile().toPath());
+                buildContent();
+                revalidate();
+                repaint();
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, "Could not load checkpoint: " + ex.getMessage(), "Checkpoint",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        checkpointPanel.add(saveButton);
+        checkpointPanel.add(loadButton);
+        return checkpointPanel;
+    }
+
     private JLabel createLabel(String text, int style, int size) {
         JLabel label = new JLabel(text);
         label.setFont(new Font(Font.SANS_SERIF, style, size));
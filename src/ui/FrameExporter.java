@@ -0,0 +1,329 @@
+package ui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import models.Environment;
+import models.Flock;
+import simulation.FlockEngine;
+import util.RandomSource;
+
+/**
+ * Renders flock frames off screen and writes them out as images, for turning
+ * a run into a video without a window or a display. The simulation thread only
+ * copies each frame's state into a pooled snapshot; drawing and encoding
+ * happen on a pool of encoder threads, each with its own image. When the
+ * encoders fall behind, {@link #export} blocks until a snapshot is free, so
+ * exports slow the simulation down rather than dropping or reordering frames.
+ *
+ * Frames are written either as a numbered PNG sequence, {@code frame_000000.png}
+ * onwards, or as one raw stream of 8-bit RGB pixels, row by row with no header
+ * or padding, which video encoders read directly. With ffmpeg, for example:
+ *
+ * <pre>
+ * ffmpeg -framerate 60 -i frame_%06d.png out.mp4
+ * ffmpeg -f rawvideo -pixel_format rgb24 -video_size 3840x2160 -framerate 60 -i frames.rgb out.mp4
+ * </pre>
+ *
+ * Every raw frame has the same size and is written at its own place in the
+ * stream, so encoders finishing out of order still produce frames in order.
+ */
+public class FrameExporter implements Closeable {
+    /** How the frames are written. */
+    public enum Format {
+        /** One PNG file per frame in the output directory. */
+        PNG_SEQUENCE,
+        /** Every frame's RGB pixels, one after another in the output file. */
+        RAW_RGB
+    }
+
+    // Snapshots per encoder, so every encoder has the next frame waiting
+    private static final int FRAMES_PER_ENCODER = 2;
+
+    private final Path output;
+    private final Format format;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final FileChannel channel;
+
+    private final ExecutorService encoders;
+    private final BlockingQueue<Snapshot> free;
+    // The image each encoder draws into, created on its first frame
+    private final ThreadLocal<Canvas> canvas;
+
+    private long frameCount = 0;
+    private volatile IOException failure;
+    private boolean isClosed = false;
+
+    /**
+     * Creates an exporter and starts its encoder threads.
+     *
+     * @param output       The directory to write a PNG sequence into, created if
+     *                     needed, or the file to write a raw stream to, replaced
+     *                     if it already exists.
+     * @param format       How to write the frames.
+     * @param imageWidth   The width of every frame in pixels.
+     * @param imageHeight  The height of every frame in pixels.
+     * @param encoderCount The number of threads drawing and encoding frames.
+     * @throws IOException If the output cannot be created.
+     */
+    public FrameExporter(Path output, Format format, int imageWidth, int imageHeight, int encoderCount)
+            throws IOException {
+        if (imageWidth < 1 || imageHeight < 1)
+            throw new IllegalArgumentException("Frames must be at least one pixel in each direction");
+        if (encoderCount < 1)
+            throw new IllegalArgumentException("At least one encoder is needed");
+
+        this.output = output;
+        this.format = format;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+
+        if (format == Format.RAW_RGB) {
+            channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            Files.createDirectories(output);
+            channel = null;
+        }
+
+        free = new ArrayBlockingQueue<>(encoderCount * FRAMES_PER_ENCODER);
+        for (int i = 0; i < encoderCount * FRAMES_PER_ENCODER; i++)
+            free.add(new Snapshot());
+        canvas = ThreadLocal.withInitial(() -> new Canvas(imageWidth, imageHeight, format));
+        encoders = Executors.newFixedThreadPool(encoderCount, runnable -> {
+            Thread thread = new Thread(runnable, "frame-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a frame for export. The flock's state is copied before this method
+     * returns, so the caller is free to update it immediately.
+     *
+     * @param flock       The flock to draw.
+     * @param environment The environment to draw beneath the flock.
+     * @throws IOException If a previous frame failed to export.
+     */
+    public void export(Flock flock, Environment environment) throws IOException {
+        if (isClosed)
+            throw new IOException("Frame exporter is closed");
+        checkFailure();
+
+        Snapshot snapshot;
+        try {
+            snapshot = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the frame encoders", e);
+        }
+
+        if (snapshot.flock == null || snapshot.flock.size() != flock.size()
+                || snapshot.flock.getWidth() != flock.getWidth() || snapshot.flock.getHeight() != flock.getHeight())
+            snapshot.flock = new Flock(flock.size(), flock.getWidth(), flock.getHeight());
+        flock.copyTo(snapshot.flock);
+        snapshot.environment = environment;
+        snapshot.index = frameCount++;
+        encoders.execute(() -> encode(snapshot));
+    }
+
+    /**
+     * Waits for every queued frame to be written and stops the encoders.
+     *
+     * @throws IOException If any frame failed to export.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed)
+            return;
+        isClosed = true;
+
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the frame exporter", e);
+        } finally {
+            if (channel != null)
+                channel.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Gets the number of frames queued so far, written or not.
+     *
+     * @return The number of frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    private void encode(Snapshot snapshot) {
+        try {
+            if (failure == null) {
+                Canvas target = canvas.get();
+                draw(target.graphics, snapshot.flock, snapshot.environment);
+                if (format == Format.RAW_RGB)
+                    writeRaw(target, snapshot.index);
+                else
+                    writePng(target.image, snapshot.index);
+            }
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        } finally {
+            snapshot.environment = null;
+            free.add(snapshot);
+        }
+    }
+
+    /**
+     * Draws a frame exactly as the simulation window does, scaled to fit the
+     * image and centred within it.
+     */
+    private void draw(Graphics2D g2d, Flock flock, Environment environment) {
+        g2d.setColor(BoidPainter.BACKGROUND_COLOR);
+        g2d.fillRect(0, 0, imageWidth, imageHeight);
+
+        float scale = Math.min(imageWidth / flock.getWidth(), imageHeight / flock.getHeight());
+        int offsetX = Math.round((imageWidth - flock.getWidth() * scale) / 2);
+        int offsetY = Math.round((imageHeight - flock.getHeight() * scale) / 2);
+        g2d.translate(offsetX, offsetY);
+        BoidPainter.paintEnvironment(g2d, environment, scale);
+        for (int i = 0; i < flock.size(); i++) {
+            BoidPainter.paintBoid(g2d, flock.getX(i), flock.getY(i), flock.getVelocityX(i), flock.getVelocityY(i),
+                    BoidPainter.speciesColor(flock.getSpecies(i)), scale);
+        }
+        g2d.translate(-offsetX, -offsetY);
+    }
+
+    private void writePng(BufferedImage image, long index) throws IOException {
+        Path file = output.resolve(String.format("frame_%06d.png", index));
+        if (!ImageIO.write(image, "png", file.toFile()))
+            throw new IOException("No PNG encoder available");
+    }
+
+    private void writeRaw(Canvas target, long index) throws IOException {
+        int[] pixels = ((DataBufferInt) target.image.getRaster().getDataBuffer()).getData();
+        byte[] rgb = target.rgb;
+        for (int i = 0, k = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            rgb[k++] = (byte) (pixel >> 16);
+            rgb[k++] = (byte) (pixel >> 8);
+            rgb[k++] = (byte) pixel;
+        }
+
+        // Positional writes never move a shared file position, so encoders can
+        // write their frames concurrently
+        ByteBuffer buffer = ByteBuffer.wrap(rgb);
+        long position = index * rgb.length;
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null)
+            throw new IOException("Frame export failed: " + e.getMessage(), e);
+    }
+
+    /**
+     * A copy of one frame's state waiting to be drawn.
+     */
+    private static final class Snapshot {
+        Flock flock;
+        Environment environment;
+        long index;
+    }
+
+    /**
+     * An encoder's image, and for raw streams the buffer its pixels are packed
+     * into.
+     */
+    private static final class Canvas {
+        final BufferedImage image;
+        final Graphics2D graphics;
+        final byte[] rgb;
+
+        Canvas(int width, int height, Format format) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+            rgb = format == Format.RAW_RGB ? new byte[width * height * 3] : null;
+        }
+    }
+
+    /**
+     * Runs a simulation without a window and exports every tick, with as many
+     * encoders as there are processors by default.
+     *
+     * @param args The output directory or file, the frame width and height and
+     *             the number of ticks, followed by any of {@code --raw} to write
+     *             a raw RGB stream instead of PNGs, {@code --seed <n>},
+     *             {@code --boids <n>}, {@code --threads <n>} to update the flock
+     *             on, {@code --encoders <n>} and {@code --environment <file>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: FrameExporter <output> <width> <height> <ticks> [--raw] [--seed n]"
+                    + " [--boids n] [--threads n] [--encoders n] [--environment file]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+
+        Path output = Paths.get(args[0]);
+        int imageWidth = Integer.parseInt(args[1]);
+        int imageHeight = Integer.parseInt(args[2]);
+        int ticks = Integer.parseInt(args[3]);
+        Format format = Format.PNG_SEQUENCE;
+        long seed = new RandomSource().nextLong();
+        int boidCount = 100;
+        int threads = 1;
+        int encoderCount = Runtime.getRuntime().availableProcessors();
+        Environment environment = Environment.EMPTY;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].equals("--raw"))
+                format = Format.RAW_RGB;
+            else if (args[i].equals("--seed") && i + 1 < args.length)
+                seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("--boids") && i + 1 < args.length)
+                boidCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--encoders") && i + 1 < args.length)
+                encoderCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--environment") && i + 1 < args.length)
+                environment = Environment.read(Paths.get(args[++i]));
+        }
+
+        long start = System.nanoTime();
+        try (FlockEngine engine = new FlockEngine(seed, threads, boidCount, 800, 600);
+                FrameExporter exporter = new FrameExporter(output, format, imageWidth, imageHeight, encoderCount)) {
+            engine.setEnvironment(environment);
+            for (int i = 0; i < ticks; i++) {
+                engine.step();
+                exporter.export(engine.getFlock(), environment);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Exported %d frames of %dx%d in %.1f s%n", ticks, imageWidth, imageHeight, elapsed / 1e9);
+    }
+}
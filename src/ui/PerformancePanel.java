@@ -0,0 +1,323 @@
+package ui;
+
+import javax.swing.*;
+
+import behaviour.BehaviourSet;
+import simulation.EngineMetrics;
+import simulation.FidelityGovernor;
+import simulation.FlockEngine;
+
+import java.awt.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The performance section of the control panel: what one engine's ticks and
+ * frames cost, with a sparkline of the last 30 seconds of each measure. Every
+ * figure is worked out from the engine's {@link EngineMetrics}, as the change
+ * in its totals between two refreshes, except for garbage collection, which
+ * belongs to the whole JVM and is read from its management beans.
+ *
+ * The panel refreshes four times a second, and only while it is showing, so
+ * it adds little work to the event dispatch thread however fast the
+ * simulation runs. While it is showing, the engine profiles a sample of its
+ * boids to break the tick down by behaviour.
+ *
+ * Below the measures are the level of fidelity the engine's
+ * {@link FidelityGovernor} has chosen, graphed as how far it is below full,
+ * and the governor's latest adjustments.
+ */
+public class PerformancePanel extends JPanel {
+    // Time between refreshes in milliseconds, and refreshes kept in the graphs
+    private static final int REFRESH_MILLIS = 250;
+    private static final int HISTORY = 120;
+    // Governor adjustments listed
+    private static final int ADJUSTMENTS_SHOWN = 4;
+
+    private final FlockEngine engine;
+    private final EngineMetrics metrics;
+    private final FidelityGovernor governor;
+    private final Timer timer;
+    private final List<Row> rows = new ArrayList<>();
+    private final Row tickRow;
+    private final Row indexRow;
+    private final Row tickRateRow;
+    private final Row renderRow;
+    private final Row frameRateRow;
+    private final Row neighbourRow;
+    private final Row gcRow;
+    private final Row allocationRow;
+    // One row per behaviour, in the order of the engine's behaviour set
+    private final Row[] behaviourRows;
+    private final Row fidelityRow;
+    private final JTextArea adjustmentLog;
+
+    // The totals at the last refresh
+    private long lastTime;
+    private long lastTicks;
+    private long lastTickNanos;
+    private long lastIndexNanos;
+    private long lastFrames;
+    private long lastFrameNanos;
+    private long lastAllocatedBytes;
+    private long lastUpdated;
+    private long lastProfiled;
+    private long lastNeighbours;
+    private long lastGcCount;
+    private long lastGcMillis;
+    private final long[] lastBehaviourNanos;
+
+    public PerformancePanel(FlockEngine engine) {
+        super(new GridBagLayout());
+        this.engine = engine;
+        this.metrics = engine.getMetrics();
+        this.governor = engine.getGovernor();
+
+        tickRow = addRow("Tick", "Wall time of each tick, in ms");
+        indexRow = addRow("Index", "Part of each tick spent indexing the flock, in ms");
+        tickRateRow = addRow("Ticks/s", "Ticks run per second");
+        renderRow = addRow("Render", "Time to draw each frame, in ms");
+        frameRateRow = addRow("FPS", "Frames drawn per second");
+        neighbourRow = addRow("Neighbours", "Mean boids within the largest perception range");
+        gcRow = addRow("GC", "Time the JVM spent collecting garbage, in ms per second");
+        allocationRow = addRow("Allocation", "Memory allocated by the ticks, in MB per second");
+
+        BehaviourSet behaviours = engine.getBehaviours();
+        List<String> names = behaviours.getNames();
+        behaviourRows = new Row[names.size()];
+        for (int i = 0; i < behaviourRows.length; i++)
+            behaviourRows[i] = addRow(names.get(i),
+                    "Estimated time of the behaviour in each tick, over all threads, in ms");
+        lastBehaviourNanos = new long[behaviourRows.length];
+
+        fidelityRow = addRow("Fidelity", "Steps the governor has lowered fidelity by, out of "
+                + (FidelityGovernor.Level.values().length - 1));
+        adjustmentLog = new JTextArea(ADJUSTMENTS_SHOWN, 0);
+        adjustmentLog.setEditable(false);
+        adjustmentLog.setOpaque(false);
+        adjustmentLog.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 9));
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridy = rows.size();
+        gbc.gridx = 0;
+        gbc.gridwidth = 3;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        add(adjustmentLog, gbc);
+
+        timer = new Timer(REFRESH_MILLIS, e -> refresh());
+        timer.setCoalesce(true);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        metrics.setProfiling(true);
+        takeTotals();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        metrics.setProfiling(false);
+        super.removeNotify();
+    }
+
+    private Row addRow(String name, String description) {
+        Row row = new Row(name, description);
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridy = rows.size();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(1, 0, 1, 8);
+
+        gbc.gridx = 0;
+        add(row.nameLabel, gbc);
+        gbc.gridx = 1;
+        gbc.anchor = GridBagConstraints.EAST;
+        add(row.valueLabel, gbc);
+        gbc.gridx = 2;
+        gbc.insets = new Insets(1, 0, 1, 0);
+        add(row.sparkline, gbc);
+
+        rows.add(row);
+        return row;
+    }
+
+    /**
+     * Shows what changed in the engine's totals since the last refresh.
+     */
+    private void refresh() {
+        if (!isShowing())
+            return;
+
+        long now = System.nanoTime();
+        float seconds = (now - lastTime) / 1e9f;
+        long ticks = metrics.getTicks() - lastTicks;
+        long frames = metrics.getFrames() - lastFrames;
+        long updated = metrics.getUpdatedBoids() - lastUpdated;
+        long profiled = metrics.getProfiledBoids() - lastProfiled;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+
+        tickRow.show(perEach(metrics.getTickNanos() - lastTickNanos, ticks) / 1e6f, "%.2f");
+        indexRow.show(perEach(metrics.getIndexNanos() - lastIndexNanos, ticks) / 1e6f, "%.2f");
+        tickRateRow.show(ticks / seconds, "%.1f");
+        renderRow.show(perEach(metrics.getFrameNanos() - lastFrameNanos, frames) / 1e6f, "%.2f");
+        frameRateRow.show(frames / seconds, "%.1f");
+        neighbourRow.show(perEach(metrics.getNeighbours() - lastNeighbours, profiled), "%.1f");
+        allocationRow.show((metrics.getAllocatedBytes() - lastAllocatedBytes) / seconds / (1 << 20), "%.1f");
+        gcRow.show((gcMillis - lastGcMillis) / seconds, "%.1f",
+                String.format(" (%d)", gcCount - lastGcCount));
+
+        // The sampled updates stand for every update, and their time is spread
+        // over the ticks they ran in
+        BehaviourSet behaviours = engine.getBehaviours();
+        for (int i = 0; i < behaviourRows.length; i++) {
+            long nanos = metrics.getBehaviourNanos(i) - lastBehaviourNanos[i];
+            boolean isEnabled = behaviours.get(behaviours.getNames().get(i)).isEnabled();
+            if (!isEnabled || profiled == 0 || ticks == 0)
+                behaviourRows[i].show(Float.NaN, "%.2f");
+            else
+                behaviourRows[i].show((float) nanos * updated / profiled / ticks / 1e6f, "%.2f");
+        }
+
+        FidelityGovernor.Level level = governor.getLevel();
+        fidelityRow.show(level.ordinal(), "%.0f", governor.isEnabled() ? "" : " (off)");
+        fidelityRow.valueLabel.setToolTipText(level.getDescription());
+        showAdjustments();
+
+        takeTotals();
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+    }
+
+    // Lists the latest adjustments, newest first, with what each tick cost
+    // when they were made and the level they moved to
+    private void showAdjustments() {
+        List<FidelityGovernor.Adjustment> adjustments = governor.getAdjustments();
+        StringBuilder text = new StringBuilder();
+        for (int i = adjustments.size() - 1; i >= Math.max(0, adjustments.size() - ADJUSTMENTS_SHOWN); i--) {
+            if (text.length() > 0)
+                text.append('\n');
+            FidelityGovernor.Adjustment adjustment = adjustments.get(i);
+            String cost = adjustment.getCostNanos() < 0 ? "off"
+                    : String.format("%.2f ms", adjustment.getCostNanos() / 1e6);
+            text.append(String.format("tick %d, %s: %s", adjustment.getTick(), cost,
+                    adjustment.getTo().getDescription()));
+        }
+        if (!text.toString().equals(adjustmentLog.getText()))
+            adjustmentLog.setText(text.toString());
+    }
+
+    private void takeTotals() {
+        lastTime = System.nanoTime();
+        lastTicks = metrics.getTicks();
+        lastTickNanos = metrics.getTickNanos();
+        lastIndexNanos = metrics.getIndexNanos();
+        lastFrames = metrics.getFrames();
+        lastFrameNanos = metrics.getFrameNanos();
+        lastAllocatedBytes = metrics.getAllocatedBytes();
+        lastUpdated = metrics.getUpdatedBoids();
+        lastProfiled = metrics.getProfiledBoids();
+        lastNeighbours = metrics.getNeighbours();
+        for (int i = 0; i < lastBehaviourNanos.length; i++)
+            lastBehaviourNanos[i] = metrics.getBehaviourNanos(i);
+    }
+
+    // The mean of a total over a number of things, or NaN if there were none
+    private static float perEach(long total, long count) {
+        return count > 0 ? (float) total / count : Float.NaN;
+    }
+
+    /**
+     * A measure's name, its latest value and a graph of its recent values.
+     */
+    private static class Row {
+        final JLabel nameLabel;
+        final JLabel valueLabel;
+        final Sparkline sparkline = new Sparkline();
+
+        Row(String name, String description) {
+            nameLabel = new JLabel(name);
+            nameLabel.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 10));
+            nameLabel.setToolTipText(description);
+            valueLabel = new JLabel("-");
+            valueLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+            valueLabel.setHorizontalAlignment(SwingConstants.RIGHT);
+            valueLabel.setPreferredSize(new Dimension(80, valueLabel.getPreferredSize().height));
+        }
+
+        // Shows a value, or a dash for NaN, and adds it to the graph
+        void show(float value, String format) {
+            show(value, format, "");
+        }
+
+        void show(float value, String format, String suffix) {
+            valueLabel.setText(Float.isNaN(value) ? "-" : String.format(format, value) + suffix);
+            sparkline.add(value);
+        }
+    }
+
+    /**
+     * A small line graph of the last {@link #HISTORY} values of a measure,
+     * scaled to the largest of them. Missing values leave a gap.
+     */
+    private static class Sparkline extends JComponent {
+        private final float[] values = new float[HISTORY];
+        // Where the next value goes, and how many values there are
+        private int next = 0;
+        private int count = 0;
+
+        Sparkline() {
+            setPreferredSize(new Dimension(HISTORY, 18));
+            Arrays.fill(values, Float.NaN);
+        }
+
+        void add(float value) {
+            values[next] = value;
+            next = (next + 1) % HISTORY;
+            count = Math.min(count + 1, HISTORY);
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            float max = 0;
+            for (float value : values) {
+                if (value > max)
+                    max = value;
+            }
+            if (max <= 0)
+                return;
+
+            int width = getWidth();
+            int height = getHeight() - 1;
+            g.setColor(Color.GRAY);
+            int lastX = -1;
+            int lastY = 0;
+            for (int i = 0; i < count; i++) {
+                float value = values[(next - count + i + HISTORY) % HISTORY];
+                if (Float.isNaN(value)) {
+                    lastX = -1;
+                    continue;
+                }
+                int x = width - count + i;
+                int y = height - Math.round(value / max * height);
+                if (lastX >= 0)
+                    g.drawLine(lastX, lastY, x, y);
+                else
+                    g.drawLine(x, y, x, y);
+                lastX = x;
+                lastY = y;
+            }
+        }
+    }
+}
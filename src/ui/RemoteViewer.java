@@ -0,0 +1,107 @@
+package ui;
+
+import javax.swing.*;
+
+import net.StreamClient;
+
+import java.awt.*;
+import java.io.IOException;
+
+/**
+ * Watches a simulation running in another process, connected to its stream
+ * server. Frames are read on a background thread and drawn as they arrive.
+ */
+public class RemoteViewer extends JFrame {
+    private final StreamClient client;
+    private final RemotePanel remotePanel;
+    private final JLabel tickLabel;
+
+    // The frame being drawn, copied from the client under this viewer's lock
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] vx = new float[0];
+    private float[] vy = new float[0];
+
+    public RemoteViewer(StreamClient client) {
+        this.client = client;
+
+        setTitle("Remote Flock");
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        remotePanel = new RemotePanel();
+        tickLabel = new JLabel(" ");
+        tickLabel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+
+        getContentPane().add(remotePanel, BorderLayout.CENTER);
+        getContentPane().add(tickLabel, BorderLayout.SOUTH);
+
+        pack();
+        setLocationRelativeTo(null);
+        setVisible(true);
+
+        Thread reader = new Thread(this::receive, "remote-viewer");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void receive() {
+        try {
+            while (client.readFrame()) {
+                synchronized (this) {
+                    x = client.getXs().clone();
+                    y = client.getYs().clone();
+                    vx = client.getVelocityXs().clone();
+                    vy = client.getVelocityYs().clone();
+                }
+                long tick = client.getTick();
+                SwingUtilities.invokeLater(() -> {
+                    tickLabel.setText("Tick " + tick);
+                    remotePanel.repaint();
+                });
+            }
+            SwingUtilities.invokeLater(() -> tickLabel.setText("Disconnected"));
+        } catch (IOException e) {
+            SwingUtilities.invokeLater(() -> tickLabel.setText("Disconnected: " + e.getMessage()));
+        }
+    }
+
+    private class RemotePanel extends JPanel {
+        RemotePanel() {
+            setPreferredSize(new Dimension(800, 600));
+            setBackground(BoidPainter.BACKGROUND_COLOR);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            synchronized (RemoteViewer.this) {
+                for (int i = 0; i < x.length; i++)
+                    BoidPainter.paintBoid(g2d, x[i], y[i], vx[i], vy[i], BoidPainter.STANDARD_COLOR);
+            }
+        }
+    }
+
+    /**
+     * Connects to a simulation started with {@code --serve <port>}.
+     *
+     * @param args The port the simulation is streaming on.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: RemoteViewer <port>");
+            System.exit(1);
+        }
+
+        StreamClient client;
+        try {
+            client = new StreamClient(Integer.parseInt(args[0]));
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Could not connect to port " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> new RemoteViewer(client));
+    }
+}
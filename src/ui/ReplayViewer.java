@@ -0,0 +1,135 @@
+package ui;
+
+import javax.swing.*;
+
+import recording.TrajectoryReader;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Plays back a recorded trajectory file without re-running the simulation. A
+ * slider scrubs to any frame and a play button steps through the recording at
+ * the same rate as the live simulation.
+ */
+public class ReplayViewer extends JFrame {
+    private final TrajectoryReader reader;
+    private final float[] x;
+    private final float[] y;
+    private final float[] vx;
+    private final float[] vy;
+
+    private final ReplayPanel replayPanel;
+    private final JSlider frameSlider;
+    private final JLabel tickLabel;
+    private final Timer timer;
+
+    public ReplayViewer(TrajectoryReader reader) {
+        this.reader = reader;
+        int boidCount = reader.getBoidCount();
+        x = new float[boidCount];
+        y = new float[boidCount];
+        vx = new float[boidCount];
+        vy = new float[boidCount];
+
+        setTitle("Flock Replay");
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        replayPanel = new ReplayPanel();
+        frameSlider = new JSlider(JSlider.HORIZONTAL, 0, Math.max(0, reader.getFrameCount() - 1), 0);
+        tickLabel = new JLabel();
+        timer = new Timer(16, e -> advance());
+
+        JButton playButton = new JButton("Play");
+        playButton.addActionListener(e -> {
+            if (timer.isRunning()) {
+                timer.stop();
+                playButton.setText("Play");
+            } else {
+                timer.start();
+                playButton.setText("Pause");
+            }
+        });
+
+        frameSlider.addChangeListener(e -> showFrame(frameSlider.getValue()));
+
+        JPanel controls = new JPanel(new BorderLayout(5, 0));
+        controls.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        controls.add(playButton, BorderLayout.WEST);
+        controls.add(frameSlider, BorderLayout.CENTER);
+        controls.add(tickLabel, BorderLayout.EAST);
+
+        getContentPane().add(replayPanel, BorderLayout.CENTER);
+        getContentPane().add(controls, BorderLayout.SOUTH);
+
+        if (reader.getFrameCount() > 0)
+            showFrame(0);
+
+        pack();
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    private void advance() {
+        int next = frameSlider.getValue() + 1;
+        if (next >= reader.getFrameCount())
+            next = 0;
+        frameSlider.setValue(next); // Triggers showFrame through the change listener
+    }
+
+    private void showFrame(int frame) {
+        if (frame >= reader.getFrameCount())
+            return;
+
+        try {
+            reader.readFrame(frame, x, y, vx, vy);
+            tickLabel.setText("Tick " + reader.getTick(frame));
+        } catch (IOException e) {
+            timer.stop();
+            System.err.println("Could not read frame " + frame + ": " + e.getMessage());
+            return;
+        }
+        replayPanel.repaint();
+    }
+
+    private class ReplayPanel extends JPanel {
+        ReplayPanel() {
+            setPreferredSize(new Dimension((int) reader.getWidth(), (int) reader.getHeight()));
+            setBackground(BoidPainter.BACKGROUND_COLOR);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            for (int i = 0; i < x.length; i++)
+                BoidPainter.paintBoid(g2d, x[i], y[i], vx[i], vy[i], BoidPainter.STANDARD_COLOR);
+        }
+    }
+
+    /**
+     * Opens a trajectory file in the replay viewer.
+     *
+     * @param args The path of the trajectory file to play back.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: ReplayViewer <trajectory file>");
+            System.exit(1);
+        }
+
+        Path file = Paths.get(args[0]);
+        TrajectoryReader reader;
+        try {
+            reader = new TrajectoryReader(file);
+        } catch (IOException e) {
+            System.err.println("Could not open " + file + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> new ReplayViewer(reader));
+    }
+}
@@ -0,0 +1,126 @@
+package util;
+
+/**
+ * A small, fast pseudo-random generator based on SplitMix64. Unlike
+ * {@link Math#random()} its entire state is a single long, so it can be seeded
+ * for reproducible runs and saved and restored exactly as part of a checkpoint.
+ *
+ * Instances are not thread safe.
+ */
+public class RandomSource {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    /**
+     * Constructs a random source from a seed. Two sources created with the same
+     * seed produce the same sequence of values.
+     *
+     * @param seed The seed of the sequence.
+     */
+    public RandomSource(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Constructs a random source with an arbitrary seed.
+     */
+    public RandomSource() {
+        this(mix(System.nanoTime()));
+    }
+
+    /**
+     * Gets the next 64 random bits of the sequence.
+     *
+     * @return A uniformly distributed long.
+     */
+    public long nextLong() {
+        return mix(state += GOLDEN_GAMMA);
+    }
+
+    /**
+     * Gets a random float in the range [0, 1).
+     *
+     * @return A uniformly distributed float.
+     */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Gets a random int in the range [0, bound).
+     *
+     * @param bound The exclusive upper bound, which must be positive.
+     * @return A uniformly distributed int.
+     */
+    public int nextInt(int bound) {
+        // Multiply-shift maps 32 random bits onto the range without division
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Gets a random double in the range [0, 1).
+     *
+     * @return A uniformly distributed double.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Derives an independent generator for a numbered stream, without advancing
+     * this one. The same state and index always give the same stream, so work
+     * can be split across threads by index and draw the same values however it
+     * is partitioned.
+     *
+     * @param index The index of the stream, for example the index of a boid.
+     * @return A new generator for the stream.
+     */
+    public RandomSource stream(long index) {
+        return stream(index, new RandomSource(0));
+    }
+
+    /**
+     * Reseeds another generator to a numbered stream of this one, as
+     * {@link #stream(long)} would create it, so that a loop drawing from one
+     * stream per item can reuse a single generator.
+     *
+     * @param index  The index of the stream.
+     * @param target The generator to reseed.
+     * @return The target.
+     */
+    public RandomSource stream(long index, RandomSource target) {
+        target.state = mix(state ^ mix(index * GOLDEN_GAMMA + GOLDEN_GAMMA));
+        return target;
+    }
+
+    /**
+     * Splits off a new generator whose sequence is independent of this one,
+     * advancing this generator by one step.
+     *
+     * @return A new generator.
+     */
+    public RandomSource split() {
+        return new RandomSource(mix(nextLong()));
+    }
+
+    /**
+     * Gets the internal state of the generator, which can be passed to
+     * {@link #setState(long)} to resume the sequence from this point.
+     *
+     * @return The current state.
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -191,6 +191,19 @@ public class Vector {
         return new Vector((float) Math.cos(angle), (float) Math.sin(angle));
     }
 
+    /**
+     * Creates a random 2D unit vector with a random direction drawn from the
+     * given random source.
+     *
+     * @param random The random source to draw the direction from.
+     * @return A new Vector object representing a 2D unit vector with a random
+     *         direction.
+     */
+    public static Vector random2D(RandomSource random) {
+        float angle = (float) (random.nextDouble() * Math.PI * 2);
+        return new Vector((float) Math.cos(angle), (float) Math.sin(angle));
+    }
+
     /**
      * Calculates the angle between two vectors.
      *
@@ -0,0 +1,36 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * Runs every test without a display and exits with a non-zero status if any
+ * fails. Each test is a class with a {@code main} method that throws on
+ * failure, so a single test can also be run on its own.
+ */
+public class RunTests {
+    private static final List<String> TESTS = List.of(
+            "distributed.DomainCoordinatorTest",
+            "host.HostServerTest",
+            "net.StreamServerTest",
+            "simulation.CheckpointTest",
+            "simulation.ThreadDeterminismTest",
+            "spatial.SpatialIndexTest");
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int failures = 0;
+        for (String name : TESTS) {
+            long start = System.nanoTime();
+            try {
+                Class.forName(name).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+                System.out.printf("passed  %s (%.1f s)%n", name, (System.nanoTime() - start) / 1e9);
+            } catch (InvocationTargetException e) {
+                failures++;
+                System.out.println("FAILED  " + name);
+                e.getCause().printStackTrace(System.out);
+            }
+        }
+        System.out.println(failures == 0 ? "All " + TESTS.size() + " tests passed"
+                : failures + " of " + TESTS.size() + " tests failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,51 @@
+package distributed;
+
+import static util.Checks.check;
+import static util.Checks.checkEquals;
+
+import models.Flock;
+import simulation.FlockEngine;
+
+/**
+ * Runs a flock across worker processes with the behaviours that look at
+ * neighbours turned on, so boids near the edges of a strip are relayed to the
+ * strips beside it, and checks every bit of the result against a single
+ * engine.
+ */
+public class DomainCoordinatorTest {
+    private static final long SEED = 3;
+    private static final int BOIDS = 400;
+    private static final int TICKS = 30;
+    private static final float WIDTH = 800;
+    private static final float HEIGHT = 600;
+
+    public static void main(String[] args) throws Exception {
+        Flock single;
+        Flock alone;
+        try (FlockEngine engine = new FlockEngine(SEED, 1, BOIDS, WIDTH, HEIGHT);
+                FlockEngine aloneEngine = new FlockEngine(SEED, 1, BOIDS, WIDTH, HEIGHT)) {
+            engine.setNeighbourIndex(FlockEngine.NeighbourIndex.GRID);
+            aloneEngine.setNeighbourIndex(FlockEngine.NeighbourIndex.GRID);
+            DomainCoordinator.enableNeighbourBehaviours(engine.getBehaviours());
+            for (int i = 0; i < TICKS; i++) {
+                engine.step();
+                aloneEngine.step();
+            }
+            single = engine.getFlock();
+            alone = aloneEngine.getFlock();
+        }
+        // Otherwise the comparison below could pass with empty halos
+        check(DomainCoordinator.countMismatches(single, alone) > 0, "the neighbour behaviours steer the flock");
+
+        for (int tiles : new int[] { 2, 3 }) {
+            try (DomainCoordinator coordinator = new DomainCoordinator(SEED, BOIDS, WIDTH, HEIGHT, tiles)) {
+                DomainCoordinator.enableNeighbourBehaviours(coordinator.getBehaviours());
+                for (int i = 0; i < TICKS; i++)
+                    coordinator.step();
+                checkEquals((long) TICKS, coordinator.getTick(), "ticks with " + tiles + " workers");
+                checkEquals(0, DomainCoordinator.countMismatches(single, coordinator.gather()),
+                        "boids differing from a single engine with " + tiles + " workers");
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package host;
+
+import static util.Checks.check;
+import static util.Checks.checkEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.StreamClient;
+import simulation.Scenario;
+
+/**
+ * Drives a {@link HostServer} over the loopback interface through the life of
+ * one session, and checks that commands racing a session's close never wait
+ * forever.
+ */
+public class HostServerTest {
+    public static void main(String[] args) throws Exception {
+        SimulationHost host = new SimulationHost(4, 2000, 1);
+        try (HostServer server = new HostServer(host, 0);
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            checkEquals("ok\t1", send(writer, reader, "create\t200\t7"), "create");
+            checkEquals("ok\t1", send(writer, reader, "list"), "list");
+
+            checkEquals("ok", send(writer, reader, "set\t1\tCohesion\tRange\t80"), "set");
+            checkEquals(80f, host.get(1).getEngine().getParameter("Cohesion", "Range").getValue(), "range");
+            check(send(writer, reader, "set\t1\tCohesion\tRange\t9999").startsWith("error\t"),
+                    "a value out of range is refused");
+            checkEquals(80f, host.get(1).getEngine().getParameter("Cohesion", "Range").getValue(),
+                    "range after a refused value");
+            check(send(writer, reader, "set\t1\tCohesion\tNo Such\t1").startsWith("error\t"),
+                    "an unknown parameter is refused");
+
+            // The session ticks on its own, which its statistics show
+            String stats = send(writer, reader, "stats\t1");
+            check(stats.startsWith("ok\tstate=running\t"), "stats of a running session: " + stats);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (host.get(1).getEngine().getTick() == 0 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            check(send(writer, reader, "stats\t1").matches("ok\tstate=running\ttick=[1-9].*"),
+                    "the session ticks");
+
+            String served = send(writer, reader, "serve\t1\t0");
+            check(served.startsWith("ok\t"), "serve: " + served);
+            try (StreamClient client = new StreamClient(Integer.parseInt(served.substring(3)))) {
+                check(client.readFrame(), "a frame is streamed");
+                checkEquals(200, client.getBoidCount(), "streamed boids");
+            }
+
+            checkEquals("ok", send(writer, reader, "close\t1"), "close");
+            check(send(writer, reader, "stats\t1").startsWith("error\t"), "a closed session is gone");
+            checkEquals("ok", send(writer, reader, "list"), "list after closing");
+        } finally {
+            host.close();
+        }
+
+        checkSubmitWhileClosing();
+    }
+
+    /**
+     * Submits a command at the same moment as the session closes, many times
+     * over. Every command must either run or fail; none may be left waiting.
+     */
+    private static void checkSubmitWhileClosing() throws Exception {
+        Scenario scenario = Scenario.parse(List.of("boids = 10"));
+        try (SimulationHost host = new SimulationHost(1, 10, 1)) {
+            for (int i = 0; i < 200; i++) {
+                Session session = host.create(i, scenario);
+                CyclicBarrier start = new CyclicBarrier(2);
+                Thread closer = new Thread(() -> {
+                    await(start);
+                    host.close(session.getId());
+                });
+                closer.start();
+                await(start);
+                CompletableFuture<Long> result = session.submit(() -> session.getEngine().getTick());
+                closer.join();
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    check(e.getCause() instanceof IllegalStateException, "a late command fails as closed");
+                }
+            }
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String send(PrintWriter writer, BufferedReader reader, String line) throws IOException {
+        writer.println(line);
+        String reply = reader.readLine();
+        check(reply != null, "the server replied to " + line);
+        return reply;
+    }
+}
@@ -0,0 +1,54 @@
+package net;
+
+import static util.Checks.check;
+import static util.Checks.checkEquals;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import simulation.FlockEngine;
+
+/**
+ * Streams an engine to a {@link StreamClient} over the loopback interface, and
+ * checks that the commands the client sends are applied, or refused when the
+ * value is out of range.
+ */
+public class StreamServerTest {
+    private static final int BOIDS = 300;
+
+    public static void main(String[] args) throws Exception {
+        try (FlockEngine engine = new FlockEngine(5, 1, BOIDS, 800, 600)) {
+            StreamServer server = engine.startStreaming(0);
+            try (StreamClient client = new StreamClient(server.getPort())) {
+                waitFor(() -> server.getClientCount() == 1, "the client is accepted");
+                for (int i = 0; i < 3; i++)
+                    engine.step();
+                check(client.readFrame(), "a frame is streamed");
+                checkEquals(BOIDS, client.getBoidCount(), "boids in the frame");
+                check(client.getTick() > 0, "the frame is of a tick run");
+
+                client.setParameter("Cohesion", "Range", 80);
+                waitFor(() -> engine.getParameter("Cohesion", "Range").getValue() == 80, "the range is set");
+
+                // Commands from one client are applied in order, so once the
+                // behaviour is enabled the value before it has been dealt with
+                client.setParameter("Cohesion", "Range", 9999);
+                client.setEnabled("Cohesion", true);
+                waitFor(() -> engine.getBehaviours().get("Cohesion").isEnabled(), "the behaviour is enabled");
+                checkEquals(80f, engine.getParameter("Cohesion", "Range").getValue(),
+                        "range after a value out of range");
+                check(!server.apply("set\tCohesion\tRange\t-1"), "a value below the range is refused");
+                check(!server.apply("set\tCohesion\tNo Such\t1"), "an unknown parameter is refused");
+            }
+            engine.stopStreaming();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            check(System.nanoTime() < deadline, message);
+            Thread.sleep(10);
+        }
+    }
+}
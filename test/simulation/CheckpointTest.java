@@ -0,0 +1,76 @@
+package simulation;
+
+import static util.Checks.check;
+import static util.Checks.checkEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import behaviour.BehaviourSet;
+import models.Flock;
+
+/**
+ * Saves a checkpoint partway through a run, restores it into an engine with
+ * another seed and thread count, and checks every bit of the rest of the run
+ * against the run that was never interrupted, with each neighbour index.
+ */
+public class CheckpointTest {
+    private static final long SEED = 11;
+    private static final long OTHER_SEED = 12;
+    private static final int BOIDS = 600;
+    private static final int TICKS_BEFORE = 40;
+    private static final int TICKS_AFTER = 60;
+    private static final float WIDTH = 800;
+    private static final float HEIGHT = 600;
+
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("boids", ".checkpoint");
+        try {
+            for (FlockEngine.NeighbourIndex index : FlockEngine.NeighbourIndex.values()) {
+                try (FlockEngine engine = new FlockEngine(SEED, 1, BOIDS, WIDTH, HEIGHT);
+                        FlockEngine restored = new FlockEngine(OTHER_SEED, 3, BOIDS / 2, WIDTH, HEIGHT)) {
+                    engine.setNeighbourIndex(index);
+                    enableBehaviours(engine.getBehaviours());
+                    for (int i = 0; i < TICKS_BEFORE; i++)
+                        engine.step();
+                    engine.saveCheckpoint(file);
+
+                    restored.restoreCheckpoint(file);
+                    checkEquals(index, restored.getNeighbourIndex(), "restored neighbour index");
+                    checkEquals((long) TICKS_BEFORE, restored.getTick(), "restored tick with " + index);
+                    for (int i = 0; i < TICKS_AFTER; i++) {
+                        engine.step();
+                        restored.step();
+                    }
+                    check(Arrays.equals(state(engine.getFlock()), state(restored.getFlock())),
+                            "restored run matches the uninterrupted run with " + index);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Turns on the behaviours that look at neighbours, and the bias, so the
+     * restored run depends on the bias order the checkpoint holds too.
+     */
+    static void enableBehaviours(BehaviourSet behaviours) {
+        behaviours.getAvoidance().setEnabled(true);
+        behaviours.getAlignment().setEnabled(true);
+        behaviours.getCohesion().setEnabled(true);
+        behaviours.getBias().setEnabled(true);
+    }
+
+    static float[] state(Flock flock) {
+        float[] state = new float[flock.size() * 4];
+        for (int i = 0; i < flock.size(); i++) {
+            state[i * 4] = flock.getX(i);
+            state[i * 4 + 1] = flock.getY(i);
+            state[i * 4 + 2] = flock.getVelocityX(i);
+            state[i * 4 + 3] = flock.getVelocityY(i);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,35 @@
+package simulation;
+
+import static util.Checks.check;
+
+import java.util.Arrays;
+
+/**
+ * Runs the same seed on one thread and on eight, with each neighbour index,
+ * and checks every bit of the two flocks against each other.
+ */
+public class ThreadDeterminismTest {
+    private static final long SEED = 21;
+    private static final int BOIDS = 800;
+    private static final int TICKS = 200;
+    private static final float WIDTH = 800;
+    private static final float HEIGHT = 600;
+
+    public static void main(String[] args) throws Exception {
+        for (FlockEngine.NeighbourIndex index : FlockEngine.NeighbourIndex.values()) {
+            try (FlockEngine single = new FlockEngine(SEED, 1, BOIDS, WIDTH, HEIGHT);
+                    FlockEngine parallel = new FlockEngine(SEED, 8, BOIDS, WIDTH, HEIGHT)) {
+                for (FlockEngine engine : new FlockEngine[] { single, parallel }) {
+                    engine.setNeighbourIndex(index);
+                    CheckpointTest.enableBehaviours(engine.getBehaviours());
+                }
+                for (int i = 0; i < TICKS; i++) {
+                    single.step();
+                    parallel.step();
+                }
+                check(Arrays.equals(CheckpointTest.state(single.getFlock()), CheckpointTest.state(parallel.getFlock())),
+                        "eight threads match one with " + index);
+            }
+        }
+    }
+}
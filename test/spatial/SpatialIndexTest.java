@@ -0,0 +1,154 @@
+package spatial;
+
+import static util.Checks.check;
+import static util.Checks.checkEquals;
+
+import models.Flock;
+import util.RandomSource;
+
+/**
+ * Checks the uniform grid, the incremental grid and the quad tree against a
+ * brute-force search over every boid, on flocks spread evenly, gathered into
+ * tight clusters and hugging the edges of the world, some of them beyond it.
+ * Queries must find every boid within the radius, and aggregates with an error
+ * bound of 0 must sum and list exactly the boids within it.
+ */
+public class SpatialIndexTest {
+    private static final long SEED = 31;
+    private static final int BOIDS = 2000;
+    private static final float WIDTH = 800;
+    private static final float HEIGHT = 600;
+    private static final float CELL_SIZE = 50;
+    private static final float[] RADII = { 12, 60, 170 };
+    // Share of the flock moved before the incremental grid is brought up to date
+    private static final float MOVED_SHARE = 0.1f;
+
+    public static void main(String[] args) {
+        String[] layouts = { "uniform", "clustered", "edge-hugging" };
+        for (int layout = 0; layout < layouts.length; layout++) {
+            RandomSource random = new RandomSource(SEED + layout);
+            Flock flock = new Flock(BOIDS, WIDTH, HEIGHT);
+            for (int i = 0; i < BOIDS; i++)
+                place(flock, i, layout, random);
+
+            UniformGrid grid = new UniformGrid(CELL_SIZE);
+            grid.build(flock);
+            QuadTree quadTree = new QuadTree();
+            quadTree.build(flock);
+
+            // Move some boids after the first build, so the incremental grid is
+            // checked after updating its cells rather than building them afresh
+            IncrementalGrid incrementalGrid = new IncrementalGrid(CELL_SIZE);
+            incrementalGrid.build(flock);
+            for (int i = 0; i < BOIDS * MOVED_SHARE; i++)
+                place(flock, random.nextInt(BOIDS), layout, random);
+            incrementalGrid.build(flock);
+            check(!incrementalGrid.wasRebuilt(), "the incremental grid moved boids on the " + layouts[layout] + " flock");
+            grid.build(flock);
+            quadTree.build(flock);
+
+            SpatialIndex[] indexes = { grid, incrementalGrid, quadTree };
+            String[] names = { "uniform grid", "incremental grid", "quad tree" };
+            for (int k = 0; k < indexes.length; k++) {
+                String context = names[k] + " on the " + layouts[layout] + " flock";
+                for (float radius : RADII) {
+                    for (int i = 0; i < BOIDS; i += 13)
+                        checkAround(indexes[k], flock, flock.getX(i), flock.getY(i), radius, i, context);
+                    for (int i = 0; i < 50; i++) {
+                        float x = -100 + random.nextFloat() * (WIDTH + 200);
+                        float y = -100 + random.nextFloat() * (HEIGHT + 200);
+                        checkAround(indexes[k], flock, x, y, radius, -1, context);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Places a boid at random for one of the flock layouts: anywhere in the
+     * world, around one of four centres, or within 20 pixels of an edge, on
+     * either side of it.
+     */
+    private static void place(Flock flock, int boid, int layout, RandomSource random) {
+        float x;
+        float y;
+        if (layout == 0) {
+            x = random.nextFloat() * WIDTH;
+            y = random.nextFloat() * HEIGHT;
+        } else if (layout == 1) {
+            int cluster = random.nextInt(4);
+            x = WIDTH * (0.2f + 0.2f * cluster) + (random.nextFloat() - 0.5f) * 30;
+            y = HEIGHT * (cluster % 2 == 0 ? 0.3f : 0.7f) + (random.nextFloat() - 0.5f) * 30;
+        } else {
+            float offset = (random.nextFloat() - 0.5f) * 40;
+            float along = random.nextFloat();
+            switch (random.nextInt(4)) {
+                case 0:
+                    x = offset;
+                    y = along * HEIGHT;
+                    break;
+                case 1:
+                    x = WIDTH + offset;
+                    y = along * HEIGHT;
+                    break;
+                case 2:
+                    x = along * WIDTH;
+                    y = offset;
+                    break;
+                default:
+                    x = along * WIDTH;
+                    y = HEIGHT + offset;
+                    break;
+            }
+        }
+        flock.set(boid, x, y, random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2);
+    }
+
+    private static void checkAround(SpatialIndex index, Flock flock, float x, float y, float radius, int exclude,
+            String context) {
+        String at = context + " around (" + x + ", " + y + ") within " + radius;
+
+        boolean[] isWithin = new boolean[flock.size()];
+        Aggregate expected = new Aggregate();
+        for (int i = 0; i < flock.size(); i++) {
+            isWithin[i] = i != exclude && isWithin(flock, i, x, y, radius);
+            if (isWithin[i])
+                expected.add(flock.getX(i), flock.getY(i), flock.getVelocityX(i), flock.getVelocityY(i));
+        }
+
+        NeighbourList found = new NeighbourList();
+        index.query(x, y, radius, found);
+        boolean[] isFound = new boolean[flock.size()];
+        for (int k = 0; k < found.size(); k++)
+            isFound[found.get(k)] = true;
+        for (int i = 0; i < flock.size(); i++)
+            check(!isWithin[i] || isFound[i], "boid " + i + " missing from the query of the " + at);
+
+        Aggregate sums = new Aggregate();
+        NeighbourList boundary = new NeighbourList();
+        index.aggregate(x, y, radius, 0, exclude, sums, boundary);
+        for (int k = 0; k < boundary.size(); k++) {
+            int boid = boundary.get(k);
+            if (boid != exclude && isWithin(flock, boid, x, y, radius))
+                sums.add(flock.getX(boid), flock.getY(boid), flock.getVelocityX(boid), flock.getVelocityY(boid));
+        }
+        checkEquals(expected.count, sums.count, "boids summed by the aggregate of the " + at);
+        checkClose(expected.sumX, sums.sumX, "x sum of the " + at);
+        checkClose(expected.sumY, sums.sumY, "y sum of the " + at);
+        checkClose(expected.sumVelocityX, sums.sumVelocityX, "velocity x sum of the " + at);
+        checkClose(expected.sumVelocityY, sums.sumVelocityY, "velocity y sum of the " + at);
+    }
+
+    /** Measures distance the way {@link NeighbourList#retainWithin} does. */
+    private static boolean isWithin(Flock flock, int boid, float x, float y, float radius) {
+        float dx = flock.getX(boid) - x;
+        float dy = flock.getY(boid) - y;
+        return (float) Math.sqrt(dx * dx + dy * dy) < radius;
+    }
+
+    /** Allows for the sums being added up in another order. */
+    private static void checkClose(float expected, float actual, String message) {
+        check(Math.abs(expected - actual) <= 1e-3f * Math.max(1, Math.abs(expected)),
+                message + ": expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,21 @@
+package util;
+
+/**
+ * The few assertions the tests need, so they run as plain programs without a
+ * test framework on the class path. A failed check throws an
+ * {@link AssertionError}, which {@code RunTests} reports.
+ */
+public final class Checks {
+    private Checks() {
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    public static void checkEquals(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual))
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+    }
+}